@@ -0,0 +1,448 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.AclStatus;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSOpsCountStatistics.OpType;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.io.retry.AsyncCallHandler;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.concurrent.AsyncGet;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/****************************************************************
+ * An asynchronous view of a {@link DistributedFileSystem}, obtained with
+ * {@link DistributedFileSystem#getAsyncDistributedFileSystem()}. It lets a
+ * caller keep many metadata calls to the NameNode outstanding without a
+ * pool of threads each blocked on a call.
+ * <p>
+ * The calls are sent in the asynchronous mode of the IPC client, through
+ * the retry proxy of the {@link DFSClient}, so they are retried and failed
+ * over like the calls of the {@link DistributedFileSystem}. Each method
+ * returns a {@link CompletableFuture} that is completed by a daemon thread
+ * when the NameNode responds. Dependent actions that block should therefore
+ * be run with one of the async methods of the future and an executor.
+ * <p>
+ * At most
+ * {@link HdfsClientConfigKeys.AsyncCalls#MAX_IN_FLIGHT_KEY} calls are
+ * outstanding at a time. Beyond that, a call blocks the calling thread until
+ * an earlier call completes; a call made from a dependent action of another
+ * call is queued instead.
+ * <p>
+ * Symbolic links are not resolved: a call on a path that contains one
+ * fails with an {@link org.apache.hadoop.fs.UnresolvedLinkException}.
+ * <p>
+ * The calls of ClientProtocol that return a primitive, such as delete and
+ * mkdirs, are not supported, because the retry proxy can only return null
+ * for an asynchronous call.
+ *****************************************************************/
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class AsyncDistributedFileSystem {
+  /** The longest time to wait for the oldest call before checking others. */
+  private static final long MAX_WAIT_MS = 10;
+  /** How long the completer thread lingers after the last call. */
+  private static final long IDLE_TIMEOUT_MS = 3000;
+
+  /** Sends a call to the NameNode in the asynchronous mode. */
+  private interface AsyncInvocation {
+    void invoke(ClientProtocol namenode) throws IOException;
+  }
+
+  private final DistributedFileSystem dfs;
+  private final Semaphore permits;
+  private final DFSAsyncCallMetrics metrics = new DFSAsyncCallMetrics();
+  /** The calls sent to the NameNode, oldest first. */
+  private final Queue<PendingCall<?>> pendingCalls =
+      new ConcurrentLinkedQueue<>();
+  /** The calls made by the completer thread while at the in-flight limit. */
+  private final Queue<PendingCall<?>> deferredCalls =
+      new ConcurrentLinkedQueue<>();
+  /** The thread that completes the futures, or null if it is idle. */
+  private volatile Daemon completer;
+
+  AsyncDistributedFileSystem(DistributedFileSystem dfs) {
+    this.dfs = dfs;
+    final int maxInFlight = dfs.getConf().getInt(
+        HdfsClientConfigKeys.AsyncCalls.MAX_IN_FLIGHT_KEY,
+        HdfsClientConfigKeys.AsyncCalls.MAX_IN_FLIGHT_DEFAULT);
+    Preconditions.checkArgument(maxInFlight > 0, "%s must be positive",
+        HdfsClientConfigKeys.AsyncCalls.MAX_IN_FLIGHT_KEY);
+    this.permits = new Semaphore(maxInFlight);
+  }
+
+  /**
+   * @return the metrics of the calls of this file system.
+   */
+  public DFSAsyncCallMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Get the status of a file or directory.
+   *
+   * @see DistributedFileSystem#getFileStatus(Path)
+   * @return a future of the status, which fails with a
+   *         FileNotFoundException if the path does not exist
+   */
+  public CompletableFuture<FileStatus> getFileStatus(Path f) {
+    dfs.getFsStatistics().incrementReadOps(1);
+    final Path absF = dfs.fixRelativePart(f);
+    final String src = dfs.getPathName(absF);
+    return this.<HdfsFileStatus>call(OpType.GET_FILE_STATUS,
+        namenode -> namenode.getFileInfo(src)).thenApply(fi -> {
+          if (fi == null) {
+            throw new CompletionException(new FileNotFoundException(
+                "File does not exist: " + absF));
+          }
+          return fi.makeQualified(dfs.getUri(), absF);
+        });
+  }
+
+  /**
+   * List the statuses of the files and directories in a directory, with as
+   * many calls as the directory needs.
+   *
+   * @see DistributedFileSystem#listStatus(Path)
+   */
+  public CompletableFuture<FileStatus[]> listStatus(Path f) {
+    final Path absF = dfs.fixRelativePart(f);
+    return listStatus(absF, dfs.getPathName(absF), HdfsFileStatus.EMPTY_NAME,
+        new ArrayList<FileStatus>());
+  }
+
+  private CompletableFuture<FileStatus[]> listStatus(final Path p,
+      final String src, final byte[] startAfter,
+      final List<FileStatus> listing) {
+    dfs.getFsStatistics().incrementReadOps(1);
+    return this.<DirectoryListing>call(OpType.LIST_STATUS,
+        namenode -> namenode.getListing(src, startAfter, false))
+        .thenCompose(thisListing -> {
+          if (thisListing == null) { // the directory does not exist
+            throw new CompletionException(new FileNotFoundException(
+                "File " + p + " does not exist."));
+          }
+          for (HdfsFileStatus fileStatus : thisListing.getPartialListing()) {
+            listing.add(fileStatus.makeQualified(dfs.getUri(), p));
+          }
+          if (!thisListing.hasMore()) {
+            return CompletableFuture.completedFuture(
+                listing.toArray(new FileStatus[listing.size()]));
+          }
+          return listStatus(p, src, thisListing.getLastName(), listing);
+        });
+  }
+
+  /**
+   * Rename a file or directory.
+   *
+   * @see DistributedFileSystem#rename(Path, Path, Options.Rename...)
+   */
+  public CompletableFuture<Void> rename(Path src, Path dst,
+      final Options.Rename... options) {
+    dfs.getFsStatistics().incrementWriteOps(1);
+    final String srcPath = dfs.getPathName(dfs.fixRelativePart(src));
+    final String dstPath = dfs.getPathName(dfs.fixRelativePart(dst));
+    return call(OpType.RENAME,
+        namenode -> namenode.rename2(srcPath, dstPath, options),
+        srcPath, dstPath);
+  }
+
+  /**
+   * Set the permission of a file or directory.
+   *
+   * @see DistributedFileSystem#setPermission(Path, FsPermission)
+   */
+  public CompletableFuture<Void> setPermission(Path p,
+      final FsPermission permission) {
+    dfs.getFsStatistics().incrementWriteOps(1);
+    final String src = dfs.getPathName(dfs.fixRelativePart(p));
+    return call(OpType.SET_PERMISSION,
+        namenode -> namenode.setPermission(src, permission), src);
+  }
+
+  /**
+   * Set the owner of a file or directory.
+   *
+   * @see DistributedFileSystem#setOwner(Path, String, String)
+   */
+  public CompletableFuture<Void> setOwner(Path p, final String username,
+      final String groupname) {
+    if (username == null && groupname == null) {
+      throw new IllegalArgumentException(
+          "username == null && groupname == null");
+    }
+    dfs.getFsStatistics().incrementWriteOps(1);
+    final String src = dfs.getPathName(dfs.fixRelativePart(p));
+    return call(OpType.SET_OWNER,
+        namenode -> namenode.setOwner(src, username, groupname), src);
+  }
+
+  /**
+   * Set the modification and access times of a file.
+   *
+   * @see DistributedFileSystem#setTimes(Path, long, long)
+   */
+  public CompletableFuture<Void> setTimes(Path p, final long mtime,
+      final long atime) {
+    dfs.getFsStatistics().incrementWriteOps(1);
+    final String src = dfs.getPathName(dfs.fixRelativePart(p));
+    return call(OpType.SET_TIMES,
+        namenode -> namenode.setTimes(src, mtime, atime), src);
+  }
+
+  /**
+   * Fully replace the ACL of a file or directory.
+   *
+   * @see DistributedFileSystem#setAcl(Path, List)
+   */
+  public CompletableFuture<Void> setAcl(Path p,
+      final List<AclEntry> aclSpec) {
+    dfs.getFsStatistics().incrementWriteOps(1);
+    final String src = dfs.getPathName(dfs.fixRelativePart(p));
+    return call(OpType.SET_ACL, namenode -> namenode.setAcl(src, aclSpec),
+        src);
+  }
+
+  /**
+   * Get the ACL of a file or directory.
+   *
+   * @see DistributedFileSystem#getAclStatus(Path)
+   */
+  public CompletableFuture<AclStatus> getAclStatus(Path p) {
+    final String src = dfs.getPathName(dfs.fixRelativePart(p));
+    return call(null, namenode -> namenode.getAclStatus(src));
+  }
+
+  /**
+   * @param op the operation to count in the storage statistics, or null
+   * @param modifiedPaths the paths whose cached metadata is invalidated
+   *                      when the call completes, successfully or not
+   */
+  private <T> CompletableFuture<T> call(OpType op,
+      AsyncInvocation invocation, String... modifiedPaths) {
+    if (op != null) {
+      dfs.getDFSOpsCountStatistics().incrementOpCounter(op);
+    }
+    final PendingCall<T> call = new PendingCall<>(invocation, modifiedPaths);
+    metrics.addCallStarted();
+    if (!permits.tryAcquire()) {
+      metrics.incAsyncCallsThrottled();
+      if (Thread.currentThread() == completer) {
+        // The completer cannot wait for itself to release a permit.
+        deferredCalls.add(call);
+        if (permits.tryAcquire()) {
+          // A permit was released before the call was queued.
+          releasePermit();
+        }
+        return call.future;
+      }
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        call.complete(null, new InterruptedIOException(
+            "Interrupted while waiting for the in-flight limit"));
+        return call.future;
+      }
+    }
+    call.permitHeld = true;
+    send(call);
+    return call.future;
+  }
+
+  private void send(PendingCall<?> call) {
+    final boolean mode = Client.isAsynchronousMode();
+    Client.setAsynchronousMode(true);
+    try {
+      dfs.getClient().checkOpen();
+      call.invocation.invoke(dfs.getClient().getNamenode());
+      call.asyncGet = AsyncCallHandler.getAsyncReturn();
+    } catch (Throwable t) {
+      call.complete(null, t);
+      return;
+    } finally {
+      Client.setAsynchronousMode(mode);
+    }
+    addPendingCall(call);
+  }
+
+  private void releasePermit() {
+    permits.release();
+    while (!deferredCalls.isEmpty() && permits.tryAcquire()) {
+      final PendingCall<?> call = deferredCalls.poll();
+      if (call == null) {
+        permits.release();
+        break;
+      }
+      call.permitHeld = true;
+      send(call);
+    }
+  }
+
+  private synchronized void addPendingCall(PendingCall<?> call) {
+    pendingCalls.add(call);
+    if (completer == null) {
+      completer = new Daemon(new Completer());
+      completer.setName("AsyncDistributedFileSystem completer for "
+          + dfs.getClient().getClientName());
+      completer.start();
+    } else {
+      notifyAll();
+    }
+  }
+
+  @VisibleForTesting
+  int getNumPendingCalls() {
+    return pendingCalls.size();
+  }
+
+  /** A call whose future has not been completed yet. */
+  private final class PendingCall<T> {
+    private final AsyncInvocation invocation;
+    private final String[] modifiedPaths;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final long startNanos = Time.monotonicNowNanos();
+    private boolean permitHeld;
+    private AsyncGet<T, Throwable> asyncGet;
+    private boolean completed;
+
+    private PendingCall(AsyncInvocation invocation, String[] modifiedPaths) {
+      this.invocation = invocation;
+      this.modifiedPaths = modifiedPaths;
+    }
+
+    /**
+     * Complete the future if the call is done.
+     *
+     * @param waitMs how long to wait for the call to be done
+     * @return whether the future has been completed
+     */
+    boolean tryComplete(long waitMs) {
+      if (completed) {
+        return true;
+      }
+      final boolean isDone = asyncGet.isDone();
+      if (!isDone && waitMs <= 0) {
+        return false;
+      }
+      try {
+        complete(asyncGet.get(isDone ? 0 : waitMs, TimeUnit.MILLISECONDS),
+            null);
+      } catch (TimeoutException e) {
+        if (!isDone) {
+          return false;
+        }
+        complete(null, e);
+      } catch (InterruptedException e) {
+        return false;
+      } catch (Throwable t) {
+        complete(null, t);
+      }
+      return true;
+    }
+
+    void complete(T value, Throwable t) {
+      completed = true;
+      metrics.addCallCompleted(Time.monotonicNowNanos() - startNanos,
+          t != null);
+      if (permitHeld) {
+        permitHeld = false;
+        releasePermit();
+      }
+      // Invalidate before completing the future, so that the dependent
+      // actions of the future do not read stale metadata.
+      dfs.getClient().invalidateMetadata(modifiedPaths);
+      if (t == null) {
+        future.complete(value);
+      } else {
+        if (t instanceof RemoteException) {
+          t = ((RemoteException) t).unwrapRemoteException();
+        }
+        future.completeExceptionally(t);
+      }
+    }
+  }
+
+  /**
+   * Completes the futures of the pending calls. It waits for the oldest
+   * call, which is usually the first to be done, and then completes every
+   * other call that is done by then.
+   */
+  private class Completer implements Runnable {
+    @Override
+    public void run() {
+      long idleStart = Time.monotonicNow();
+      while (true) {
+        final PendingCall<?> oldest = pendingCalls.peek();
+        if (oldest == null) {
+          synchronized (AsyncDistributedFileSystem.this) {
+            if (pendingCalls.isEmpty()) {
+              if (Time.monotonicNow() - idleStart >= IDLE_TIMEOUT_MS) {
+                completer = null;
+                return;
+              }
+              try {
+                AsyncDistributedFileSystem.this.wait(IDLE_TIMEOUT_MS);
+              } catch (InterruptedException ignored) {
+              }
+            }
+          }
+          continue;
+        }
+        oldest.tryComplete(MAX_WAIT_MS);
+        for (Iterator<PendingCall<?>> i = pendingCalls.iterator();
+             i.hasNext();) {
+          if (i.next().tryComplete(0)) {
+            i.remove();
+          }
+        }
+        idleStart = Time.monotonicNow();
+      }
+    }
+  }
+}
@@ -108,6 +108,11 @@ public class ClientContext {
   /** Creating byte[] for {@link DFSOutputStream}. */
   private final ByteArrayManager byteArrayManager;
 
+  /**
+   * Tracks the read latencies of DataNodes for adaptive hedged reads.
+   */
+  private final DatanodeLatencyTracker datanodeLatencyTracker;
+
   /**
    * Whether or not we complained about a DFSClient fetching a CacheContext that
    * didn't match its config values yet.
@@ -133,6 +138,9 @@ private ClientContext(String name, DfsClientConf conf,
 
     this.byteArrayManager = ByteArrayManager.newInstance(
         conf.getWriteByteArrayManagerConf());
+    this.datanodeLatencyTracker = new DatanodeLatencyTracker(
+        conf.getHedgedReadAdaptiveWindowSize(),
+        conf.getHedgedReadAdaptivePercentile());
     initTopologyResolution(config);
   }
 
@@ -238,6 +246,10 @@ public ByteArrayManager getByteArrayManager() {
     return byteArrayManager;
   }
 
+  public DatanodeLatencyTracker getDatanodeLatencyTracker() {
+    return datanodeLatencyTracker;
+  }
+
   public int getNetworkDistance(DatanodeInfo datanodeInfo) {
     // If applications disable the feature or the client machine can't
     // resolve its network location, clientNode will be set to null.
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The client-side metrics for the calls of an
+ * {@link AsyncDistributedFileSystem}. The latency of a call is the time from
+ * its submission, including any wait for the in-flight limit, to the
+ * completion of its future, so it includes the retries and failovers of the
+ * call.
+ */
+@InterfaceAudience.Private
+public class DFSAsyncCallMetrics {
+  public final AtomicLong asyncCalls = new AtomicLong();
+  public final AtomicLong asyncCallsFailed = new AtomicLong();
+  public final AtomicLong asyncCallsInFlight = new AtomicLong();
+  public final AtomicLong asyncCallsThrottled = new AtomicLong();
+  public final AtomicLong asyncCallLatencyNanos = new AtomicLong();
+  public final AtomicLong asyncCallMaxLatencyNanos = new AtomicLong();
+
+  void incAsyncCallsThrottled() {
+    asyncCallsThrottled.incrementAndGet();
+  }
+
+  void addCallStarted() {
+    asyncCallsInFlight.incrementAndGet();
+  }
+
+  void addCallCompleted(long latencyNanos, boolean failed) {
+    asyncCallsInFlight.decrementAndGet();
+    asyncCalls.incrementAndGet();
+    if (failed) {
+      asyncCallsFailed.incrementAndGet();
+    }
+    asyncCallLatencyNanos.addAndGet(latencyNanos);
+    for (long max = asyncCallMaxLatencyNanos.get(); latencyNanos > max;
+         max = asyncCallMaxLatencyNanos.get()) {
+      if (asyncCallMaxLatencyNanos.compareAndSet(max, latencyNanos)) {
+        break;
+      }
+    }
+  }
+
+  /** @return the number of completed calls. */
+  public long getAsyncCalls() {
+    return asyncCalls.longValue();
+  }
+
+  /** @return the number of completed calls that failed. */
+  public long getAsyncCallsFailed() {
+    return asyncCallsFailed.longValue();
+  }
+
+  /** @return the number of calls that have not completed yet. */
+  public long getAsyncCallsInFlight() {
+    return asyncCallsInFlight.longValue();
+  }
+
+  /** @return the number of calls that waited for the in-flight limit. */
+  public long getAsyncCallsThrottled() {
+    return asyncCallsThrottled.longValue();
+  }
+
+  /** @return the average latency of the completed calls in microseconds. */
+  public long getAsyncCallAvgLatencyMicros() {
+    final long calls = asyncCalls.longValue();
+    return calls == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(
+        asyncCallLatencyNanos.longValue() / calls);
+  }
+
+  /** @return the highest latency of the completed calls in microseconds. */
+  public long getAsyncCallMaxLatencyMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(asyncCallMaxLatencyNanos.longValue());
+  }
+}
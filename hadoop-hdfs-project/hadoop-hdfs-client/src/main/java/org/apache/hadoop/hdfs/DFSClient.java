@@ -228,11 +228,15 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   private final CachingStrategy defaultReadCachingStrategy;
   private final CachingStrategy defaultWriteCachingStrategy;
   private final ClientContext clientContext;
+  private final DFSMetadataCache metadataCache;
 
   private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
   private static volatile ThreadPoolExecutor STRIPED_READ_THREAD_POOL;
+  private static volatile ThreadPoolExecutor VECTORED_READ_THREAD_POOL;
+  private static volatile ThreadPoolExecutor STRIPED_ENCODE_THREAD_POOL;
+  private static volatile ThreadPoolExecutor FILE_CHECKSUM_THREAD_POOL;
   private final int smallBufferSize;
 
   public DfsClientConf getConf() {
@@ -373,9 +377,21 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
 
     this.initThreadsNumForStripedReads(dfsClientConf.
         getStripedReadThreadpoolSize());
+    this.initThreadsNumForVectoredReads(dfsClientConf.
+        getVectoredReadThreadpoolSize());
+    if (dfsClientConf.getStripedEncodeThreadpoolSize() > 0) {
+      this.initThreadsNumForStripedEncoding(dfsClientConf.
+          getStripedEncodeThreadpoolSize());
+    }
+    if (dfsClientConf.getFileChecksumParallelism() > 1) {
+      this.initThreadsNumForFileChecksum(dfsClientConf.
+          getFileChecksumParallelism());
+    }
     this.saslClient = new SaslDataTransferClient(
         conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
         TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
+    this.metadataCache = dfsClientConf.isMetadataCacheEnabled() ?
+        new DFSMetadataCache(this, dfsClientConf) : null;
   }
 
   /**
@@ -600,6 +616,9 @@ public synchronized void close() throws IOException {
     if(clientRunning) {
       closeAllFilesBeingWritten(false);
       clientRunning = false;
+      if (metadataCache != null) {
+        metadataCache.close();
+      }
       getLeaseRenewer().closeClient(this);
       // close connections to the namenode
       closeConnectionToNamenode();
@@ -1297,6 +1316,8 @@ public void createSymlink(String target, String link, boolean createParent)
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(link);
     }
   }
 
@@ -1348,6 +1369,7 @@ private DFSOutputStream callAppend(String src, EnumSet<CreateFlag> flag,
     try {
       final LastBlockWithStatus blkWithStatus = callAppend(src,
           new EnumSetWritable<>(flag, CreateFlag.class));
+      invalidateMetadata(src);
       HdfsFileStatus status = blkWithStatus.getFileStatus();
       if (status == null) {
         LOG.debug("NameNode is on an older version, request file " +
@@ -1441,6 +1463,8 @@ public boolean setReplication(String src, short replication)
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -1461,6 +1485,8 @@ public void setStoragePolicy(String src, String policyName)
           NSQuotaExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -1479,6 +1505,8 @@ public void unsetStoragePolicy(String src) throws IOException {
           NSQuotaExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -1525,6 +1553,8 @@ public boolean rename(String src, String dst) throws IOException {
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src, dst);
     }
   }
 
@@ -1540,6 +1570,9 @@ public void concat(String trg, String [] srcs) throws IOException {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(trg);
+      invalidateMetadata(srcs);
     }
   }
   /**
@@ -1562,6 +1595,8 @@ public void rename(String src, String dst, Options.Rename... options)
           NSQuotaExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src, dst);
     }
   }
 
@@ -1580,6 +1615,8 @@ public boolean truncate(String src, long newLength) throws IOException {
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -1610,6 +1647,8 @@ public boolean delete(String src, boolean recursive) throws IOException {
           SafeModeException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -1641,8 +1680,24 @@ public DirectoryListing listPaths(String src,  byte[] startAfter)
   public DirectoryListing listPaths(String src,  byte[] startAfter,
       boolean needLocation) throws IOException {
     checkOpen();
+    final boolean cached = !needLocation && metadataCache != null
+        && metadataCache.isCached(src);
+    if (cached) {
+      final DirectoryListing listing =
+          metadataCache.getListing(src, startAfter);
+      if (listing != null) {
+        return listing;
+      }
+    }
     try (TraceScope ignored = newPathTraceScope("listPaths", src)) {
-      return namenode.getListing(src, startAfter, needLocation);
+      if (!cached) {
+        return namenode.getListing(src, startAfter, needLocation);
+      }
+      final long gen = metadataCache.getGeneration();
+      final DirectoryListing listing =
+          namenode.getListing(src, startAfter, false);
+      metadataCache.putListing(src, startAfter, gen, listing);
+      return listing;
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           FileNotFoundException.class,
@@ -1660,8 +1715,21 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
    */
   public HdfsFileStatus getFileInfo(String src) throws IOException {
     checkOpen();
+    final boolean cached = metadataCache != null && metadataCache.isCached(src);
+    if (cached) {
+      final HdfsFileStatus status = metadataCache.getFileInfo(src);
+      if (status != null) {
+        return status;
+      }
+    }
     try (TraceScope ignored = newPathTraceScope("getFileInfo", src)) {
-      return namenode.getFileInfo(src);
+      if (!cached) {
+        return namenode.getFileInfo(src);
+      }
+      final long gen = metadataCache.getGeneration();
+      final HdfsFileStatus status = namenode.getFileInfo(src);
+      metadataCache.putFileInfo(src, gen, status);
+      return status;
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           FileNotFoundException.class,
@@ -1850,6 +1918,8 @@ public void setPermission(String src, FsPermission permission)
           SafeModeException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -1872,6 +1942,8 @@ public void setOwner(String src, String username, String groupname)
           SafeModeException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2353,6 +2425,8 @@ public boolean primitiveMkdir(String src, FsPermission absPermission,
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2474,6 +2548,8 @@ public void setTimes(String src, long mtime, long atime) throws IOException {
           FileNotFoundException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2535,6 +2611,8 @@ public void modifyAclEntries(String src, List<AclEntry> aclSpec)
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2551,6 +2629,8 @@ public void removeAclEntries(String src, List<AclEntry> aclSpec)
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2566,6 +2646,8 @@ public void removeDefaultAcl(String src) throws IOException {
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2581,6 +2663,8 @@ public void removeAcl(String src) throws IOException {
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2596,6 +2680,8 @@ public void setAcl(String src, List<AclEntry> aclSpec) throws IOException {
           SafeModeException.class,
           SnapshotAccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2620,6 +2706,8 @@ public void createEncryptionZone(String src, String keyName)
       throw re.unwrapRemoteException(AccessControlException.class,
           SafeModeException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2651,6 +2739,8 @@ public void setErasureCodingPolicy(String src, String ecPolicyName)
           SafeModeException.class,
           UnresolvedPathException.class,
           FileNotFoundException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2664,6 +2754,8 @@ public void unsetErasureCodingPolicy(String src) throws IOException {
           SafeModeException.class,
           UnresolvedPathException.class,
           FileNotFoundException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2911,6 +3003,72 @@ private void initThreadsNumForStripedReads(int numThreads) {
     }
   }
 
+  /**
+   * Create thread pool for reading the ranges of vectored reads in parallel,
+   * VECTORED_READ_THREAD_POOL, if it does not already exist.
+   * @param numThreads Number of threads for vectored reads thread pool.
+   */
+  private void initThreadsNumForVectoredReads(int numThreads) {
+    assert numThreads > 0;
+    if (VECTORED_READ_THREAD_POOL != null) {
+      return;
+    }
+    synchronized (DFSClient.class) {
+      if (VECTORED_READ_THREAD_POOL == null) {
+        // Only after thread pool is fully constructed then save it to
+        // volatile field.
+        ThreadPoolExecutor threadPool = DFSUtilClient.getThreadPoolExecutor(1,
+            numThreads, 60, "VectoredRead-", true);
+        threadPool.allowCoreThreadTimeOut(true);
+        VECTORED_READ_THREAD_POOL = threadPool;
+      }
+    }
+  }
+
+  /**
+   * Create thread pool for computing the parity cells of striped writes,
+   * STRIPED_ENCODE_THREAD_POOL, if it does not already exist.
+   * @param numThreads Number of threads for striped encoding thread pool.
+   */
+  private void initThreadsNumForStripedEncoding(int numThreads) {
+    assert numThreads > 0;
+    if (STRIPED_ENCODE_THREAD_POOL != null) {
+      return;
+    }
+    synchronized (DFSClient.class) {
+      if (STRIPED_ENCODE_THREAD_POOL == null) {
+        // Only after thread pool is fully constructed then save it to
+        // volatile field.
+        ThreadPoolExecutor threadPool = DFSUtilClient.getThreadPoolExecutor(1,
+            numThreads, 60, "StripedEncode-", true);
+        threadPool.allowCoreThreadTimeOut(true);
+        STRIPED_ENCODE_THREAD_POOL = threadPool;
+      }
+    }
+  }
+
+  /**
+   * Create thread pool for fetching block checksums in parallel,
+   * FILE_CHECKSUM_THREAD_POOL, if it does not already exist.
+   * @param numThreads Number of threads for file checksum thread pool.
+   */
+  private void initThreadsNumForFileChecksum(int numThreads) {
+    assert numThreads > 0;
+    if (FILE_CHECKSUM_THREAD_POOL != null) {
+      return;
+    }
+    synchronized (DFSClient.class) {
+      if (FILE_CHECKSUM_THREAD_POOL == null) {
+        // Only after thread pool is fully constructed then save it to
+        // volatile field.
+        ThreadPoolExecutor threadPool = DFSUtilClient.getThreadPoolExecutor(1,
+            numThreads, 60, "FileChecksum-", true);
+        threadPool.allowCoreThreadTimeOut(true);
+        FILE_CHECKSUM_THREAD_POOL = threadPool;
+      }
+    }
+  }
+
   ThreadPoolExecutor getHedgedReadsThreadPool() {
     return HEDGED_READ_THREAD_POOL;
   }
@@ -2919,6 +3077,28 @@ ThreadPoolExecutor getStripedReadsThreadPool() {
     return STRIPED_READ_THREAD_POOL;
   }
 
+  ThreadPoolExecutor getVectoredReadsThreadPool() {
+    return VECTORED_READ_THREAD_POOL;
+  }
+
+  /**
+   * @return the thread pool for striped encoding, or null if streams should
+   *         encode in the writing thread
+   */
+  ThreadPoolExecutor getStripedEncodeThreadPool() {
+    return getConf().getStripedEncodeThreadpoolSize() > 0 ?
+        STRIPED_ENCODE_THREAD_POOL : null;
+  }
+
+  /**
+   * @return the thread pool for fetching block checksums, or null if they
+   *         should be fetched one at a time in the calling thread
+   */
+  ThreadPoolExecutor getFileChecksumThreadPool() {
+    return getConf().getFileChecksumParallelism() > 1 ?
+        FILE_CHECKSUM_THREAD_POOL : null;
+  }
+
   boolean isHedgedReadsEnabled() {
     return (HEDGED_READ_THREAD_POOL != null) &&
         HEDGED_READ_THREAD_POOL.getMaximumPoolSize() > 0;
@@ -2928,6 +3108,24 @@ DFSHedgedReadMetrics getHedgedReadMetrics() {
     return HEDGED_READ_METRIC;
   }
 
+  /**
+   * @return the metadata cache of this client, or null if it is disabled
+   */
+  public DFSMetadataCache getMetadataCache() {
+    return metadataCache;
+  }
+
+  /**
+   * Invalidate the cached metadata of paths modified by this client.
+   */
+  void invalidateMetadata(String... paths) {
+    if (metadataCache != null) {
+      for (String path : paths) {
+        metadataCache.invalidate(path);
+      }
+    }
+  }
+
   /**
    * Returns a key to map namenode uri to key provider uri.
    * Tasks will lookup this key to find key Provider.
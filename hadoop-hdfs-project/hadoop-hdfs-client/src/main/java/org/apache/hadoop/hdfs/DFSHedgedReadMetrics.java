@@ -30,6 +30,8 @@
 public class DFSHedgedReadMetrics {
   public final AtomicLong hedgedReadOps = new AtomicLong();
   public final AtomicLong hedgedReadOpsWin = new AtomicLong();
+  public final AtomicLong hedgedReadOpsLoss = new AtomicLong();
+  public final AtomicLong hedgedReadOpsSkipped = new AtomicLong();
   public final AtomicLong hedgedReadOpsInCurThread = new AtomicLong();
 
   public void incHedgedReadOps() {
@@ -44,6 +46,20 @@ public void incHedgedReadWins() {
     hedgedReadOpsWin.incrementAndGet();
   }
 
+  /**
+   * A hedged read was started but the original read finished first.
+   */
+  public void incHedgedReadLosses() {
+    hedgedReadOpsLoss.incrementAndGet();
+  }
+
+  /**
+   * A read was not hedged because the DataNode is known to be fast.
+   */
+  public void incHedgedReadSkips() {
+    hedgedReadOpsSkipped.incrementAndGet();
+  }
+
   public long getHedgedReadOps() {
     return hedgedReadOps.longValue();
   }
@@ -55,4 +71,12 @@ public long getHedgedReadOpsInCurThread() {
   public long getHedgedReadWins() {
     return hedgedReadOpsWin.longValue();
   }
+
+  public long getHedgedReadLosses() {
+    return hedgedReadOpsLoss.longValue();
+  }
+
+  public long getHedgedReadSkips() {
+    return hedgedReadOpsSkipped.longValue();
+  }
 }
@@ -27,6 +27,8 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -35,6 +37,7 @@
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -43,6 +46,7 @@
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -58,6 +62,7 @@
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
+import org.apache.hadoop.hdfs.client.FileRange;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderFactory;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
@@ -81,6 +86,7 @@
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.IdentityHashStore;
 import org.apache.hadoop.util.StopWatch;
+import org.apache.hadoop.util.Time;
 import org.apache.htrace.core.SpanId;
 import org.apache.htrace.core.TraceScope;
 import org.apache.htrace.core.Tracer;
@@ -987,7 +993,13 @@ private Callable<ByteBuffer> getFromOneDataNode(final DNAddrPair datanode,
       public ByteBuffer call() throws Exception {
         try (TraceScope ignored = dfsClient.getTracer().
             newScope("hedgedRead" + hedgedReadId, parentSpanId)) {
+          final long startTime = Time.monotonicNowNanos();
           actualGetFromOneDataNode(datanode, start, end, bb, corruptedBlocks);
+          if (dfsClient.getConf().isHedgedReadAdaptiveEnabled()) {
+            dfsClient.getClientContext().getDatanodeLatencyTracker()
+                .addSample(datanode.info, Time.monotonicNowNanos() - startTime,
+                    TimeUnit.NANOSECONDS);
+          }
           return bb;
         }
       }
@@ -1101,6 +1113,10 @@ protected LocatedBlock refreshLocatedBlock(LocatedBlock block)
    * Like {@link #fetchBlockByteRange}except we start up a second, parallel,
    * 'hedged' read if the first read is taking longer than configured amount of
    * time. We then wait on which ever read returns first.
+   *
+   * If adaptive hedged reads are enabled, the time to wait is a percentile of
+   * the recent read latencies of the chosen DataNode, up to the configured
+   * amount, and DataNodes whose recent reads were all fast are not hedged.
    */
   private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
       long end, ByteBuffer buf, CorruptedBlocks corruptedBlocks)
@@ -1111,6 +1127,7 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
         new ExecutorCompletionService<>(dfsClient.getHedgedReadsThreadPool());
     ArrayList<DatanodeInfo> ignored = new ArrayList<>();
     ByteBuffer bb;
+    ByteBuffer firstBuffer = null;
     int len = (int) (end - start + 1);
     int hedgedReadId = 0;
     while (true) {
@@ -1125,6 +1142,7 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
         // Latest block, if refreshed internally
         block = chosenNode.block;
         bb = ByteBuffer.allocate(len);
+        firstBuffer = bb;
         Callable<ByteBuffer> getFromDataNodeCallable = getFromOneDataNode(
             chosenNode, block, start, end, bb,
             corruptedBlocks, hedgedReadId++);
@@ -1133,16 +1151,21 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
         futures.add(firstRequest);
         Future<ByteBuffer> future = null;
         try {
-          future = hedgedService.poll(
-              conf.getHedgedReadThresholdMillis(), TimeUnit.MILLISECONDS);
+          long delayMicros = getHedgedReadDelayMicros(chosenNode.info);
+          if (delayMicros < 0) {
+            dfsClient.getHedgedReadMetrics().incHedgedReadSkips();
+            future = hedgedService.take();
+          } else {
+            future = hedgedService.poll(delayMicros, TimeUnit.MICROSECONDS);
+          }
           if (future != null) {
             ByteBuffer result = future.get();
             result.flip();
             buf.put(result);
             return;
           }
-          DFSClient.LOG.debug("Waited {}ms to read from {}; spawning hedged "
-              + "read", conf.getHedgedReadThresholdMillis(), chosenNode.info);
+          DFSClient.LOG.debug("Waited {}us to read from {}; spawning hedged "
+              + "read", delayMicros, chosenNode.info);
           dfsClient.getHedgedReadMetrics().incHedgedReadOps();
           // continue; no need to refresh block locations
         } catch (ExecutionException e) {
@@ -1183,7 +1206,11 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
           ByteBuffer result = getFirstToComplete(hedgedService, futures);
           // cancel the rest.
           cancelAll(futures);
-          dfsClient.getHedgedReadMetrics().incHedgedReadWins();
+          if (result == firstBuffer) {
+            dfsClient.getHedgedReadMetrics().incHedgedReadLosses();
+          } else {
+            dfsClient.getHedgedReadMetrics().incHedgedReadWins();
+          }
           result.flip();
           buf.put(result);
           return;
@@ -1199,6 +1226,35 @@ private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
     }
   }
 
+  /**
+   * @return the number of microseconds to wait for a read from the DataNode
+   *         before starting a hedged read, or -1 if the read should not be
+   *         hedged
+   */
+  private long getHedgedReadDelayMicros(DatanodeInfo datanode) {
+    final DfsClientConf conf = dfsClient.getConf();
+    final long thresholdMicros =
+        TimeUnit.MILLISECONDS.toMicros(conf.getHedgedReadThresholdMillis());
+    if (!conf.isHedgedReadAdaptiveEnabled()) {
+      return thresholdMicros;
+    }
+    final DatanodeLatencyTracker tracker =
+        dfsClient.getClientContext().getDatanodeLatencyTracker();
+    final long skipMillis = conf.getHedgedReadAdaptiveSkipThresholdMillis();
+    if (skipMillis > 0) {
+      final long maxMicros = tracker.getMaxMicros(datanode);
+      if (maxMicros >= 0
+          && maxMicros <= TimeUnit.MILLISECONDS.toMicros(skipMillis)) {
+        return -1;
+      }
+    }
+    final long percentileMicros = tracker.getPercentileMicros(datanode);
+    if (percentileMicros < 0) {
+      return thresholdMicros;
+    }
+    return Math.min(thresholdMicros, Math.max(1, percentileMicros));
+  }
+
   @VisibleForTesting
   public long getHedgedReadOpsLoopNumForTesting() {
     return hedgedReadOpsLoopNumForTesting;
@@ -1345,6 +1401,144 @@ private int pread(long position, ByteBuffer buffer)
     return realLen;
   }
 
+  /**
+   * Read the given ranges of the file. Ranges in the same block that are
+   * at most {@link DfsClientConf#getVectoredReadMergeGap()} bytes apart are
+   * read with a single request to a DataNode, and the requests are sent in
+   * parallel by the vectored read thread pool. Each range is given a future
+   * that is completed with a buffer holding its bytes between the position
+   * and the limit, or with an EOFException if the range ends past the end of
+   * the file.
+   *
+   * @param ranges the ranges to read, which must not overlap
+   * @param allocate the function that returns a buffer with at least the
+   *                 given number of bytes remaining for a range
+   */
+  public void readVectored(List<? extends FileRange> ranges,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    final List<FileRange> sorted = new ArrayList<>(ranges);
+    Collections.sort(sorted, Comparator.comparingLong(FileRange::getOffset));
+    FileRange prev = null;
+    for (FileRange range : sorted) {
+      if (range.getOffset() < 0 || range.getLength() < 0) {
+        throw new IllegalArgumentException("Invalid " + range);
+      }
+      if (prev != null
+          && prev.getOffset() + prev.getLength() > range.getOffset()) {
+        throw new IllegalArgumentException(prev + " overlaps " + range);
+      }
+      prev = range;
+    }
+    for (FileRange range : sorted) {
+      range.setData(new CompletableFuture<ByteBuffer>());
+    }
+
+    final DfsClientConf conf = dfsClient.getConf();
+    final long fileLength = getFileLength();
+    List<FileRange> merged = new ArrayList<>();
+    long mergedBlockEnd = -1;
+    for (FileRange range : sorted) {
+      final long end = range.getOffset() + range.getLength();
+      if (!merged.isEmpty()) {
+        final FileRange first = merged.get(0);
+        final FileRange last = merged.get(merged.size() - 1);
+        if (end <= mergedBlockEnd
+            && range.getOffset() - (last.getOffset() + last.getLength())
+                <= conf.getVectoredReadMergeGap()
+            && end - first.getOffset() <= conf.getVectoredReadMergeMaxSize()) {
+          merged.add(range);
+          continue;
+        }
+        readRangesAsync(merged, allocate);
+        merged = new ArrayList<>();
+      }
+      merged.add(range);
+      // Only ranges that are within a single block are merged.
+      mergedBlockEnd = -1;
+      if (range.getOffset() < fileLength) {
+        final LocatedBlock blk = getBlockAt(range.getOffset());
+        mergedBlockEnd = Math.min(fileLength,
+            blk.getStartOffset() + blk.getBlockSize());
+      }
+    }
+    if (!merged.isEmpty()) {
+      readRangesAsync(merged, allocate);
+    }
+  }
+
+  private void readRangesAsync(final List<FileRange> merged,
+      final IntFunction<ByteBuffer> allocate) {
+    final SpanId parentSpanId = Tracer.getCurrentSpanId();
+    // The calling thread reads the ranges if all the threads are busy.
+    dfsClient.getVectoredReadsThreadPool().execute(() -> {
+      try (TraceScope ignored = dfsClient.getTracer().
+          newScope("DFSInputStream#readVectored", parentSpanId)) {
+        readRanges(merged, allocate);
+      }
+    });
+  }
+
+  /**
+   * Read ranges with a single positional read and complete their futures.
+   */
+  private void readRanges(List<FileRange> merged,
+      IntFunction<ByteBuffer> allocate) {
+    final FileRange first = merged.get(0);
+    try {
+      if (merged.size() == 1) {
+        final ByteBuffer buf = allocate.apply(first.getLength());
+        readRangeFully(first.getOffset(), buf, first.getLength());
+        first.getData().complete(buf);
+        return;
+      }
+      // Read the gaps between the ranges too, and copy out the ranges.
+      final FileRange last = merged.get(merged.size() - 1);
+      final int span = (int) (last.getOffset() + last.getLength()
+          - first.getOffset());
+      final ByteBuffer mergedBuf = ByteBuffer.allocate(span);
+      readRangeFully(first.getOffset(), mergedBuf, span);
+      for (FileRange range : merged) {
+        final ByteBuffer src = mergedBuf.duplicate();
+        src.position((int) (range.getOffset() - first.getOffset()));
+        src.limit(src.position() + range.getLength());
+        final ByteBuffer buf = allocate.apply(range.getLength());
+        final int start = buf.position();
+        buf.put(src);
+        buf.limit(buf.position());
+        buf.position(start);
+        range.getData().complete(buf);
+      }
+    } catch (Throwable t) {
+      for (FileRange range : merged) {
+        range.getData().completeExceptionally(t);
+      }
+    }
+  }
+
+  /**
+   * Read length bytes at the position into buf. On return, the bytes are
+   * between the position and the limit of buf.
+   */
+  private void readRangeFully(long position, ByteBuffer buf, int length)
+      throws IOException {
+    final int start = buf.position();
+    final ByteBuffer tmp = buf.duplicate();
+    tmp.limit(start + length);
+    while (tmp.hasRemaining()) {
+      final int n = pread(position + tmp.position() - start, tmp);
+      if (n < 0) {
+        throw new EOFException("End of file reached before reading "
+            + length + " bytes at offset " + position + " of " + src);
+      }
+    }
+    buf.limit(start + length);
+    buf.position(start);
+  }
+
   /**
    * DFSInputStream reports checksum failure.
    * For replicated blocks, we have the following logic:
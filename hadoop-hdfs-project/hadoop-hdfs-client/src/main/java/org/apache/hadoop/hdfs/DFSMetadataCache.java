@@ -0,0 +1,381 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.apache.hadoop.hdfs.inotify.MissingEventsException;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the file statuses and directory listings returned by the
+ * NameNode to a {@link DFSClient}, for the paths under the configured
+ * subtrees. The entries expire after a TTL and the least recently used ones
+ * are evicted when the cache is full, so a cached entry is at most TTL
+ * milliseconds stale.
+ *
+ * The entries of a path are invalidated when the client modifies it, and,
+ * if enabled, when the inotify stream of the NameNode reports that another
+ * client modified it. Reading the inotify stream requires superuser
+ * privileges; without them only the TTL bounds the staleness.
+ *
+ * The cached {@link HdfsFileStatus} objects are shared by all the callers.
+ * Listings with block locations are not cached.
+ */
+@InterfaceAudience.Private
+public class DFSMetadataCache implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(DFSMetadataCache.class);
+
+  /** The key of a file status or of a page of a directory listing. */
+  private static final class Key {
+    private final String path;
+    /** null for a file status. */
+    private final byte[] startAfter;
+
+    private Key(String path, byte[] startAfter) {
+      this.path = path;
+      this.startAfter = startAfter;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key that = (Key) o;
+      return path.equals(that.path)
+          && Arrays.equals(startAfter, that.startAfter);
+    }
+
+    @Override
+    public int hashCode() {
+      return path.hashCode() * 31 + Arrays.hashCode(startAfter);
+    }
+  }
+
+  private static final class Entry {
+    private final Object value;
+    private final long cachedTimeMs;
+
+    private Entry(Object value) {
+      this.value = value;
+      this.cachedTimeMs = Time.monotonicNow();
+    }
+  }
+
+  private final DFSClient dfsClient;
+  private final String[] paths;
+  private final Cache<Key, Entry> cache;
+  /**
+   * Incremented by each invalidation, so that a value loaded from the
+   * NameNode before an invalidation is not cached after it.
+   */
+  private final AtomicLong generation = new AtomicLong();
+  private final Daemon inotifyListener;
+  private volatile boolean closed = false;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+  private final AtomicLong inotifyEvents = new AtomicLong();
+  private final AtomicLong hitAgeMs = new AtomicLong();
+  private final AtomicLong maxHitAgeMs = new AtomicLong();
+
+  DFSMetadataCache(DFSClient dfsClient, DfsClientConf conf) {
+    this.dfsClient = dfsClient;
+    this.paths = conf.getMetadataCachePaths();
+    this.cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(conf.getMetadataCacheTtlMs(), TimeUnit.MILLISECONDS)
+        .maximumSize(conf.getMetadataCacheMaxEntries())
+        .build();
+    if (conf.isMetadataCacheInotifyEnabled()) {
+      inotifyListener = new Daemon(new InotifyListener());
+      inotifyListener.setName("DFSMetadataCache inotify listener for "
+          + dfsClient.getClientName());
+      inotifyListener.start();
+    } else {
+      inotifyListener = null;
+    }
+  }
+
+  /**
+   * @return whether the metadata of the path may be cached
+   */
+  boolean isCached(String path) {
+    for (String p : paths) {
+      if (isInSubtree(path, p)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isInSubtree(String path, String root) {
+    if (root.equals("/") || path.equals(root)) {
+      return true;
+    }
+    return path.startsWith(root)
+        && (root.endsWith("/") || path.charAt(root.length()) == '/');
+  }
+
+  /**
+   * @return the generation to pass to the put methods for a value that is
+   *         about to be loaded from the NameNode
+   */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * @return the cached status of the path, or null if it is not cached
+   */
+  HdfsFileStatus getFileInfo(String src) {
+    return (HdfsFileStatus) get(new Key(src, null));
+  }
+
+  void putFileInfo(String src, long gen, HdfsFileStatus status) {
+    put(new Key(src, null), gen, status);
+  }
+
+  /**
+   * @return the cached page of the listing of the directory, or null if it
+   *         is not cached
+   */
+  DirectoryListing getListing(String src, byte[] startAfter) {
+    return (DirectoryListing) get(new Key(src, startAfter));
+  }
+
+  void putListing(String src, byte[] startAfter, long gen,
+      DirectoryListing listing) {
+    put(new Key(src, startAfter), gen, listing);
+  }
+
+  private Object get(Key key) {
+    final Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    final long age = Time.monotonicNow() - entry.cachedTimeMs;
+    hitAgeMs.addAndGet(age);
+    long max = maxHitAgeMs.get();
+    while (age > max && !maxHitAgeMs.compareAndSet(max, age)) {
+      max = maxHitAgeMs.get();
+    }
+    return entry.value;
+  }
+
+  private void put(Key key, long gen, Object value) {
+    if (value == null || closed) {
+      return;
+    }
+    cache.put(key, new Entry(value));
+    if (generation.get() != gen) {
+      // The path may have been invalidated while the value was loaded.
+      cache.invalidate(key);
+    }
+  }
+
+  /**
+   * Invalidate the entries of the path, of the paths under it and of its
+   * parent, whose listing and modification time change with it.
+   */
+  void invalidate(String path) {
+    if (path == null || !isCached(path)) {
+      return;
+    }
+    generation.incrementAndGet();
+    final String parent = getParent(path);
+    long n = 0;
+    for (Iterator<Key> i = cache.asMap().keySet().iterator(); i.hasNext();) {
+      final Key key = i.next();
+      if (isInSubtree(key.path, path) || key.path.equals(parent)) {
+        i.remove();
+        n++;
+      }
+    }
+    invalidations.addAndGet(n);
+  }
+
+  /**
+   * Invalidate all the entries.
+   */
+  void invalidateAll() {
+    generation.incrementAndGet();
+    invalidations.addAndGet(cache.size());
+    cache.invalidateAll();
+  }
+
+  private static String getParent(String path) {
+    final int i = path.lastIndexOf('/');
+    if (i < 0 || path.length() == 1) {
+      return null;
+    }
+    return i == 0 ? "/" : path.substring(0, i);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (inotifyListener != null) {
+      inotifyListener.interrupt();
+    }
+    cache.invalidateAll();
+  }
+
+  @VisibleForTesting
+  boolean isInotifyListenerAlive() {
+    return inotifyListener != null && inotifyListener.isAlive();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of entries invalidated before they expired
+   */
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  /**
+   * @return the number of inotify events received
+   */
+  public long getInotifyEvents() {
+    return inotifyEvents.get();
+  }
+
+  /**
+   * @return the average age of the entries returned from the cache
+   */
+  public long getAvgHitAgeMs() {
+    final long n = hits.get();
+    return n == 0 ? 0 : hitAgeMs.get() / n;
+  }
+
+  /**
+   * @return the maximum age of the entries returned from the cache
+   */
+  public long getMaxHitAgeMs() {
+    return maxHitAgeMs.get();
+  }
+
+  public long getSize() {
+    return cache.size();
+  }
+
+  /**
+   * Invalidates the entries of the paths reported by the inotify stream.
+   */
+  private class InotifyListener implements Runnable {
+    @Override
+    public void run() {
+      final DFSInotifyEventInputStream stream;
+      try {
+        stream = dfsClient.getInotifyEventStream();
+      } catch (IOException e) {
+        LOG.warn("Cannot read the inotify stream, the metadata cache will "
+            + "only be bounded by its TTL", e);
+        return;
+      }
+      while (!closed) {
+        try {
+          final EventBatch batch = stream.poll(1, TimeUnit.SECONDS);
+          if (batch == null) {
+            continue;
+          }
+          for (Event event : batch.getEvents()) {
+            inotifyEvents.incrementAndGet();
+            process(event);
+          }
+        } catch (MissingEventsException e) {
+          LOG.debug("Missed inotify events, invalidating the metadata cache",
+              e);
+          invalidateAll();
+        } catch (InterruptedException e) {
+          return;
+        } catch (IOException e) {
+          if (closed) {
+            return;
+          }
+          LOG.warn("Failed to read the inotify stream, the metadata cache "
+              + "will only be bounded by its TTL", e);
+          invalidateAll();
+          return;
+        }
+      }
+    }
+
+    private void process(Event event) {
+      switch (event.getEventType()) {
+      case CREATE:
+        invalidate(((Event.CreateEvent) event).getPath());
+        break;
+      case CLOSE:
+        invalidate(((Event.CloseEvent) event).getPath());
+        break;
+      case APPEND:
+        invalidate(((Event.AppendEvent) event).getPath());
+        break;
+      case RENAME:
+        invalidate(((Event.RenameEvent) event).getSrcPath());
+        invalidate(((Event.RenameEvent) event).getDstPath());
+        break;
+      case METADATA:
+        invalidate(((Event.MetadataUpdateEvent) event).getPath());
+        break;
+      case UNLINK:
+        invalidate(((Event.UnlinkEvent) event).getPath());
+        break;
+      case TRUNCATE:
+        invalidate(((Event.TruncateEvent) event).getPath());
+        break;
+      default:
+        invalidateAll();
+      }
+    }
+  }
+}
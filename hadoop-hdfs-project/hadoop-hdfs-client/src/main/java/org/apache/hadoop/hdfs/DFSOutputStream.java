@@ -108,6 +108,8 @@ public class DFSOutputStream extends FSOutputSummer
 
   protected final DFSClient dfsClient;
   protected final ByteArrayManager byteArrayManager;
+  /** The buffers of the acknowledged packets, reused for the next packets. */
+  protected final DFSPacketBufferPool packetBufferPool;
   // closed is accessed by different threads under different locks.
   protected volatile boolean closed = false;
 
@@ -221,7 +223,10 @@ private DFSOutputStream(DFSClient dfsClient, String src,
           + " (=" + bytesPerChecksum + ") must divide block size (=" +
           blockSize + ").");
     }
-    this.byteArrayManager = dfsClient.getClientContext().getByteArrayManager();
+    this.packetBufferPool = new DFSPacketBufferPool(
+        dfsClient.getClientContext().getByteArrayManager(),
+        dfsClient.getConf().getWritePacketPoolSize());
+    this.byteArrayManager = packetBufferPool;
   }
 
   /**
@@ -275,6 +280,7 @@ static DFSOutputStream newStreamForCreate(DFSClient dfsClient, String src,
           stat = dfsClient.namenode.create(src, masked, dfsClient.clientName,
               new EnumSetWritable<>(flag), createParent, replication,
               blockSize, SUPPORTED_CRYPTO_VERSIONS, ecPolicyName);
+          dfsClient.invalidateMetadata(src);
           break;
         } catch (RemoteException re) {
           IOException e = re.unwrapRemoteException(
@@ -812,6 +818,7 @@ void setClosed() {
     closed = true;
     dfsClient.endFileLease(fileId);
     getStreamer().release();
+    packetBufferPool.releaseAll();
   }
 
   // shutdown datastreamer and responseprocessor threads.
@@ -924,6 +931,7 @@ protected void completeFile(ExtendedBlock last) throws IOException {
         }
       }
     }
+    dfsClient.invalidateMetadata(src);
   }
 
   @VisibleForTesting
@@ -944,6 +952,20 @@ public long getInitialLen() {
     return initialFileSize;
   }
 
+  /**
+   * @return the number of packet buffers this stream has allocated
+   */
+  public long getPacketBuffersAllocated() {
+    return packetBufferPool.getBuffersAllocated();
+  }
+
+  /**
+   * @return the number of packet buffers this stream has reused
+   */
+  public long getPacketBuffersReused() {
+    return packetBufferPool.getBuffersReused();
+  }
+
   protected EnumSet<AddBlockFlag> getAddBlockFlags() {
     return addBlockFlags;
   }
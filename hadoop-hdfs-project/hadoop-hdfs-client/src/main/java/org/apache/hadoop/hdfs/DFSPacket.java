@@ -123,9 +123,7 @@ public synchronized void writeData(ByteBuffer inBuffer, int len)
     if (dataPos + len > buf.length) {
       throw new BufferOverflowException();
     }
-    for (int i = 0; i < len; i++) {
-      buf[dataPos + i] = inBuffer.get();
-    }
+    inBuffer.get(buf, dataPos, len);
     dataPos += len;
   }
 
@@ -181,8 +179,8 @@ public synchronized void writeTo(DataOutputStream stm) throws IOException {
 
     // Copy the header data into the buffer immediately preceding the checksum
     // data.
-    System.arraycopy(header.getBytes(), 0, buf, headerStart,
-        header.getSerializedSize());
+    header.putInBuffer(
+        ByteBuffer.wrap(buf, headerStart, header.getSerializedSize()));
 
     // corrupt the data for testing.
     if (DFSClientFaultInjector.get().corruptPacket()) {
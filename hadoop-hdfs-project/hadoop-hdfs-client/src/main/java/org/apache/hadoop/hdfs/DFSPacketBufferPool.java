@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.util.ByteArrayManager;
+
+/**
+ * The buffers of the packets of a single output stream. The buffers of the
+ * acknowledged packets are kept and used for the next packets, so that a
+ * stream that writes continuously does not allocate a buffer per packet.
+ * The buffers that do not fit in the pool, and all of them when the stream
+ * is closed, are released to the {@link ByteArrayManager} of the client. So
+ * are the buffers of the packets acknowledged after the stream is closed.
+ */
+@InterfaceAudience.Private
+class DFSPacketBufferPool extends ByteArrayManager {
+  private static final byte[] EMPTY_BYTE_ARRAY = {};
+
+  private final ByteArrayManager byteArrayManager;
+  private final int maxBuffers;
+  /** The free buffers, the most recently released first. */
+  private final Deque<byte[]> buffers = new ArrayDeque<>();
+  private long buffersAllocated = 0;
+  private long buffersReused = 0;
+  /** Set by releaseAll; no buffer is kept afterwards. */
+  private boolean released = false;
+
+  /**
+   * @param byteArrayManager the manager of the client to allocate from and
+   *                         release to
+   * @param maxBuffers the maximum number of free buffers to keep
+   */
+  DFSPacketBufferPool(ByteArrayManager byteArrayManager, int maxBuffers) {
+    this.byteArrayManager = byteArrayManager;
+    this.maxBuffers = maxBuffers;
+  }
+
+  @Override
+  public byte[] newByteArray(int size) throws InterruptedException {
+    if (size == 0) {
+      return EMPTY_BYTE_ARRAY;
+    }
+    synchronized (this) {
+      final byte[] buffer = buffers.peekFirst();
+      if (buffer != null && buffer.length >= size) {
+        buffers.removeFirst();
+        buffersReused++;
+        return buffer;
+      }
+      buffersAllocated++;
+    }
+    return byteArrayManager.newByteArray(size);
+  }
+
+  @Override
+  public int release(byte[] array) {
+    if (array.length == 0) {
+      return -1;
+    }
+    synchronized (this) {
+      if (!released && buffers.size() < maxBuffers) {
+        buffers.addFirst(array);
+        return buffers.size();
+      }
+    }
+    return byteArrayManager.release(array);
+  }
+
+  /**
+   * Release all the free buffers to the manager of the client. The buffers
+   * released to this pool afterwards go straight to the manager.
+   */
+  void releaseAll() {
+    synchronized (this) {
+      released = true;
+    }
+    while (true) {
+      final byte[] buffer;
+      synchronized (this) {
+        buffer = buffers.pollFirst();
+      }
+      if (buffer == null) {
+        return;
+      }
+      byteArrayManager.release(buffer);
+    }
+  }
+
+  /**
+   * @return the number of buffers allocated by the manager of the client
+   */
+  synchronized long getBuffersAllocated() {
+    return buffersAllocated;
+  }
+
+  /**
+   * @return the number of buffers reused from the pool
+   */
+  synchronized long getBuffersReused() {
+    return buffersReused;
+  }
+}
@@ -41,6 +41,7 @@
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.HadoopIllegalArgumentException;
@@ -258,8 +259,21 @@ private void flipDataBuffers() {
   }
 
   private final Coordinator coordinator;
-  private final CellBuffers cellBuffers;
+  private CellBuffers cellBuffers;
   private final RawErasureEncoder encoder;
+  /**
+   * The shared pool computing parity cells, or null if they are computed in
+   * the writing thread.
+   */
+  private final ExecutorService encodeExecutor;
+  /** The buffers of the stripe being encoded by {@link #encodeExecutor}. */
+  private CellBuffers encodingCellBuffers;
+  /** The buffers to fill after the current stripe, if encoding in parallel. */
+  private CellBuffers spareCellBuffers;
+  private Future<?> pendingEncode;
+  private final AtomicLong encodeTimeNanos = new AtomicLong();
+  private final AtomicLong encodeWaitTimeNanos = new AtomicLong();
+  private final AtomicLong stripesEncoded = new AtomicLong();
   private final List<StripedDataStreamer> streamers;
   private final DFSPacket[] currentPackets; // current Packet of each streamer
 
@@ -303,8 +317,12 @@ private void flipDataBuffers() {
         ecPolicy.getCodecName(), coderOptions);
 
     coordinator = new Coordinator(numAllBlocks);
+    encodeExecutor = dfsClient.getStripedEncodeThreadPool();
     try {
       cellBuffers = new CellBuffers(numParityBlocks);
+      if (encodeExecutor != null) {
+        spareCellBuffers = new CellBuffers(numParityBlocks);
+      }
     } catch (InterruptedException ie) {
       throw DFSUtilClient.toInterruptedIOException(
           "Failed to create cell buffers", ie);
@@ -368,6 +386,87 @@ private static void encode(RawErasureEncoder encoder, int numData,
     encoder.encode(dataBuffers, parityBuffers);
   }
 
+  /**
+   * Compute the parity cells of the current stripe in {@link #encodeExecutor},
+   * and switch to the spare buffers so that the next stripe can be filled in
+   * the meantime. The parity cells of the previous stripe are written first.
+   */
+  private void encodeParityCellsAsync() throws IOException {
+    waitForPendingEncode();
+    // Skips encoding and writing parity cells if there are no healthy parity
+    // data streamers
+    if (!checkAnyParityStreamerIsHealthy()) {
+      return;
+    }
+    final CellBuffers stripe = cellBuffers;
+    pendingEncode = encodeExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        encode(stripe);
+      }
+    });
+    encodingCellBuffers = stripe;
+    cellBuffers = spareCellBuffers;
+    spareCellBuffers = null;
+  }
+
+  /**
+   * Wait for the stripe being encoded in {@link #encodeExecutor}, if any, and
+   * write its parity cells.
+   */
+  private void waitForPendingEncode() throws IOException {
+    if (pendingEncode == null) {
+      return;
+    }
+    final long start = Time.monotonicNowNanos();
+    try {
+      pendingEncode.get();
+    } catch (InterruptedException ie) {
+      throw DFSUtilClient.toInterruptedIOException(
+          "Interrupted while encoding parity cells", ie);
+    } catch (ExecutionException ee) {
+      pendingEncode = null;
+      throw new IOException("Failed to encode parity cells", ee.getCause());
+    } finally {
+      encodeWaitTimeNanos.addAndGet(Time.monotonicNowNanos() - start);
+    }
+    pendingEncode = null;
+    final CellBuffers stripe = encodingCellBuffers;
+    writeParityCells(stripe);
+    stripe.clear();
+    encodingCellBuffers = null;
+    spareCellBuffers = stripe;
+  }
+
+  private void encode(CellBuffers stripe) {
+    final long start = Time.monotonicNowNanos();
+    encode(encoder, numDataBlocks, stripe.getBuffers());
+    encodeTimeNanos.addAndGet(Time.monotonicNowNanos() - start);
+    stripesEncoded.incrementAndGet();
+  }
+
+  /**
+   * @return the time spent computing parity cells, in nanoseconds
+   */
+  public long getEncodeTimeNanos() {
+    return encodeTimeNanos.get();
+  }
+
+  /**
+   * @return the time the writer waited for parity cells computed by the
+   *         shared encoding pool, in nanoseconds
+   */
+  public long getEncodeWaitTimeNanos() {
+    return encodeWaitTimeNanos.get();
+  }
+
+  /**
+   * @return the number of stripes whose parity cells have been computed
+   */
+  public long getStripesEncoded() {
+    return stripesEncoded.get();
+  }
+
   /**
    * check all the existing StripedDataStreamer and find newly failed streamers.
    * @return The newly failed streamers.
@@ -544,7 +643,11 @@ protected synchronized void writeChunk(byte[] bytes, int offset, int len,
       //converted to packets and put to their DataStreamer's queue.
       if (next == numDataBlocks) {
         cellBuffers.flipDataBuffers();
-        writeParityCells();
+        if (encodeExecutor != null && !shouldEndBlockGroup()) {
+          encodeParityCellsAsync();
+        } else {
+          writeParityCells();
+        }
         next = 0;
 
         // if this is the end of the block group, end each internal block
@@ -623,6 +726,12 @@ private void checkStreamerFailures() throws IOException {
       return;
     }
 
+    // write the parity cells of the stripe being encoded before the pipeline
+    // is updated, and go back to the current streamer.
+    final int current = getCurrentIndex();
+    waitForPendingEncode();
+    setCurrentStreamer(current);
+
     // for healthy streamers, wait till all of them have fetched the new block
     // and flushed out all the enqueued packets.
     flushAllInternals();
@@ -931,18 +1040,23 @@ private boolean generateParityCellsForLastStripe() {
   }
 
   void writeParityCells() throws IOException {
-    final ByteBuffer[] buffers = cellBuffers.getBuffers();
+    waitForPendingEncode();
     // Skips encoding and writing parity cells if there are no healthy parity
     // data streamers
     if (!checkAnyParityStreamerIsHealthy()) {
       return;
     }
     //encode the data cells
-    encode(encoder, numDataBlocks, buffers);
+    encode(cellBuffers);
+    writeParityCells(cellBuffers);
+    cellBuffers.clear();
+  }
+
+  private void writeParityCells(CellBuffers stripe) throws IOException {
+    final ByteBuffer[] buffers = stripe.getBuffers();
     for (int i = numDataBlocks; i < numAllBlocks; i++) {
-      writeParity(i, buffers[i], cellBuffers.getChecksumArray(i));
+      writeParity(i, buffers[i], stripe.getChecksumArray(i));
     }
-    cellBuffers.clear();
   }
 
   private boolean checkAnyParityStreamerIsHealthy() {
@@ -996,7 +1110,25 @@ void setClosed() {
     for (int i = 0; i < numAllBlocks; i++) {
       getStripedDataStreamer(i).release();
     }
+    if (pendingEncode != null) {
+      // the buffers are in use until the encoding finishes
+      try {
+        pendingEncode.get();
+        encodingCellBuffers.release();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException ignored) {
+        encodingCellBuffers.release();
+      }
+      pendingEncode = null;
+    } else if (encodingCellBuffers != null) {
+      encodingCellBuffers.release();
+    }
+    if (spareCellBuffers != null) {
+      spareCellBuffers.release();
+    }
     cellBuffers.release();
+    packetBufferPool.releaseAll();
   }
 
   @Override
@@ -1022,6 +1154,7 @@ protected synchronized void closeImpl() throws IOException {
       try {
         // flush from all upper layers
         flushBuffer();
+        waitForPendingEncode();
         // if the last stripe is incomplete, generate and write parity cells
         if (generateParityCellsForLastStripe()) {
           writeParityCells();
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Keeps a rolling window of the latencies of the reads from each DataNode,
+ * so that the hedged read delay can follow the DataNodes actually in use
+ * instead of a single fixed threshold.
+ *
+ * The tracker is shared by the DFSClient instances of a {@link ClientContext}.
+ */
+@InterfaceAudience.Private
+public class DatanodeLatencyTracker {
+  /**
+   * The number of samples a DataNode needs before its percentiles are used.
+   */
+  static final int MIN_SAMPLES = 16;
+
+  private final ConcurrentMap<String, Window> windows =
+      new ConcurrentHashMap<>();
+  private final int windowSize;
+  private final double percentile;
+
+  /**
+   * @param windowSize the number of most recent samples kept per DataNode
+   * @param percentile the percentile returned by {@link #getPercentileMicros}
+   */
+  public DatanodeLatencyTracker(int windowSize, double percentile) {
+    Preconditions.checkArgument(windowSize >= MIN_SAMPLES,
+        "The window size must be at least %s", MIN_SAMPLES);
+    Preconditions.checkArgument(percentile > 0 && percentile <= 100,
+        "The percentile must be in (0, 100]");
+    this.windowSize = windowSize;
+    this.percentile = percentile;
+  }
+
+  /**
+   * Record the latency of a read from a DataNode.
+   */
+  public void addSample(DatanodeInfo datanode, long latency, TimeUnit unit) {
+    final String key = datanode.getXferAddr();
+    Window window = windows.get(key);
+    if (window == null) {
+      final Window newWindow = new Window(windowSize);
+      window = windows.putIfAbsent(key, newWindow);
+      if (window == null) {
+        window = newWindow;
+      }
+    }
+    window.add(unit.toMicros(latency));
+  }
+
+  /**
+   * @return the configured percentile of the recent read latencies of the
+   *         DataNode in microseconds, or -1 if there are too few samples
+   */
+  public long getPercentileMicros(DatanodeInfo datanode) {
+    final Window window = windows.get(datanode.getXferAddr());
+    return window == null ? -1 : window.getPercentile(percentile);
+  }
+
+  /**
+   * @return the largest of the recent read latencies of the DataNode in
+   *         microseconds, or -1 if there are too few samples
+   */
+  public long getMaxMicros(DatanodeInfo datanode) {
+    final Window window = windows.get(datanode.getXferAddr());
+    return window == null ? -1 : window.getPercentile(100);
+  }
+
+  /**
+   * @return the number of DataNodes with samples
+   */
+  public int size() {
+    return windows.size();
+  }
+
+  /** A ring buffer of the latencies of one DataNode. */
+  private static class Window {
+    private final long[] samples;
+    private int count = 0;
+    private int next = 0;
+    /** The samples in ascending order; null when a sample has been added. */
+    private long[] sorted;
+
+    Window(int size) {
+      samples = new long[size];
+    }
+
+    synchronized void add(long micros) {
+      samples[next] = micros;
+      next = (next + 1) % samples.length;
+      if (count < samples.length) {
+        count++;
+      }
+      sorted = null;
+    }
+
+    synchronized long getPercentile(double p) {
+      if (count < MIN_SAMPLES) {
+        return -1;
+      }
+      if (sorted == null) {
+        sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+      }
+      final int index = (int) Math.ceil(p / 100 * count) - 1;
+      return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+  }
+}
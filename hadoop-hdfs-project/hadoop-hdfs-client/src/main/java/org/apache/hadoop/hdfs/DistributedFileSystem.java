@@ -124,6 +124,7 @@ public class DistributedFileSystem extends FileSystem {
   private boolean verifyChecksum = true;
 
   private DFSOpsCountStatistics storageStatistics;
+  private AsyncDistributedFileSystem adfs = null;
 
   static{
     HdfsConfiguration.init();
@@ -2752,6 +2753,31 @@ protected Path fixRelativePart(Path p) {
     return super.fixRelativePart(p);
   }
 
+  /**
+   * @return an {@link AsyncDistributedFileSystem} object that issues the
+   *         calls of this file system without waiting for them.
+   */
+  @InterfaceStability.Unstable
+  public synchronized AsyncDistributedFileSystem
+      getAsyncDistributedFileSystem() {
+    if (adfs == null) {
+      adfs = new AsyncDistributedFileSystem(this);
+    }
+    return adfs;
+  }
+
+  /**
+   * Create a writer that writes many small files concurrently. The writer
+   * should be closed after use.
+   *
+   * @param overwrite whether to overwrite existing files
+   * @return a {@link SmallFileBatchWriter}
+   */
+  @InterfaceStability.Unstable
+  public SmallFileBatchWriter createSmallFileBatchWriter(boolean overwrite) {
+    return new SmallFileBatchWriter(this, overwrite);
+  }
+
   Statistics getFsStatistics() {
     return statistics;
   }
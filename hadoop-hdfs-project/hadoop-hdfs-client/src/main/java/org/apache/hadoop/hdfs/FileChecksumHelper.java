@@ -20,6 +20,7 @@
 import org.apache.hadoop.fs.MD5MD5CRC32CastagnoliFileChecksum;
 import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
 import org.apache.hadoop.fs.MD5MD5CRC32GzipFileChecksum;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
@@ -46,7 +47,13 @@
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Utility classes to compute file checksum for both replicated and striped
@@ -71,7 +78,6 @@ static abstract class FileChecksumComputer {
     private MD5MD5CRC32FileChecksum fileChecksum;
     private LocatedBlocks blockLocations;
 
-    private int timeout;
     private List<LocatedBlock> locatedBlocks;
     private long remaining = 0L;
 
@@ -139,14 +145,6 @@ void refetchBlocks() throws IOException {
       this.isRefetchBlocks = false;
     }
 
-    int getTimeout() {
-      return timeout;
-    }
-
-    void setTimeout(int timeout) {
-      this.timeout = timeout;
-    }
-
     List<LocatedBlock> getLocatedBlocks() {
       return locatedBlocks;
     }
@@ -225,10 +223,174 @@ void compute() throws IOException {
     }
 
     /**
-     * Compute and aggregate block checksums block by block.
+     * Compute and aggregate block checksums. Up to
+     * {@link HdfsClientConfigKeys#DFS_CLIENT_FILE_CHECKSUM_PARALLELISM_KEY}
+     * block checksums are requested at the same time, and the results are
+     * aggregated in block order.
      * @throws IOException
      */
-    abstract void checksumBlocks() throws IOException;
+    void checksumBlocks() throws IOException {
+      final ExecutorService executor = client.getFileChecksumThreadPool();
+      final int window = executor == null ? 1 :
+          client.getConf().getFileChecksumParallelism();
+      final ArrayDeque<PendingChecksum> pending = new ArrayDeque<>();
+      int next = 0;
+      try {
+        while (true) {
+          while (pending.size() < window && next < locatedBlocks.size()
+              && remaining >= 0) {
+            if (isRefetchBlocks()) {  // refetch to get fresh tokens
+              refetchBlocks();
+            }
+            pending.add(submit(executor, next++));
+          }
+          final PendingChecksum p = pending.poll();
+          if (p == null) {
+            break;
+          }
+          final BlockChecksumResult result;
+          try {
+            result = p.get();
+          } catch (InvalidBlockTokenException ibte) {
+            LOG.debug("Got access token error in response to "
+                + "OP_BLOCK_CHECKSUM for file {} for block {}. Will retry "
+                + "the block once.", getSrc(), p.locatedBlock.getBlock());
+            // retry from the p.index-th block with fresh tokens
+            setLastRetriedIndex(p.index);
+            setRefetchBlocks(true);
+            cancelAll(pending);
+            pending.clear();
+            next = p.index;
+            remaining = p.remainingBefore;
+            continue;
+          }
+          addBlockChecksum(p.index, result);
+        }
+      } finally {
+        cancelAll(pending);
+      }
+    }
+
+    /**
+     * Request the checksum of the idx-th block, in the executor if there is
+     * one or else right away.
+     */
+    private PendingChecksum submit(ExecutorService executor, final int idx) {
+      final LocatedBlock locatedBlock = locatedBlocks.get(idx);
+      final long remainingBefore = remaining;
+      final long requestedNumBytes = Math.min(remaining,
+          locatedBlock.getBlock().getNumBytes());
+      remaining -= requestedNumBytes;
+      final boolean retryOnTokenError = idx > getLastRetriedIndex();
+      final Callable<BlockChecksumResult> task =
+          new Callable<BlockChecksumResult>() {
+            @Override
+            public BlockChecksumResult call() throws IOException {
+              return checksumBlock(locatedBlock, requestedNumBytes,
+                  retryOnTokenError);
+            }
+          };
+      final Future<BlockChecksumResult> future;
+      if (executor == null) {
+        final FutureTask<BlockChecksumResult> futureTask =
+            new FutureTask<>(task);
+        futureTask.run();
+        future = futureTask;
+      } else {
+        future = executor.submit(task);
+      }
+      return new PendingChecksum(idx, locatedBlock, remainingBefore, future);
+    }
+
+    private void cancelAll(Iterable<PendingChecksum> pending) {
+      for (PendingChecksum p : pending) {
+        p.future.cancel(false);
+      }
+    }
+
+    /**
+     * Get the checksum of a block, or of a block group, from one of its
+     * datanodes.
+     *
+     * @param locatedBlock the block
+     * @param requestedNumBytes the number of bytes of the block to checksum
+     * @param retryOnTokenError whether to give up on an access token error
+     *                          so that the block can be retried with fresh
+     *                          tokens
+     * @throws InvalidBlockTokenException if retryOnTokenError is true and a
+     *                                    datanode rejected the token
+     * @throws IOException if no datanode returned the checksum
+     */
+    abstract BlockChecksumResult checksumBlock(LocatedBlock locatedBlock,
+        long requestedNumBytes, boolean retryOnTokenError) throws IOException;
+
+    /**
+     * Aggregate the checksum of the idx-th block.
+     */
+    private void addBlockChecksum(int idx, BlockChecksumResult result)
+        throws IOException {
+      final OpBlockChecksumResponseProto checksumData = result.checksumData;
+
+      //read byte-per-checksum
+      final int bpc = checksumData.getBytesPerCrc();
+      if (idx == 0) { //first block
+        setBytesPerCRC(bpc);
+      } else if (bpc != getBytesPerCRC()) {
+        throw new IOException("Byte-per-checksum not matched: bpc=" + bpc
+            + " but bytesPerCRC=" + getBytesPerCRC());
+      }
+
+      //read crc-per-block
+      final long cpb = checksumData.getCrcPerBlock();
+      if (getLocatedBlocks().size() > 1 && idx == 0) {
+        setCrcPerBlock(cpb);
+      }
+
+      //read md5
+      final MD5Hash md5 = new MD5Hash(checksumData.getMd5().toByteArray());
+      md5.write(getMd5out());
+
+      // read crc-type
+      final DataChecksum.Type ct = result.crcType;
+      if (idx == 0) { // first block
+        setCrcType(ct);
+      } else if (getCrcType() != DataChecksum.Type.MIXED
+          && getCrcType() != ct) {
+        // if crc types are mixed in a file
+        setCrcType(DataChecksum.Type.MIXED);
+      }
+
+      if (LOG.isDebugEnabled()) {
+        if (idx == 0) {
+          LOG.debug("set bytesPerCRC=" + getBytesPerCRC()
+              + ", crcPerBlock=" + getCrcPerBlock());
+        }
+        LOG.debug("got reply from " + result.datanode + ": md5=" + md5);
+      }
+    }
+
+    /**
+     * Read the checksum of a block from the reply of a datanode.
+     */
+    BlockChecksumResult readBlockChecksum(IOStreamPair pair,
+        LocatedBlock locatedBlock, DatanodeInfo datanode, String logInfo)
+        throws IOException {
+      final BlockOpResponseProto reply = BlockOpResponseProto.parseFrom(
+          PBHelperClient.vintPrefixed(pair.in));
+      DataTransferProtoUtil.checkBlockOpStatus(reply, logInfo);
+
+      final OpBlockChecksumResponseProto checksumData =
+          reply.getChecksumResponse();
+      final DataChecksum.Type ct;
+      if (checksumData.hasCrcType()) {
+        ct = PBHelperClient.convert(checksumData.getCrcType());
+      } else {
+        LOG.debug("Retrieving checksum from an earlier-version DataNode: " +
+            "inferring checksum by reading first byte");
+        ct = getClient().inferChecksumTypeByReading(locatedBlock, datanode);
+      }
+      return new BlockChecksumResult(checksumData, ct, datanode);
+    }
 
     /**
      * Make final file checksum result given the computing process done.
@@ -268,11 +430,62 @@ void close(IOStreamPair pair) {
     }
   }
 
+  /**
+   * The checksum of a block, or of a block group, returned by a datanode.
+   */
+  static class BlockChecksumResult {
+    private final OpBlockChecksumResponseProto checksumData;
+    private final DataChecksum.Type crcType;
+    private final DatanodeInfo datanode;
+
+    BlockChecksumResult(OpBlockChecksumResponseProto checksumData,
+        DataChecksum.Type crcType, DatanodeInfo datanode) {
+      this.checksumData = checksumData;
+      this.crcType = crcType;
+      this.datanode = datanode;
+    }
+  }
+
+  /**
+   * A block checksum that has been requested but not aggregated yet.
+   */
+  private static class PendingChecksum {
+    private final int index;
+    private final LocatedBlock locatedBlock;
+    /** The number of bytes remaining to checksum before this block. */
+    private final long remainingBefore;
+    private final Future<BlockChecksumResult> future;
+
+    PendingChecksum(int index, LocatedBlock locatedBlock, long remainingBefore,
+        Future<BlockChecksumResult> future) {
+      this.index = index;
+      this.locatedBlock = locatedBlock;
+      this.remainingBefore = remainingBefore;
+      this.future = future;
+    }
+
+    BlockChecksumResult get() throws IOException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        throw DFSUtilClient.toInterruptedIOException(
+            "Interrupted while getting the checksum of "
+                + locatedBlock.getBlock(), e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException("Failed to get the checksum of "
+            + locatedBlock.getBlock(), cause);
+      }
+    }
+  }
+
   /**
    * Replicated file checksum computer.
    */
   static class ReplicatedFileChecksumComputer extends FileChecksumComputer {
-    private int blockIdx;
 
     ReplicatedFileChecksumComputer(String src, long length,
                                    LocatedBlocks blockLocations,
@@ -282,57 +495,25 @@ static class ReplicatedFileChecksumComputer extends FileChecksumComputer {
     }
 
     @Override
-    void checksumBlocks() throws IOException {
-      // get block checksum for each block
-      for (blockIdx = 0;
-           blockIdx < getLocatedBlocks().size() && getRemaining() >= 0;
-           blockIdx++) {
-        if (isRefetchBlocks()) {  // refetch to get fresh tokens
-          refetchBlocks();
-        }
-
-        LocatedBlock locatedBlock = getLocatedBlocks().get(blockIdx);
-
-        if (!checksumBlock(locatedBlock)) {
-          throw new IOException("Fail to get block MD5 for " + locatedBlock);
-        }
-      }
-    }
-
-    /**
-     * Return true when sounds good to continue or retry, false when severe
-     * condition or totally failed.
-     */
-    private boolean checksumBlock(
-        LocatedBlock locatedBlock) throws IOException {
+    BlockChecksumResult checksumBlock(LocatedBlock locatedBlock,
+        long requestedNumBytes, boolean retryOnTokenError) throws IOException {
       ExtendedBlock block = locatedBlock.getBlock();
-      if (getRemaining() < block.getNumBytes()) {
-        block.setNumBytes(getRemaining());
+      if (requestedNumBytes < block.getNumBytes()) {
+        block.setNumBytes(requestedNumBytes);
       }
-      setRemaining(getRemaining() - block.getNumBytes());
 
       DatanodeInfo[] datanodes = locatedBlock.getLocations();
 
-      int tmpTimeout = 3000 * datanodes.length +
+      int timeout = 3000 * datanodes.length +
           getClient().getConf().getSocketTimeout();
-      setTimeout(tmpTimeout);
 
       //try each datanode location of the block
-      boolean done = false;
-      for (int j = 0; !done && j < datanodes.length; j++) {
+      for (int j = 0; j < datanodes.length; j++) {
         try {
-          tryDatanode(locatedBlock, datanodes[j]);
-          done = true;
+          return tryDatanode(locatedBlock, datanodes[j], timeout);
         } catch (InvalidBlockTokenException ibte) {
-          if (blockIdx > getLastRetriedIndex()) {
-            LOG.debug("Got access token error in response to OP_BLOCK_CHECKSUM "
-                    + "for file {} for block {} from datanode {}. Will retry "
-                    + "the block once.",
-                getSrc(), block, datanodes[j]);
-            setLastRetriedIndex(blockIdx);
-            done = true; // actually it's not done; but we'll retry
-            blockIdx--; // repeat at blockIdx-th block
-            setRefetchBlocks(true);
+          if (retryOnTokenError) {
+            throw ibte;
           }
         } catch (IOException ie) {
           LOG.warn("src={}" + ", datanodes[{}]={}",
@@ -340,18 +521,18 @@ private boolean checksumBlock(
         }
       }
 
-      return done;
+      throw new IOException("Fail to get block MD5 for " + locatedBlock);
     }
 
     /**
      * Try one replica or datanode to compute the block checksum given a block.
      */
-    private void tryDatanode(LocatedBlock locatedBlock,
-                             DatanodeInfo datanode) throws IOException {
+    private BlockChecksumResult tryDatanode(LocatedBlock locatedBlock,
+        DatanodeInfo datanode, int timeout) throws IOException {
 
       ExtendedBlock block = locatedBlock.getBlock();
 
-      try (IOStreamPair pair = getClient().connectToDN(datanode, getTimeout(),
+      try (IOStreamPair pair = getClient().connectToDN(datanode, timeout,
           locatedBlock.getBlockToken())) {
 
         LOG.debug("write to {}: {}, block={}", datanode,
@@ -361,60 +542,9 @@ private void tryDatanode(LocatedBlock locatedBlock,
         createSender(pair).blockChecksum(block,
             locatedBlock.getBlockToken());
 
-        final BlockOpResponseProto reply = BlockOpResponseProto.parseFrom(
-            PBHelperClient.vintPrefixed(pair.in));
-
         String logInfo = "for block " + block + " from datanode " +
             datanode;
-        DataTransferProtoUtil.checkBlockOpStatus(reply, logInfo);
-
-        OpBlockChecksumResponseProto checksumData =
-            reply.getChecksumResponse();
-
-        //read byte-per-checksum
-        final int bpc = checksumData.getBytesPerCrc();
-        if (blockIdx == 0) { //first block
-          setBytesPerCRC(bpc);
-        } else if (bpc != getBytesPerCRC()) {
-          throw new IOException("Byte-per-checksum not matched: bpc=" + bpc
-              + " but bytesPerCRC=" + getBytesPerCRC());
-        }
-
-        //read crc-per-block
-        final long cpb = checksumData.getCrcPerBlock();
-        if (getLocatedBlocks().size() > 1 && blockIdx == 0) {
-          setCrcPerBlock(cpb);
-        }
-
-        //read md5
-        final MD5Hash md5 = new MD5Hash(checksumData.getMd5().toByteArray());
-        md5.write(getMd5out());
-
-        // read crc-type
-        final DataChecksum.Type ct;
-        if (checksumData.hasCrcType()) {
-          ct = PBHelperClient.convert(checksumData.getCrcType());
-        } else {
-          LOG.debug("Retrieving checksum from an earlier-version DataNode: " +
-              "inferring checksum by reading first byte");
-          ct = getClient().inferChecksumTypeByReading(locatedBlock, datanode);
-        }
-
-        if (blockIdx == 0) { // first block
-          setCrcType(ct);
-        } else if (getCrcType() != DataChecksum.Type.MIXED
-            && getCrcType() != ct) {
-          // if crc types are mixed in a file
-          setCrcType(DataChecksum.Type.MIXED);
-        }
-
-        if (LOG.isDebugEnabled()) {
-          if (blockIdx == 0) {
-            LOG.debug("set bytesPerCRC=" + getBytesPerCRC()
-                + ", crcPerBlock=" + getCrcPerBlock());
-          }
-          LOG.debug("got reply from " + datanode + ": md5=" + md5);
-        }
+        return readBlockChecksum(pair, locatedBlock, datanode, logInfo);
       }
     }
   }
@@ -425,7 +555,6 @@ && getCrcType() != ct) {
   static class StripedFileNonStripedChecksumComputer
       extends FileChecksumComputer {
     private final ErasureCodingPolicy ecPolicy;
-    private int bgIdx;
 
     StripedFileNonStripedChecksumComputer(String src, long length,
                                           LocatedBlocks blockLocations,
@@ -439,34 +568,11 @@ && getCrcType() != ct) {
     }
 
     @Override
-    void checksumBlocks() throws IOException {
-      int tmpTimeout = 3000 * 1 + getClient().getConf().getSocketTimeout();
-      setTimeout(tmpTimeout);
-
-      for (bgIdx = 0;
-           bgIdx < getLocatedBlocks().size() && getRemaining() >= 0; bgIdx++) {
-        if (isRefetchBlocks()) {  // refetch to get fresh tokens
-          refetchBlocks();
-        }
-
-        LocatedBlock locatedBlock = getLocatedBlocks().get(bgIdx);
-        LocatedStripedBlock blockGroup = (LocatedStripedBlock) locatedBlock;
-
-        if (!checksumBlockGroup(blockGroup)) {
-          throw new IOException("Fail to get block MD5 for " + locatedBlock);
-        }
-      }
-    }
-
-
-    private boolean checksumBlockGroup(
-        LocatedStripedBlock blockGroup) throws IOException {
+    BlockChecksumResult checksumBlock(LocatedBlock locatedBlock,
+        long requestedNumBytes, boolean retryOnTokenError) throws IOException {
+      LocatedStripedBlock blockGroup = (LocatedStripedBlock) locatedBlock;
       ExtendedBlock block = blockGroup.getBlock();
-      long requestedNumBytes = block.getNumBytes();
-      if (getRemaining() < block.getNumBytes()) {
-        requestedNumBytes = getRemaining();
-      }
-      setRemaining(getRemaining() - requestedNumBytes);
+      int timeout = 3000 * 1 + getClient().getConf().getSocketTimeout();
 
       StripedBlockInfo stripedBlockInfo = new StripedBlockInfo(block,
           blockGroup.getLocations(), blockGroup.getBlockTokens(),
@@ -474,22 +580,13 @@ private boolean checksumBlockGroup(
       DatanodeInfo[] datanodes = blockGroup.getLocations();
 
       //try each datanode in the block group.
-      boolean done = false;
-      for (int j = 0; !done && j < datanodes.length; j++) {
+      for (int j = 0; j < datanodes.length; j++) {
         try {
-          tryDatanode(blockGroup, stripedBlockInfo, datanodes[j],
-              requestedNumBytes);
-          done = true;
+          return tryDatanode(blockGroup, stripedBlockInfo, datanodes[j],
+              requestedNumBytes, timeout);
         } catch (InvalidBlockTokenException ibte) {
-          if (bgIdx > getLastRetriedIndex()) {
-            LOG.debug("Got access token error in response to OP_BLOCK_CHECKSUM "
-                    + "for file {} for block {} from datanode {}. Will retry "
-                    + "the block once.",
-                getSrc(), block, datanodes[j]);
-            setLastRetriedIndex(bgIdx);
-            done = true; // actually it's not done; but we'll retry
-            bgIdx--; // repeat at bgIdx-th block
-            setRefetchBlocks(true);
+          if (retryOnTokenError) {
+            throw ibte;
           }
         } catch (IOException ie) {
           LOG.warn("src={}" + ", datanodes[{}]={}",
@@ -497,20 +594,21 @@ private boolean checksumBlockGroup(
         }
       }
 
-      return done;
+      throw new IOException("Fail to get block MD5 for " + locatedBlock);
     }
 
     /**
-     * Return true when sounds good to continue or retry, false when severe
-     * condition or totally failed.
+     * Try one datanode of the block group to compute the checksum of the
+     * block group.
      */
-    private void tryDatanode(LocatedStripedBlock blockGroup,
-                             StripedBlockInfo stripedBlockInfo,
-                             DatanodeInfo datanode,
-                             long requestedNumBytes) throws IOException {
+    private BlockChecksumResult tryDatanode(LocatedStripedBlock blockGroup,
+                                            StripedBlockInfo stripedBlockInfo,
+                                            DatanodeInfo datanode,
+                                            long requestedNumBytes,
+                                            int timeout) throws IOException {
 
       try (IOStreamPair pair = getClient().connectToDN(datanode,
-          getTimeout(), blockGroup.getBlockToken())) {
+          timeout, blockGroup.getBlockToken())) {
 
         LOG.debug("write to {}: {}, blockGroup={}",
             datanode, Op.BLOCK_GROUP_CHECKSUM, blockGroup);
@@ -519,62 +617,9 @@ private void tryDatanode(LocatedStripedBlock blockGroup,
         createSender(pair).blockGroupChecksum(stripedBlockInfo,
             blockGroup.getBlockToken(), requestedNumBytes);
 
-        BlockOpResponseProto reply = BlockOpResponseProto.parseFrom(
-            PBHelperClient.vintPrefixed(pair.in));
-
         String logInfo = "for blockGroup " + blockGroup +
             " from datanode " + datanode;
-        DataTransferProtoUtil.checkBlockOpStatus(reply, logInfo);
-
-        OpBlockChecksumResponseProto checksumData = reply.getChecksumResponse();
-
-        //read byte-per-checksum
-        final int bpc = checksumData.getBytesPerCrc();
-        if (bgIdx == 0) { //first block
-          setBytesPerCRC(bpc);
-        } else {
-          if (bpc != getBytesPerCRC()) {
-            throw new IOException("Byte-per-checksum not matched: bpc=" + bpc
-                + " but bytesPerCRC=" + getBytesPerCRC());
-          }
-        }
-
-        //read crc-per-block
-        final long cpb = checksumData.getCrcPerBlock();
-        if (getLocatedBlocks().size() > 1 && bgIdx == 0) { // first block
-          setCrcPerBlock(cpb);
-        }
-
-        //read md5
-        final MD5Hash md5 = new MD5Hash(
-            checksumData.getMd5().toByteArray());
-        md5.write(getMd5out());
-
-        // read crc-type
-        final DataChecksum.Type ct;
-        if (checksumData.hasCrcType()) {
-          ct = PBHelperClient.convert(checksumData.getCrcType());
-        } else {
-          LOG.debug("Retrieving checksum from an earlier-version DataNode: " +
-              "inferring checksum by reading first byte");
-          ct = getClient().inferChecksumTypeByReading(blockGroup, datanode);
-        }
-
-        if (bgIdx == 0) {
-          setCrcType(ct);
-        } else if (getCrcType() != DataChecksum.Type.MIXED &&
-            getCrcType() != ct) {
-          // if crc types are mixed in a file
-          setCrcType(DataChecksum.Type.MIXED);
-        }
-
-        if (LOG.isDebugEnabled()) {
-          if (bgIdx == 0) {
-            LOG.debug("set bytesPerCRC=" + getBytesPerCRC()
-                + ", crcPerBlock=" + getCrcPerBlock());
-          }
-          LOG.debug("got reply from " + datanode + ": md5=" + md5);
-        }
+        return readBlockChecksum(pair, blockGroup, datanode, logInfo);
       }
     }
   }
@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.io.MultipleIOException;
+
+import com.google.common.base.Preconditions;
+
+/****************************************************************
+ * Writes many small files of a {@link DistributedFileSystem} concurrently,
+ * obtained with
+ * {@link DistributedFileSystem#createSmallFileBatchWriter(boolean)}.
+ * <p>
+ * Each file is created, written and closed by one of
+ * {@link HdfsClientConfigKeys.Write.SmallFileBatch#THREADS_KEY} threads, so
+ * that the NameNode calls and the pipeline setups of different files
+ * overlap instead of adding up. At most
+ * {@link HdfsClientConfigKeys.Write.SmallFileBatch#MAX_PENDING_KEY} files
+ * are pending at a time; beyond that, {@link #write} blocks until a file has
+ * been written.
+ * <p>
+ * The data of a file is not copied, so it must not be modified until the
+ * future of the file is completed.
+ *****************************************************************/
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class SmallFileBatchWriter implements Closeable {
+  private final DistributedFileSystem dfs;
+  private final boolean overwrite;
+  private final int maxPending;
+  private final Semaphore permits;
+  private final ThreadPoolExecutor executor;
+  /** The failures since the last {@link #flush()}. */
+  private final List<IOException> failures = new ArrayList<>();
+  private final AtomicLong filesWritten = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong filesFailed = new AtomicLong();
+  private volatile boolean closed = false;
+
+  SmallFileBatchWriter(DistributedFileSystem dfs, boolean overwrite) {
+    this.dfs = dfs;
+    this.overwrite = overwrite;
+    final int threads = dfs.getConf().getInt(
+        HdfsClientConfigKeys.Write.SmallFileBatch.THREADS_KEY,
+        HdfsClientConfigKeys.Write.SmallFileBatch.THREADS_DEFAULT);
+    Preconditions.checkArgument(threads > 0, "%s must be positive",
+        HdfsClientConfigKeys.Write.SmallFileBatch.THREADS_KEY);
+    this.maxPending = dfs.getConf().getInt(
+        HdfsClientConfigKeys.Write.SmallFileBatch.MAX_PENDING_KEY,
+        HdfsClientConfigKeys.Write.SmallFileBatch.MAX_PENDING_DEFAULT);
+    Preconditions.checkArgument(maxPending > 0, "%s must be positive",
+        HdfsClientConfigKeys.Write.SmallFileBatch.MAX_PENDING_KEY);
+    this.permits = new Semaphore(maxPending);
+    // The permits bound the number of queued files.
+    this.executor = DFSUtilClient.getThreadPoolExecutor(threads, threads, 60,
+        new LinkedBlockingQueue<Runnable>(), "SmallFileBatchWriter-", false);
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Write a file.
+   *
+   * @param f the file
+   * @param data the content of the file
+   * @return a future completed when the file has been closed
+   * @throws IOException if the writer is closed, or if it is interrupted
+   *                     while waiting for a pending file to be written
+   */
+  public CompletableFuture<Void> write(Path f, byte[] data)
+      throws IOException {
+    return write(f, data, 0, data.length);
+  }
+
+  /**
+   * Write a file.
+   *
+   * @param f the file
+   * @param data an array holding the content of the file
+   * @param off the offset of the content in the array
+   * @param len the length of the content
+   * @return a future completed when the file has been closed
+   * @throws IOException if the writer is closed, or if it is interrupted
+   *                     while waiting for a pending file to be written
+   */
+  public CompletableFuture<Void> write(final Path f, final byte[] data,
+      final int off, final int len) throws IOException {
+    Preconditions.checkPositionIndexes(off, off + len, data.length);
+    checkClosed();
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      throw DFSUtilClient.toInterruptedIOException(
+          "Interrupted while waiting to write " + f, e);
+    }
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            try (FSDataOutputStream out = dfs.create(f, overwrite)) {
+              out.write(data, off, len);
+            }
+            filesWritten.incrementAndGet();
+            bytesWritten.addAndGet(len);
+            future.complete(null);
+          } catch (IOException e) {
+            addFailure(e);
+            future.completeExceptionally(e);
+          } catch (Throwable t) {
+            addFailure(new IOException("Failed to write " + f, t));
+            future.completeExceptionally(t);
+          } finally {
+            permits.release();
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      permits.release();
+      throw new IOException("Failed to write " + f, e);
+    }
+    return future;
+  }
+
+  private void addFailure(IOException e) {
+    filesFailed.incrementAndGet();
+    synchronized (failures) {
+      failures.add(e);
+    }
+  }
+
+  private void checkClosed() throws IOException {
+    if (closed) {
+      throw new IOException("The small file batch writer is closed");
+    }
+  }
+
+  /**
+   * Wait until the files passed to {@link #write} before this call have been
+   * written.
+   *
+   * @throws IOException the failures of the files written since the last
+   *                     flush
+   */
+  public void flush() throws IOException {
+    try {
+      permits.acquire(maxPending);
+    } catch (InterruptedException e) {
+      throw DFSUtilClient.toInterruptedIOException(
+          "Interrupted while waiting for the pending files", e);
+    }
+    permits.release(maxPending);
+    final List<IOException> failed;
+    synchronized (failures) {
+      failed = new ArrayList<>(failures);
+      failures.clear();
+    }
+    if (!failed.isEmpty()) {
+      throw MultipleIOException.createIOException(failed);
+    }
+  }
+
+  /**
+   * Wait for the pending files and stop the threads of the writer.
+   *
+   * @throws IOException the failures of the files written since the last
+   *                     flush
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      flush();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * @return the number of files written
+   */
+  public long getFilesWritten() {
+    return filesWritten.get();
+  }
+
+  /**
+   * @return the number of bytes in the files written
+   */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * @return the number of files that could not be written
+   */
+  public long getFilesFailed() {
+    return filesFailed.get();
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A range of bytes of a file to read with
+ * {@link HdfsDataInputStream#readVectored}. When the read is issued, the
+ * range is given a future that is completed with a buffer holding the bytes
+ * of the range between its position and limit.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class FileRange {
+  private final long offset;
+  private final int length;
+  private volatile CompletableFuture<ByteBuffer> data;
+
+  public FileRange(long offset, int length) {
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * @return the offset of the range in the file
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return the number of bytes of the range
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return the future of the bytes of the range, or null if the range has
+   *         not been read
+   */
+  public CompletableFuture<ByteBuffer> getData() {
+    return data;
+  }
+
+  public void setData(CompletableFuture<ByteBuffer> data) {
+    this.data = data;
+  }
+
+  @Override
+  public String toString() {
+    return "range[" + offset + "," + (offset + length) + ")";
+  }
+}
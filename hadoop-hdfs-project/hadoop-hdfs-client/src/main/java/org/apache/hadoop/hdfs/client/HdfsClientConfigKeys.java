@@ -59,6 +59,14 @@ public interface HdfsClientConfigKeys {
       "GET,OPTIONS,HEAD,TRACE";
   String DFS_WEBHDFS_REST_CSRF_BROWSER_USERAGENTS_REGEX_KEY =
       "dfs.webhdfs.rest-csrf.browser-useragents-regex";
+  String  DFS_WEBHDFS_READ_AHEAD_THREADS_KEY =
+      "dfs.webhdfs.read-ahead.threads";
+  int     DFS_WEBHDFS_READ_AHEAD_THREADS_DEFAULT = 0;
+  String  DFS_WEBHDFS_READ_AHEAD_CHUNK_SIZE_KEY =
+      "dfs.webhdfs.read-ahead.chunk.size";
+  int     DFS_WEBHDFS_READ_AHEAD_CHUNK_SIZE_DEFAULT = 4 * 1024 * 1024;
+  String  DFS_WEBHDFS_READ_AHEAD_WINDOW_KEY = "dfs.webhdfs.read-ahead.window";
+  int     DFS_WEBHDFS_READ_AHEAD_WINDOW_DEFAULT = 4;
 
   String OAUTH_CLIENT_ID_KEY = "dfs.webhdfs.oauth2.client.id";
   String OAUTH_REFRESH_URL_KEY = "dfs.webhdfs.oauth2.refresh.url";
@@ -130,6 +138,9 @@ public interface HdfsClientConfigKeys {
   String  DFS_CLIENT_SLOW_IO_WARNING_THRESHOLD_KEY =
       "dfs.client.slow.io.warning.threshold.ms";
   long    DFS_CLIENT_SLOW_IO_WARNING_THRESHOLD_DEFAULT = 30000;
+  String  DFS_CLIENT_FILE_CHECKSUM_PARALLELISM_KEY =
+      "dfs.client.file-checksum.parallelism";
+  int     DFS_CLIENT_FILE_CHECKSUM_PARALLELISM_DEFAULT = 1;
   String  DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_MS =
           "dfs.client.key.provider.cache.expiry";
   long    DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_DEFAULT =
@@ -279,6 +290,11 @@ interface Write {
 
     String  MAX_PACKETS_IN_FLIGHT_KEY = PREFIX + "max-packets-in-flight";
     int     MAX_PACKETS_IN_FLIGHT_DEFAULT = 80;
+    String  PACKET_POOL_SIZE_KEY = PREFIX + "packet-pool.size";
+    int     PACKET_POOL_SIZE_DEFAULT = 0;
+    String  STRIPED_ENCODE_THREADPOOL_SIZE_KEY =
+        PREFIX + "striped.encode.threadpool.size";
+    int     STRIPED_ENCODE_THREADPOOL_SIZE_DEFAULT = 0;
     String  EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_KEY =
         PREFIX + "exclude.nodes.cache.expiry.interval.millis";
     long    EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT = 10*MINUTE;
@@ -296,6 +312,15 @@ interface ByteArrayManager {
           PREFIX + "count-reset-time-period-ms";
       long    COUNT_RESET_TIME_PERIOD_MS_DEFAULT = 10*SECOND;
     }
+
+    interface SmallFileBatch {
+      String PREFIX = Write.PREFIX + "small-file-batch.";
+
+      String  THREADS_KEY = PREFIX + "threads";
+      int     THREADS_DEFAULT = 8;
+      String  MAX_PENDING_KEY = PREFIX + "max-pending";
+      int     MAX_PENDING_DEFAULT = 64;
+    }
   }
 
   /** dfs.client.block.write configuration properties */
@@ -343,6 +368,8 @@ interface ShortCircuit {
       int     STREAMS_CACHE_SIZE_DEFAULT = 256;
       String  STREAMS_CACHE_EXPIRY_MS_KEY = PREFIX + "streams.cache.expiry.ms";
       long    STREAMS_CACHE_EXPIRY_MS_DEFAULT = 5*MINUTE;
+      String  STREAMS_CACHE_SHARDS_KEY = PREFIX + "streams.cache.shards";
+      int     STREAMS_CACHE_SHARDS_DEFAULT = 1;
 
       String  METRICS_SAMPLING_PERCENTAGE_KEY =
           PREFIX + "metrics.sampling.percentage";
@@ -381,6 +408,23 @@ interface HedgedRead {
     long    THRESHOLD_MILLIS_DEFAULT = 500;
     String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
     int     THREADPOOL_SIZE_DEFAULT = 0;
+    String  ADAPTIVE_ENABLED_KEY = PREFIX + "adaptive.enabled";
+    boolean ADAPTIVE_ENABLED_DEFAULT = false;
+    String  ADAPTIVE_PERCENTILE_KEY = PREFIX + "adaptive.percentile";
+    double  ADAPTIVE_PERCENTILE_DEFAULT = 95;
+    String  ADAPTIVE_WINDOW_SIZE_KEY = PREFIX + "adaptive.window.size";
+    int     ADAPTIVE_WINDOW_SIZE_DEFAULT = 128;
+    String  ADAPTIVE_SKIP_THRESHOLD_MILLIS_KEY =
+        PREFIX + "adaptive.skip.threshold.millis";
+    long    ADAPTIVE_SKIP_THRESHOLD_MILLIS_DEFAULT = 0;
+  }
+
+  /** dfs.client.async configuration properties */
+  interface AsyncCalls {
+    String PREFIX = HdfsClientConfigKeys.PREFIX + "async.";
+
+    String  MAX_IN_FLIGHT_KEY = PREFIX + "max-in-flight";
+    int     MAX_IN_FLIGHT_DEFAULT = 100;
   }
 
   /** dfs.client.read.striped configuration properties */
@@ -395,6 +439,34 @@ interface StripedRead {
     int     THREADPOOL_SIZE_DEFAULT = 18;
   }
 
+  /** dfs.client.read.vectored configuration properties */
+  interface VectoredRead {
+    String PREFIX = Read.PREFIX + "vectored.";
+
+    String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+    int     THREADPOOL_SIZE_DEFAULT = 16;
+    String  MERGE_GAP_KEY = PREFIX + "merge.gap";
+    int     MERGE_GAP_DEFAULT = 4 * 1024;
+    String  MERGE_MAX_SIZE_KEY = PREFIX + "merge.max-size";
+    int     MERGE_MAX_SIZE_DEFAULT = 1024 * 1024;
+  }
+
+  /** dfs.client.metadata-cache configuration properties */
+  interface MetadataCache {
+    String PREFIX = HdfsClientConfigKeys.PREFIX + "metadata-cache.";
+
+    String  ENABLED_KEY = PREFIX + "enabled";
+    boolean ENABLED_DEFAULT = false;
+    String  PATHS_KEY = PREFIX + "paths";
+    String  PATHS_DEFAULT = "/";
+    String  TTL_MS_KEY = PREFIX + "ttl.ms";
+    long    TTL_MS_DEFAULT = 5 * SECOND;
+    String  MAX_ENTRIES_KEY = PREFIX + "max-entries";
+    long    MAX_ENTRIES_DEFAULT = 10000;
+    String  INOTIFY_ENABLED_KEY = PREFIX + "inotify.enabled";
+    boolean INOTIFY_ENABLED_DEFAULT = false;
+  }
+
   /** dfs.http.client configuration properties */
   interface HttpClient {
     String  PREFIX = "dfs.http.client.";
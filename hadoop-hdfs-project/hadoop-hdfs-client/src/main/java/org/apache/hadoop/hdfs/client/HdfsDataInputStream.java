@@ -19,7 +19,10 @@
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -111,4 +114,50 @@ public ReadStatistics getReadStatistics() {
   public void clearReadStatistics() {
     getDFSInputStream().clearReadStatistics();
   }
+
+  /**
+   * Read the given ranges of the file into buffers allocated on the heap.
+   *
+   * @see #readVectored(List, IntFunction)
+   */
+  public void readVectored(List<? extends FileRange> ranges)
+      throws IOException {
+    readVectored(ranges, ByteBuffer::allocate);
+  }
+
+  /**
+   * Read the given ranges of the file, in parallel and merging nearby
+   * ranges into single requests. Each range is given a future that is
+   * completed with a buffer holding its bytes between the position and the
+   * limit. The ranges of an encrypted file are read one by one.
+   *
+   * @param ranges the ranges to read, which must not overlap
+   * @param allocate the function that returns a buffer with at least the
+   *                 given number of bytes remaining for a range, for
+   *                 example from a {@link org.apache.hadoop.io.ByteBufferPool}
+   */
+  public void readVectored(List<? extends FileRange> ranges,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    if (!(in instanceof CryptoInputStream)) {
+      getDFSInputStream().readVectored(ranges, allocate);
+      return;
+    }
+    // The bytes have to be decrypted by the wrapping stream.
+    for (FileRange range : ranges) {
+      final CompletableFuture<ByteBuffer> data = new CompletableFuture<>();
+      range.setData(data);
+      try {
+        final byte[] bytes = new byte[range.getLength()];
+        readFully(range.getOffset(), bytes);
+        final ByteBuffer buf = allocate.apply(range.getLength());
+        final int start = buf.position();
+        buf.put(bytes);
+        buf.limit(buf.position());
+        buf.position(start);
+        data.complete(buf);
+      } catch (IOException e) {
+        data.completeExceptionally(e);
+      }
+    }
+  }
 }
@@ -106,6 +106,8 @@ public class DfsClientConf {
   private final ChecksumOpt defaultChecksumOpt;
   private final int writePacketSize;
   private final int writeMaxPackets;
+  private final int writePacketPoolSize;
+  private final int stripedEncodeThreadpoolSize;
   private final ByteArrayManager.Conf writeByteArrayManagerConf;
   private final int socketTimeout;
   private final int socketSendBufferSize;
@@ -126,16 +128,30 @@ public class DfsClientConf {
   private final int retryIntervalForGetLastBlockLength;
   private final long datanodeRestartTimeout;
   private final long slowIoWarningThresholdMs;
+  private final int fileChecksumParallelism;
 
   private final ShortCircuitConf shortCircuitConf;
 
   private final long hedgedReadThresholdMillis;
   private final int hedgedReadThreadpoolSize;
+  private final boolean hedgedReadAdaptiveEnabled;
+  private final double hedgedReadAdaptivePercentile;
+  private final int hedgedReadAdaptiveWindowSize;
+  private final long hedgedReadAdaptiveSkipThresholdMillis;
   private final List<Class<? extends ReplicaAccessorBuilder>>
       replicaAccessorBuilderClasses;
 
   private final int stripedReadThreadpoolSize;
 
+  private final int vectoredReadThreadpoolSize;
+  private final int vectoredReadMergeGap;
+  private final int vectoredReadMergeMaxSize;
+  private final boolean metadataCacheEnabled;
+  private final String[] metadataCachePaths;
+  private final long metadataCacheTtlMs;
+  private final long metadataCacheMaxEntries;
+  private final boolean metadataCacheInotifyEnabled;
+
   private final boolean dataTransferTcpNoDelay;
 
   public DfsClientConf(Configuration conf) {
@@ -189,6 +205,12 @@ public DfsClientConf(Configuration conf) {
     writeMaxPackets = conf.getInt(
         Write.MAX_PACKETS_IN_FLIGHT_KEY,
         Write.MAX_PACKETS_IN_FLIGHT_DEFAULT);
+    writePacketPoolSize = conf.getInt(
+        Write.PACKET_POOL_SIZE_KEY,
+        Write.PACKET_POOL_SIZE_DEFAULT);
+    stripedEncodeThreadpoolSize = conf.getInt(
+        Write.STRIPED_ENCODE_THREADPOOL_SIZE_KEY,
+        Write.STRIPED_ENCODE_THREADPOOL_SIZE_DEFAULT);
 
     final boolean byteArrayManagerEnabled = conf.getBoolean(
         Write.ByteArrayManager.ENABLED_KEY,
@@ -241,6 +263,9 @@ public DfsClientConf(Configuration conf) {
     slowIoWarningThresholdMs = conf.getLong(
         DFS_CLIENT_SLOW_IO_WARNING_THRESHOLD_KEY,
         DFS_CLIENT_SLOW_IO_WARNING_THRESHOLD_DEFAULT);
+    fileChecksumParallelism = conf.getInt(
+        HdfsClientConfigKeys.DFS_CLIENT_FILE_CHECKSUM_PARALLELISM_KEY,
+        HdfsClientConfigKeys.DFS_CLIENT_FILE_CHECKSUM_PARALLELISM_DEFAULT);
 
     shortCircuitConf = new ShortCircuitConf(conf);
 
@@ -250,6 +275,21 @@ public DfsClientConf(Configuration conf) {
     hedgedReadThreadpoolSize = conf.getInt(
         HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY,
         HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_DEFAULT);
+    hedgedReadAdaptiveEnabled = conf.getBoolean(
+        HedgedRead.ADAPTIVE_ENABLED_KEY,
+        HedgedRead.ADAPTIVE_ENABLED_DEFAULT);
+    hedgedReadAdaptivePercentile = conf.getDouble(
+        HedgedRead.ADAPTIVE_PERCENTILE_KEY,
+        HedgedRead.ADAPTIVE_PERCENTILE_DEFAULT);
+    Preconditions.checkArgument(hedgedReadAdaptivePercentile > 0
+        && hedgedReadAdaptivePercentile <= 100,
+        HedgedRead.ADAPTIVE_PERCENTILE_KEY + " must be in (0, 100]");
+    hedgedReadAdaptiveWindowSize = conf.getInt(
+        HedgedRead.ADAPTIVE_WINDOW_SIZE_KEY,
+        HedgedRead.ADAPTIVE_WINDOW_SIZE_DEFAULT);
+    hedgedReadAdaptiveSkipThresholdMillis = conf.getLong(
+        HedgedRead.ADAPTIVE_SKIP_THRESHOLD_MILLIS_KEY,
+        HedgedRead.ADAPTIVE_SKIP_THRESHOLD_MILLIS_DEFAULT);
 
     stripedReadThreadpoolSize = conf.getInt(
         HdfsClientConfigKeys.StripedRead.THREADPOOL_SIZE_KEY,
@@ -257,6 +297,34 @@ public DfsClientConf(Configuration conf) {
     Preconditions.checkArgument(stripedReadThreadpoolSize > 0, "The value of " +
         HdfsClientConfigKeys.StripedRead.THREADPOOL_SIZE_KEY +
         " must be greater than 0.");
+
+    vectoredReadThreadpoolSize = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_KEY,
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_DEFAULT);
+    Preconditions.checkArgument(vectoredReadThreadpoolSize > 0, "The value " +
+        "of " + HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_KEY +
+        " must be greater than 0.");
+    vectoredReadMergeGap = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.MERGE_GAP_KEY,
+        HdfsClientConfigKeys.VectoredRead.MERGE_GAP_DEFAULT);
+    vectoredReadMergeMaxSize = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.MERGE_MAX_SIZE_KEY,
+        HdfsClientConfigKeys.VectoredRead.MERGE_MAX_SIZE_DEFAULT);
+    metadataCacheEnabled = conf.getBoolean(
+        HdfsClientConfigKeys.MetadataCache.ENABLED_KEY,
+        HdfsClientConfigKeys.MetadataCache.ENABLED_DEFAULT);
+    metadataCachePaths = conf.getTrimmedStrings(
+        HdfsClientConfigKeys.MetadataCache.PATHS_KEY,
+        HdfsClientConfigKeys.MetadataCache.PATHS_DEFAULT);
+    metadataCacheTtlMs = conf.getLong(
+        HdfsClientConfigKeys.MetadataCache.TTL_MS_KEY,
+        HdfsClientConfigKeys.MetadataCache.TTL_MS_DEFAULT);
+    metadataCacheMaxEntries = conf.getLong(
+        HdfsClientConfigKeys.MetadataCache.MAX_ENTRIES_KEY,
+        HdfsClientConfigKeys.MetadataCache.MAX_ENTRIES_DEFAULT);
+    metadataCacheInotifyEnabled = conf.getBoolean(
+        HdfsClientConfigKeys.MetadataCache.INOTIFY_ENABLED_KEY,
+        HdfsClientConfigKeys.MetadataCache.INOTIFY_ENABLED_DEFAULT);
     replicaAccessorBuilderClasses = loadReplicaAccessorBuilderClasses(conf);
   }
 
@@ -404,6 +472,20 @@ public int getWriteMaxPackets() {
     return writeMaxPackets;
   }
 
+  /**
+   * @return the writePacketPoolSize
+   */
+  public int getWritePacketPoolSize() {
+    return writePacketPoolSize;
+  }
+
+  /**
+   * @return the stripedEncodeThreadpoolSize
+   */
+  public int getStripedEncodeThreadpoolSize() {
+    return stripedEncodeThreadpoolSize;
+  }
+
   /**
    * @return the writeByteArrayManagerConf
    */
@@ -537,6 +619,13 @@ public long getSlowIoWarningThresholdMs() {
     return slowIoWarningThresholdMs;
   }
 
+  /**
+   * @return the fileChecksumParallelism
+   */
+  public int getFileChecksumParallelism() {
+    return fileChecksumParallelism;
+  }
+
   /**
    * @return the hedgedReadThresholdMillis
    */
@@ -551,6 +640,34 @@ public int getHedgedReadThreadpoolSize() {
     return hedgedReadThreadpoolSize;
   }
 
+  /**
+   * @return whether the hedged read delay follows the DataNode latencies
+   */
+  public boolean isHedgedReadAdaptiveEnabled() {
+    return hedgedReadAdaptiveEnabled;
+  }
+
+  /**
+   * @return the hedgedReadAdaptivePercentile
+   */
+  public double getHedgedReadAdaptivePercentile() {
+    return hedgedReadAdaptivePercentile;
+  }
+
+  /**
+   * @return the hedgedReadAdaptiveWindowSize
+   */
+  public int getHedgedReadAdaptiveWindowSize() {
+    return hedgedReadAdaptiveWindowSize;
+  }
+
+  /**
+   * @return the hedgedReadAdaptiveSkipThresholdMillis
+   */
+  public long getHedgedReadAdaptiveSkipThresholdMillis() {
+    return hedgedReadAdaptiveSkipThresholdMillis;
+  }
+
   /**
    * @return the stripedReadThreadpoolSize
    */
@@ -558,6 +675,62 @@ public int getStripedReadThreadpoolSize() {
     return stripedReadThreadpoolSize;
   }
 
+  /**
+   * @return the vectoredReadThreadpoolSize
+   */
+  public int getVectoredReadThreadpoolSize() {
+    return vectoredReadThreadpoolSize;
+  }
+
+  /**
+   * @return the vectoredReadMergeGap
+   */
+  public int getVectoredReadMergeGap() {
+    return vectoredReadMergeGap;
+  }
+
+  /**
+   * @return the vectoredReadMergeMaxSize
+   */
+  public int getVectoredReadMergeMaxSize() {
+    return vectoredReadMergeMaxSize;
+  }
+
+  /**
+   * @return the metadataCacheEnabled
+   */
+  public boolean isMetadataCacheEnabled() {
+    return metadataCacheEnabled;
+  }
+
+  /**
+   * @return the metadataCachePaths
+   */
+  public String[] getMetadataCachePaths() {
+    return metadataCachePaths;
+  }
+
+  /**
+   * @return the metadataCacheTtlMs
+   */
+  public long getMetadataCacheTtlMs() {
+    return metadataCacheTtlMs;
+  }
+
+  /**
+   * @return the metadataCacheMaxEntries
+   */
+  public long getMetadataCacheMaxEntries() {
+    return metadataCacheMaxEntries;
+  }
+
+  /**
+   * @return the metadataCacheInotifyEnabled
+   */
+  public boolean isMetadataCacheInotifyEnabled() {
+    return metadataCacheInotifyEnabled;
+  }
+
   /**
    * @return the replicaAccessorBuilderClasses
    */
@@ -591,6 +764,7 @@ public static class ShortCircuitConf {
     private final boolean domainSocketDataTraffic;
     private final int shortCircuitStreamsCacheSize;
     private final long shortCircuitStreamsCacheExpiryMs;
+    private final int shortCircuitStreamsCacheShards;
     private final int shortCircuitSharedMemoryWatcherInterruptCheckMs;
 
     // Short Circuit Read Metrics
@@ -661,6 +835,9 @@ public ShortCircuitConf(Configuration conf) {
       shortCircuitStreamsCacheExpiryMs = conf.getLong(
           Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_KEY,
           Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_DEFAULT);
+      shortCircuitStreamsCacheShards = conf.getInt(
+          Read.ShortCircuit.STREAMS_CACHE_SHARDS_KEY,
+          Read.ShortCircuit.STREAMS_CACHE_SHARDS_DEFAULT);
       shortCircuitMmapEnabled = conf.getBoolean(
           Mmap.ENABLED_KEY,
           Mmap.ENABLED_DEFAULT);
@@ -751,6 +928,13 @@ public long getShortCircuitStreamsCacheExpiryMs() {
       return shortCircuitStreamsCacheExpiryMs;
     }
 
+    /**
+     * @return the shortCircuitStreamsCacheShards
+     */
+    public int getShortCircuitStreamsCacheShards() {
+      return shortCircuitStreamsCacheShards;
+    }
+
     /**
      * @return the shortCircuitSharedMemoryWatcherInterruptCheckMs
      */
@@ -806,6 +990,8 @@ public String confAsString() {
           + shortCircuitStreamsCacheSize
           + ", shortCircuitStreamsCacheExpiryMs = "
           + shortCircuitStreamsCacheExpiryMs
+          + ", shortCircuitStreamsCacheShards = "
+          + shortCircuitStreamsCacheShards
           + ", shortCircuitMmapCacheSize = "
           + shortCircuitMmapCacheSize
           + ", shortCircuitMmapCacheExpiryMs = "
@@ -27,6 +27,7 @@
 import com.google.common.collect.Lists;
 
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -413,14 +414,27 @@ public void setPermission(String src, FsPermission permission)
   }
 
   private void setAsyncReturnValue() {
+    setAsyncReturnValue(new Function<Message, Void>() {
+      @Override
+      public Void apply(Message response) {
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Set the return value of an asynchronous call, which is converted from
+   * the response message when the call is done.
+   */
+  private static <T> void setAsyncReturnValue(
+      final Function<Message, T> converter) {
     final AsyncGet<Message, Exception> asyncReturnMessage
         = ProtobufRpcEngine.getAsyncReturnMessage();
-    final AsyncGet<Void, Exception> asyncGet
-        = new AsyncGet<Void, Exception>() {
+    final AsyncGet<T, Exception> asyncGet
+        = new AsyncGet<T, Exception>() {
       @Override
-      public Void get(long timeout, TimeUnit unit) throws Exception {
-        asyncReturnMessage.get(timeout, unit);
-        return null;
+      public T get(long timeout, TimeUnit unit) throws Exception {
+        return converter.apply(asyncReturnMessage.get(timeout, unit));
       }
 
       @Override
@@ -642,6 +656,18 @@ public DirectoryListing getListing(String src, byte[] startAfter,
         .setStartAfter(ByteString.copyFrom(startAfter))
         .setNeedLocation(needLocation).build();
     try {
+      if (Client.isAsynchronousMode()) {
+        rpcProxy.getListing(null, req);
+        setAsyncReturnValue(new Function<Message, DirectoryListing>() {
+          @Override
+          public DirectoryListing apply(Message response) {
+            GetListingResponseProto result = (GetListingResponseProto) response;
+            return result.hasDirList() ?
+                PBHelperClient.convert(result.getDirList()) : null;
+          }
+        });
+        return null;
+      }
       GetListingResponseProto result = rpcProxy.getListing(null, req);
 
       if (result.hasDirList()) {
@@ -863,6 +889,17 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
     GetFileInfoRequestProto req = GetFileInfoRequestProto.newBuilder()
         .setSrc(src).build();
     try {
+      if (Client.isAsynchronousMode()) {
+        rpcProxy.getFileInfo(null, req);
+        setAsyncReturnValue(new Function<Message, HdfsFileStatus>() {
+          @Override
+          public HdfsFileStatus apply(Message response) {
+            GetFileInfoResponseProto res = (GetFileInfoResponseProto) response;
+            return res.hasFs() ? PBHelperClient.convert(res.getFs()) : null;
+          }
+        });
+        return null;
+      }
       GetFileInfoResponseProto res = rpcProxy.getFileInfo(null, req);
       return res.hasFs() ? PBHelperClient.convert(res.getFs()) : null;
     } catch (ServiceException e) {
@@ -938,7 +975,12 @@ public void setTimes(String src, long mtime, long atime) throws IOException {
         .setAtime(atime)
         .build();
     try {
-      rpcProxy.setTimes(null, req);
+      if (Client.isAsynchronousMode()) {
+        rpcProxy.setTimes(null, req);
+        setAsyncReturnValue();
+      } else {
+        rpcProxy.setTimes(null, req);
+      }
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
     }
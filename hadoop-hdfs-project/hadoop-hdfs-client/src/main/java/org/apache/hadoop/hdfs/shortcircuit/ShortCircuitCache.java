@@ -27,9 +27,11 @@
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -67,6 +69,12 @@
  *
  * These things include: memory-mapped regions, file descriptors, and shared
  * memory areas for communicating with the DataNode.
+ *
+ * The replicas are split into shards by block id.  Each shard has its own
+ * lock, replica map and eviction lists, so that threads reading different
+ * blocks do not contend for the same lock.  A replica which is already
+ * loaded and referenced by another reader is looked up and referenced
+ * without taking any lock.
  */
 @InterfaceAudience.Private
 public class ShortCircuitCache implements Closeable {
@@ -99,43 +107,27 @@ private class CacheCleaner implements Runnable, Closeable {
      */
     @Override
     public void run() {
-      ShortCircuitCache.this.lock.lock();
-      try {
-        if (ShortCircuitCache.this.closed) return;
-        long curMs = Time.monotonicNow();
+      if (ShortCircuitCache.this.closed) return;
+      long curMs = Time.monotonicNow();
 
-        LOG.debug("{}: cache cleaner running at {}", this, curMs);
+      LOG.debug("{}: cache cleaner running at {}", this, curMs);
 
-        int numDemoted = demoteOldEvictableMmaped(curMs);
-        int numPurged = 0;
-        Long evictionTimeNs;
-        while (true) {
-          Object eldestKey;
-          try {
-            eldestKey = evictable.firstKey();
-          } catch (NoSuchElementException e) {
-            break;
-          }
-          evictionTimeNs = (Long)eldestKey;
-          long evictionTimeMs =
-              TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
-          if (evictionTimeMs + maxNonMmappedEvictableLifespanMs >= curMs) break;
-          ShortCircuitReplica replica = (ShortCircuitReplica)evictable.get(
-              eldestKey);
-          if (LOG.isTraceEnabled()) {
-            LOG.trace("CacheCleaner: purging " + replica + ": " +
-                StringUtils.getStackTrace(Thread.currentThread()));
-          }
-          purge(replica);
-          numPurged++;
+      int numDemoted = 0;
+      int numPurged = 0;
+      for (Shard shard : shards) {
+        shard.lock();
+        try {
+          if (ShortCircuitCache.this.closed) return;
+          numDemoted += shard.demoteOldEvictableMmaped(curMs);
+          numPurged += shard.purgeOldEvictable(curMs);
+        } finally {
+          shard.unlock();
         }
-
-        LOG.debug("{}: finishing cache cleaner run started at {}. Demoted {} "
-                + "mmapped replicas; purged {} replicas.",
-            this, curMs, numDemoted, numPurged);
-      } finally {
-        ShortCircuitCache.this.lock.unlock();
       }
+
+      LOG.debug("{}: finishing cache cleaner run started at {}. Demoted {} "
+              + "mmapped replicas; purged {} replicas.",
+          this, curMs, numDemoted, numPurged);
     }
 
     @Override
@@ -233,9 +225,678 @@ public interface ShortCircuitReplicaCreator {
   }
 
   /**
-   * Lock protecting the cache.
+   * A part of the cache, holding the replicas of the blocks whose ids hash to
+   * it.  All the fields of a shard are protected by its lock, except
+   * {@link #loadedReplicas}.
    */
-  private final ReentrantLock lock = new ReentrantLock();
+  private class Shard {
+    /**
+     * Lock protecting the shard.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * A map containing all ShortCircuitReplicaInfo objects, organized by Key.
+     * ShortCircuitReplicaInfo objects may contain a replica, or an
+     * InvalidToken exception.
+     */
+    private final HashMap<ExtendedBlockId, Waitable<ShortCircuitReplicaInfo>>
+        replicaInfoMap = new HashMap<>();
+
+    /**
+     * The ShortCircuitReplicaInfo objects of replicaInfoMap which hold a
+     * replica that has not been purged.  This map is only modified with the
+     * lock held, but can be read without it.
+     */
+    private final ConcurrentHashMap<ExtendedBlockId, ShortCircuitReplicaInfo>
+        loadedReplicas = new ConcurrentHashMap<>();
+
+    /**
+     * LinkedMap of evictable elements.
+     *
+     * Maps (unique) insertion time in nanoseconds to the element.
+     */
+    private final LinkedMap evictable = new LinkedMap();
+
+    /**
+     * Maximum total size of the shard, including both mmapped and
+     * non-mmapped elements.
+     */
+    private final int maxTotalSize;
+
+    /**
+     * LinkedMap of mmaped evictable elements.
+     *
+     * Maps (unique) insertion time in nanoseconds to the element.
+     */
+    private final LinkedMap evictableMmapped = new LinkedMap();
+
+    /**
+     * Maximum number of mmaped evictable elements.
+     */
+    private int maxEvictableMmapedSize;
+
+    /**
+     * Number of existing mmaps associated with this shard.
+     */
+    private int outstandingMmapCount = 0;
+
+    Shard(int maxTotalSize, int maxEvictableMmapedSize) {
+      this.maxTotalSize = maxTotalSize;
+      this.maxEvictableMmapedSize = maxEvictableMmapedSize;
+    }
+
+    /**
+     * Take the lock of the shard, counting the times it was held by another
+     * thread.
+     */
+    void lock() {
+      if (lock.tryLock()) {
+        return;
+      }
+      long startNs = System.nanoTime();
+      lock.lock();
+      lockContentions.increment();
+      lockWaitTimeNs.add(System.nanoTime() - startNs);
+    }
+
+    void unlock() {
+      lock.unlock();
+    }
+
+    /**
+     * Increment the reference count of a replica, and remove it from any free
+     * list it may be in.
+     *
+     * You must hold the shard lock while calling this function.
+     *
+     * @param replica      The replica we're removing.
+     */
+    private void ref(ShortCircuitReplica replica) {
+      int refCount = replica.refCount.get();
+      Preconditions.checkArgument(refCount > 0,
+          "can't ref %s because its refCount reached %d", replica, refCount);
+      Long evictableTimeNs = replica.getEvictableTimeNs();
+      refCount = replica.refCount.incrementAndGet();
+      if (evictableTimeNs != null) {
+        String removedFrom = removeEvictable(replica);
+        if (LOG.isTraceEnabled()) {
+          LOG.trace(ShortCircuitCache.this + ": " + removedFrom +
+              " no longer contains " + replica + ".  refCount " +
+              (refCount - 1) + " -> " + refCount +
+              StringUtils.getStackTrace(Thread.currentThread()));
+
+        }
+      } else if (LOG.isTraceEnabled()) {
+        LOG.trace(ShortCircuitCache.this + ": replica  refCount " +
+            (refCount - 1) + " -> " + refCount +
+            StringUtils.getStackTrace(Thread.currentThread()));
+      }
+    }
+
+    /**
+     * Increment the reference count of a replica without taking the lock.
+     * This is only possible when another reader references the replica, so
+     * that it is not in any free list.
+     *
+     * @param replica      The replica to reference.
+     * @return             True if the replica was referenced.
+     */
+    private boolean tryRefUnlocked(ShortCircuitReplica replica) {
+      while (true) {
+        int refCount = replica.refCount.get();
+        if (refCount < 2) {
+          return false;
+        }
+        if (replica.refCount.compareAndSet(refCount, refCount + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /**
+     * Unreference a replica.
+     *
+     * @param replica   The replica being unreferenced.
+     */
+    void unref(ShortCircuitReplica replica) {
+      lock();
+      try {
+        // If the replica is stale or unusable, but we haven't purged it yet,
+        // let's do that.  It would be a shame to evict a non-stale replica so
+        // that we could put a stale or unusable one into the cache.
+        if (!replica.purged) {
+          String purgeReason = null;
+          if (!replica.getDataStream().getChannel().isOpen()) {
+            purgeReason = "purging replica because its data channel is closed.";
+          } else if (!replica.getMetaStream().getChannel().isOpen()) {
+            purgeReason = "purging replica because its meta channel is closed.";
+          } else if (replica.isStale()) {
+            purgeReason = "purging replica because it is stale.";
+          }
+          if (purgeReason != null) {
+            LOG.debug("{}: {}", ShortCircuitCache.this, purgeReason);
+            purge(replica);
+          }
+        }
+        String addedString = "";
+        boolean shouldTrimEvictionMaps = false;
+        int newRefCount = replica.refCount.decrementAndGet();
+        if (newRefCount == 0) {
+          // Close replica, since there are no remaining references to it.
+          Preconditions.checkArgument(replica.purged,
+              "Replica %s reached a refCount of 0 without being purged",
+              replica);
+          replica.close();
+        } else if (newRefCount == 1) {
+          Preconditions.checkState(null == replica.getEvictableTimeNs(),
+              "Replica %s had a refCount higher than 1, " +
+                  "but was still evictable (evictableTimeNs = %d)",
+              replica, replica.getEvictableTimeNs());
+          if (!replica.purged) {
+            // Add the replica to the end of an eviction list.
+            // Eviction lists are sorted by time.
+            if (replica.hasMmap()) {
+              insertEvictable(System.nanoTime(), replica, evictableMmapped);
+              addedString = "added to evictableMmapped, ";
+            } else {
+              insertEvictable(System.nanoTime(), replica, evictable);
+              addedString = "added to evictable, ";
+            }
+            shouldTrimEvictionMaps = true;
+          }
+        } else {
+          Preconditions.checkArgument(newRefCount >= 0,
+              "replica's refCount went negative (refCount = %d" +
+                  " for %s)", newRefCount, replica);
+        }
+        if (LOG.isTraceEnabled()) {
+          LOG.trace(ShortCircuitCache.this + ": unref replica " + replica +
+              ": " + addedString + " refCount " +
+              (newRefCount + 1) + " -> " + newRefCount +
+              StringUtils.getStackTrace(Thread.currentThread()));
+        }
+        if (shouldTrimEvictionMaps) {
+          trimEvictionMaps();
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Demote old evictable mmaps into the regular eviction map.
+     *
+     * You must hold the shard lock while calling this function.
+     *
+     * @param now   Current time in monotonic milliseconds.
+     * @return      Number of replicas demoted.
+     */
+    private int demoteOldEvictableMmaped(long now) {
+      int numDemoted = 0;
+      boolean needMoreSpace = false;
+      Long evictionTimeNs;
+
+      while (true) {
+        Object eldestKey;
+        try {
+          eldestKey = evictableMmapped.firstKey();
+        } catch (NoSuchElementException e) {
+          break;
+        }
+        evictionTimeNs = (Long)eldestKey;
+        long evictionTimeMs =
+            TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
+        if (evictionTimeMs + maxEvictableMmapedLifespanMs >= now) {
+          if (evictableMmapped.size() < maxEvictableMmapedSize) {
+            break;
+          }
+          needMoreSpace = true;
+        }
+        ShortCircuitReplica replica =
+            (ShortCircuitReplica)evictableMmapped.get(eldestKey);
+        if (LOG.isTraceEnabled()) {
+          String rationale = needMoreSpace ? "because we need more space" :
+              "because it's too old";
+          LOG.trace("demoteOldEvictable: demoting " + replica + ": " +
+              rationale + ": " +
+              StringUtils.getStackTrace(Thread.currentThread()));
+        }
+        removeEvictable(replica, evictableMmapped);
+        munmap(replica);
+        insertEvictable(evictionTimeNs, replica, evictable);
+        numDemoted++;
+      }
+      return numDemoted;
+    }
+
+    /**
+     * Purge the non-mmapped evictable replicas which are too old.
+     *
+     * You must hold the shard lock while calling this function.
+     *
+     * @param now   Current time in monotonic milliseconds.
+     * @return      Number of replicas purged.
+     */
+    private int purgeOldEvictable(long now) {
+      int numPurged = 0;
+      Long evictionTimeNs;
+      while (true) {
+        Object eldestKey;
+        try {
+          eldestKey = evictable.firstKey();
+        } catch (NoSuchElementException e) {
+          break;
+        }
+        evictionTimeNs = (Long)eldestKey;
+        long evictionTimeMs =
+            TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
+        if (evictionTimeMs + maxNonMmappedEvictableLifespanMs >= now) break;
+        ShortCircuitReplica replica = (ShortCircuitReplica)evictable.get(
+            eldestKey);
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("CacheCleaner: purging " + replica + ": " +
+              StringUtils.getStackTrace(Thread.currentThread()));
+        }
+        purge(replica);
+        numPurged++;
+      }
+      return numPurged;
+    }
+
+    /**
+     * Trim the eviction lists.
+     */
+    private void trimEvictionMaps() {
+      long now = Time.monotonicNow();
+      demoteOldEvictableMmaped(now);
+
+      while (true) {
+        long evictableSize = evictable.size();
+        long evictableMmappedSize = evictableMmapped.size();
+        if (evictableSize + evictableMmappedSize <= maxTotalSize) {
+          return;
+        }
+        ShortCircuitReplica replica;
+        try {
+          if (evictableSize == 0) {
+            replica = (ShortCircuitReplica)evictableMmapped.get(
+                evictableMmapped.firstKey());
+          } else {
+            replica = (ShortCircuitReplica)evictable.get(evictable.firstKey());
+          }
+        } catch (NoSuchElementException e) {
+          break;
+        }
+        if (LOG.isTraceEnabled()) {
+          LOG.trace(ShortCircuitCache.this + ": trimEvictionMaps is purging " +
+              replica + StringUtils.getStackTrace(Thread.currentThread()));
+        }
+        purge(replica);
+      }
+    }
+
+    /**
+     * Munmap a replica, updating outstandingMmapCount.
+     *
+     * @param replica  The replica to munmap.
+     */
+    private void munmap(ShortCircuitReplica replica) {
+      replica.munmap();
+      outstandingMmapCount--;
+    }
+
+    /**
+     * Remove a replica from an evictable map.
+     *
+     * @param replica   The replica to remove.
+     * @return          The map it was removed from.
+     */
+    private String removeEvictable(ShortCircuitReplica replica) {
+      if (replica.hasMmap()) {
+        removeEvictable(replica, evictableMmapped);
+        return "evictableMmapped";
+      } else {
+        removeEvictable(replica, evictable);
+        return "evictable";
+      }
+    }
+
+    /**
+     * Remove a replica from an evictable map.
+     *
+     * @param replica   The replica to remove.
+     * @param map       The map to remove it from.
+     */
+    private void removeEvictable(ShortCircuitReplica replica,
+        LinkedMap map) {
+      Long evictableTimeNs = replica.getEvictableTimeNs();
+      Preconditions.checkNotNull(evictableTimeNs);
+      ShortCircuitReplica removed = (ShortCircuitReplica)map.remove(
+          evictableTimeNs);
+      Preconditions.checkState(removed == replica,
+          "failed to make %s unevictable", replica);
+      replica.setEvictableTimeNs(null);
+    }
+
+    /**
+     * Insert a replica into an evictable map.
+     *
+     * If an element already exists with this eviction time, we add a
+     * nanosecond to it until we find an unused key.
+     *
+     * @param evictionTimeNs   The eviction time in absolute nanoseconds.
+     * @param replica          The replica to insert.
+     * @param map              The map to insert it into.
+     */
+    private void insertEvictable(Long evictionTimeNs,
+        ShortCircuitReplica replica, LinkedMap map) {
+      while (map.containsKey(evictionTimeNs)) {
+        evictionTimeNs++;
+      }
+      Preconditions.checkState(null == replica.getEvictableTimeNs());
+      replica.setEvictableTimeNs(evictionTimeNs);
+      map.put(evictionTimeNs, replica);
+    }
+
+    /**
+     * Purge a replica from the cache.
+     *
+     * This doesn't necessarily close the replica, since there may be
+     * outstanding references to it.  However, it does mean the cache won't
+     * hand it out to anyone after this.
+     *
+     * You must hold the shard lock while calling this function.
+     *
+     * @param replica   The replica being removed.
+     */
+    private void purge(ShortCircuitReplica replica) {
+      boolean removedFromInfoMap = false;
+      String evictionMapName = null;
+      Preconditions.checkArgument(!replica.purged);
+      replica.purged = true;
+      Waitable<ShortCircuitReplicaInfo> val = replicaInfoMap.get(replica.key);
+      if (val != null) {
+        ShortCircuitReplicaInfo info = val.getVal();
+        if ((info != null) && (info.getReplica() == replica)) {
+          replicaInfoMap.remove(replica.key);
+          loadedReplicas.remove(replica.key, info);
+          removedFromInfoMap = true;
+        }
+      }
+      Long evictableTimeNs = replica.getEvictableTimeNs();
+      if (evictableTimeNs != null) {
+        evictionMapName = removeEvictable(replica);
+      }
+      if (LOG.isTraceEnabled()) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(ShortCircuitCache.this).append(": ").
+            append(": purged ").append(replica).append(" from the cache.");
+        if (removedFromInfoMap) {
+          builder.append("  Removed from the replicaInfoMap.");
+        }
+        if (evictionMapName != null) {
+          builder.append("  Removed from ").append(evictionMapName);
+        }
+        LOG.trace(builder.toString());
+      }
+      unref(replica);
+    }
+
+    /**
+     * Fetch a replica which is already loaded and referenced by another
+     * reader, without taking the lock.
+     *
+     * @param key          Key to use for lookup.
+     *
+     * @return             Null if the replica has to be fetched or created
+     *                     with the lock held.
+     */
+    private ShortCircuitReplicaInfo fetchUnlocked(ExtendedBlockId key) {
+      ShortCircuitReplicaInfo info = loadedReplicas.get(key);
+      if (info == null) {
+        return null;
+      }
+      ShortCircuitReplica replica = info.getReplica();
+      if (replica.purged || replica.isStale() || !tryRefUnlocked(replica)) {
+        return null;
+      }
+      unlockedLookups.increment();
+      LOG.trace("{}: referenced {} without locking", ShortCircuitCache.this,
+          replica);
+      return info;
+    }
+
+    /**
+     * Fetch or create a replica.
+     *
+     * @param key          Key to use for lookup.
+     * @param creator      Replica creator callback.  Will be called without
+     *                     the shard lock being held.
+     *
+     * @return             Null if no replica could be found or created.
+     *                     The replica, otherwise.
+     */
+    ShortCircuitReplicaInfo fetchOrCreate(ExtendedBlockId key,
+        ShortCircuitReplicaCreator creator) {
+      ShortCircuitReplicaInfo info = fetchUnlocked(key);
+      if (info != null) {
+        return info;
+      }
+      Waitable<ShortCircuitReplicaInfo> newWaitable = null;
+      lock();
+      try {
+        do {
+          if (closed) {
+            LOG.trace("{}: can't fethchOrCreate {} because the cache is "
+                + "closed.", ShortCircuitCache.this, key);
+            return null;
+          }
+          Waitable<ShortCircuitReplicaInfo> waitable = replicaInfoMap.get(key);
+          if (waitable != null) {
+            try {
+              info = fetch(key, waitable);
+            } catch (RetriableException e) {
+              LOG.debug("{}: retrying {}", ShortCircuitCache.this,
+                  e.getMessage());
+            }
+          }
+        } while (false);
+        if (info != null) return info;
+        // We need to load the replica ourselves.
+        newWaitable = new Waitable<>(lock.newCondition());
+        replicaInfoMap.put(key, newWaitable);
+      } finally {
+        unlock();
+      }
+      return create(key, creator, newWaitable);
+    }
+
+    /**
+     * Fetch an existing ReplicaInfo object.
+     *
+     * You must hold the shard lock while calling this function.
+     *
+     * @param key       The key that we're using.
+     * @param waitable  The waitable object to wait on.
+     * @return          The existing ReplicaInfo object, or null if there is
+     *                  none.
+     *
+     * @throws RetriableException   If the caller needs to retry.
+     */
+    private ShortCircuitReplicaInfo fetch(ExtendedBlockId key,
+        Waitable<ShortCircuitReplicaInfo> waitable) throws RetriableException {
+      // Another thread is already in the process of loading this
+      // ShortCircuitReplica.  So we simply wait for it to complete.
+      ShortCircuitReplicaInfo info;
+      try {
+        LOG.trace("{}: found waitable for {}", ShortCircuitCache.this, key);
+        info = waitable.await();
+      } catch (InterruptedException e) {
+        LOG.info(ShortCircuitCache.this + ": interrupted while waiting for " +
+            key);
+        Thread.currentThread().interrupt();
+        throw new RetriableException("interrupted");
+      }
+      if (info.getInvalidTokenException() != null) {
+        LOG.info(ShortCircuitCache.this + ": could not get " + key +
+            " due to InvalidToken exception.",
+            info.getInvalidTokenException());
+        return info;
+      }
+      ShortCircuitReplica replica = info.getReplica();
+      if (replica == null) {
+        LOG.warn(ShortCircuitCache.this + ": failed to get " + key);
+        return info;
+      }
+      if (replica.purged) {
+        // Ignore replicas that have already been purged from the cache.
+        throw new RetriableException("Ignoring purged replica " +
+            replica + ".  Retrying.");
+      }
+      // Check if the replica is stale before using it.
+      // If it is, purge it and retry.
+      if (replica.isStale()) {
+        LOG.info(ShortCircuitCache.this + ": got stale replica " + replica +
+            ".  Removing this replica from the replicaInfoMap and retrying.");
+        // Remove the cache's reference to the replica.  This may or may not
+        // trigger a close.
+        purge(replica);
+        throw new RetriableException("ignoring stale replica " + replica);
+      }
+      ref(replica);
+      return info;
+    }
+
+    private ShortCircuitReplicaInfo create(ExtendedBlockId key,
+        ShortCircuitReplicaCreator creator,
+        Waitable<ShortCircuitReplicaInfo> newWaitable) {
+      // Handle loading a new replica.
+      ShortCircuitReplicaInfo info = null;
+      try {
+        LOG.trace("{}: loading {}", ShortCircuitCache.this, key);
+        info = creator.createShortCircuitReplicaInfo();
+      } catch (RuntimeException e) {
+        LOG.warn(ShortCircuitCache.this + ": failed to load " + key, e);
+      }
+      if (info == null) info = new ShortCircuitReplicaInfo();
+      lock();
+      try {
+        if (info.getReplica() != null) {
+          // On success, make sure the cache cleaner thread is running.
+          LOG.trace("{}: successfully loaded {}", ShortCircuitCache.this,
+              info.getReplica());
+          startCacheCleanerThreadIfNeeded();
+          // Note: new ShortCircuitReplicas start with a refCount of 2,
+          // indicating that both this cache and whoever requested the
+          // creation of the replica hold a reference.  So we don't need
+          // to increment the reference count here.
+          if (replicaInfoMap.get(key) == newWaitable) {
+            loadedReplicas.put(key, info);
+          }
+        } else {
+          // On failure, remove the waitable from the replicaInfoMap.
+          Waitable<ShortCircuitReplicaInfo> waitableInMap =
+              replicaInfoMap.get(key);
+          if (waitableInMap == newWaitable) replicaInfoMap.remove(key);
+          if (info.getInvalidTokenException() != null) {
+            LOG.info(ShortCircuitCache.this + ": could not load " + key +
+                " due to InvalidToken exception.",
+                info.getInvalidTokenException());
+          } else {
+            LOG.warn(ShortCircuitCache.this + ": failed to load " + key);
+          }
+        }
+        newWaitable.provide(info);
+      } finally {
+        unlock();
+      }
+      return info;
+    }
+
+    ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
+        boolean anchored) {
+      Condition newCond;
+      lock();
+      try {
+        while (replica.mmapData != null) {
+          if (replica.mmapData instanceof MappedByteBuffer) {
+            ref(replica);
+            MappedByteBuffer mmap = (MappedByteBuffer)replica.mmapData;
+            return new ClientMmap(replica, mmap, anchored);
+          } else if (replica.mmapData instanceof Long) {
+            long lastAttemptTimeMs = (Long)replica.mmapData;
+            long delta = Time.monotonicNow() - lastAttemptTimeMs;
+            if (delta < mmapRetryTimeoutMs) {
+              LOG.trace("{}: can't create client mmap for {} because we failed"
+                  + " to create one just {}ms ago.", ShortCircuitCache.this,
+                  replica, delta);
+              return null;
+            }
+            LOG.trace("{}: retrying client mmap for {}, {} ms after the "
+                + "previous failure.", ShortCircuitCache.this, replica, delta);
+          } else if (replica.mmapData instanceof Condition) {
+            Condition cond = (Condition)replica.mmapData;
+            cond.awaitUninterruptibly();
+          } else {
+            Preconditions.checkState(false, "invalid mmapData type %s",
+                replica.mmapData.getClass().getName());
+          }
+        }
+        newCond = lock.newCondition();
+        replica.mmapData = newCond;
+      } finally {
+        unlock();
+      }
+      MappedByteBuffer map = replica.loadMmapInternal();
+      lock();
+      try {
+        if (map == null) {
+          replica.mmapData = Time.monotonicNow();
+          newCond.signalAll();
+          return null;
+        } else {
+          outstandingMmapCount++;
+          replica.mmapData = map;
+          ref(replica);
+          newCond.signalAll();
+          return new ClientMmap(replica, map, anchored);
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Purge all the evictable replicas of the shard.
+     */
+    void close() {
+      lock();
+      try {
+        maxEvictableMmapedSize = 0;
+        while (true) {
+          Object eldestKey;
+          try {
+            eldestKey = evictable.firstKey();
+          } catch (NoSuchElementException e) {
+            break;
+          }
+          purge((ShortCircuitReplica)evictable.get(eldestKey));
+        }
+        while (true) {
+          Object eldestKey;
+          try {
+            eldestKey = evictableMmapped.firstKey();
+          } catch (NoSuchElementException e) {
+            break;
+          }
+          purge((ShortCircuitReplica)evictableMmapped.get(eldestKey));
+        }
+      } finally {
+        unlock();
+      }
+    }
+  }
 
   /**
    * The executor service that runs the cacheCleaner.
@@ -254,12 +915,9 @@ public interface ShortCircuitReplicaCreator {
       build());
 
   /**
-   * A map containing all ShortCircuitReplicaInfo objects, organized by Key.
-   * ShortCircuitReplicaInfo objects may contain a replica, or an InvalidToken
-   * exception.
+   * The shards of the cache.
    */
-  private final HashMap<ExtendedBlockId, Waitable<ShortCircuitReplicaInfo>>
-      replicaInfoMap = new HashMap<>();
+  private final Shard[] shards;
 
   /**
    * The CacheCleaner.  We don't create this and schedule it until it becomes
@@ -267,35 +925,10 @@ public interface ShortCircuitReplicaCreator {
    */
   private CacheCleaner cacheCleaner;
 
-  /**
-   * LinkedMap of evictable elements.
-   *
-   * Maps (unique) insertion time in nanoseconds to the element.
-   */
-  private final LinkedMap evictable = new LinkedMap();
-
-  /**
-   * Maximum total size of the cache, including both mmapped and
-   * no$-mmapped elements.
-   */
-  private final int maxTotalSize;
-
   /**
    * Non-mmaped elements older than this will be closed.
    */
-  private long maxNonMmappedEvictableLifespanMs;
-
-  /**
-   * LinkedMap of mmaped evictable elements.
-   *
-   * Maps (unique) insertion time in nanoseconds to the element.
-   */
-  private final LinkedMap evictableMmapped = new LinkedMap();
-
-  /**
-   * Maximum number of mmaped evictable elements.
-   */
-  private int maxEvictableMmapedSize;
+  private volatile long maxNonMmappedEvictableLifespanMs;
 
   /**
    * Mmaped elements older than this will be closed.
@@ -317,17 +950,27 @@ public interface ShortCircuitReplicaCreator {
   /**
    * True if the ShortCircuitCache is closed.
    */
-  private boolean closed = false;
+  private volatile boolean closed = false;
+
+  /**
+   * Manages short-circuit shared memory segments for the client.
+   */
+  private final DfsClientShmManager shmManager;
 
   /**
-   * Number of existing mmaps associated with this cache.
+   * Number of times a thread had to wait for the lock of a shard.
    */
-  private int outstandingMmapCount = 0;
+  private final LongAdder lockContentions = new LongAdder();
 
   /**
-   * Manages short-circuit shared memory segments for the client.
+   * Total time in nanoseconds threads waited for the lock of a shard.
    */
-  private final DfsClientShmManager shmManager;
+  private final LongAdder lockWaitTimeNs = new LongAdder();
+
+  /**
+   * Number of replicas fetched without taking the lock of their shard.
+   */
+  private final LongAdder unlockedLookups = new LongAdder();
 
   public static ShortCircuitCache fromConf(ShortCircuitConf conf) {
     return new ShortCircuitCache(
@@ -337,20 +980,38 @@ public static ShortCircuitCache fromConf(ShortCircuitConf conf) {
         conf.getShortCircuitMmapCacheExpiryMs(),
         conf.getShortCircuitMmapCacheRetryTimeout(),
         conf.getShortCircuitCacheStaleThresholdMs(),
-        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs());
+        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs(),
+        conf.getShortCircuitStreamsCacheShards());
   }
 
   public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
       int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
       long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs) {
+    this(maxTotalSize, maxNonMmappedEvictableLifespanMs,
+        maxEvictableMmapedSize, maxEvictableMmapedLifespanMs,
+        mmapRetryTimeoutMs, staleThresholdMs, shmInterruptCheckMs, 1);
+  }
+
+  public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
+      int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
+      long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs,
+      int numShards) {
     Preconditions.checkArgument(maxTotalSize >= 0);
-    this.maxTotalSize = maxTotalSize;
     Preconditions.checkArgument(maxNonMmappedEvictableLifespanMs >= 0);
     this.maxNonMmappedEvictableLifespanMs = maxNonMmappedEvictableLifespanMs;
     Preconditions.checkArgument(maxEvictableMmapedSize >= 0);
-    this.maxEvictableMmapedSize = maxEvictableMmapedSize;
     Preconditions.checkArgument(maxEvictableMmapedLifespanMs >= 0);
     this.maxEvictableMmapedLifespanMs = maxEvictableMmapedLifespanMs;
+    Preconditions.checkArgument(numShards > 0);
+    // Split the sizes between the shards, so that they add up to the
+    // configured sizes.
+    this.shards = new Shard[numShards];
+    for (int i = 0; i < numShards; i++) {
+      shards[i] = new Shard(
+          maxTotalSize / numShards + (i < maxTotalSize % numShards ? 1 : 0),
+          maxEvictableMmapedSize / numShards +
+              (i < maxEvictableMmapedSize % numShards ? 1 : 0));
+    }
     this.mmapRetryTimeoutMs = mmapRetryTimeoutMs;
     this.staleThresholdMs = staleThresholdMs;
     DfsClientShmManager shmManager = null;
@@ -369,301 +1030,27 @@ public long getStaleThresholdMs() {
     return staleThresholdMs;
   }
 
-  /**
-   * Increment the reference count of a replica, and remove it from any free
-   * list it may be in.
-   *
-   * You must hold the cache lock while calling this function.
-   *
-   * @param replica      The replica we're removing.
-   */
-  private void ref(ShortCircuitReplica replica) {
-    lock.lock();
-    try {
-      Preconditions.checkArgument(replica.refCount > 0,
-          "can't ref %s because its refCount reached %d", replica,
-          replica.refCount);
-      Long evictableTimeNs = replica.getEvictableTimeNs();
-      replica.refCount++;
-      if (evictableTimeNs != null) {
-        String removedFrom = removeEvictable(replica);
-        if (LOG.isTraceEnabled()) {
-          LOG.trace(this + ": " + removedFrom +
-              " no longer contains " + replica + ".  refCount " +
-              (replica.refCount - 1) + " -> " + replica.refCount +
-              StringUtils.getStackTrace(Thread.currentThread()));
-
-        }
-      } else if (LOG.isTraceEnabled()) {
-        LOG.trace(this + ": replica  refCount " +
-            (replica.refCount - 1) + " -> " + replica.refCount +
-            StringUtils.getStackTrace(Thread.currentThread()));
-      }
-    } finally {
-      lock.unlock();
+  private Shard getShard(ExtendedBlockId key) {
+    if (shards.length == 1) {
+      return shards[0];
     }
+    int hash = key.hashCode();
+    hash ^= (hash >>> 16);
+    return shards[(hash & Integer.MAX_VALUE) % shards.length];
   }
 
   /**
    * Unreference a replica.
    *
-   * You must hold the cache lock while calling this function.
-   *
    * @param replica   The replica being unreferenced.
    */
   void unref(ShortCircuitReplica replica) {
-    lock.lock();
-    try {
-      // If the replica is stale or unusable, but we haven't purged it yet,
-      // let's do that.  It would be a shame to evict a non-stale replica so
-      // that we could put a stale or unusable one into the cache.
-      if (!replica.purged) {
-        String purgeReason = null;
-        if (!replica.getDataStream().getChannel().isOpen()) {
-          purgeReason = "purging replica because its data channel is closed.";
-        } else if (!replica.getMetaStream().getChannel().isOpen()) {
-          purgeReason = "purging replica because its meta channel is closed.";
-        } else if (replica.isStale()) {
-          purgeReason = "purging replica because it is stale.";
-        }
-        if (purgeReason != null) {
-          LOG.debug("{}: {}", this, purgeReason);
-          purge(replica);
-        }
-      }
-      String addedString = "";
-      boolean shouldTrimEvictionMaps = false;
-      int newRefCount = --replica.refCount;
-      if (newRefCount == 0) {
-        // Close replica, since there are no remaining references to it.
-        Preconditions.checkArgument(replica.purged,
-            "Replica %s reached a refCount of 0 without being purged", replica);
-        replica.close();
-      } else if (newRefCount == 1) {
-        Preconditions.checkState(null == replica.getEvictableTimeNs(),
-            "Replica %s had a refCount higher than 1, " +
-                "but was still evictable (evictableTimeNs = %d)",
-            replica, replica.getEvictableTimeNs());
-        if (!replica.purged) {
-          // Add the replica to the end of an eviction list.
-          // Eviction lists are sorted by time.
-          if (replica.hasMmap()) {
-            insertEvictable(System.nanoTime(), replica, evictableMmapped);
-            addedString = "added to evictableMmapped, ";
-          } else {
-            insertEvictable(System.nanoTime(), replica, evictable);
-            addedString = "added to evictable, ";
-          }
-          shouldTrimEvictionMaps = true;
-        }
-      } else {
-        Preconditions.checkArgument(replica.refCount >= 0,
-            "replica's refCount went negative (refCount = %d" +
-                " for %s)", replica.refCount, replica);
-      }
-      if (LOG.isTraceEnabled()) {
-        LOG.trace(this + ": unref replica " + replica +
-            ": " + addedString + " refCount " +
-            (newRefCount + 1) + " -> " + newRefCount +
-            StringUtils.getStackTrace(Thread.currentThread()));
-      }
-      if (shouldTrimEvictionMaps) {
-        trimEvictionMaps();
-      }
-    } finally {
-      lock.unlock();
-    }
-  }
-
-  /**
-   * Demote old evictable mmaps into the regular eviction map.
-   *
-   * You must hold the cache lock while calling this function.
-   *
-   * @param now   Current time in monotonic milliseconds.
-   * @return      Number of replicas demoted.
-   */
-  private int demoteOldEvictableMmaped(long now) {
-    int numDemoted = 0;
-    boolean needMoreSpace = false;
-    Long evictionTimeNs;
-
-    while (true) {
-      Object eldestKey;
-      try {
-        eldestKey = evictableMmapped.firstKey();
-      } catch (NoSuchElementException e) {
-        break;
-      }
-      evictionTimeNs = (Long)eldestKey;
-      long evictionTimeMs =
-          TimeUnit.MILLISECONDS.convert(evictionTimeNs, TimeUnit.NANOSECONDS);
-      if (evictionTimeMs + maxEvictableMmapedLifespanMs >= now) {
-        if (evictableMmapped.size() < maxEvictableMmapedSize) {
-          break;
-        }
-        needMoreSpace = true;
-      }
-      ShortCircuitReplica replica = (ShortCircuitReplica)evictableMmapped.get(
-          eldestKey);
-      if (LOG.isTraceEnabled()) {
-        String rationale = needMoreSpace ? "because we need more space" :
-            "because it's too old";
-        LOG.trace("demoteOldEvictable: demoting " + replica + ": " +
-            rationale + ": " +
-            StringUtils.getStackTrace(Thread.currentThread()));
-      }
-      removeEvictable(replica, evictableMmapped);
-      munmap(replica);
-      insertEvictable(evictionTimeNs, replica, evictable);
-      numDemoted++;
-    }
-    return numDemoted;
-  }
-
-  /**
-   * Trim the eviction lists.
-   */
-  private void trimEvictionMaps() {
-    long now = Time.monotonicNow();
-    demoteOldEvictableMmaped(now);
-
-    while (true) {
-      long evictableSize = evictable.size();
-      long evictableMmappedSize = evictableMmapped.size();
-      if (evictableSize + evictableMmappedSize <= maxTotalSize) {
-        return;
-      }
-      ShortCircuitReplica replica;
-      try {
-        if (evictableSize == 0) {
-          replica = (ShortCircuitReplica)evictableMmapped.get(evictableMmapped
-              .firstKey());
-        } else {
-          replica = (ShortCircuitReplica)evictable.get(evictable.firstKey());
-        }
-      } catch (NoSuchElementException e) {
-        break;
-      }
-      if (LOG.isTraceEnabled()) {
-        LOG.trace(this + ": trimEvictionMaps is purging " + replica +
-            StringUtils.getStackTrace(Thread.currentThread()));
-      }
-      purge(replica);
-    }
-  }
-
-  /**
-   * Munmap a replica, updating outstandingMmapCount.
-   *
-   * @param replica  The replica to munmap.
-   */
-  private void munmap(ShortCircuitReplica replica) {
-    replica.munmap();
-    outstandingMmapCount--;
-  }
-
-  /**
-   * Remove a replica from an evictable map.
-   *
-   * @param replica   The replica to remove.
-   * @return          The map it was removed from.
-   */
-  private String removeEvictable(ShortCircuitReplica replica) {
-    if (replica.hasMmap()) {
-      removeEvictable(replica, evictableMmapped);
-      return "evictableMmapped";
-    } else {
-      removeEvictable(replica, evictable);
-      return "evictable";
-    }
-  }
-
-  /**
-   * Remove a replica from an evictable map.
-   *
-   * @param replica   The replica to remove.
-   * @param map       The map to remove it from.
-   */
-  private void removeEvictable(ShortCircuitReplica replica,
-      LinkedMap map) {
-    Long evictableTimeNs = replica.getEvictableTimeNs();
-    Preconditions.checkNotNull(evictableTimeNs);
-    ShortCircuitReplica removed = (ShortCircuitReplica)map.remove(
-        evictableTimeNs);
-    Preconditions.checkState(removed == replica,
-        "failed to make %s unevictable", replica);
-    replica.setEvictableTimeNs(null);
-  }
-
-  /**
-   * Insert a replica into an evictable map.
-   *
-   * If an element already exists with this eviction time, we add a nanosecond
-   * to it until we find an unused key.
-   *
-   * @param evictionTimeNs   The eviction time in absolute nanoseconds.
-   * @param replica          The replica to insert.
-   * @param map              The map to insert it into.
-   */
-  private void insertEvictable(Long evictionTimeNs,
-      ShortCircuitReplica replica, LinkedMap map) {
-    while (map.containsKey(evictionTimeNs)) {
-      evictionTimeNs++;
-    }
-    Preconditions.checkState(null == replica.getEvictableTimeNs());
-    replica.setEvictableTimeNs(evictionTimeNs);
-    map.put(evictionTimeNs, replica);
-  }
-
-  /**
-   * Purge a replica from the cache.
-   *
-   * This doesn't necessarily close the replica, since there may be
-   * outstanding references to it.  However, it does mean the cache won't
-   * hand it out to anyone after this.
-   *
-   * You must hold the cache lock while calling this function.
-   *
-   * @param replica   The replica being removed.
-   */
-  private void purge(ShortCircuitReplica replica) {
-    boolean removedFromInfoMap = false;
-    String evictionMapName = null;
-    Preconditions.checkArgument(!replica.purged);
-    replica.purged = true;
-    Waitable<ShortCircuitReplicaInfo> val = replicaInfoMap.get(replica.key);
-    if (val != null) {
-      ShortCircuitReplicaInfo info = val.getVal();
-      if ((info != null) && (info.getReplica() == replica)) {
-        replicaInfoMap.remove(replica.key);
-        removedFromInfoMap = true;
-      }
-    }
-    Long evictableTimeNs = replica.getEvictableTimeNs();
-    if (evictableTimeNs != null) {
-      evictionMapName = removeEvictable(replica);
-    }
-    if (LOG.isTraceEnabled()) {
-      StringBuilder builder = new StringBuilder();
-      builder.append(this).append(": ").append(": purged ").
-          append(replica).append(" from the cache.");
-      if (removedFromInfoMap) {
-        builder.append("  Removed from the replicaInfoMap.");
-      }
-      if (evictionMapName != null) {
-        builder.append("  Removed from ").append(evictionMapName);
-      }
-      LOG.trace(builder.toString());
-    }
-    unref(replica);
+    getShard(replica.key).unref(replica);
   }
 
   /**
    * Fetch or create a replica.
    *
-   * You must hold the cache lock while calling this function.
-   *
    * @param key          Key to use for lookup.
    * @param creator      Replica creator callback.  Will be called without
    *                     the cache lock being held.
@@ -673,128 +1060,10 @@ private void purge(ShortCircuitReplica replica) {
    */
   public ShortCircuitReplicaInfo fetchOrCreate(ExtendedBlockId key,
       ShortCircuitReplicaCreator creator) {
-    Waitable<ShortCircuitReplicaInfo> newWaitable = null;
-    lock.lock();
-    try {
-      ShortCircuitReplicaInfo info = null;
-      do {
-        if (closed) {
-          LOG.trace("{}: can't fethchOrCreate {} because the cache is closed.",
-              this, key);
-          return null;
-        }
-        Waitable<ShortCircuitReplicaInfo> waitable = replicaInfoMap.get(key);
-        if (waitable != null) {
-          try {
-            info = fetch(key, waitable);
-          } catch (RetriableException e) {
-            LOG.debug("{}: retrying {}", this, e.getMessage());
-          }
-        }
-      } while (false);
-      if (info != null) return info;
-      // We need to load the replica ourselves.
-      newWaitable = new Waitable<>(lock.newCondition());
-      replicaInfoMap.put(key, newWaitable);
-    } finally {
-      lock.unlock();
-    }
-    return create(key, creator, newWaitable);
-  }
-
-  /**
-   * Fetch an existing ReplicaInfo object.
-   *
-   * @param key       The key that we're using.
-   * @param waitable  The waitable object to wait on.
-   * @return          The existing ReplicaInfo object, or null if there is
-   *                  none.
-   *
-   * @throws RetriableException   If the caller needs to retry.
-   */
-  private ShortCircuitReplicaInfo fetch(ExtendedBlockId key,
-      Waitable<ShortCircuitReplicaInfo> waitable) throws RetriableException {
-    // Another thread is already in the process of loading this
-    // ShortCircuitReplica.  So we simply wait for it to complete.
-    ShortCircuitReplicaInfo info;
-    try {
-      LOG.trace("{}: found waitable for {}", this, key);
-      info = waitable.await();
-    } catch (InterruptedException e) {
-      LOG.info(this + ": interrupted while waiting for " + key);
-      Thread.currentThread().interrupt();
-      throw new RetriableException("interrupted");
-    }
-    if (info.getInvalidTokenException() != null) {
-      LOG.info(this + ": could not get " + key + " due to InvalidToken " +
-          "exception.", info.getInvalidTokenException());
-      return info;
-    }
-    ShortCircuitReplica replica = info.getReplica();
-    if (replica == null) {
-      LOG.warn(this + ": failed to get " + key);
-      return info;
-    }
-    if (replica.purged) {
-      // Ignore replicas that have already been purged from the cache.
-      throw new RetriableException("Ignoring purged replica " +
-          replica + ".  Retrying.");
-    }
-    // Check if the replica is stale before using it.
-    // If it is, purge it and retry.
-    if (replica.isStale()) {
-      LOG.info(this + ": got stale replica " + replica + ".  Removing " +
-          "this replica from the replicaInfoMap and retrying.");
-      // Remove the cache's reference to the replica.  This may or may not
-      // trigger a close.
-      purge(replica);
-      throw new RetriableException("ignoring stale replica " + replica);
-    }
-    ref(replica);
-    return info;
-  }
-
-  private ShortCircuitReplicaInfo create(ExtendedBlockId key,
-      ShortCircuitReplicaCreator creator,
-      Waitable<ShortCircuitReplicaInfo> newWaitable) {
-    // Handle loading a new replica.
-    ShortCircuitReplicaInfo info = null;
-    try {
-      LOG.trace("{}: loading {}", this, key);
-      info = creator.createShortCircuitReplicaInfo();
-    } catch (RuntimeException e) {
-      LOG.warn(this + ": failed to load " + key, e);
-    }
-    if (info == null) info = new ShortCircuitReplicaInfo();
-    lock.lock();
-    try {
-      if (info.getReplica() != null) {
-        // On success, make sure the cache cleaner thread is running.
-        LOG.trace("{}: successfully loaded {}", this, info.getReplica());
-        startCacheCleanerThreadIfNeeded();
-        // Note: new ShortCircuitReplicas start with a refCount of 2,
-        // indicating that both this cache and whoever requested the
-        // creation of the replica hold a reference.  So we don't need
-        // to increment the reference count here.
-      } else {
-        // On failure, remove the waitable from the replicaInfoMap.
-        Waitable<ShortCircuitReplicaInfo> waitableInMap = replicaInfoMap.get(key);
-        if (waitableInMap == newWaitable) replicaInfoMap.remove(key);
-        if (info.getInvalidTokenException() != null) {
-          LOG.info(this + ": could not load " + key + " due to InvalidToken " +
-              "exception.", info.getInvalidTokenException());
-        } else {
-          LOG.warn(this + ": failed to load " + key);
-        }
-      }
-      newWaitable.provide(info);
-    } finally {
-      lock.unlock();
-    }
-    return info;
+    return getShard(key).fetchOrCreate(key, creator);
   }
 
-  private void startCacheCleanerThreadIfNeeded() {
+  private synchronized void startCacheCleanerThreadIfNeeded() {
     if (cacheCleaner == null) {
       cacheCleaner = new CacheCleaner();
       long rateMs = cacheCleaner.getRateInMs();
@@ -809,54 +1078,37 @@ private void startCacheCleanerThreadIfNeeded() {
 
   ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
       boolean anchored) {
-    Condition newCond;
-    lock.lock();
-    try {
-      while (replica.mmapData != null) {
-        if (replica.mmapData instanceof MappedByteBuffer) {
-          ref(replica);
-          MappedByteBuffer mmap = (MappedByteBuffer)replica.mmapData;
-          return new ClientMmap(replica, mmap, anchored);
-        } else if (replica.mmapData instanceof Long) {
-          long lastAttemptTimeMs = (Long)replica.mmapData;
-          long delta = Time.monotonicNow() - lastAttemptTimeMs;
-          if (delta < mmapRetryTimeoutMs) {
-            LOG.trace("{}: can't create client mmap for {} because we failed to"
-                + " create one just {}ms ago.", this, replica, delta);
-            return null;
-          }
-          LOG.trace("{}: retrying client mmap for {}, {} ms after the previous "
-              + "failure.", this, replica, delta);
-        } else if (replica.mmapData instanceof Condition) {
-          Condition cond = (Condition)replica.mmapData;
-          cond.awaitUninterruptibly();
-        } else {
-          Preconditions.checkState(false, "invalid mmapData type %s",
-              replica.mmapData.getClass().getName());
-        }
-      }
-      newCond = lock.newCondition();
-      replica.mmapData = newCond;
-    } finally {
-      lock.unlock();
-    }
-    MappedByteBuffer map = replica.loadMmapInternal();
-    lock.lock();
-    try {
-      if (map == null) {
-        replica.mmapData = Time.monotonicNow();
-        newCond.signalAll();
-        return null;
-      } else {
-        outstandingMmapCount++;
-        replica.mmapData = map;
-        ref(replica);
-        newCond.signalAll();
-        return new ClientMmap(replica, map, anchored);
-      }
-    } finally {
-      lock.unlock();
-    }
+    return getShard(replica.key).getOrCreateClientMmap(replica, anchored);
+  }
+
+  /**
+   * @return the number of times a thread had to wait for the lock of a shard
+   */
+  public long getLockContentions() {
+    return lockContentions.sum();
+  }
+
+  /**
+   * @return the total time in nanoseconds threads waited for the lock of a
+   *         shard
+   */
+  public long getLockWaitTimeNs() {
+    return lockWaitTimeNs.sum();
+  }
+
+  /**
+   * @return the number of replicas fetched without taking the lock of their
+   *         shard
+   */
+  public long getUnlockedLookups() {
+    return unlockedLookups.sum();
+  }
+
+  /**
+   * @return the number of shards of the cache
+   */
+  public int getNumShards() {
+    return shards.length;
   }
 
   /**
@@ -864,36 +1116,17 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
    */
   @Override
   public void close() {
-    try {
-      lock.lock();
+    synchronized (this) {
       if (closed) return;
       closed = true;
       LOG.info(this + ": closing");
       maxNonMmappedEvictableLifespanMs = 0;
-      maxEvictableMmapedSize = 0;
       // Close and join cacheCleaner thread.
       IOUtilsClient.cleanup(LOG, cacheCleaner);
-      // Purge all replicas.
-      while (true) {
-        Object eldestKey;
-        try {
-          eldestKey = evictable.firstKey();
-        } catch (NoSuchElementException e) {
-          break;
-        }
-        purge((ShortCircuitReplica)evictable.get(eldestKey));
-      }
-      while (true) {
-        Object eldestKey;
-        try {
-          eldestKey = evictableMmapped.firstKey();
-        } catch (NoSuchElementException e) {
-          break;
-        }
-        purge((ShortCircuitReplica)evictableMmapped.get(eldestKey));
-      }
-    } finally {
-      lock.unlock();
+    }
+    // Purge all replicas.
+    for (Shard shard : shards) {
+      shard.close();
     }
 
     releaserExecutor.shutdown();
@@ -937,24 +1170,40 @@ void visit(int numOutstandingMmaps,
 
   @VisibleForTesting // ONLY for testing
   public void accept(CacheVisitor visitor) {
-    lock.lock();
+    for (Shard shard : shards) {
+      shard.lock();
+    }
     try {
+      int outstandingMmapCount = 0;
       Map<ExtendedBlockId, ShortCircuitReplica> replicas = new HashMap<>();
       Map<ExtendedBlockId, InvalidToken> failedLoads = new HashMap<>();
-      for (Entry<ExtendedBlockId, Waitable<ShortCircuitReplicaInfo>> entry :
-          replicaInfoMap.entrySet()) {
-        Waitable<ShortCircuitReplicaInfo> waitable = entry.getValue();
-        if (waitable.hasVal()) {
-          if (waitable.getVal().getReplica() != null) {
-            replicas.put(entry.getKey(), waitable.getVal().getReplica());
-          } else {
-            // The exception may be null here, indicating a failed load that
-            // isn't the result of an invalid block token.
-            failedLoads.put(entry.getKey(),
-                waitable.getVal().getInvalidTokenException());
+      for (Shard shard : shards) {
+        outstandingMmapCount += shard.outstandingMmapCount;
+        for (Entry<ExtendedBlockId, Waitable<ShortCircuitReplicaInfo>> entry :
+            shard.replicaInfoMap.entrySet()) {
+          Waitable<ShortCircuitReplicaInfo> waitable = entry.getValue();
+          if (waitable.hasVal()) {
+            if (waitable.getVal().getReplica() != null) {
+              replicas.put(entry.getKey(), waitable.getVal().getReplica());
+            } else {
+              // The exception may be null here, indicating a failed load that
+              // isn't the result of an invalid block token.
+              failedLoads.put(entry.getKey(),
+                  waitable.getVal().getInvalidTokenException());
+            }
           }
         }
       }
+      LinkedMap evictable = shards[0].evictable;
+      LinkedMap evictableMmapped = shards[0].evictableMmapped;
+      if (shards.length > 1) {
+        evictable = new LinkedMap();
+        evictableMmapped = new LinkedMap();
+        for (Shard shard : shards) {
+          evictable.putAll(shard.evictable);
+          evictableMmapped.putAll(shard.evictableMmapped);
+        }
+      }
       LOG.debug("visiting {} with outstandingMmapCount={}, replicas={}, "
               + "failedLoads={}, evictable={}, evictableMmapped={}",
           visitor.getClass().getName(), outstandingMmapCount, replicas,
@@ -962,7 +1211,9 @@ public void accept(CacheVisitor visitor) {
       visitor.visit(outstandingMmapCount, replicas, failedLoads,
           evictable, evictableMmapped);
     } finally {
-      lock.unlock();
+      for (Shard shard : shards) {
+        shard.unlock();
+      }
     }
   }
 
@@ -22,6 +22,7 @@
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.ExtendedBlockId;
@@ -97,9 +98,9 @@ public class ShortCircuitReplica {
   /**
    * True if this replica has been purged from the cache; false otherwise.
    *
-   * Protected by the cache lock.
+   * Modified with the cache lock held.
    */
-  boolean purged = false;
+  volatile boolean purged = false;
 
   /**
    * Number of external references to this replica.  Replicas are referenced
@@ -107,9 +108,10 @@ public class ShortCircuitReplica {
    * The number starts at 2 because when we create a replica, it is referenced
    * by both the cache and the requester.
    *
-   * Protected by the cache lock.
+   * Modified with the cache lock held, except when a replica which is
+   * referenced by a requester is referenced again.
    */
-  int refCount = 2;
+  final AtomicInteger refCount = new AtomicInteger(2);
 
   /**
    * The monotonic time in nanoseconds at which the replica became evictable, or
@@ -145,8 +147,6 @@ public void unref() {
 
   /**
    * Check if the replica is stale.
-   *
-   * Must be called with the cache lock held.
    */
   boolean isStale() {
     if (slot != null) {
@@ -233,9 +233,9 @@ void munmap() {
   void close() {
     String suffix = "";
 
-    Preconditions.checkState(refCount == 0,
-        "tried to close replica with refCount %d: %s", refCount, this);
-    refCount = -1;
+    Preconditions.checkState(refCount.get() == 0,
+        "tried to close replica with refCount %d: %s", refCount.get(), this);
+    refCount.set(-1);
     Preconditions.checkState(purged,
         "tried to close unpurged replica %s", this);
     if (hasMmap()) {
@@ -39,13 +39,23 @@
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
@@ -156,6 +166,12 @@ public class WebHdfsFileSystem extends FileSystem
 
   private DFSOpsCountStatistics storageStatistics;
 
+  private int readAheadThreads;
+  private int readAheadChunkSize;
+  private int readAheadWindow;
+  /** Fetches the chunks read ahead by the input streams; created lazily. */
+  private ThreadPoolExecutor readAheadPool;
+
   /**
    * Return the protocol scheme for the FileSystem.
    * <p/>
@@ -256,6 +272,7 @@ public synchronized void initialize(URI uri, Configuration conf
         CommonConfigurationKeys.IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_KEY,
         CommonConfigurationKeys.IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_DEFAULT);
     this.initializeRestCsrf(conf);
+    this.initializeReadAhead(conf);
     this.delegationToken = null;
 
     storageStatistics = (DFSOpsCountStatistics) GlobalStorageStatistics.INSTANCE
@@ -268,6 +285,52 @@ public StorageStatistics provide() {
             });
   }
 
+  /**
+   * Initializes the read-ahead of sequential reads, which fetches the chunks
+   * following the read position with concurrent ranged requests.
+   *
+   * @param conf configuration to read
+   */
+  private void initializeReadAhead(Configuration conf) {
+    this.readAheadThreads = conf.getInt(
+        HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_THREADS_KEY,
+        HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_THREADS_DEFAULT);
+    this.readAheadChunkSize = conf.getInt(
+        HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_CHUNK_SIZE_KEY,
+        HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_CHUNK_SIZE_DEFAULT);
+    this.readAheadWindow = conf.getInt(
+        HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_WINDOW_KEY,
+        HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_WINDOW_DEFAULT);
+    if (readAheadThreads > 0) {
+      Preconditions.checkArgument(readAheadChunkSize > 0,
+          "%s must be positive",
+          HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_CHUNK_SIZE_KEY);
+      Preconditions.checkArgument(readAheadWindow > 0, "%s must be positive",
+          HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_WINDOW_KEY);
+      LOG.debug("Reading ahead {} chunks of {} bytes with {} threads",
+          readAheadWindow, readAheadChunkSize, readAheadThreads);
+    }
+  }
+
+  /**
+   * @return the pool fetching the chunks read ahead, or null if sequential
+   *         reads are not read ahead. The fetches beyond its threads are
+   *         queued, rather than run by the reader, and rejected once the
+   *         file system is closed.
+   */
+  private synchronized ThreadPoolExecutor getReadAheadPool() {
+    if (readAheadThreads <= 0) {
+      return null;
+    }
+    if (readAheadPool == null) {
+      readAheadPool = DFSUtilClient.getThreadPoolExecutor(readAheadThreads,
+          readAheadThreads, 60, new LinkedBlockingQueue<Runnable>(),
+          "WebHdfsReadAhead-", false);
+      readAheadPool.allowCoreThreadTimeOut(true);
+    }
+    return readAheadPool;
+  }
+
   /**
    * Initializes client-side handling of cross-site request forgery (CSRF)
    * protection by figuring out the custom HTTP headers that need to be sent in
@@ -663,9 +726,9 @@ protected HttpURLConnection connect(URL url) throws IOException {
           url = new URL(conn.getHeaderField("Location"));
           redirectHost = url.getHost() + ":" + url.getPort();
         } finally {
-          // TODO: consider not calling conn.disconnect() to allow connection reuse
+          // Don't call conn.disconnect() to allow connection reuse
           // See http://tinyurl.com/java7-http-keepalive
-          conn.disconnect();
+          closeResponse(conn);
         }
       }
       try {
@@ -990,6 +1053,51 @@ HttpURLConnection getResponse(HttpURLConnection conn) throws IOException {
     }
   }
 
+  /**
+   * Close the response of a connection without disconnecting it, so that the
+   * connection can be reused by another request to the same server.
+   */
+  private static void closeResponse(HttpURLConnection conn) {
+    try {
+      InputStream in = conn.getErrorStream();
+      if (in == null) {
+        in = conn.getInputStream();
+      }
+      in.close();
+    } catch (IOException e) {
+      conn.disconnect();
+    }
+  }
+
+  /**
+   * Read the body of a ranged OPEN response and close it without
+   * disconnecting, so that the connection can be reused.
+   *
+   * @return the number of bytes read
+   */
+  private static int readRangeResponse(HttpURLConnection conn, byte[] b,
+      int off, int len) throws IOException {
+    boolean success = false;
+    try {
+      final InputStream in = conn.getInputStream();
+      int count = 0;
+      while (count < len) {
+        final int n = in.read(b, off + count, len - count);
+        if (n < 0) {
+          break;
+        }
+        count += n;
+      }
+      in.close();
+      success = true;
+      return count;
+    } finally {
+      if (!success) {
+        conn.disconnect();
+      }
+    }
+  }
+
   private FsPermission applyUMask(FsPermission permission) {
     if (permission == null) {
       permission = FsPermission.getDefault();
@@ -1410,6 +1518,13 @@ public synchronized void close() throws IOException {
     } catch (IOException ioe) {
       LOG.debug("Token cancel failed: ", ioe);
     } finally {
+      if (readAheadPool != null) {
+        // Fail the reads waiting for the chunks which were never fetched.
+        for (Runnable fetch : readAheadPool.shutdownNow()) {
+          ((Future<?>) fetch).cancel(false);
+        }
+        readAheadPool = null;
+      }
       super.close();
     }
   }
@@ -1451,13 +1566,24 @@ protected HttpURLConnection connect(final long offset,
 
   /** Remove offset parameter, if there is any, from the url */
   static URL removeOffsetParam(final URL url) throws MalformedURLException {
+    return removeParam(url, OFFSET_PARAM_PREFIX);
+  }
+
+  private static final String LENGTH_PARAM_PREFIX = LengthParam.NAME + "=";
+
+  /** Remove the offset and length parameters of a ranged read. */
+  static URL removeRangeParams(final URL url) throws MalformedURLException {
+    return removeParam(removeOffsetParam(url), LENGTH_PARAM_PREFIX);
+  }
+
+  private static URL removeParam(final URL url, final String prefix)
+      throws MalformedURLException {
     String query = url.getQuery();
     if (query == null) {
       return url;
     }
     final String lower = StringUtils.toLowerCase(query);
-    if (!lower.startsWith(OFFSET_PARAM_PREFIX)
-        && !lower.contains("&" + OFFSET_PARAM_PREFIX)) {
+    if (!lower.startsWith(prefix) && !lower.contains("&" + prefix)) {
       return url;
     }
 
@@ -1466,7 +1592,7 @@ static URL removeOffsetParam(final URL url) throws MalformedURLException {
     for(final StringTokenizer st = new StringTokenizer(query, "&");
         st.hasMoreTokens();) {
       final String token = st.nextToken();
-      if (!StringUtils.toLowerCase(token).startsWith(OFFSET_PARAM_PREFIX)) {
+      if (!StringUtils.toLowerCase(token).startsWith(prefix)) {
         if (b == null) {
           b = new StringBuilder("?").append(token);
         } else {
@@ -1834,15 +1960,40 @@ public void setRetryPolicy(RetryPolicy rp) {
    * This class is used for opening, reading, and seeking files while using the
    * WebHdfsFileSystem. This class will invoke the retry policy when performing
    * any of these actions.
+   *
+   * Positional reads use requests for the range read, so that they don't
+   * disturb the connection of the sequential reads. If
+   * {@link HdfsClientConfigKeys#DFS_WEBHDFS_READ_AHEAD_THREADS_KEY} is set,
+   * sequential reads are served from a window of chunks following the read
+   * position, which are fetched concurrently with ranged requests.
    */
   @VisibleForTesting
   public class WebHdfsInputStream extends FSInputStream {
     private ReadRunner readRunner = null;
+    private final ThreadPoolExecutor readAheadPool;
+    /** The chunks read ahead, by index, if sequential reads are read ahead. */
+    private final TreeMap<Long, Future<byte[]>> readAheadChunks =
+        new TreeMap<>();
+    /** The position of the sequential reads, if they are read ahead. */
+    private long readAheadPos = 0;
+    /**
+     * The length of the file for ranged reads; -1 until it is needed. It is
+     * refreshed when a read starts at or past it, as the file may have grown.
+     */
+    private volatile long rangeFileLength = -1;
+    /**
+     * The URL of the server which answered the last ranged read, without the
+     * offset and length parameters, so that the next ranged read does not
+     * need to be redirected.
+     */
+    private volatile URL rangeUrl = null;
+    private volatile boolean closed = false;
 
     WebHdfsInputStream(Path path, int buffersize) throws IOException {
       // Only create the ReadRunner once. Each read's byte array and position
       // will be updated within the ReadRunner object before every read.
       readRunner = new ReadRunner(path, buffersize);
+      readAheadPool = getReadAheadPool();
     }
 
     @Override
@@ -1853,19 +2004,205 @@ public int read() throws IOException {
 
     @Override
     public int read(byte b[], int off, int len) throws IOException {
+      if (readAheadPool != null) {
+        return readAhead(b, off, len);
+      }
       return readRunner.read(b, off, len);
     }
 
+    @Override
+    public int read(long position, byte[] b, int off, int len)
+        throws IOException {
+      validatePositionedReadArgs(position, b, off, len);
+      if (len == 0) {
+        return 0;
+      }
+      checkNotClosed();
+      final long length = getRangeFileLength(position);
+      if (position >= length) {
+        return -1;
+      }
+      final int count = readRange(position, b, off,
+          (int) Math.min(len, length - position));
+      if (count <= 0) {
+        throw new EOFException("Premature EOF: pos=" + position
+            + " < filelength=" + length);
+      }
+      statistics.incrementBytesRead(count);
+      return count;
+    }
+
     @Override
     public void seek(long newPos) throws IOException {
+      if (readAheadPool != null) {
+        if (newPos < 0) {
+          throw new EOFException("Cannot seek to a negative offset");
+        }
+        // The chunks outside of the new window are dropped by the next read.
+        readAheadPos = newPos;
+        return;
+      }
       readRunner.seek(newPos);
     }
 
     @Override
     public long getPos() throws IOException {
+      if (readAheadPool != null) {
+        return readAheadPos;
+      }
       return readRunner.getPos();
     }
 
+    private void checkNotClosed() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+    }
+
+    /**
+     * @return the length of the file, as known when reading at pos
+     */
+    private long getRangeFileLength(long pos) throws IOException {
+      long length = rangeFileLength;
+      if (length < 0) {
+        // Use the length found by the sequential reads, if they have started.
+        length = readRunner.getFileLength() > 0 ?
+            readRunner.getFileLength() : -1;
+      }
+      if (length < 0 || pos >= length) {
+        length = getHdfsFileStatus(readRunner.getPath()).getLen();
+      }
+      rangeFileLength = length;
+      return length;
+    }
+
+    /**
+     * Read from the chunk holding the read position, after making sure that
+     * the chunks of the window following it are being fetched. At most as
+     * many chunks as the pool has threads are fetched at once by a stream,
+     * so that its current chunk is not queued behind chunks far ahead.
+     */
+    private synchronized int readAhead(byte[] b, int off, int len)
+        throws IOException {
+      checkNotClosed();
+      if (len == 0) {
+        return 0;
+      }
+      final long length = getRangeFileLength(readAheadPos);
+      if (readAheadPos >= length) {
+        return -1;
+      }
+      final long index = readAheadPos / readAheadChunkSize;
+      final long end = index + readAheadWindow;
+      for (Iterator<Map.Entry<Long, Future<byte[]>>> it =
+           readAheadChunks.entrySet().iterator(); it.hasNext();) {
+        final Map.Entry<Long, Future<byte[]>> e = it.next();
+        if (e.getKey() < index || e.getKey() >= end) {
+          e.getValue().cancel(true);
+          it.remove();
+        }
+      }
+      int fetching = 0;
+      for (Future<byte[]> chunk : readAheadChunks.values()) {
+        if (!chunk.isDone()) {
+          fetching++;
+        }
+      }
+      for (long i = index; i < end && i * readAheadChunkSize < length
+          && (i == index || fetching < readAheadThreads); i++) {
+        if (!readAheadChunks.containsKey(i)) {
+          readAheadChunks.put(i, fetchChunk(i * readAheadChunkSize,
+              (int) Math.min(readAheadChunkSize,
+                  length - i * readAheadChunkSize)));
+          fetching++;
+        }
+      }
+
+      final byte[] chunk = getChunk(readAheadChunks.get(index));
+      final int chunkOffset = (int) (readAheadPos - index * readAheadChunkSize);
+      final int count = Math.min(len, chunk.length - chunkOffset);
+      if (count <= 0) {
+        throw new EOFException("Premature EOF: pos=" + readAheadPos
+            + " < filelength=" + length);
+      }
+      System.arraycopy(chunk, chunkOffset, b, off, count);
+      readAheadPos += count;
+      statistics.incrementBytesRead(count);
+      return count;
+    }
+
+    private Future<byte[]> fetchChunk(final long offset, final int size)
+        throws IOException {
+      try {
+        return readAheadPool.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws IOException {
+            final byte[] chunk = new byte[size];
+            final int count = readRange(offset, chunk, 0, size);
+            return count == size ? chunk : Arrays.copyOf(chunk, count);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        throw new IOException("Filesystem closed", e);
+      }
+    }
+
+    private byte[] getChunk(Future<byte[]> future) throws IOException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        throw DFSUtilClient.toInterruptedIOException(
+            "Interrupted while reading " + readRunner.getPath(), e);
+      } catch (CancellationException e) {
+        // The file system was closed before the chunk was fetched.
+        readAheadChunks.remove(readAheadPos / readAheadChunkSize);
+        throw new IOException("Filesystem closed", e);
+      } catch (ExecutionException e) {
+        // Fetch the chunk again on the next read.
+        readAheadChunks.remove(readAheadPos / readAheadChunkSize);
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Failed to read " + readRunner.getPath(),
+            e.getCause());
+      }
+    }
+
+    /**
+     * Read a range of the file with its own request. The request goes to the
+     * server of the previous ranged read, if any; if that fails, it is
+     * redirected again by the NameNode, with retries.
+     *
+     * @return the number of bytes read, which is less than len only if the
+     *         end of the file has been reached
+     */
+    private int readRange(final long offset, final byte[] b, final int off,
+        final int len) throws IOException {
+      final URL url = rangeUrl;
+      if (url != null) {
+        try {
+          final URL rurl = new URL(url + "&" + new OffsetParam(offset) + "&"
+              + new LengthParam((long) len));
+          return readRangeResponse(
+              new URLRunner(GetOpParam.Op.OPEN, rurl, true).run(),
+              b, off, len);
+        } catch (IOException ioe) {
+          LOG.debug("Failed to read from {}, redirecting again", url, ioe);
+          rangeUrl = null;
+        }
+      }
+      return new AbstractFsPathRunner<Integer>(GetOpParam.Op.OPEN,
+          readRunner.getPath(), new BufferSizeParam(readRunner.getBufferSize()),
+          new OffsetParam(offset), new LengthParam((long) len)) {
+        @Override
+        Integer getResponse(HttpURLConnection conn) throws IOException {
+          final int count = readRangeResponse(conn, b, off, len);
+          rangeUrl = removeRangeParams(conn.getURL());
+          return count;
+        }
+      }.run();
+    }
+
     protected int getBufferSize() throws IOException {
       return readRunner.getBufferSize();
     }
@@ -1881,6 +2218,15 @@ public boolean seekToNewSource(long targetPos) throws IOException {
 
     @Override
     public void close() throws IOException {
+      closed = true;
+      if (readAheadPool != null) {
+        synchronized (this) {
+          for (Future<byte[]> chunk : readAheadChunks.values()) {
+            chunk.cancel(true);
+          }
+          readAheadChunks.clear();
+        }
+      }
       readRunner.close();
     }
 
@@ -2130,7 +2476,17 @@ InputStream initializeInputStream(HttpURLConnection conn)
     @VisibleForTesting
     void closeInputStream(RunnerState rs) throws IOException {
       if (in != null) {
-        IOUtils.close(cachedConnection);
+        if (runnerState == RunnerState.OPEN && pos >= fileLength) {
+          // The whole response has been read, so closing the stream without
+          // disconnecting lets the connection be reused.
+          try {
+            in.close();
+          } catch (IOException e) {
+            IOUtils.close(cachedConnection);
+          }
+        } else {
+          IOUtils.close(cachedConnection);
+        }
         in = null;
       }
       cachedConnection = null;
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo.DatanodeInfoBuilder;
+import org.junit.Test;
+
+public class TestDatanodeLatencyTracker {
+  private static DatanodeInfo newDatanode(int port) {
+    return new DatanodeInfoBuilder().setNodeID(new DatanodeID("127.0.0.1",
+        "localhost", "dn-" + port, port, port + 1, port + 2, port + 3))
+        .build();
+  }
+
+  @Test
+  public void testPercentiles() {
+    DatanodeLatencyTracker tracker = new DatanodeLatencyTracker(100, 95);
+    DatanodeInfo dn1 = newDatanode(1000);
+    DatanodeInfo dn2 = newDatanode(2000);
+
+    // Too few samples.
+    assertEquals(-1, tracker.getPercentileMicros(dn1));
+    for (int i = 1; i < DatanodeLatencyTracker.MIN_SAMPLES; i++) {
+      tracker.addSample(dn1, i, TimeUnit.MILLISECONDS);
+    }
+    assertEquals(-1, tracker.getPercentileMicros(dn1));
+    assertEquals(-1, tracker.getMaxMicros(dn1));
+
+    for (int i = DatanodeLatencyTracker.MIN_SAMPLES; i <= 100; i++) {
+      tracker.addSample(dn1, i, TimeUnit.MILLISECONDS);
+    }
+    assertEquals(95000, tracker.getPercentileMicros(dn1));
+    assertEquals(100000, tracker.getMaxMicros(dn1));
+    assertEquals(-1, tracker.getPercentileMicros(dn2));
+    assertEquals(1, tracker.size());
+
+    // The oldest samples are replaced.
+    for (int i = 0; i < 100; i++) {
+      tracker.addSample(dn1, 10, TimeUnit.MICROSECONDS);
+    }
+    assertEquals(10, tracker.getPercentileMicros(dn1));
+    assertEquals(10, tracker.getMaxMicros(dn1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWindowTooSmall() {
+    new DatanodeLatencyTracker(DatanodeLatencyTracker.MIN_SAMPLES - 1, 95);
+  }
+}
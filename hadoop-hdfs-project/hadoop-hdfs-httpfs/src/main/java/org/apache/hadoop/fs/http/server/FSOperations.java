@@ -28,6 +28,7 @@
 import org.apache.hadoop.fs.GlobFilter;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.XAttrCodec;
 import org.apache.hadoop.fs.XAttrSetFlag;
@@ -43,10 +44,14 @@
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import javax.ws.rs.core.StreamingOutput;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.LinkedHashMap;
@@ -344,7 +349,8 @@ public FSAppend(InputStream is, String path) {
     public Void execute(FileSystem fs) throws IOException {
       int bufferSize = fs.getConf().getInt("httpfs.buffer.size", 4096);
       OutputStream os = fs.append(path, bufferSize);
-      IOUtils.copyBytes(is, os, bufferSize, true);
+      IOUtils.copyBytes(is, os,
+          HttpFSServerWebApp.get().getTransferBufferSize(), true);
       os.close();
       return null;
     }
@@ -520,7 +526,8 @@ public Void execute(FileSystem fs) throws IOException {
       int bufferSize = fs.getConf().getInt(HTTPFS_BUFFER_SIZE_KEY,
           HTTP_BUFFER_SIZE_DEFAULT);
       OutputStream os = fs.create(path, fsPermission, override, bufferSize, replication, blockSize, null);
-      IOUtils.copyBytes(is, os, bufferSize, true);
+      IOUtils.copyBytes(is, os,
+          HttpFSServerWebApp.get().getTransferBufferSize(), true);
       os.close();
       return null;
     }
@@ -703,6 +710,96 @@ public boolean accept(Path path) {
 
   }
 
+  /**
+   * Executor that performs a file-system list-status operation whose JSON
+   * response is written while the directory is being listed.
+   * <p>
+   * The response has the same content as the {@link FSListStatus} one, but
+   * the entries are fetched with {@link FileSystem#listStatusIterator}, so
+   * only a partial listing is kept in memory at a time. The filesystem must
+   * stay open until the returned entity has been written.
+   */
+  @InterfaceAudience.Private
+  public static class FSListStatusStream implements
+      FileSystemAccess.FileSystemExecutor<StreamingOutput>, PathFilter {
+    private static final String ENTER = System.getProperty("line.separator");
+
+    private Path path;
+    private PathFilter filter;
+
+    /**
+     * Creates a streaming list-status executor.
+     *
+     * @param path the directory/file to retrieve the status of its contents.
+     * @param filter glob filter to use.
+     *
+     * @throws IOException thrown if the filter expression is incorrect.
+     */
+    public FSListStatusStream(String path, String filter) throws IOException {
+      this.path = new Path(path);
+      this.filter = (filter == null) ? this : new GlobFilter(filter);
+    }
+
+    /**
+     * Starts listing the directory. Errors raised by the first partial
+     * listing are thrown here, before any of the response has been written.
+     *
+     * @param fs filesystem instance to use.
+     *
+     * @return the entity writing the JSON response.
+     *
+     * @throws IOException thrown if an IO error occurred.
+     */
+    @Override
+    public StreamingOutput execute(FileSystem fs) throws IOException {
+      final FileStatus status = fs.getFileStatus(path);
+      if (status.isFile()) {
+        final Map json = toJson(fs.listStatus(path, filter), true);
+        return new StreamingOutput() {
+          @Override
+          public void write(OutputStream os) throws IOException {
+            Writer writer =
+                new OutputStreamWriter(os, StandardCharsets.UTF_8);
+            JSONObject.writeJSONString(json, writer);
+            writer.write(ENTER);
+            writer.flush();
+          }
+        };
+      }
+      final RemoteIterator<FileStatus> statuses = fs.listStatusIterator(path);
+      statuses.hasNext();
+      return new StreamingOutput() {
+        @Override
+        public void write(OutputStream os) throws IOException {
+          Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+          writer.write("{\"" + HttpFSFileSystem.FILE_STATUSES_JSON + "\":{\""
+              + HttpFSFileSystem.FILE_STATUS_JSON + "\":[");
+          boolean first = true;
+          while (statuses.hasNext()) {
+            FileStatus f = statuses.next();
+            if (!filter.accept(f.getPath())) {
+              continue;
+            }
+            if (!first) {
+              writer.write(',');
+            }
+            first = false;
+            JSONObject.writeJSONString(toJsonInner(f, false), writer);
+          }
+          writer.write("]}}");
+          writer.write(ENTER);
+          writer.flush();
+        }
+      };
+    }
+
+    @Override
+    public boolean accept(Path path) {
+      return true;
+    }
+
+  }
+
   /**
    * Executor that performs a batched directory listing.
    */
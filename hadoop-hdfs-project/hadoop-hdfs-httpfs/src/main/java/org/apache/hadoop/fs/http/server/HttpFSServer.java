@@ -19,6 +19,7 @@
 package org.apache.hadoop.fs.http.server;
 
 import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -80,10 +81,12 @@
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.security.AccessControlException;
 import java.security.PrivilegedExceptionAction;
@@ -150,6 +153,56 @@ private FileSystem createFileSystem(UserGroupInformation ugi)
     return fs;
   }
 
+  /**
+   * Executes a {@link FileSystemAccess.FileSystemExecutor} using a filesystem
+   * for the effective user that stays open until the completion of the
+   * current Servlet request, for executors returning an entity that still
+   * uses the filesystem while the response is written.
+   *
+   * @param user user making the request.
+   * @param executor FileSystemExecutor to execute.
+   *
+   * @return FileSystemExecutor response
+   *
+   * @throws IOException thrown if an IO error occurs.
+   * @throws FileSystemAccessException thrown if a FileSystemAccess releated
+   * error occurred. Thrown exceptions are handled by
+   * {@link HttpFSExceptionProvider}.
+   */
+  private <T> T fsExecuteUnmanaged(UserGroupInformation user,
+      final FileSystemAccess.FileSystemExecutor<T> executor)
+      throws IOException, FileSystemAccessException {
+    final FileSystem fs = createFileSystem(user);
+    UserGroupInformation ugi = UserGroupInformation
+        .createProxyUser(user.getShortUserName(),
+            UserGroupInformation.getLoginUser());
+    try {
+      return ugi.doAs(new PrivilegedExceptionAction<T>() {
+        @Override
+        public T run() throws Exception {
+          return executor.execute(fs);
+        }
+      });
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while executing "
+          + executor.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Drops the cached GETFILESTATUS responses once a request may have
+   * modified the filesystem. Renames and recursive deletes change the status
+   * of other paths than the one of the request, so the whole cache is
+   * cleared.
+   */
+  private void invalidateFileStatusCache() {
+    Cache<String, Map> cache = HttpFSServerWebApp.get().getFileStatusCache();
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
   private void enforceRootPath(HttpFSFileSystem.Operation op, String path) {
     if (!path.equals("/")) {
       throw new UnsupportedOperationException(
@@ -239,20 +292,40 @@ public InputStream run() throws Exception {
       Long len = params.get(LenParam.NAME, LenParam.class);
       AUDIT_LOG.info("[{}] offset [{}] len [{}]",
           new Object[] { path, offset, len });
-      InputStreamEntity entity = new InputStreamEntity(is, offset, len);
+      InputStreamEntity entity = new InputStreamEntity(is, offset, len,
+          HttpFSServerWebApp.get().getTransferBufferSize());
       response =
           Response.ok(entity).type(MediaType.APPLICATION_OCTET_STREAM).build();
       break;
     }
     case GETFILESTATUS: {
-      FSOperations.FSFileStatus command = new FSOperations.FSFileStatus(path);
-      Map json = fsExecute(user, command);
+      Cache<String, Map> cache = HttpFSServerWebApp.get().getFileStatusCache();
+      String cacheKey = user.getShortUserName() + ":" + path;
+      Map json = (cache != null) ? cache.getIfPresent(cacheKey) : null;
+      if (json == null) {
+        FSOperations.FSFileStatus command =
+            new FSOperations.FSFileStatus(path);
+        json = fsExecute(user, command);
+        if (cache != null) {
+          cache.put(cacheKey, json);
+        }
+      }
       AUDIT_LOG.info("[{}]", path);
       response = Response.ok(json).type(MediaType.APPLICATION_JSON).build();
       break;
     }
     case LISTSTATUS: {
       String filter = params.get(FilterParam.NAME, FilterParam.class);
+      if (HttpFSServerWebApp.get().isListStatusStreaming()) {
+        FSOperations.FSListStatusStream command =
+            new FSOperations.FSListStatusStream(path, filter);
+        StreamingOutput entity = fsExecuteUnmanaged(user, command);
+        AUDIT_LOG.info("[{}] filter [{}]", path,
+            (filter != null) ? filter : "-");
+        response =
+            Response.ok(entity).type(MediaType.APPLICATION_JSON).build();
+        break;
+      }
       FSOperations.FSListStatus command =
           new FSOperations.FSListStatus(path, filter);
       Map json = fsExecute(user, command);
@@ -448,6 +521,7 @@ public Response delete(@PathParam("path") String path,
                                op.value()));
       }
     }
+    invalidateFileStatusCache();
     return response;
   }
 
@@ -535,6 +609,7 @@ public Response post(InputStream is,
                                op.value()));
       }
     }
+    invalidateFileStatusCache();
     return response;
   }
 
@@ -786,6 +861,7 @@ public Response put(InputStream is,
                                op.value()));
       }
     }
+    invalidateFileStatusCache();
     return response;
   }
 
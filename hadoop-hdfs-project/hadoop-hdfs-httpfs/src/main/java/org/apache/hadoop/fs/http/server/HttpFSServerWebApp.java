@@ -27,7 +27,12 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Bootstrap class that manages the initialization and destruction of the
@@ -55,9 +60,36 @@ public class HttpFSServerWebApp extends ServerWebApp {
    */
   public static final String CONF_ADMIN_GROUP = "admin.group";
 
+  /**
+   * Configuration property that enables streaming LISTSTATUS responses.
+   */
+  public static final String CONF_LISTSTATUS_STREAMING = "liststatus.streaming";
+
+  /**
+   * Configuration property that defines the buffer size used to copy data
+   * between the HTTP requests and HDFS.
+   */
+  public static final String CONF_TRANSFER_BUFFER_SIZE = "transfer.buffer.size";
+
+  /**
+   * Configuration property that defines how long, in milliseconds, a
+   * GETFILESTATUS response is cached. 0 disables the cache.
+   */
+  public static final String CONF_FILESTATUS_CACHE_TTL = "filestatus.cache.ttl";
+
+  /**
+   * Configuration property that defines the maximum number of cached
+   * GETFILESTATUS responses.
+   */
+  public static final String CONF_FILESTATUS_CACHE_MAX_ENTRIES =
+      "filestatus.cache.max.entries";
+
   private static HttpFSServerWebApp SERVER;
 
   private String adminGroup;
+  private boolean listStatusStreaming;
+  private int transferBufferSize;
+  private Cache<String, Map> fileStatusCache;
 
   /**
    * Default constructor.
@@ -99,6 +131,20 @@ public void init() throws ServerException {
     SERVER = this;
     super.init();
     adminGroup = getConfig().get(getPrefixedName(CONF_ADMIN_GROUP), "admin");
+    listStatusStreaming = getConfig().getBoolean(
+        getPrefixedName(CONF_LISTSTATUS_STREAMING), false);
+    transferBufferSize = getConfig().getInt(
+        getPrefixedName(CONF_TRANSFER_BUFFER_SIZE), 64 * 1024);
+    long fileStatusCacheTtl = getConfig().getLong(
+        getPrefixedName(CONF_FILESTATUS_CACHE_TTL), 0);
+    if (fileStatusCacheTtl > 0) {
+      fileStatusCache = CacheBuilder.newBuilder()
+          .expireAfterWrite(fileStatusCacheTtl, TimeUnit.MILLISECONDS)
+          .maximumSize(getConfig().getLong(
+              getPrefixedName(CONF_FILESTATUS_CACHE_MAX_ENTRIES), 10000))
+          .build();
+      LOG.info("Caching file statuses for [{}] ms", fileStatusCacheTtl);
+    }
     LOG.info("Connects to Namenode [{}]",
              get().get(FileSystemAccess.class).getFileSystemConfiguration().
                get(CommonConfigurationKeysPublic.FS_DEFAULT_NAME_KEY));
@@ -132,4 +178,33 @@ public String getAdminGroup() {
     return adminGroup;
   }
 
+  /**
+   * Returns if LISTSTATUS responses are streamed while the directory is
+   * listed.
+   *
+   * @return if LISTSTATUS responses are streamed.
+   */
+  public boolean isListStatusStreaming() {
+    return listStatusStreaming;
+  }
+
+  /**
+   * Returns the buffer size used to copy data between the HTTP requests and
+   * HDFS.
+   *
+   * @return the transfer buffer size.
+   */
+  public int getTransferBufferSize() {
+    return transferBufferSize;
+  }
+
+  /**
+   * Returns the cache of GETFILESTATUS responses, keyed by user and path.
+   *
+   * @return the file status cache, or <code>null</code> if it is disabled.
+   */
+  public Cache<String, Map> getFileStatusCache() {
+    return fileStatusCache;
+  }
+
 }
@@ -31,11 +31,18 @@ public class InputStreamEntity implements StreamingOutput {
   private InputStream is;
   private long offset;
   private long len;
+  private int bufferSize;
 
-  public InputStreamEntity(InputStream is, long offset, long len) {
+  public InputStreamEntity(InputStream is, long offset, long len,
+      int bufferSize) {
     this.is = is;
     this.offset = offset;
     this.len = len;
+    this.bufferSize = bufferSize;
+  }
+
+  public InputStreamEntity(InputStream is, long offset, long len) {
+    this(is, offset, len, 4096);
   }
 
   public InputStreamEntity(InputStream is) {
@@ -46,9 +53,28 @@ public InputStreamEntity(InputStream is) {
   public void write(OutputStream os) throws IOException {
     IOUtils.skipFully(is, offset);
     if (len == -1) {
-      IOUtils.copyBytes(is, os, 4096, true);
-    } else {
-      IOUtils.copyBytes(is, os, len, true);
+      IOUtils.copyBytes(is, os, bufferSize, true);
+      return;
+    }
+    InputStream in = is;
+    try {
+      byte[] buf = new byte[bufferSize];
+      long remaining = len;
+      while (remaining > 0) {
+        int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+        if (n == -1) {
+          break;
+        }
+        os.write(buf, 0, n);
+        remaining -= n;
+      }
+      os.close();
+      os = null;
+      in.close();
+      in = null;
+    } finally {
+      IOUtils.closeStream(os);
+      IOUtils.closeStream(in);
     }
   }
 }
@@ -45,9 +45,11 @@
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.XAttrCodec;
+import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.web.WebHdfsConstants;
 import org.apache.hadoop.lib.server.Service;
 import org.apache.hadoop.lib.server.ServiceException;
@@ -137,6 +139,14 @@ public List<String> getGroups(String user) throws IOException {
 
   private Configuration createHttpFSConf(boolean addDelegationTokenAuthHandler,
                                          boolean sslEnabled) throws Exception {
+    return createHttpFSConf(addDelegationTokenAuthHandler, sslEnabled,
+        new Configuration(false));
+  }
+
+  private Configuration createHttpFSConf(boolean addDelegationTokenAuthHandler,
+                                         boolean sslEnabled,
+                                         Configuration httpfsConf)
+      throws Exception {
     File homeDir = TestDirHelper.getTestDir();
     Assert.assertTrue(new File(homeDir, "conf").mkdir());
     Assert.assertTrue(new File(homeDir, "log").mkdir());
@@ -163,7 +173,7 @@ private Configuration createHttpFSConf(boolean addDelegationTokenAuthHandler,
     os.close();
 
     // HTTPFS configuration
-    conf = new Configuration(false);
+    conf = new Configuration(httpfsConf);
     if (addDelegationTokenAuthHandler) {
       conf.set("httpfs.authentication.type",
                HttpFSKerberosAuthenticationHandlerForTesting.class.getName());
@@ -193,8 +203,16 @@ private Configuration createHttpFSConf(boolean addDelegationTokenAuthHandler,
   private void createHttpFSServer(boolean addDelegationTokenAuthHandler,
                                   boolean sslEnabled)
       throws Exception {
+    createHttpFSServer(addDelegationTokenAuthHandler, sslEnabled,
+        new Configuration(false));
+  }
+
+  private void createHttpFSServer(boolean addDelegationTokenAuthHandler,
+                                  boolean sslEnabled,
+                                  Configuration httpfsConf)
+      throws Exception {
     Configuration conf = createHttpFSConf(addDelegationTokenAuthHandler,
-                                          sslEnabled);
+                                          sslEnabled, httpfsConf);
     ClassLoader cl = Thread.currentThread().getContextClassLoader();
     URL url = cl.getResource("webapp");
     WebAppContext context = new WebAppContext(url.getPath(), "/webhdfs");
@@ -837,6 +855,95 @@ public void testOpenOffsetLength() throws Exception {
     Assert.assertEquals(-1, is.read());
   }
 
+  @Test
+  @TestDir
+  @TestJetty
+  @TestHdfs
+  public void testListStatusStreaming() throws Exception {
+    Configuration httpfsConf = new Configuration(false);
+    httpfsConf.setBoolean("httpfs.liststatus.streaming", true);
+    createHttpFSServer(false, false, httpfsConf);
+
+    FileSystem fs = FileSystem.get(TestHdfsHelper.getHdfsConf());
+    fs.mkdirs(new Path("/stream"));
+    for (int i = 0; i < 10; i++) {
+      fs.create(new Path("/stream/file" + i)).close();
+    }
+    fs.mkdirs(new Path("/stream/dir"));
+
+    JSONParser parser = new JSONParser();
+    JSONObject json = (JSONObject) parser.parse(
+        getStatus("/stream", "LISTSTATUS"));
+    JSONArray statuses = (JSONArray) ((JSONObject) json.get("FileStatuses"))
+        .get("FileStatus");
+    Assert.assertEquals(11, statuses.size());
+    Assert.assertEquals("dir",
+        ((JSONObject) statuses.get(0)).get("pathSuffix"));
+    Assert.assertEquals("DIRECTORY",
+        ((JSONObject) statuses.get(0)).get("type"));
+    Assert.assertEquals("file0",
+        ((JSONObject) statuses.get(1)).get("pathSuffix"));
+    // The streamed entries are those of the listing, in the same order.
+    FileStatus[] expected = fs.listStatus(new Path("/stream"));
+    for (int i = 0; i < expected.length; i++) {
+      JSONObject status = (JSONObject) statuses.get(i);
+      Assert.assertEquals(expected[i].getPath().getName(),
+          status.get("pathSuffix"));
+      Assert.assertEquals(expected[i].getLen(), status.get("length"));
+      Assert.assertEquals(expected[i].getModificationTime(),
+          status.get("modificationTime"));
+    }
+
+    // The filter is applied while streaming.
+    json = (JSONObject) parser.parse(
+        getStatus("/stream", "LISTSTATUS&filter=file*"));
+    statuses = (JSONArray) ((JSONObject) json.get("FileStatuses"))
+        .get("FileStatus");
+    Assert.assertEquals(10, statuses.size());
+
+    // Listing a file returns the file with an empty suffix.
+    json = (JSONObject) parser.parse(
+        getStatus("/stream/file0", "LISTSTATUS"));
+    statuses = (JSONArray) ((JSONObject) json.get("FileStatuses"))
+        .get("FileStatus");
+    Assert.assertEquals(1, statuses.size());
+    Assert.assertEquals("", ((JSONObject) statuses.get(0)).get("pathSuffix"));
+
+    // Errors are still reported before the response is sent.
+    String user = HadoopUsersConfTestHelper.getHadoopUsers()[0];
+    URL url = new URL(TestJettyHelper.getJettyURL(), MessageFormat.format(
+        "/webhdfs/v1/stream/missing?user.name={0}&op=LISTSTATUS", user));
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    Assert.assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+        conn.getResponseCode());
+  }
+
+  @Test
+  @TestDir
+  @TestJetty
+  @TestHdfs
+  public void testFileStatusCache() throws Exception {
+    Configuration httpfsConf = new Configuration(false);
+    httpfsConf.setLong("httpfs.filestatus.cache.ttl", 600000);
+    createHttpFSServer(false, false, httpfsConf);
+
+    FileSystem fs = FileSystem.get(TestHdfsHelper.getHdfsConf());
+    fs.mkdirs(new Path("/cache"));
+    createWithHttp("/cache/file", "700");
+    Assert.assertEquals("700",
+        getPerms(getStatus("/cache/file", "GETFILESTATUS")));
+
+    // Changes made directly to HDFS are not seen until the entry expires.
+    fs.setPermission(new Path("/cache/file"), new FsPermission((short) 0750));
+    Assert.assertEquals("700",
+        getPerms(getStatus("/cache/file", "GETFILESTATUS")));
+
+    // Changes made through HttpFS clear the cache.
+    putCmd("/cache/file", "SETPERMISSION", "permission=755");
+    Assert.assertEquals("755",
+        getPerms(getStatus("/cache/file", "GETFILESTATUS")));
+  }
+
   @Test
   @TestDir
   @TestJetty
@@ -60,6 +60,26 @@ public class NfsConfigKeys {
   
   public final static String LARGE_FILE_UPLOAD = "nfs.large.file.upload";
   public final static boolean LARGE_FILE_UPLOAD_DEFAULT = true;
+
+  /*
+   * The maximum number of bytes of out-of-order writes buffered in memory for
+   * a file. Beyond that, further out-of-order writes to the file are answered
+   * with NFS3ERR_JUKEBOX, so that the client retries them once the sequential
+   * writes have caught up, instead of being dumped to local disk. 0 keeps
+   * dumping the out-of-order writes to "nfs.dump.dir".
+   */
+  public static final String DFS_NFS_WRITE_REORDER_BUFFER_SIZE_KEY =
+      "nfs.write.reorder.buffer.size";
+  public static final long DFS_NFS_WRITE_REORDER_BUFFER_SIZE_DEFAULT = 0;
+
+  /*
+   * Whether the COMMITs waiting for the write back of a file are answered by
+   * a separate task as soon as the data has been hflushed to the DataNodes,
+   * instead of by the write back thread after an hsync which also updates the
+   * file length on the NameNode.
+   */
+  public static final String DFS_NFS_COMMIT_ASYNC_KEY = "nfs.commit.async";
+  public static final boolean DFS_NFS_COMMIT_ASYNC_DEFAULT = false;
   
   public static final String NFS_HTTP_PORT_KEY = "nfs.http.port";
   public static final int NFS_HTTP_PORT_DEFAULT = 50079;
@@ -182,6 +182,17 @@ public String toString() {
   private final String dumpFilePath;
   private Daemon dumpThread;
   private final boolean uploadLargeFile;
+
+  /**
+   * The maximum size of the out-of-order writes kept in memory, or 0 to dump
+   * them to a local file instead.
+   */
+  private final long reorderBufferSize;
+  /** Answer the waiting commits in a separate task once hflushed. */
+  private final boolean asyncCommit;
+  private volatile AsyncDataService asyncDataService;
+  /** Whether a task is answering the waiting commits. */
+  private boolean commitTaskRunning = false;
   
   private void updateLastAccessTime() {
     lastAccessTime = Time.monotonicNow();
@@ -259,6 +270,15 @@ private long updateNonSequentialWriteInMemory(long count) {
     this.iug = iug;
     this.uploadLargeFile = config.getBoolean(NfsConfigKeys.LARGE_FILE_UPLOAD,
         NfsConfigKeys.LARGE_FILE_UPLOAD_DEFAULT);
+    this.reorderBufferSize = config.getLong(
+        NfsConfigKeys.DFS_NFS_WRITE_REORDER_BUFFER_SIZE_KEY,
+        NfsConfigKeys.DFS_NFS_WRITE_REORDER_BUFFER_SIZE_DEFAULT);
+    if (reorderBufferSize > 0) {
+      // The out-of-order writes are bounded by the reorder buffer instead
+      enabledDump = false;
+    }
+    this.asyncCommit = config.getBoolean(NfsConfigKeys.DFS_NFS_COMMIT_ASYNC_KEY,
+        NfsConfigKeys.DFS_NFS_COMMIT_ASYNC_DEFAULT);
   }
 
   public Nfs3FileAttributes getLatestAttr() {
@@ -439,6 +459,7 @@ private WriteCtx checkRepeatedWriteRequest(WRITE3Request request,
   public void receivedNewWrite(DFSClient dfsClient, WRITE3Request request,
       Channel channel, int xid, AsyncDataService asyncDataService,
       IdMappingServiceProvider iug) {
+    this.asyncDataService = asyncDataService;
     
     if (!activeState) {
       LOG.info("OpenFileCtx is inactive, fileId: "
@@ -670,6 +691,18 @@ private synchronized boolean checkAndStartWrite(
     }
   }
 
+  /**
+   * @return true if the write is out of order and does not fit in the reorder
+   *         buffer. A single write always fits in an empty buffer.
+   */
+  private synchronized boolean isReorderBufferFull(WRITE3Request request) {
+    if (reorderBufferSize <= 0 || request.getOffset() <= nextOffset.get()) {
+      return false;
+    }
+    long inMemory = nonSequentialWriteInMemory.get();
+    return inMemory > 0 && inMemory + request.getCount() > reorderBufferSize;
+  }
+
   private void receivedNewWriteInternal(DFSClient dfsClient,
       WRITE3Request request, Channel channel, int xid,
       AsyncDataService asyncDataService, IdMappingServiceProvider iug) {
@@ -677,8 +710,27 @@ private void receivedNewWriteInternal(DFSClient dfsClient,
     WccAttr preOpAttr = latestAttr.getWccAttr();
     int count = request.getCount();
 
-    WriteCtx writeCtx = addWritesToCache(request, channel, xid);
-    if (writeCtx == null) {
+    final WriteCtx writeCtx;
+    final boolean reorderBufferFull;
+    synchronized (this) {
+      reorderBufferFull = isReorderBufferFull(request);
+      writeCtx = reorderBufferFull ? null
+          : addWritesToCache(request, channel, xid);
+    }
+    if (reorderBufferFull) {
+      // Let the client retry the write once the sequential writes have
+      // drained the reorder buffer.
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Reorder buffer is full, ask the client to retry the write"
+            + " at offset " + request.getOffset() + " later, fileId: "
+            + request.getHandle().getFileId());
+      }
+      WccData fileWcc = new WccData(preOpAttr, latestAttr);
+      WRITE3Response response = new WRITE3Response(Nfs3Status.NFS3ERR_JUKEBOX,
+          fileWcc, 0, stableHow, Nfs3Constant.WRITE_COMMIT_VERF);
+      Nfs3Utils.writeChannel(channel,
+          response.serialize(new XDR(), xid, new VerifierNone()), xid);
+    } else if (writeCtx == null) {
       // offset < nextOffset
       processOverWrite(dfsClient, request, channel, xid, iug);
     } else {
@@ -817,8 +869,7 @@ public COMMIT_STATUS checkCommit(DFSClient dfsClient, long commitOffset,
     if (ret == COMMIT_STATUS.COMMIT_DO_SYNC
         || ret == COMMIT_STATUS.COMMIT_FINISHED) {
       try {
-        // Sync file data and length
-        fos.hsync(EnumSet.of(SyncFlag.UPDATE_LENGTH));
+        syncForCommit();
         ret = COMMIT_STATUS.COMMIT_FINISHED; // Remove COMMIT_DO_SYNC status 
         // Nothing to do for metadata since attr related change is pass-through
       } catch (ClosedChannelException cce) {
@@ -1017,8 +1068,8 @@ private synchronized WriteCtx offerNextToWrite() {
       // last doSingleWrite. Due to the race, the commit is left along and
       // can't be processed until cleanup. Therefore, we should do another
       // processCommits to fix the race issue.
-      processCommits(nextOffset.get()); // nextOffset has same value as
-                                        // flushedOffset
+      handleCommits(nextOffset.get()); // nextOffset has same value as
+                                       // flushedOffset
       this.asyncStatus = false;
       return null;
     } 
@@ -1037,7 +1088,7 @@ private synchronized WriteCtx offerNextToWrite() {
       if (LOG.isDebugEnabled()) {
         LOG.debug("The next sequential write has not arrived yet");
       }
-      processCommits(nextOffset.get()); // handle race
+      handleCommits(nextOffset.get()); // handle race
       this.asyncStatus = false;
     } else if (range.getMax() <= offset) {
       if (LOG.isDebugEnabled()) {
@@ -1075,7 +1126,14 @@ private synchronized WriteCtx offerNextToWrite() {
     return null;
   }
   
-  /** Invoked by AsyncDataService to write back to HDFS */
+  /**
+   * Invoked by AsyncDataService to write back to HDFS. The pending writes
+   * that are sequential from nextOffset are written in one pass. Adjacent
+   * writes are not merged into a larger buffer first: the DFSOutputStream
+   * already packs them into the same packets, so merging would only add a
+   * copy. What is coalesced is the per-run work, as the waiting commits are
+   * handled once the whole run has been written.
+   */
   void executeWriteBack() {
     Preconditions.checkState(asyncStatus,
         "openFileCtx has false asyncStatus, fileId: " + latestAttr.getFileId());
@@ -1113,6 +1171,73 @@ void executeWriteBack() {
     }
   }
 
+  /**
+   * @return true if the next pending write can be written right away
+   */
+  private synchronized boolean hasNextToWrite() {
+    Entry<OffsetRange, WriteCtx> lastEntry = pendingWrites.lastEntry();
+    return lastEntry != null
+        && lastEntry.getKey().getMin() <= nextOffset.get();
+  }
+
+  /**
+   * Make the data written so far durable for a commit: hflush it to the
+   * DataNodes with {@link NfsConfigKeys#DFS_NFS_COMMIT_ASYNC_KEY}, otherwise
+   * hsync it and update the file length.
+   */
+  private void syncForCommit() throws IOException {
+    if (asyncCommit) {
+      fos.hflush();
+    } else {
+      // Sync file data and length
+      fos.hsync(EnumSet.of(SyncFlag.UPDATE_LENGTH));
+    }
+  }
+
+  /**
+   * Answer the waiting commits covered by the data written so far. With
+   * {@link NfsConfigKeys#DFS_NFS_COMMIT_ASYNC_KEY}, they are answered by a
+   * separate task so that the write back does not wait for the flush.
+   */
+  private void handleCommits(long offset) {
+    final AsyncDataService service = asyncDataService;
+    if (!asyncCommit || service == null) {
+      processCommits(offset);
+      return;
+    }
+    synchronized (this) {
+      Entry<Long, CommitCtx> entry = pendingCommits.firstEntry();
+      if (commitTaskRunning || entry == null
+          || entry.getValue().offset > getFlushedOffset()) {
+        return;
+      }
+      commitTaskRunning = true;
+    }
+    try {
+      service.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            processCommits(getFlushedOffset());
+          } finally {
+            synchronized (OpenFileCtx.this) {
+              commitTaskRunning = false;
+            }
+          }
+          // Answer the commits which became ready in the meantime
+          handleCommits(getFlushedOffset());
+        }
+      });
+    } catch (RuntimeException e) {
+      LOG.warn("Can't schedule the commits of fileId: "
+          + latestAttr.getFileId() + ", process them now", e);
+      synchronized (this) {
+        commitTaskRunning = false;
+      }
+      processCommits(offset);
+    }
+  }
+
   private void processCommits(long offset) {
     Preconditions.checkState(offset > 0);
     long flushedOffset = getFlushedOffset();
@@ -1125,8 +1250,7 @@ private void processCommits(long offset) {
     // Now do sync for the ready commits
     int status = Nfs3Status.NFS3ERR_IO;
     try {
-      // Sync file data and length
-      fos.hsync(EnumSet.of(SyncFlag.UPDATE_LENGTH));
+      syncForCommit();
       status = Nfs3Status.NFS3_OK;
     } catch (ClosedChannelException cce) {
       if (!pendingWrites.isEmpty()) {
@@ -1142,8 +1266,14 @@ private void processCommits(long offset) {
 
     // Update latestAttr
     try {
-      latestAttr = Nfs3Utils.getFileAttr(client,
+      Nfs3FileAttributes attr = Nfs3Utils.getFileAttr(client,
           Nfs3Utils.getFileIdPath(latestAttr.getFileId()), iug);
+      if (asyncCommit && attr != null) {
+        // The length on the NameNode is not updated by hflush
+        attr.setSize(offset);
+        attr.setUsed(offset);
+      }
+      latestAttr = attr;
     } catch (IOException e) {
       LOG.error("Can't get new file attr, fileId: " + latestAttr.getFileId(), e);
       status = Nfs3Status.NFS3ERR_IO;
@@ -1253,8 +1383,11 @@ private void doSingleWrite(final WriteCtx writeCtx) {
             new XDR(), xid, new VerifierNone()), xid);
       }
       
-      // Handle the waiting commits without holding any lock
-      processCommits(writeCtx.getOffset() + writeCtx.getCount());
+      // Handle the waiting commits without holding any lock, once the run of
+      // sequential writes has been written
+      if (!hasNextToWrite()) {
+        handleCommits(writeCtx.getOffset() + writeCtx.getCount());
+      }
      
     } catch (IOException e) {
       LOG.error("Error writing to fileId " + handle.getFileId() + " at offset "
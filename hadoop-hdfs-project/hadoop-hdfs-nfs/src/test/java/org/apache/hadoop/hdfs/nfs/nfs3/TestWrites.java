@@ -41,6 +41,7 @@
 import org.apache.hadoop.nfs.nfs3.Nfs3Constant.WriteStableHow;
 import org.apache.hadoop.nfs.nfs3.Nfs3FileAttributes;
 import org.apache.hadoop.nfs.nfs3.Nfs3Status;
+import org.apache.hadoop.nfs.nfs3.request.COMMIT3Request;
 import org.apache.hadoop.nfs.nfs3.request.CREATE3Request;
 import org.apache.hadoop.nfs.nfs3.request.READ3Request;
 import org.apache.hadoop.nfs.nfs3.request.SetAttr3;
@@ -641,6 +642,184 @@ securityHandler, new InetSocketAddress("localhost", config.getInt(
     }
   }
 
+  @Test
+  public void testReorderBufferBackpressure() throws IOException {
+    DFSClient dfsClient = Mockito.mock(DFSClient.class);
+    Nfs3FileAttributes attr = new Nfs3FileAttributes();
+    HdfsDataOutputStream fos = Mockito.mock(HdfsDataOutputStream.class);
+    Mockito.when(fos.getPos()).thenReturn((long) 0);
+    NfsConfiguration config = new NfsConfiguration();
+
+    config.setLong(NfsConfigKeys.DFS_NFS_WRITE_REORDER_BUFFER_SIZE_KEY, 10);
+    ShellBasedIdMapping iug = new ShellBasedIdMapping(config);
+    OpenFileCtx ctx = new OpenFileCtx(fos, attr, "/dumpFilePath", dfsClient,
+        iug, false, config);
+    FileHandle h = new FileHandle(1); // fake handle for "/dumpFilePath"
+    Channel ch = Mockito.mock(Channel.class);
+    AsyncDataService asyncDataService = new AsyncDataService();
+
+    try {
+      ctx.receivedNewWrite(dfsClient, new WRITE3Request(h, 10, 5,
+          WriteStableHow.UNSTABLE, ByteBuffer.wrap(new byte[5])), ch, 1,
+          asyncDataService, iug);
+      // Does not fit in the reorder buffer, the client has to retry
+      ctx.receivedNewWrite(dfsClient, new WRITE3Request(h, 20, 8,
+          WriteStableHow.UNSTABLE, ByteBuffer.wrap(new byte[8])), ch, 2,
+          asyncDataService, iug);
+      ctx.receivedNewWrite(dfsClient, new WRITE3Request(h, 30, 5,
+          WriteStableHow.UNSTABLE, ByteBuffer.wrap(new byte[5])), ch, 3,
+          asyncDataService, iug);
+
+      ConcurrentNavigableMap<OffsetRange, WriteCtx> pendingWrites =
+          ctx.getPendingWritesForTest();
+      assertEquals(2, pendingWrites.size());
+      assertTrue(pendingWrites.containsKey(new OffsetRange(10, 15)));
+      assertTrue(pendingWrites.containsKey(new OffsetRange(30, 35)));
+      // Every request is answered right away, none waits for buffer space
+      Mockito.verify(ch, Mockito.times(3)).write(Mockito.any());
+    } finally {
+      asyncDataService.shutdown();
+    }
+  }
+
+  /**
+   * Let the current user impersonate others, and use ephemeral ports in case
+   * tests are running in parallel.
+   *
+   * @return a security handler for the current user
+   */
+  private static SecurityHandler setupOOOWriteConf(NfsConfiguration config) {
+    SecurityHandler securityHandler = Mockito.mock(SecurityHandler.class);
+    Mockito.when(securityHandler.getUser()).thenReturn(
+        System.getProperty("user.name"));
+    String currentUser = System.getProperty("user.name");
+    config.set(
+        DefaultImpersonationProvider.getTestProvider().
+            getProxySuperuserGroupConfKey(currentUser),
+        "*");
+    config.set(
+        DefaultImpersonationProvider.getTestProvider().
+            getProxySuperuserIpConfKey(currentUser),
+        "*");
+    ProxyUsers.refreshSuperUserGroupsConfiguration(config);
+    config.setInt("nfs3.mountd.port", 0);
+    config.setInt("nfs3.server.port", 0);
+    return securityHandler;
+  }
+
+  /**
+   * Create a file and write the given buffers to it in reverse order, so
+   * that all but the last write are out of order.
+   *
+   * @return the handle of the file
+   */
+  private static FileHandle writeOutOfOrder(RpcProgramNfs3 nfsd,
+      NfsConfiguration config, SecurityHandler securityHandler,
+      String fileName, byte[][] oooBuf) throws IOException {
+    DFSClient dfsClient = new DFSClient(DFSUtilClient.getNNAddress(config),
+        config);
+    HdfsFileStatus status = dfsClient.getFileInfo("/");
+    FileHandle rootHandle = new FileHandle(status.getFileId());
+
+    CREATE3Request createReq = new CREATE3Request(rootHandle,
+        fileName + System.currentTimeMillis(),
+        Nfs3Constant.CREATE_UNCHECKED, new SetAttr3(), 0);
+    XDR createXdr = new XDR();
+    createReq.serialize(createXdr);
+    CREATE3Response createRsp = nfsd.create(createXdr.asReadOnlyWrap(),
+        securityHandler, new InetSocketAddress("localhost", 1234));
+    FileHandle handle = createRsp.getObjHandle();
+
+    final int numOOO = oooBuf.length;
+    for (int i = 0; i < numOOO; i++) {
+      final int bufSize = oooBuf[i].length;
+      final long offset = (numOOO - 1 - i) * bufSize;
+      WRITE3Request writeReq = new WRITE3Request(handle, offset, bufSize,
+          WriteStableHow.UNSTABLE, ByteBuffer.wrap(oooBuf[i]));
+      XDR writeXdr = new XDR();
+      writeReq.serialize(writeXdr);
+      nfsd.write(writeXdr.asReadOnlyWrap(), null, 1, securityHandler,
+          new InetSocketAddress("localhost", 1234));
+    }
+    return handle;
+  }
+
+  private static byte[][] createOOOBuffers(int numOOO, int bufSize) {
+    byte[][] oooBuf = new byte[numOOO][bufSize];
+    for (int i = 0; i < numOOO; i++) {
+      Arrays.fill(oooBuf[i], (byte) i);
+    }
+    return oooBuf;
+  }
+
+  private static byte[] readForTest(RpcProgramNfs3 nfsd,
+      NfsConfiguration config, SecurityHandler securityHandler,
+      FileHandle handle, long offset, int count) {
+    READ3Request readReq = new READ3Request(handle, offset, count);
+    XDR readXdr = new XDR();
+    readReq.serialize(readXdr);
+    READ3Response readRsp = nfsd.read(readXdr.asReadOnlyWrap(),
+        securityHandler, new InetSocketAddress("localhost", config.getInt(
+            NfsConfigKeys.DFS_NFS_SERVER_PORT_KEY,
+            NfsConfigKeys.DFS_NFS_SERVER_PORT_DEFAULT)));
+    return readRsp.getData().array();
+  }
+
+  @Test
+  public void testOOOWritesAsyncCommit()
+      throws IOException, InterruptedException {
+    NfsConfiguration config = new NfsConfiguration();
+    MiniDFSCluster cluster = null;
+    RpcProgramNfs3 nfsd;
+    final int bufSize = 32;
+    final int numOOO = 3;
+    SecurityHandler securityHandler = setupOOOWriteConf(config);
+    config.setBoolean(NfsConfigKeys.LARGE_FILE_UPLOAD, false);
+    config.setLong(NfsConfigKeys.DFS_NFS_WRITE_REORDER_BUFFER_SIZE_KEY,
+        numOOO * bufSize);
+    config.setBoolean(NfsConfigKeys.DFS_NFS_COMMIT_ASYNC_KEY, true);
+
+    try {
+      cluster = new MiniDFSCluster.Builder(config).numDataNodes(1).build();
+      cluster.waitActive();
+
+      Nfs3 nfs3 = new Nfs3(config);
+      nfs3.startServiceInternal(false);
+      nfsd = (RpcProgramNfs3) nfs3.getRpcProgram();
+
+      byte[][] oooBuf = createOOOBuffers(numOOO, bufSize);
+      FileHandle handle = writeOutOfOrder(nfsd, config, securityHandler,
+          "out-of-order-write-async-commit", oooBuf);
+
+      Channel ch = Mockito.mock(Channel.class);
+      COMMIT3Request commitReq = new COMMIT3Request(handle, 0,
+          numOOO * bufSize);
+      XDR commitXdr = new XDR();
+      commitReq.serialize(commitXdr);
+      nfsd.commit(commitXdr.asReadOnlyWrap(), ch, 2, securityHandler,
+          new InetSocketAddress("localhost", 1234));
+
+      waitWrite(nfsd, handle, 60000);
+      OpenFileCtx ctx = nfsd.getWriteManager().getOpenFileCtxCache()
+          .get(handle);
+      for (int i = 0; i < 20
+          && !ctx.getPendingCommitsForTest().isEmpty(); i++) {
+        Thread.sleep(500);
+      }
+      assertTrue(ctx.getPendingCommitsForTest().isEmpty());
+      // The COMMIT has been answered, either at once or by the commit task
+      Mockito.verify(ch, Mockito.atLeastOnce()).write(Mockito.any());
+
+      assertTrue(Arrays.equals(oooBuf[1],
+          readForTest(nfsd, config, securityHandler, handle, bufSize,
+              bufSize)));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   public void testOverlappingWrites() throws IOException, InterruptedException {
     NfsConfiguration config = new NfsConfiguration();
@@ -66,6 +66,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_WEBHDFS_NETTY_HIGH_WATERMARK =
       "dfs.webhdfs.netty.high.watermark";
   public static final int  DFS_WEBHDFS_NETTY_HIGH_WATERMARK_DEFAULT = 65535;
+  public static final String  DFS_WEBHDFS_NETTY_ZERO_COPY_READ_ENABLED_KEY =
+      "dfs.webhdfs.netty.zero-copy.read.enabled";
+  public static final boolean DFS_WEBHDFS_NETTY_ZERO_COPY_READ_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_WEBHDFS_NETTY_WRITE_THREADS_KEY =
+      "dfs.webhdfs.netty.write.threads";
+  public static final int     DFS_WEBHDFS_NETTY_WRITE_THREADS_DEFAULT = 0;
+  public static final String  DFS_WEBHDFS_NETTY_WRITE_MAX_PENDING_BYTES_KEY =
+      "dfs.webhdfs.netty.write.max-pending-bytes";
+  public static final long    DFS_WEBHDFS_NETTY_WRITE_MAX_PENDING_BYTES_DEFAULT =
+      4L * 1024 * 1024;
   public static final String  DFS_WEBHDFS_UGI_EXPIRE_AFTER_ACCESS_KEY =
       "dfs.webhdfs.ugi.expire.after.access";
   public static final int     DFS_WEBHDFS_UGI_EXPIRE_AFTER_ACCESS_DEFAULT =
@@ -98,6 +109,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   @Deprecated
   public static final long    DFS_DATANODE_READAHEAD_BYTES_DEFAULT =
       HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT;
+  public static final String  DFS_DATANODE_READAHEAD_ADAPTIVE_ENABLED_KEY =
+      "dfs.datanode.readahead.adaptive.enabled";
+  public static final boolean DFS_DATANODE_READAHEAD_ADAPTIVE_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_READAHEAD_ADAPTIVE_MAX_BYTES_KEY =
+      "dfs.datanode.readahead.adaptive.max.bytes";
+  public static final long    DFS_DATANODE_READAHEAD_ADAPTIVE_MAX_BYTES_DEFAULT =
+      16 * 1024 * 1024;
   public static final String  DFS_DATANODE_DROP_CACHE_BEHIND_WRITES_KEY = "dfs.datanode.drop.cache.behind.writes";
   public static final boolean DFS_DATANODE_DROP_CACHE_BEHIND_WRITES_DEFAULT = false;
   public static final String  DFS_DATANODE_SYNC_BEHIND_WRITES_KEY = "dfs.datanode.sync.behind.writes";
@@ -116,6 +135,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DATANODE_LAZY_WRITER_INTERVAL_DEFAULT_SEC = 60;
   public static final String  DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_KEY = "dfs.datanode.ram.disk.replica.tracker";
   public static final Class<RamDiskReplicaLruTracker>  DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_DEFAULT = RamDiskReplicaLruTracker.class;
+  public static final String  DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_LRFU_HALF_LIFE_MS_KEY = "dfs.datanode.ram.disk.replica.tracker.lrfu.half-life.ms";
+  public static final long    DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_LRFU_HALF_LIFE_MS_DEFAULT = 10 * 60 * 1000;
+  public static final String  DFS_DATANODE_LAZY_WRITER_BATCH_SIZE_KEY = "dfs.datanode.lazywriter.batch.size";
+  public static final int     DFS_DATANODE_LAZY_WRITER_BATCH_SIZE_DEFAULT = 8;
+  public static final String  DFS_DATANODE_RAM_DISK_WRITE_BACKPRESSURE_MS_KEY = "dfs.datanode.ram.disk.write.backpressure.ms";
+  public static final long    DFS_DATANODE_RAM_DISK_WRITE_BACKPRESSURE_MS_DEFAULT = 0;
   public static final String  DFS_DATANODE_NETWORK_COUNTS_CACHE_MAX_SIZE_KEY = "dfs.datanode.network.counts.cache.max.size";
   public static final int     DFS_DATANODE_NETWORK_COUNTS_CACHE_MAX_SIZE_DEFAULT = Integer.MAX_VALUE;
   public static final String DFS_DATANODE_NON_LOCAL_LAZY_PERSIST =
@@ -131,6 +156,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.cached-dfsused.check.interval.ms";
   public static final long DFS_DN_CACHED_DFSUSED_CHECK_INTERVAL_DEFAULT_MS =
       600000;
+  public static final String DFS_DN_DFSUSED_REPLICA_ACCOUNTING_ENABLED_KEY =
+      "dfs.datanode.dfsused.replica-accounting.enabled";
+  public static final boolean
+      DFS_DN_DFSUSED_REPLICA_ACCOUNTING_ENABLED_DEFAULT = false;
+  public static final String
+      DFS_DN_DFSUSED_REPLICA_ACCOUNTING_VERIFY_INTERVAL_MS_KEY =
+      "dfs.datanode.dfsused.replica-accounting.verify.interval.ms";
+  public static final long
+      DFS_DN_DFSUSED_REPLICA_ACCOUNTING_VERIFY_INTERVAL_MS_DEFAULT =
+      6 * 60 * 60 * 1000L;
 
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT =
     "dfs.namenode.path.based.cache.block.map.allocation.percent";
@@ -335,6 +370,26 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_DATANODE_CACHE_REVOCATION_POLLING_MS = "dfs.datanode.cache.revocation.polling.ms";
   public static final long DFS_DATANODE_CACHE_REVOCATION_POLLING_MS_DEFAULT = 500L;
 
+  public static final String DFS_DATANODE_CACHE_ADAPTIVE_ENABLED_KEY =
+      "dfs.datanode.cache.adaptive.enabled";
+  public static final boolean DFS_DATANODE_CACHE_ADAPTIVE_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY =
+      "dfs.datanode.cache.adaptive.interval.ms";
+  public static final long DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_DEFAULT =
+      60000L;
+  public static final String DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_KEY =
+      "dfs.datanode.cache.adaptive.min.reads";
+  public static final long DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_DEFAULT = 4L;
+  public static final String DFS_DATANODE_CACHE_ADAPTIVE_MAX_TRACKED_BLOCKS_KEY =
+      "dfs.datanode.cache.adaptive.max.tracked.blocks";
+  public static final int DFS_DATANODE_CACHE_ADAPTIVE_MAX_TRACKED_BLOCKS_DEFAULT =
+      100000;
+  public static final String DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_KEY =
+      "dfs.datanode.cache.adaptive.max.locked.memory";
+  public static final long DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_DEFAULT =
+      0;
+
   public static final String DFS_NAMENODE_DATANODE_REGISTRATION_IP_HOSTNAME_CHECK_KEY = "dfs.namenode.datanode.registration.ip-hostname-check";
   public static final boolean DFS_NAMENODE_DATANODE_REGISTRATION_IP_HOSTNAME_CHECK_DEFAULT = true;
 
@@ -520,6 +575,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_BALANCER_BLOCK_MOVE_TIMEOUT_DEFAULT = 0;
   public static final String  DFS_BALANCER_MAX_NO_MOVE_INTERVAL_KEY = "dfs.balancer.max-no-move-interval";
   public static final int    DFS_BALANCER_MAX_NO_MOVE_INTERVAL_DEFAULT = 60*1000; // One minute
+  public static final String  DFS_BALANCER_DISPATCHER_CONTINUOUS_KEY = "dfs.balancer.dispatcher.continuous";
+  public static final boolean DFS_BALANCER_DISPATCHER_CONTINUOUS_DEFAULT = false;
 
 
   public static final String  DFS_MOVER_MOVEDWINWIDTH_KEY = "dfs.mover.movedWinWidth";
@@ -539,6 +596,11 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.mover.kerberos.principal";
   public static final String  DFS_MOVER_MAX_NO_MOVE_INTERVAL_KEY = "dfs.mover.max-no-move-interval";
   public static final int    DFS_MOVER_MAX_NO_MOVE_INTERVAL_DEFAULT = 60*1000; // One minute
+  public static final String  DFS_MOVER_SCAN_THREADS_KEY = "dfs.mover.scan.threads";
+  public static final int     DFS_MOVER_SCAN_THREADS_DEFAULT = 1;
+  public static final String  DFS_MOVER_CURSOR_CHECKPOINT_INTERVAL_KEY =
+      "dfs.mover.cursor.checkpoint.interval";
+  public static final long    DFS_MOVER_CURSOR_CHECKPOINT_INTERVAL_DEFAULT = 0;
 
   public static final String  DFS_DATANODE_ADDRESS_KEY = "dfs.datanode.address";
   public static final int     DFS_DATANODE_DEFAULT_PORT = 9866;
@@ -576,6 +638,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DN_EC_RECONSTRUCTION_STRIPED_READ_TIMEOUT_MILLIS_DEFAULT = 5000; //5s
   public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_BLK_THREADS_KEY = "dfs.datanode.ec.reconstruction.stripedblock.threads.size";
   public static final int     DFS_DN_EC_RECONSTRUCTION_STRIPED_BLK_THREADS_DEFAULT = 8;
+  public static final String  DFS_DN_EC_RECONSTRUCTION_STRIPED_WRITE_THREADS_KEY = "dfs.datanode.ec.reconstruction.stripedwrite.threads";
+  public static final int     DFS_DN_EC_RECONSTRUCTION_STRIPED_WRITE_THREADS_DEFAULT = 0;
 
   public static final String
       DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY =
@@ -600,8 +664,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 21 * 24;  // 3 weeks.
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
   public static final long    DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND_DEFAULT = 1048576L;
+  public static final String  DFS_BLOCK_SCANNER_SKIP_CLIENT_VERIFIED_BLOCKS_KEY = "dfs.block.scanner.skip.client.verified.blocks";
+  public static final boolean DFS_BLOCK_SCANNER_SKIP_CLIENT_VERIFIED_BLOCKS_DEFAULT = false;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
+  public static final String  DFS_DATANODE_TRANSFERTO_VERIFY_CHECKSUM_KEY =
+      "dfs.datanode.transferTo.verify-checksum.enabled";
+  public static final boolean DFS_DATANODE_TRANSFERTO_VERIFY_CHECKSUM_DEFAULT =
+      false;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
   public static final long    DFS_HEARTBEAT_INTERVAL_DEFAULT = 3;
   public static final String  DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY =
@@ -733,6 +803,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.fileio.profiling.sampling.percentage";
   public static final int
       DFS_DATANODE_FILEIO_PROFILING_SAMPLING_PERCENTAGE_DEFAULT = 0;
+  public static final String DFS_DATANODE_SLOW_VOLUME_DEPRIORITIZE_ENABLED_KEY =
+      "dfs.datanode.slow.volume.deprioritize.enabled";
+  public static final boolean
+      DFS_DATANODE_SLOW_VOLUME_DEPRIORITIZE_ENABLED_DEFAULT = false;
 
   //Keys with no defaults
   public static final String  DFS_DATANODE_PLUGINS_KEY = "dfs.datanode.plugins";
@@ -917,6 +991,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
   public static final int     DFS_QJOURNAL_QUEUE_SIZE_LIMIT_DEFAULT = 10;
+  public static final String  DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_KEY = "dfs.qjournal.write.pipeline.depth";
+  public static final int     DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_DEFAULT = 1;
   
   // Quorum-journal timeouts for various operations. Unlikely to need
   // to be tweaked, but configurable just in case.
@@ -1083,6 +1159,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.disk.balancer.plan.threshold.percent";
   public static final int DFS_DISK_BALANCER_PLAN_THRESHOLD_DEFAULT = 10;
 
+  public static final String DFS_DISK_BALANCER_MAX_CONCURRENT_MOVES =
+      "dfs.disk.balancer.max.concurrent.moves";
+  public static final int DFS_DISK_BALANCER_MAX_CONCURRENT_MOVES_DEFAULT = 1;
+
   public static final String HTTPFS_BUFFER_SIZE_KEY =
       "httpfs.buffer.size";
   public static final int HTTP_BUFFER_SIZE_DEFAULT = 4096;
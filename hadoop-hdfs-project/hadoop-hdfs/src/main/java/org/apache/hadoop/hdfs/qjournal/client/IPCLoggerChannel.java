@@ -23,11 +23,14 @@
 import java.net.URI;
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
@@ -62,8 +65,10 @@
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncaughtExceptionHandlers;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * Channel to a remote JournalNode using Hadoop IPC.
@@ -90,6 +95,23 @@ public class IPCLoggerChannel implements AsyncLogger {
    * be safely reordered and interleaved with writes).
    */
   private final ListeningExecutorService parallelExecutor;
+  /**
+   * The maximum number of journal() calls in flight to the remote node.
+   */
+  private final int pipelineDepth;
+  /**
+   * Sends the journal() calls when more than one may be in flight, or null
+   * if they are sent by singleThreadExecutor. The calls are still issued, and
+   * get their IPC serial numbers, in order on singleThreadExecutor.
+   */
+  private final ExecutorService journalExecutor;
+  /**
+   * The journal() calls sent by journalExecutor which have not been waited
+   * for. Only accessed by singleThreadExecutor.
+   */
+  private final Deque<ListenableFuture<Void>> inFlightJournals =
+      new ArrayDeque<>();
+  private final AtomicInteger inFlightBatches = new AtomicInteger();
   private long ipcSerial = 0;
   private long epoch = -1;
   private long committedTxId = HdfsServerConstants.INVALID_TXID;
@@ -169,11 +191,18 @@ public IPCLoggerChannel(Configuration conf,
     this.queueSizeLimitBytes = 1024 * 1024 * conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_QUEUE_SIZE_LIMIT_DEFAULT);
+    this.pipelineDepth = conf.getInt(
+        DFSConfigKeys.DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_DEFAULT);
+    Preconditions.checkArgument(pipelineDepth >= 1,
+        "%s must be at least 1",
+        DFSConfigKeys.DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_KEY);
     
     singleThreadExecutor = MoreExecutors.listeningDecorator(
         createSingleThreadExecutor());
     parallelExecutor = MoreExecutors.listeningDecorator(
         createParallelExecutor());
+    journalExecutor = pipelineDepth > 1 ? createJournalExecutor() : null;
     
     metrics = IPCLoggerChannelMetrics.create(this);
   }
@@ -197,6 +226,9 @@ public void close() {
     // No more tasks may be submitted after this point.
     singleThreadExecutor.shutdown();
     parallelExecutor.shutdown();
+    if (journalExecutor != null) {
+      journalExecutor.shutdown();
+    }
     if (proxy != null) {
       // TODO: this can hang for quite some time if the client
       // is currently in the middle of a call to a downed JN.
@@ -267,6 +299,48 @@ protected ExecutorService createParallelExecutor() {
                 UncaughtExceptionHandlers.systemExit())
             .build());
   }
+
+  private ExecutorService createJournalExecutor() {
+    return Executors.newFixedThreadPool(pipelineDepth,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("Logger channel (from journal executor) to " + addr)
+            .setUncaughtExceptionHandler(
+                UncaughtExceptionHandlers.systemExit())
+            .build());
+  }
+
+  /**
+   * Submit a task to singleThreadExecutor, to run once the journal() calls
+   * sent before it have completed.
+   */
+  private <V> ListenableFuture<V> submitInOrder(final Callable<V> task) {
+    if (journalExecutor == null) {
+      return singleThreadExecutor.submit(task);
+    }
+    return singleThreadExecutor.submit(new Callable<V>() {
+      @Override
+      public V call() throws Exception {
+        waitForInFlightJournals(0);
+        return task.call();
+      }
+    });
+  }
+
+  /**
+   * Wait until at most the given number of journal() calls are in flight.
+   * Must be called by singleThreadExecutor.
+   */
+  private void waitForInFlightJournals(int max) {
+    while (!inFlightJournals.isEmpty() && (inFlightJournals.size() > max
+        || inFlightJournals.peek().isDone())) {
+      try {
+        Uninterruptibles.getUninterruptibly(inFlightJournals.poll());
+      } catch (ExecutionException e) {
+        // Already reported to the caller of sendEdits().
+      }
+    }
+  }
   
   @Override
   public URL buildURLToFetchLogs(long segmentTxId) {
@@ -297,6 +371,10 @@ synchronized long getNextIpcSerial() {
   public synchronized int getQueuedEditsSize() {
     return queuedEditsSizeBytes;
   }
+
+  public int getInFlightBatches() {
+    return inFlightBatches.get();
+  }
   
   public InetSocketAddress getRemoteAddress() {
     return addr;
@@ -317,6 +395,7 @@ void waitForAllPendingCalls() throws InterruptedException {
       singleThreadExecutor.submit(new Runnable() {
         @Override
         public void run() {
+          waitForInFlightJournals(0);
         }
       }).get();
     } catch (ExecutionException e) {
@@ -327,7 +406,7 @@ public void run() {
 
   @Override
   public ListenableFuture<Boolean> isFormatted() {
-    return singleThreadExecutor.submit(new Callable<Boolean>() {
+    return submitInOrder(new Callable<Boolean>() {
       @Override
       public Boolean call() throws IOException {
         return getProxy().isFormatted(journalId);
@@ -337,7 +416,7 @@ public Boolean call() throws IOException {
 
   @Override
   public ListenableFuture<GetJournalStateResponseProto> getJournalState() {
-    return singleThreadExecutor.submit(new Callable<GetJournalStateResponseProto>() {
+    return submitInOrder(new Callable<GetJournalStateResponseProto>() {
       @Override
       public GetJournalStateResponseProto call() throws IOException {
         GetJournalStateResponseProto ret =
@@ -351,7 +430,7 @@ public GetJournalStateResponseProto call() throws IOException {
   @Override
   public ListenableFuture<NewEpochResponseProto> newEpoch(
       final long epoch) {
-    return singleThreadExecutor.submit(new Callable<NewEpochResponseProto>() {
+    return submitInOrder(new Callable<NewEpochResponseProto>() {
       @Override
       public NewEpochResponseProto call() throws IOException {
         return getProxy().newEpoch(journalId, nsInfo, epoch);
@@ -375,47 +454,20 @@ public ListenableFuture<Void> sendEdits(
     
     ListenableFuture<Void> ret = null;
     try {
-      ret = singleThreadExecutor.submit(new Callable<Void>() {
-        @Override
-        public Void call() throws IOException {
-          throwIfOutOfSync();
-
-          long rpcSendTimeNanos = System.nanoTime();
-          try {
-            getProxy().journal(createReqInfo(),
-                segmentTxId, firstTxnId, numTxns, data);
-          } catch (IOException e) {
-            QuorumJournalManager.LOG.warn(
-                "Remote journal " + IPCLoggerChannel.this + " failed to " +
-                "write txns " + firstTxnId + "-" + (firstTxnId + numTxns - 1) +
-                ". Will try to write to this JN again after the next " +
-                "log roll.", e); 
-            synchronized (IPCLoggerChannel.this) {
-              outOfSync = true;
-            }
-            throw e;
-          } finally {
-            long now = System.nanoTime();
-            long rpcTime = TimeUnit.MICROSECONDS.convert(
-                now - rpcSendTimeNanos, TimeUnit.NANOSECONDS);
-            long endToEndTime = TimeUnit.MICROSECONDS.convert(
-                now - submitNanos, TimeUnit.NANOSECONDS);
-            metrics.addWriteEndToEndLatency(endToEndTime);
-            metrics.addWriteRpcLatency(rpcTime);
-            if (rpcTime / 1000 > WARN_JOURNAL_MILLIS_THRESHOLD) {
-              QuorumJournalManager.LOG.warn(
-                  "Took " + (rpcTime / 1000) + "ms to send a batch of " +
-                  numTxns + " edits (" + data.length + " bytes) to " +
-                  "remote journal " + IPCLoggerChannel.this);
-            }
-          }
-          synchronized (IPCLoggerChannel.this) {
-            highestAckedTxId = firstTxnId + numTxns - 1;
-            lastAckNanos = submitNanos;
+      if (journalExecutor == null) {
+        ret = singleThreadExecutor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            throwIfOutOfSync();
+            journal(createReqInfo(), segmentTxId, firstTxnId, numTxns, data,
+                submitNanos);
+            return null;
           }
-          return null;
-        }
-      });
+        });
+      } else {
+        ret = sendEditsPipelined(segmentTxId, firstTxnId, numTxns, data,
+            submitNanos);
+      }
     } finally {
       if (ret == null) {
         // it didn't successfully get submitted,
@@ -441,6 +493,84 @@ public void onSuccess(Void t) {
     return ret;
   }
 
+  /**
+   * Issue the journal() call on singleThreadExecutor, once fewer than
+   * pipelineDepth calls are in flight, and send it on journalExecutor.
+   */
+  private ListenableFuture<Void> sendEditsPipelined(final long segmentTxId,
+      final long firstTxnId, final int numTxns, final byte[] data,
+      final long submitNanos) {
+    final SettableFuture<Void> ret = SettableFuture.create();
+    singleThreadExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          waitForInFlightJournals(pipelineDepth - 1);
+          throwIfOutOfSync();
+          final RequestInfo reqInfo = createReqInfo();
+          inFlightJournals.add(ret);
+          inFlightBatches.incrementAndGet();
+          journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                journal(reqInfo, segmentTxId, firstTxnId, numTxns, data,
+                    submitNanos);
+                ret.set(null);
+              } catch (Throwable t) {
+                ret.setException(t);
+              } finally {
+                inFlightBatches.decrementAndGet();
+              }
+            }
+          });
+        } catch (Throwable t) {
+          ret.setException(t);
+        }
+      }
+    });
+    return ret;
+  }
+
+  private void journal(RequestInfo reqInfo, long segmentTxId,
+      long firstTxnId, int numTxns, byte[] data, long submitNanos)
+      throws IOException {
+    long rpcSendTimeNanos = System.nanoTime();
+    try {
+      getProxy().journal(reqInfo, segmentTxId, firstTxnId, numTxns, data);
+    } catch (IOException e) {
+      QuorumJournalManager.LOG.warn(
+          "Remote journal " + IPCLoggerChannel.this + " failed to " +
+          "write txns " + firstTxnId + "-" + (firstTxnId + numTxns - 1) +
+          ". Will try to write to this JN again after the next " +
+          "log roll.", e); 
+      synchronized (IPCLoggerChannel.this) {
+        outOfSync = true;
+      }
+      throw e;
+    } finally {
+      long now = System.nanoTime();
+      long rpcTime = TimeUnit.MICROSECONDS.convert(
+          now - rpcSendTimeNanos, TimeUnit.NANOSECONDS);
+      long endToEndTime = TimeUnit.MICROSECONDS.convert(
+          now - submitNanos, TimeUnit.NANOSECONDS);
+      metrics.addWriteEndToEndLatency(endToEndTime);
+      metrics.addWriteRpcLatency(rpcTime);
+      if (rpcTime / 1000 > WARN_JOURNAL_MILLIS_THRESHOLD) {
+        QuorumJournalManager.LOG.warn(
+            "Took " + (rpcTime / 1000) + "ms to send a batch of " +
+            numTxns + " edits (" + data.length + " bytes) to " +
+            "remote journal " + IPCLoggerChannel.this);
+      }
+    }
+    synchronized (IPCLoggerChannel.this) {
+      // Pipelined batches may be acknowledged out of order.
+      highestAckedTxId = Math.max(highestAckedTxId,
+          firstTxnId + numTxns - 1);
+      lastAckNanos = Math.max(lastAckNanos, submitNanos);
+    }
+  }
+
   private void throwIfOutOfSync()
       throws JournalOutOfSyncException, IOException {
     if (isOutOfSync()) {
@@ -492,7 +622,7 @@ private synchronized void unreserveQueueSpace(int size) {
 
   @Override
   public ListenableFuture<Void> format(final NamespaceInfo nsInfo) {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws Exception {
         getProxy().format(journalId, nsInfo);
@@ -504,7 +634,7 @@ public Void call() throws Exception {
   @Override
   public ListenableFuture<Void> startLogSegment(final long txid,
       final int layoutVersion) {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
         getProxy().startLogSegment(createReqInfo(), txid, layoutVersion);
@@ -525,7 +655,7 @@ public Void call() throws IOException {
   @Override
   public ListenableFuture<Void> finalizeLogSegment(
       final long startTxId, final long endTxId) {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
         throwIfOutOfSync();
@@ -538,7 +668,7 @@ public Void call() throws IOException {
   
   @Override
   public ListenableFuture<Void> purgeLogsOlderThan(final long minTxIdToKeep) {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws Exception {
         getProxy().purgeLogsOlderThan(createReqInfo(), minTxIdToKeep);
@@ -566,7 +696,7 @@ public RemoteEditLogManifest call() throws IOException {
   @Override
   public ListenableFuture<PrepareRecoveryResponseProto> prepareRecovery(
       final long segmentTxId) {
-    return singleThreadExecutor.submit(new Callable<PrepareRecoveryResponseProto>() {
+    return submitInOrder(new Callable<PrepareRecoveryResponseProto>() {
       @Override
       public PrepareRecoveryResponseProto call() throws IOException {
         if (!hasHttpServerEndPoint()) {
@@ -584,7 +714,7 @@ public PrepareRecoveryResponseProto call() throws IOException {
   @Override
   public ListenableFuture<Void> acceptRecovery(
       final SegmentStateProto log, final URL url) {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
         getProxy().acceptRecovery(createReqInfo(), log, url);
@@ -595,7 +725,7 @@ public Void call() throws IOException {
   
   @Override
   public ListenableFuture<Void> doPreUpgrade() {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
         getProxy().doPreUpgrade(journalId);
@@ -606,7 +736,7 @@ public Void call() throws IOException {
   
   @Override
   public ListenableFuture<Void> doUpgrade(final StorageInfo sInfo) {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
         getProxy().doUpgrade(journalId, sInfo);
@@ -617,7 +747,7 @@ public Void call() throws IOException {
   
   @Override
   public ListenableFuture<Void> doFinalize() {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
         getProxy().doFinalize(journalId);
@@ -629,7 +759,7 @@ public Void call() throws IOException {
   @Override
   public ListenableFuture<Boolean> canRollBack(final StorageInfo storage,
       final StorageInfo prevStorage, final int targetLayoutVersion) {
-    return singleThreadExecutor.submit(new Callable<Boolean>() {
+    return submitInOrder(new Callable<Boolean>() {
       @Override
       public Boolean call() throws IOException {
         return getProxy().canRollBack(journalId, storage, prevStorage,
@@ -640,7 +770,7 @@ public Boolean call() throws IOException {
 
   @Override
   public ListenableFuture<Void> doRollback() {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
         getProxy().doRollback(journalId);
@@ -651,7 +781,7 @@ public Void call() throws IOException {
 
   @Override
   public ListenableFuture<Void> discardSegments(final long startTxId) {
-    return singleThreadExecutor.submit(new Callable<Void>() {
+    return submitInOrder(new Callable<Void>() {
       @Override
       public Void call() throws IOException {
         getProxy().discardSegments(journalId, startTxId);
@@ -662,7 +792,7 @@ public Void call() throws IOException {
 
   @Override
   public ListenableFuture<Long> getJournalCTime() {
-    return singleThreadExecutor.submit(new Callable<Long>() {
+    return submitInOrder(new Callable<Long>() {
       @Override
       public Long call() throws IOException {
         return getProxy().getJournalCTime(journalId);
@@ -136,6 +136,11 @@ public int getQueuedEditsSize() {
     return ch.getQueuedEditsSize();
   }
 
+  @Metric("The number of batches of edits in flight to the remote node")
+  public int getInFlightBatches() {
+    return ch.getInFlightBatches();
+  }
+
   public void addWriteEndToEndLatency(long micros) {
     if (writeEndToEndLatencyQuantiles != null) {
       for (MutableQuantiles q : writeEndToEndLatencyQuantiles) {
@@ -75,6 +75,7 @@ public class QuorumJournalManager implements JournalManager {
   private final int getJournalStateTimeoutMs;
   private final int newEpochTimeoutMs;
   private final int writeTxnsTimeoutMs;
+  private final int writePipelineDepth;
 
   // Since these don't occur during normal operation, we can
   // use rather lengthy timeouts, and don't need to make them
@@ -141,6 +142,12 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+    this.writePipelineDepth = conf.getInt(
+        DFSConfigKeys.DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_DEFAULT);
+    Preconditions.checkArgument(writePipelineDepth >= 1,
+        "%s must be at least 1",
+        DFSConfigKeys.DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_KEY);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -385,7 +392,7 @@ public EditLogOutputStream startLogSegment(long txId, int layoutVersion)
         DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
         DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
     return new QuorumOutputStream(loggers, txId, outputBufferCapacity,
-        writeTxnsTimeoutMs, updateCommittedTxId);
+        writeTxnsTimeoutMs, updateCommittedTxId, writePipelineDepth);
   }
 
   @Override
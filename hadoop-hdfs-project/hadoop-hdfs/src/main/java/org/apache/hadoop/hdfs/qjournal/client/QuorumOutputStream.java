@@ -34,16 +34,21 @@ class QuorumOutputStream extends EditLogOutputStream {
   private final long segmentTxId;
   private final int writeTimeoutMs;
   private final boolean updateCommittedTxId;
+  private final int pipelineDepth;
+  /** The last txid acknowledged by a quorum. */
+  private long committedTxId = -1;
 
   public QuorumOutputStream(AsyncLoggerSet loggers,
       long txId, int outputBufferCapacity,
-      int writeTimeoutMs, boolean updateCommittedTxId) throws IOException {
+      int writeTimeoutMs, boolean updateCommittedTxId,
+      int pipelineDepth) throws IOException {
     super();
     this.buf = new EditsDoubleBuffer(outputBufferCapacity);
     this.loggers = loggers;
     this.segmentTxId = txId;
     this.writeTimeoutMs = writeTimeoutMs;
     this.updateCommittedTxId = updateCommittedTxId;
+    this.pipelineDepth = pipelineDepth;
   }
 
   @Override
@@ -83,45 +88,85 @@ public void setReadyToFlush() throws IOException {
 
   @Override
   protected void flushAndSync(boolean durable) throws IOException {
+    startFlushAndSync().await();
+  }
+
+  /**
+   * Send the ready buffer to the loggers. The returned flush waits for a
+   * quorum of them to acknowledge it; since each JournalNode applies the
+   * batches in the order they were sent, this also implies that the batches
+   * sent before it are durable on a quorum.
+   */
+  @Override
+  protected PendingFlush startFlushAndSync() throws IOException {
     int numReadyBytes = buf.countReadyBytes();
-    if (numReadyBytes > 0) {
-      int numReadyTxns = buf.countReadyTxns();
-      long firstTxToFlush = buf.getFirstReadyTxId();
-
-      assert numReadyTxns > 0;
-
-      // Copy from our double-buffer into a new byte array. This is for
-      // two reasons:
-      // 1) The IPC code has no way of specifying to send only a slice of
-      //    a larger array.
-      // 2) because the calls to the underlying nodes are asynchronous, we
-      //    need a defensive copy to avoid accidentally mutating the buffer
-      //    before it is sent.
-      DataOutputBuffer bufToSend = new DataOutputBuffer(numReadyBytes);
-      buf.flushTo(bufToSend);
-      assert bufToSend.getLength() == numReadyBytes;
-      byte[] data = bufToSend.getData();
-      assert data.length == bufToSend.getLength();
-
-      QuorumCall<AsyncLogger, Void> qcall = loggers.sendEdits(
-          segmentTxId, firstTxToFlush,
-          numReadyTxns, data);
-      loggers.waitForWriteQuorum(qcall, writeTimeoutMs, "sendEdits");
-      
-      // Since we successfully wrote this batch, let the loggers know. Any future
-      // RPCs will thus let the loggers know of the most recent transaction, even
-      // if a logger has fallen behind.
-      loggers.setCommittedTxId(firstTxToFlush + numReadyTxns - 1);
-
-      // If we don't have this dummy send, committed TxId might be one-batch
-      // stale on the Journal Nodes
-      if (updateCommittedTxId) {
-        QuorumCall<AsyncLogger, Void> fakeCall = loggers.sendEdits(
-            segmentTxId, firstTxToFlush,
-            0, new byte[0]);
-        loggers.waitForWriteQuorum(fakeCall, writeTimeoutMs, "sendEdits");
+    if (numReadyBytes == 0) {
+      return FLUSHED;
+    }
+    int numReadyTxns = buf.countReadyTxns();
+    final long firstTxToFlush = buf.getFirstReadyTxId();
+
+    assert numReadyTxns > 0;
+
+    // Copy from our double-buffer into a new byte array. This is for
+    // two reasons:
+    // 1) The IPC code has no way of specifying to send only a slice of
+    //    a larger array.
+    // 2) because the calls to the underlying nodes are asynchronous, we
+    //    need a defensive copy to avoid accidentally mutating the buffer
+    //    before it is sent.
+    DataOutputBuffer bufToSend = new DataOutputBuffer(numReadyBytes);
+    buf.flushTo(bufToSend);
+    assert bufToSend.getLength() == numReadyBytes;
+    byte[] data = bufToSend.getData();
+    assert data.length == bufToSend.getLength();
+
+    final QuorumCall<AsyncLogger, Void> qcall = loggers.sendEdits(
+        segmentTxId, firstTxToFlush,
+        numReadyTxns, data);
+    final long lastTxToFlush = firstTxToFlush + numReadyTxns - 1;
+    return new PendingFlush() {
+      @Override
+      public void await() throws IOException {
+        loggers.waitForWriteQuorum(qcall, writeTimeoutMs, "sendEdits");
+
+        // Since we successfully wrote this batch, let the loggers know. Any
+        // future RPCs will thus let the loggers know of the most recent
+        // transaction, even if a logger has fallen behind.
+        if (!updateCommittedTxId(lastTxToFlush)) {
+          return;
+        }
+
+        // If we don't have this dummy send, committed TxId might be one-batch
+        // stale on the Journal Nodes
+        if (updateCommittedTxId) {
+          QuorumCall<AsyncLogger, Void> fakeCall = loggers.sendEdits(
+              segmentTxId, firstTxToFlush,
+              0, new byte[0]);
+          loggers.waitForWriteQuorum(fakeCall, writeTimeoutMs, "sendEdits");
+        }
       }
+    };
+  }
+
+  /**
+   * Pipelined batches may be acknowledged out of order, so the committed
+   * txid only moves forward.
+   *
+   * @return true if the committed txid was updated
+   */
+  private synchronized boolean updateCommittedTxId(long txid) {
+    if (txid <= committedTxId) {
+      return false;
     }
+    committedTxId = txid;
+    loggers.setCommittedTxId(txid);
+    return true;
+  }
+
+  @Override
+  public int getMaxPendingFlushes() {
+    return pipelineDepth;
   }
 
   @Override
@@ -27,8 +27,10 @@
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.security.PrivilegedExceptionAction;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.math.LongRange;
@@ -36,6 +38,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
@@ -110,6 +113,21 @@ public class Journal implements Closeable {
    * request to resurface and confuse things.
    */
   private long currentEpochIpcSerial = -1;
+
+  /**
+   * The IPC serials of the current epoch above {@link #currentEpochIpcSerial}
+   * which failed before being checked, so that the IPCs following them need
+   * not wait for them.
+   */
+  private final Set<Long> failedIpcSerials = new HashSet<>();
+
+  /**
+   * A writer may have several journal() IPCs in flight, which the RPC
+   * handlers may pick up out of order. A batch of edits which arrives ahead
+   * of the IPCs preceding it waits at most this long for them before being
+   * checked, which is as long as the writer waits for the batch.
+   */
+  private final long precedingIpcWaitMs;
   
   /**
    * The epoch number of the last writer to actually write a transaction.
@@ -147,6 +165,9 @@ public class Journal implements Closeable {
       throws IOException {
     storage = new JNStorage(conf, logDir, startOpt, errorReporter);
     this.journalId = journalId;
+    this.precedingIpcWaitMs = conf.getInt(
+        DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
 
     refreshCachedData();
     
@@ -336,6 +357,9 @@ private void updateLastPromisedEpoch(long newEpoch) throws IOException {
     // Since we have a new writer, reset the IPC serial - it will start
     // counting again from 0 for this writer.
     currentEpochIpcSerial = -1;
+    failedIpcSerials.clear();
+    // The IPCs of the previous writer waiting for their turn now fail.
+    notifyAll();
   }
 
   private void abortCurSegment() throws IOException {
@@ -356,6 +380,7 @@ synchronized void journal(RequestInfo reqInfo,
       long segmentTxId, long firstTxnId,
       int numTxns, byte[] records) throws IOException {
     checkFormatted();
+    waitForPrecedingBatches(reqInfo, segmentTxId, firstTxnId, numTxns);
     checkWriteRequest(reqInfo);
 
     // If numTxns is 0, it's actually a fake send which aims at updating
@@ -448,7 +473,7 @@ private synchronized void checkRequest(RequestInfo reqInfo) throws IOException {
       // the promise.
       updateLastPromisedEpoch(reqInfo.getEpoch());
     }
-    
+
     // Ensure that the IPCs are arriving in-order as expected.
     checkSync(reqInfo.getIpcSerialNumber() > currentEpochIpcSerial,
         "IPC serial %s from client %s was not higher than prior highest " +
@@ -456,6 +481,16 @@ private synchronized void checkRequest(RequestInfo reqInfo) throws IOException {
         Server.getRemoteIp(),
         currentEpochIpcSerial);
     currentEpochIpcSerial = reqInfo.getIpcSerialNumber();
+    if (!failedIpcSerials.isEmpty()) {
+      Iterator<Long> it = failedIpcSerials.iterator();
+      while (it.hasNext()) {
+        if (it.next() <= currentEpochIpcSerial) {
+          it.remove();
+        }
+      }
+    }
+    // Wake up the IPCs waiting for this one.
+    notifyAll();
 
     if (reqInfo.hasCommittedTxId()) {
       Preconditions.checkArgument(
@@ -467,6 +502,67 @@ private synchronized void checkRequest(RequestInfo reqInfo) throws IOException {
     }
   }
   
+  /**
+   * Wait for the IPCs of the current writer preceding the given journal()
+   * IPC to be checked, so that pipelined batches are applied in the order
+   * they were sent. Only journal() IPCs are pipelined, and only within a
+   * segment the writer has already started on this JournalNode, so any
+   * other batch is checked straight away. A batch which may be held back
+   * may also be waiting for an IPC which never arrives, in which case the
+   * writer has given up on the batch by the time the wait ends.
+   */
+  private synchronized void waitForPrecedingBatches(RequestInfo reqInfo,
+      long segmentTxId, long firstTxnId, int numTxns) throws IOException {
+    final long deadline = Time.monotonicNow() + precedingIpcWaitMs;
+    while (reqInfo.getEpoch() == lastPromisedEpoch.get()
+        && currentEpochIpcSerial >= 0
+        && !precedingIpcsDone(reqInfo.getIpcSerialNumber())
+        && mayFollowBatchesInFlight(segmentTxId, firstTxnId, numTxns)) {
+      final long remaining = deadline - Time.monotonicNow();
+      if (remaining <= 0) {
+        return;
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        // Do not keep the IPCs following this one waiting for it.
+        failedIpcSerials.add(reqInfo.getIpcSerialNumber());
+        notifyAll();
+        throw new IOException("Interrupted while waiting for the IPCs "
+            + "preceding IPC serial " + reqInfo.getIpcSerialNumber(), e);
+      }
+    }
+  }
+
+  /**
+   * @return whether the given batch of edits may have been sent after
+   *         batches which are still in flight: it skips ahead of the edits
+   *         written to the current segment, or it has no edits and only
+   *         updates the committed txid.
+   */
+  private boolean mayFollowBatchesInFlight(long segmentTxId, long firstTxnId,
+      int numTxns) {
+    return curSegment != null && curSegmentTxId == segmentTxId
+        && (numTxns == 0 || firstTxnId > nextTxId);
+  }
+
+  /**
+   * @return whether each IPC serial between the last checked one and the
+   *         given one has either been checked or failed.
+   */
+  private boolean precedingIpcsDone(long ipcSerial) {
+    if (ipcSerial - currentEpochIpcSerial - 1 > failedIpcSerials.size()) {
+      return false;
+    }
+    for (long s = currentEpochIpcSerial + 1; s < ipcSerial; s++) {
+      if (!failedIpcSerials.contains(s)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private synchronized void checkWriteRequest(RequestInfo reqInfo) throws IOException {
     checkRequest(reqInfo);
     
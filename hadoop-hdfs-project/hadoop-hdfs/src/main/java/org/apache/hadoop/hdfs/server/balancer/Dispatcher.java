@@ -38,6 +38,7 @@
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -117,6 +118,11 @@ public class Dispatcher {
   private NetworkTopology cluster;
 
   private final ExecutorService dispatchExecutor;
+  /**
+   * Fetches the blocks of the sources ahead of their use, if the dispatcher
+   * is continuous; otherwise null.
+   */
+  private final ExecutorService getBlocksExecutor;
 
   private final Allocator moverThreadAllocator;
 
@@ -137,6 +143,11 @@ public class Dispatcher {
 
   private final boolean connectToDnViaHostname;
   private BlockPlacementPolicies placementPolicies;
+  /**
+   * Whether block lists are fetched while the moves are in progress and the
+   * concurrent moves at a datanode adapt to their throughput.
+   */
+  private final boolean continuous;
 
   static class Allocator {
     private final int max;
@@ -352,6 +363,7 @@ private void dispatch() {
       Socket sock = new Socket();
       DataOutputStream out = null;
       DataInputStream in = null;
+      final long startTime = Time.monotonicNow();
       try {
         sock.connect(
             NetUtils.createSocketAddr(target.getDatanodeInfo().
@@ -385,6 +397,12 @@ private void dispatch() {
         receiveResponse(in);
         nnc.getBytesMoved().addAndGet(reportedBlock.getNumBytes());
         target.getDDatanode().setHasSuccess();
+        final long elapsed = Time.monotonicNow() - startTime;
+        target.getDDatanode().moveSucceeded(reportedBlock.getNumBytes(),
+            elapsed);
+        if (proxySource != target.getDDatanode()) {
+          proxySource.moveSucceeded(reportedBlock.getNumBytes(), elapsed);
+        }
         LOG.info("Successfully moved " + this);
       } catch (IOException e) {
         LOG.warn("Failed to move " + this, e);
@@ -404,6 +422,10 @@ private void dispatch() {
         // going on in datanodes.
         proxySource.activateDelay(delayAfterErrors);
         target.getDDatanode().activateDelay(delayAfterErrors);
+        proxySource.moveFailed();
+        if (proxySource != target.getDDatanode()) {
+          target.getDDatanode().moveFailed();
+        }
       } finally {
         IOUtils.closeStream(out);
         IOUtils.closeStream(in);
@@ -635,15 +657,26 @@ public boolean equals(Object obj) {
     private Map<Long, Set<DatanodeInfo>> blockPinningFailures = new HashMap<>();
     private volatile boolean hasSuccess = false;
     private ExecutorService moveExecutor;
+    private final int maxConcurrentMoves;
+    /**
+     * The number of moves allowed at the datanode, if it adapts to the
+     * throughput of the moves; otherwise -1.
+     */
+    private double moveLimit;
+    /** The moving average of the throughput of the moves, in bytes/s. */
+    private double avgMoveThroughput = -1;
 
     @Override
     public String toString() {
       return getClass().getSimpleName() + ":" + datanode;
     }
 
-    private DDatanode(DatanodeInfo datanode, int maxConcurrentMoves) {
+    private DDatanode(DatanodeInfo datanode, int maxConcurrentMoves,
+        boolean adaptive) {
       this.datanode = datanode;
       this.pendings = new ArrayList<PendingMove>(maxConcurrentMoves);
+      this.maxConcurrentMoves = maxConcurrentMoves;
+      this.moveLimit = adaptive ? maxConcurrentMoves : -1;
     }
 
     public DatanodeInfo getDatanodeInfo() {
@@ -703,12 +736,55 @@ synchronized boolean isPendingQEmpty() {
 
     /** Add a scheduled block move to the node */
     synchronized boolean addPendingBlock(PendingMove pendingBlock) {
-      if (!isDelayActive()) {
+      if (!isDelayActive()
+          && (moveLimit < 0 || pendings.size() < (int) moveLimit)) {
         return pendings.add(pendingBlock);
       }
       return false;
     }
 
+    /**
+     * Adapt the number of moves allowed at the node to a successful move.
+     * The limit grows by one for every limit moves keeping up with the
+     * average throughput, and shrinks by a quarter for a move slower than
+     * half of it.
+     */
+    synchronized void moveSucceeded(long bytes, long elapsedMs) {
+      if (moveLimit < 0) {
+        return;
+      }
+      final double throughput = bytes * 1000.0 / Math.max(1, elapsedMs);
+      if (avgMoveThroughput < 0) {
+        avgMoveThroughput = throughput;
+      }
+      if (throughput < avgMoveThroughput / 2) {
+        moveLimit = Math.max(1, moveLimit * 3 / 4);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(this + " is slowing down, limiting it to "
+              + (int) moveLimit + " concurrent moves");
+        }
+      } else {
+        moveLimit = Math.min(maxConcurrentMoves, moveLimit + 1 / moveLimit);
+      }
+      avgMoveThroughput = 0.8 * avgMoveThroughput + 0.2 * throughput;
+    }
+
+    /** Halve the number of moves allowed at the node after a failed move. */
+    synchronized void moveFailed() {
+      if (moveLimit >= 0) {
+        moveLimit = Math.max(1, moveLimit / 2);
+      }
+    }
+
+    /**
+     * @return the number of concurrent moves allowed at the node, or -1 if it
+     *         does not adapt to the throughput of the moves
+     */
+    @VisibleForTesting
+    synchronized int getMoveLimit() {
+      return (int) moveLimit;
+    }
+
     /** Remove a scheduled block move from the node */
     synchronized boolean removePendingBlock(PendingMove pendingBlock) {
       return pendings.remove(pendingBlock);
@@ -751,6 +827,10 @@ public class Source extends DDatanode.StorageGroup {
      * locations are changing over time.
      */
     private final List<DBlock> srcBlocks = new ArrayList<DBlock>();
+    /** The next blocks fetched from the namenode while moves are running. */
+    private Future<BlocksWithLocations> prefetchedBlocks;
+    /** The number of blocks added by the last fetch. */
+    private int lastFetchedBlocks = 0;
 
     private Source(StorageType storageType, long maxSize2Move, DDatanode dn) {
       dn.super(storageType, maxSize2Move);
@@ -783,7 +863,10 @@ Iterator<DBlock> getBlockIterator() {
      * @return the total size of the received blocks in the number of bytes.
      */
     private long getBlockList() throws IOException {
-      final long size = Math.min(getBlocksSize, blocksToReceive);
+      return addBlocks(fetchBlocks(Math.min(getBlocksSize, blocksToReceive)));
+    }
+
+    private BlocksWithLocations fetchBlocks(long size) throws IOException {
       final BlocksWithLocations newBlksLocs =
           nnc.getBlocks(getDatanodeInfo(), size);
 
@@ -792,7 +875,70 @@ private long getBlockList() throws IOException {
             + StringUtils.TraditionalBinaryPrefix.long2String(size, "B", 2)
             + ") returns " + newBlksLocs.getBlocks().length + " blocks.");
       }
+      return newBlksLocs;
+    }
+
+    /**
+     * Fetch the next blocks in the background if the dispatcher is continuous
+     * and the blocks of the last fetch are running out, so that the block
+     * list is refilled before the moves of this source stall.
+     */
+    @VisibleForTesting
+    void prefetchBlockList() {
+      if (getBlocksExecutor == null || prefetchedBlocks != null
+          || !shouldFetchMoreBlocks()
+          || srcBlocks.size() > lastFetchedBlocks / 2) {
+        return;
+      }
+      final long size = Math.min(getBlocksSize, blocksToReceive);
+      prefetchedBlocks = getBlocksExecutor.submit(
+          new Callable<BlocksWithLocations>() {
+            @Override
+            public BlocksWithLocations call() throws IOException {
+              return fetchBlocks(size);
+            }
+          });
+    }
+
+    /**
+     * Fetch new blocks of this source, taking those fetched in the background
+     * if there are any.
+     *
+     * @return the total size of the received blocks in the number of bytes.
+     */
+    @VisibleForTesting
+    long fetchMoreBlocks() throws IOException, InterruptedException {
+      return prefetchedBlocks != null ? addPrefetchedBlocks() : getBlockList();
+    }
 
+    @VisibleForTesting
+    void setBlocksToReceive(long blocksToReceive) {
+      this.blocksToReceive = blocksToReceive;
+    }
+
+    /** Add the blocks fetched in the background to the block list. */
+    private long addPrefetchedBlocks()
+        throws IOException, InterruptedException {
+      final Future<BlocksWithLocations> f = prefetchedBlocks;
+      prefetchedBlocks = null;
+      try {
+        return addBlocks(f.get());
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+
+    /**
+     * Add the fetched blocks to this source's block list &
+     * {@link Dispatcher#globalBlocks}.
+     *
+     * @return the total size of the added blocks in the number of bytes.
+     */
+    private long addBlocks(BlocksWithLocations newBlksLocs) {
+      final int numBlocks = srcBlocks.size();
       long bytesReceived = 0;
       for (BlockWithLocations blkLocs : newBlksLocs.getBlocks()) {
         // Skip small blocks.
@@ -838,6 +984,7 @@ private long getBlockList() throws IOException {
           }
         }
       }
+      lastFetchedBlocks = srcBlocks.size() - numBlocks;
       return bytesReceived;
     }
 
@@ -936,6 +1083,7 @@ private void dispatchBlocks(long delay) {
           // Reset previous move timestamp
           previousMoveTimestamp = Time.monotonicNow();
           executePendingMove(p);
+          prefetchBlockList();
           continue;
         }
 
@@ -952,7 +1100,7 @@ private void dispatchBlocks(long delay) {
               }
               Thread.sleep(delay);
             }
-            final long received = getBlockList();
+            final long received = fetchMoreBlocks();
             if (received == 0) {
               return;
             }
@@ -989,6 +1137,10 @@ private void dispatchBlocks(long delay) {
         }
       }
 
+      if (prefetchedBlocks != null) {
+        prefetchedBlocks.cancel(true);
+        prefetchedBlocks = null;
+      }
       if (isIterationOver()) {
         LOG.info("The maximum iteration time (" + MAX_ITERATION_TIME/1000
             + " seconds) has been reached. Stopping " + this);
@@ -1013,14 +1165,15 @@ public Dispatcher(NameNodeConnector nnc, Set<String> includedNodes,
       int maxNoMoveInterval, Configuration conf) {
     this(nnc, includedNodes, excludedNodes, movedWinWidth,
         moverThreads, dispatcherThreads, maxConcurrentMovesPerNode,
-        0L, 0L, 0, maxNoMoveInterval, conf);
+        0L, 0L, 0, maxNoMoveInterval, false, conf);
   }
 
   Dispatcher(NameNodeConnector nnc, Set<String> includedNodes,
       Set<String> excludedNodes, long movedWinWidth, int moverThreads,
       int dispatcherThreads, int maxConcurrentMovesPerNode,
       long getBlocksSize, long getBlocksMinBlockSize,
-      int blockMoveTimeout, int maxNoMoveInterval, Configuration conf) {
+      int blockMoveTimeout, int maxNoMoveInterval, boolean continuous,
+      Configuration conf) {
     this.nnc = nnc;
     this.excludedNodes = excludedNodes;
     this.includedNodes = includedNodes;
@@ -1038,6 +1191,11 @@ public Dispatcher(NameNodeConnector nnc, Set<String> includedNodes,
     this.getBlocksMinBlockSize = getBlocksMinBlockSize;
     this.blockMoveTimeout = blockMoveTimeout;
     this.maxNoMoveInterval = maxNoMoveInterval;
+    this.continuous = continuous;
+    // At most BALANCER_NUM_RPC_PER_SEC block lists are fetched at a time.
+    this.getBlocksExecutor = continuous && dispatcherThreads > 0 ?
+        Executors.newFixedThreadPool(
+            Math.min(dispatcherThreads, BALANCER_NUM_RPC_PER_SEC)) : null;
 
     this.saslClient = new SaslDataTransferClient(conf,
         DataTransferSaslUtil.getSaslPropertiesResolver(conf),
@@ -1122,7 +1280,7 @@ public List<DatanodeStorageReport> init() throws IOException {
   }
 
   public DDatanode newDatanode(DatanodeInfo datanode) {
-    return new DDatanode(datanode, maxConcurrentMovesPerNode);
+    return new DDatanode(datanode, maxConcurrentMovesPerNode, continuous);
   }
 
 
@@ -1378,6 +1536,9 @@ public void shutdownNow() {
     if (dispatchExecutor != null) {
       dispatchExecutor.shutdownNow();
     }
+    if (getBlocksExecutor != null) {
+      getBlocksExecutor.shutdownNow();
+    }
   }
 
   static class Util {
@@ -49,6 +49,7 @@
 import org.apache.hadoop.net.SocketOutputStream;
 import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.DirectBufferPool;
 import org.apache.htrace.core.TraceScope;
 
 import static org.apache.hadoop.io.nativeio.NativeIO.POSIX.POSIX_FADV_DONTNEED;
@@ -116,6 +117,12 @@ class BlockSender implements java.io.Closeable {
   }
   private static final int TRANSFERTO_BUFFER_SIZE = Math.max(
       IO_FILE_BUFFER_SIZE, MIN_BUFFER_WITH_TRANSFERTO);
+  /**
+   * Pool of direct buffers used to verify checksums off-heap before the
+   * data is sent with transferTo(), or discarded by the block scanner.
+   */
+  private static final DirectBufferPool DIRECT_BUFFER_POOL =
+      new DirectBufferPool();
   
   /** the block to read from */
   private final ExtendedBlock block;
@@ -144,6 +151,10 @@ class BlockSender implements java.io.Closeable {
   private final boolean transferToAllowed;
   /** Set to true once entire requested byte range has been sent to the client */
   private boolean sentEntireByteRange;
+  /** True if the requested range covers all data of a finalized replica */
+  private final boolean entireReplica;
+  /** The storage ID of the volume of the replica */
+  private final String storageId;
   /** When true, verify checksum while reading from checksum file */
   private final boolean verifyChecksum;
   /** Format used to print client trace log messages */
@@ -160,6 +171,23 @@ class BlockSender implements java.io.Closeable {
   private ReadaheadRequest curReadahead;
 
   private final boolean alwaysReadahead;
+
+  /** Readahead does not extend past this offset. */
+  private final long readaheadLimit;
+
+  /**
+   * The access pattern of the client stream this read belongs to, if
+   * readahead is adaptive. Set to null once the read is reported back to
+   * the {@link ReadPatternTracker}.
+   */
+  private ReadPatternTracker.StreamRead streamRead;
+
+  /** Readahead of the next request of a strided stream. */
+  private ReadaheadRequest prefetch;
+
+  /** The range of the block read ahead for this read. */
+  private long readaheadStart = Long.MAX_VALUE;
+  private long readaheadEnd = Long.MIN_VALUE;
   
   private final boolean dropCacheBehindLargeReads;
   
@@ -167,6 +195,18 @@ class BlockSender implements java.io.Closeable {
   
   private long lastCacheDropOffset;
   private final FileIoProvider fileIoProvider;
+  /**
+   * Direct buffers holding the data and checksums of the current packet
+   * when checksums are verified off-heap. null otherwise.
+   */
+  private ByteBuffer directDataBuf;
+  private ByteBuffer directChecksumBuf;
+  /** Block data handed to the output by this sender. */
+  private long bytesServed;
+  /** Block data copied through heap buffers by this sender. */
+  private long heapBytesCopied;
+  /** Block data copied through direct buffers by this sender. */
+  private long directBytesCopied;
   
   @VisibleForTesting
   static long CACHE_DROP_INTERVAL_BYTES = 1024 * 1024; // 1MB
@@ -195,6 +235,31 @@ class BlockSender implements java.io.Closeable {
               boolean sendChecksum, DataNode datanode, String clientTraceFmt,
               CachingStrategy cachingStrategy)
       throws IOException {
+    this(block, startOffset, length, corruptChecksumOk, verifyChecksum,
+        sendChecksum, datanode, clientTraceFmt, cachingStrategy, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param block Block that is being read
+   * @param startOffset starting offset to read from
+   * @param length length of data to read
+   * @param corruptChecksumOk if true, corrupt checksum is okay
+   * @param verifyChecksum verify checksum while reading the data
+   * @param sendChecksum send checksum to client.
+   * @param datanode datanode from which the block is being read
+   * @param clientTraceFmt format string used to print client trace logs
+   * @param clientName the client reading the block, whose access pattern
+   *                   adaptive readahead follows; null if the block is not
+   *                   read by a client
+   * @throws IOException
+   */
+  BlockSender(ExtendedBlock block, long startOffset, long length,
+              boolean corruptChecksumOk, boolean verifyChecksum,
+              boolean sendChecksum, DataNode datanode, String clientTraceFmt,
+              CachingStrategy cachingStrategy, String clientName)
+      throws IOException {
     InputStream blockIn = null;
     DataInputStream checksumIn = null;
     FsVolumeReference volumeRef = null;
@@ -204,34 +269,6 @@ class BlockSender implements java.io.Closeable {
       this.corruptChecksumOk = corruptChecksumOk;
       this.verifyChecksum = verifyChecksum;
       this.clientTraceFmt = clientTraceFmt;
-
-      /*
-       * If the client asked for the cache to be dropped behind all reads,
-       * we honor that.  Otherwise, we use the DataNode defaults.
-       * When using DataNode defaults, we use a heuristic where we only
-       * drop the cache for large reads.
-       */
-      if (cachingStrategy.getDropBehind() == null) {
-        this.dropCacheBehindAllReads = false;
-        this.dropCacheBehindLargeReads =
-            datanode.getDnConf().dropCacheBehindReads;
-      } else {
-        this.dropCacheBehindAllReads =
-            this.dropCacheBehindLargeReads =
-                 cachingStrategy.getDropBehind().booleanValue();
-      }
-      /*
-       * Similarly, if readahead was explicitly requested, we always do it.
-       * Otherwise, we read ahead based on the DataNode settings, and only
-       * when the reads are large.
-       */
-      if (cachingStrategy.getReadahead() == null) {
-        this.alwaysReadahead = false;
-        this.readaheadLength = datanode.getDnConf().readaheadLength;
-      } else {
-        this.alwaysReadahead = true;
-        this.readaheadLength = cachingStrategy.getReadahead().longValue();
-      }
       this.datanode = datanode;
       
       if (verifyChecksum) {
@@ -289,6 +326,7 @@ class BlockSender implements java.io.Closeable {
 
       // Obtain a reference before reading data
       volumeRef = datanode.data.getVolume(block).obtainReference();
+      storageId = volumeRef.getVolume().getStorageID();
 
       /* 
        * (corruptChecksumOK, meta_file_exist): operation
@@ -375,6 +413,7 @@ class BlockSender implements java.io.Closeable {
       // checksum
       long end = chunkChecksum != null ? chunkChecksum.getDataLength()
           : replica.getBytesOnDisk();
+      final long replicaEnd = end;
       if (startOffset < 0 || startOffset > end
           || (length + startOffset) > end) {
         String msg = " Offset " + startOffset + " and length " + length
@@ -401,6 +440,54 @@ class BlockSender implements java.io.Closeable {
         }
       }
       endOffset = end;
+      entireReplica = replica.getState() == ReplicaState.FINALIZED
+          && offset == 0 && endOffset == replicaEnd;
+
+      /*
+       * If readahead was explicitly requested, we always do it.
+       * Otherwise, we read ahead based on the DataNode settings, and only
+       * when the reads are large, unless readahead is adaptive.
+       */
+      ReadPatternTracker tracker = datanode.getReadPatternTracker();
+      if (cachingStrategy.getReadahead() != null) {
+        this.alwaysReadahead = true;
+        this.readaheadLength = cachingStrategy.getReadahead().longValue();
+        this.readaheadLimit = Long.MAX_VALUE;
+      } else if (tracker == null || clientName == null
+          || clientName.isEmpty()) {
+        this.alwaysReadahead = false;
+        this.readaheadLength = datanode.getDnConf().readaheadLength;
+        this.readaheadLimit = Long.MAX_VALUE;
+      } else {
+        streamRead = tracker.startRead(clientName, block, startOffset,
+            startOffset + length);
+        this.readaheadLength = streamRead.getReadaheadLength();
+        // Sequential streams read ahead past the end of short requests,
+        // other streams only within long requests.
+        this.alwaysReadahead = streamRead.getPattern() ==
+            ReadPatternTracker.Pattern.SEQUENTIAL;
+        this.readaheadLimit = streamRead.isReadaheadPastRequest()
+            ? replicaEnd : endOffset;
+        updateReadPatternMetrics(streamRead);
+      }
+
+      /*
+       * If the client asked for the cache to be dropped behind all reads,
+       * we honor that.  Otherwise, we use the DataNode defaults.
+       * When using DataNode defaults, we use a heuristic where we only
+       * drop the cache for large reads, or for all reads of a sequential
+       * scan if readahead is adaptive.
+       */
+      if (cachingStrategy.getDropBehind() == null) {
+        this.dropCacheBehindAllReads =
+            streamRead != null && streamRead.isDropBehind();
+        this.dropCacheBehindLargeReads =
+            datanode.getDnConf().dropCacheBehindReads;
+      } else {
+        this.dropCacheBehindAllReads =
+            this.dropCacheBehindLargeReads =
+                 cachingStrategy.getDropBehind().booleanValue();
+      }
 
       // seek to the right offsets
       if (offset > 0 && checksumIn != null) {
@@ -445,6 +532,15 @@ public void close() throws IOException {
     if (curReadahead != null) {
       curReadahead.cancel();
     }
+    if (prefetch != null) {
+      prefetch.cancel();
+    }
+    if (streamRead != null) {
+      datanode.metrics.incrReadaheadWastedBytes(
+          datanode.getReadPatternTracker().endRead(streamRead, offset,
+              readaheadStart, readaheadEnd));
+      streamRead = null;
+    }
 
     try {
       ris.closeStreams();
@@ -523,10 +619,12 @@ private int numberOfChunks(long datalen) {
    * @param maxChunks maximum number of chunks to send
    * @param out stream to send data to
    * @param transferTo use transferTo to send data
+   * @param discardData do not write the data, only the header and checksums
    * @param throttler used for throttling data transfer bandwidth
    */
   private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
-      boolean transferTo, DataTransferThrottler throttler) throws IOException {
+      boolean transferTo, boolean discardData, DataTransferThrottler throttler)
+      throws IOException {
     int dataLen = (int) Math.min(endOffset - offset,
                              (chunkSize * (long) maxChunks));
     
@@ -543,7 +641,7 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     // _ padding, since the header is variable-length
     // H = header and length prefixes
     // C = checksums
-    // D? = data, if transferTo is false.
+    // D? = data, if transferTo and discardData are false.
     
     int headerLen = writePacketHeader(pkt, dataLen, packetLen);
     
@@ -568,8 +666,17 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     }
     
     int dataOff = checksumOff + checksumDataLen;
-    if (!transferTo) { // normal transfer
+    if (directDataBuf != null) {
+      // read and verify off-heap; the data only enters the heap if the
+      // output stream cannot take it any other way.
+      readAndVerifyDirect(buf, checksumOff, checksumDataLen, dataLen);
+      if (!transferTo && !discardData) {
+        directDataBuf.get(buf, dataOff, dataLen);
+        heapBytesCopied += dataLen;
+      }
+    } else if (!transferTo) { // normal transfer
       ris.readDataFully(buf, dataOff, dataLen);
+      heapBytesCopied += dataLen;
 
       if (verifyChecksum) {
         verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
@@ -591,11 +698,16 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
             dataLen, waitTime, transferTime);
         datanode.metrics.addSendDataPacketBlockedOnNetworkNanos(waitTime.get());
         datanode.metrics.addSendDataPacketTransferNanos(transferTime.get());
-        blockInPosition += dataLen;
+      } else if (discardData) {
+        out.write(buf, headerOff, dataOff - headerOff);
       } else {
         // normal transfer
         out.write(buf, headerOff, dataOff + dataLen - headerOff);
       }
+      if (transferTo || directDataBuf != null) {
+        blockInPosition += dataLen;
+      }
+      bytesServed += dataLen;
     } catch (IOException e) {
       if (e instanceof SocketTimeoutException) {
         /*
@@ -633,6 +745,45 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     return dataLen;
   }
   
+  /**
+   * Read the data of the current packet into the direct data buffer with a
+   * positional read and verify it against the checksums already read into
+   * {@code buf}. The checksums are verified in bulk, using native CRC code
+   * when it is available.
+   *
+   * @param buf buffer that has the checksums of the packet
+   * @param checksumOffset offset of the checksums in buf
+   * @param checksumLen length of the checksums
+   * @param dataLen length of the data to read and verify
+   * @throws ChecksumException on failed checksum verification
+   * @throws IOException on error reading the data
+   */
+  private void readAndVerifyDirect(byte[] buf, int checksumOffset,
+      int checksumLen, int dataLen) throws IOException {
+    directDataBuf.clear();
+    directDataBuf.limit(dataLen);
+    FileChannel fileCh = ((FileInputStream)ris.getDataIn()).getChannel();
+    fileIoProvider.readFully(ris.getVolumeRef().getVolume(), fileCh,
+        directDataBuf, blockInPosition);
+    directDataBuf.flip();
+    directBytesCopied += dataLen;
+
+    directChecksumBuf.clear();
+    directChecksumBuf.put(buf, checksumOffset, checksumLen);
+    directChecksumBuf.flip();
+    try {
+      checksum.verifyChunkedSums(directDataBuf, directChecksumBuf,
+          block.getBlockName(), offset);
+    } catch (ChecksumException ce) {
+      StringBuilder replicaInfoString = new StringBuilder();
+      if (replica != null) {
+        replicaInfoString.append(" for replica: " + replica.toString());
+      }
+      throw new ChecksumException("Checksum failed at " + ce.getPos()
+          + replicaInfoString, ce.getPos());
+    }
+  }
+
   /**
    * Read checksum into given buffer
    * @param buf buffer to read the checksum into
@@ -742,19 +893,34 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
     
     // Trigger readahead of beginning of file if configured.
     manageOsCache();
+    prefetchNextStride();
 
     final long startTime = ClientTraceLog.isDebugEnabled() ? System.nanoTime() : 0;
     try {
       int maxChunksPerPacket;
       int pktBufSize = PacketHeader.PKT_MAX_HEADER_LEN;
-      boolean transferTo = transferToAllowed && !verifyChecksum
+      // When verifying checksums, the data may be read into a direct buffer
+      // and verified there, so that it can still be sent with transferTo()
+      // or, for a discarding stream such as the block scanner's, never be
+      // copied onto the heap at all.
+      boolean verifyDirect = verifyChecksum
+          && datanode.getDnConf().transferToVerifyChecksum
+          && ris.getDataIn() instanceof FileInputStream;
+      boolean transferTo = transferToAllowed
+          && (!verifyChecksum || verifyDirect)
           && baseStream instanceof SocketOutputStream
           && ris.getDataIn() instanceof FileInputStream;
-      if (transferTo) {
+      boolean discardData = verifyDirect
+          && baseStream instanceof IOUtils.NullOutputStream;
+      if (transferTo || verifyDirect) {
         FileChannel fileChannel =
             ((FileInputStream)ris.getDataIn()).getChannel();
         blockInPosition = fileChannel.position();
-        streamForSendChunks = baseStream;
+      }
+      if (transferTo || discardData) {
+        if (transferTo) {
+          streamForSendChunks = baseStream;
+        }
         maxChunksPerPacket = numberOfChunks(TRANSFERTO_BUFFER_SIZE);
         
         // Smaller packet size to only hold checksum when doing transferTo
@@ -767,11 +933,17 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
       }
 
       ByteBuffer pktBuf = ByteBuffer.allocate(pktBufSize);
+      if (verifyDirect) {
+        directDataBuf = DIRECT_BUFFER_POOL.getBuffer(
+            chunkSize * maxChunksPerPacket);
+        directChecksumBuf = DIRECT_BUFFER_POOL.getBuffer(
+            checksumSize * maxChunksPerPacket);
+      }
 
       while (endOffset > offset && !Thread.currentThread().isInterrupted()) {
         manageOsCache();
         long len = sendPacket(pktBuf, maxChunksPerPacket, streamForSendChunks,
-            transferTo, throttler);
+            transferTo, discardData, throttler);
         offset += len;
         totalRead += len + (numberOfChunks(len) * checksumSize);
         seqno++;
@@ -781,7 +953,7 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         try {
           // send an empty packet to mark the end of the block
           sendPacket(pktBuf, maxChunksPerPacket, streamForSendChunks, transferTo,
-              throttler);
+              discardData, throttler);
           out.flush();
         } catch (IOException e) { //socket error
           throw ioeToSocketException(e);
@@ -790,6 +962,14 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         sentEntireByteRange = true;
       }
     } finally {
+      if (directDataBuf != null) {
+        DIRECT_BUFFER_POOL.returnBuffer(directDataBuf);
+        DIRECT_BUFFER_POOL.returnBuffer(directChecksumBuf);
+        directDataBuf = null;
+        directChecksumBuf = null;
+      }
+      datanode.metrics.incrBlockSenderBytes(bytesServed, heapBytesCopied,
+          directBytesCopied);
       if ((clientTraceFmt != null) && ClientTraceLog.isDebugEnabled()) {
         final long endTime = System.nanoTime();
         ClientTraceLog.debug(String.format(clientTraceFmt, totalRead,
@@ -816,7 +996,10 @@ private void manageOsCache() throws IOException {
           (alwaysReadahead || isLongRead())) {
       curReadahead = datanode.readaheadPool.readaheadStream(
           clientTraceFmt, ris.getDataInFd(), offset, readaheadLength,
-          Long.MAX_VALUE, curReadahead);
+          readaheadLimit, curReadahead);
+      if (curReadahead != null) {
+        recordReadahead(curReadahead);
+      }
     }
 
     // Drop what we've just read from cache, since we aren't
@@ -833,6 +1016,51 @@ private void manageOsCache() throws IOException {
     }
   }
 
+  /**
+   * Read ahead the range the next request of a strided stream is expected
+   * to read.
+   */
+  private void prefetchNextStride() {
+    if (streamRead == null || streamRead.getPrefetchLength() <= 0
+        || datanode.readaheadPool == null || ris.getDataInFd() == null) {
+      return;
+    }
+    long prefetchOffset = streamRead.getPrefetchOffset();
+    long prefetchLength = Math.min(streamRead.getPrefetchLength(),
+        replica.getBytesOnDisk() - prefetchOffset);
+    if (prefetchLength > 0) {
+      prefetch = datanode.readaheadPool.submitReadahead(clientTraceFmt,
+          ris.getDataInFd(), prefetchOffset, prefetchLength);
+      recordReadahead(prefetch);
+    }
+  }
+
+  private void recordReadahead(ReadaheadRequest request) {
+    if (streamRead != null) {
+      readaheadStart = Math.min(readaheadStart, request.getOffset());
+      readaheadEnd = Math.max(readaheadEnd,
+          request.getOffset() + request.getLength());
+    }
+  }
+
+  private void updateReadPatternMetrics(ReadPatternTracker.StreamRead read) {
+    switch (read.getPattern()) {
+    case SEQUENTIAL:
+      datanode.metrics.incrSequentialBlockReads();
+      break;
+    case STRIDED:
+      datanode.metrics.incrStridedBlockReads();
+      break;
+    case RANDOM:
+      datanode.metrics.incrRandomBlockReads();
+      break;
+    default:
+      break;
+    }
+    datanode.metrics.incrReadaheadHitBytes(read.getHitBytes());
+    datanode.metrics.incrReadaheadWastedBytes(read.getWastedBytes());
+  }
+
   /**
    * Returns true if we have done a long enough read for this block to qualify
    * for the DataNode-wide cache management defaults.  We avoid applying the
@@ -869,6 +1097,21 @@ boolean didSendEntireByteRange() {
     return sentEntireByteRange;
   }
 
+  /**
+   * @return true if the requested range covers all data of a finalized
+   * replica.
+   */
+  boolean isEntireReplica() {
+    return entireReplica;
+  }
+
+  /**
+   * @return the storage ID of the volume of the replica.
+   */
+  String getStorageId() {
+    return storageId;
+  }
+
   /**
    * @return the checksum type that will be used with this block transfer.
    */
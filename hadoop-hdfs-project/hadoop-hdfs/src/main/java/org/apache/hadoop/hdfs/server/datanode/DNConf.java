@@ -82,6 +82,7 @@ public class DNConf {
   private final boolean tcpNoDelay;
 
   final boolean transferToAllowed;
+  final boolean transferToVerifyChecksum;
   final boolean dropCacheBehindWrites;
   final boolean syncBehindWrites;
   final boolean syncBehindWritesInBackground;
@@ -91,6 +92,8 @@ public class DNConf {
   final boolean connectToDnViaHostname;
 
   final long readaheadLength;
+  final boolean readaheadAdaptive;
+  final long readaheadAdaptiveMaxLength;
   final long heartBeatInterval;
   private final long lifelineIntervalMs;
   final long blockReportInterval;
@@ -98,6 +101,7 @@ public class DNConf {
   final boolean peerStatsEnabled;
   final boolean diskStatsEnabled;
   final long outliersReportIntervalMs;
+  private final boolean slowVolumeDeprioritizeEnabled;
   final long ibrInterval;
   final long initialBlockReportDelayMs;
   final long cacheReportInterval;
@@ -148,10 +152,19 @@ public DNConf(final Configurable dn) {
     transferToAllowed = getConf().getBoolean(
         DFS_DATANODE_TRANSFERTO_ALLOWED_KEY,
         DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT);
+    transferToVerifyChecksum = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFERTO_VERIFY_CHECKSUM_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFERTO_VERIFY_CHECKSUM_DEFAULT);
 
     readaheadLength = getConf().getLong(
         HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_KEY,
         HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT);
+    readaheadAdaptive = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_READAHEAD_ADAPTIVE_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_READAHEAD_ADAPTIVE_ENABLED_DEFAULT);
+    readaheadAdaptiveMaxLength = getConf().getLong(
+        DFSConfigKeys.DFS_DATANODE_READAHEAD_ADAPTIVE_MAX_BYTES_KEY,
+        DFSConfigKeys.DFS_DATANODE_READAHEAD_ADAPTIVE_MAX_BYTES_DEFAULT);
     maxDataLength = getConf().getInt(DFSConfigKeys.IPC_MAXIMUM_DATA_LENGTH,
         DFSConfigKeys.IPC_MAXIMUM_DATA_LENGTH_DEFAULT);
     dropCacheBehindWrites = getConf().getBoolean(
@@ -183,6 +196,9 @@ public DNConf(final Configurable dn) {
         DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_KEY,
         DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_DEFAULT,
         TimeUnit.MILLISECONDS);
+    this.slowVolumeDeprioritizeEnabled = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_SLOW_VOLUME_DEPRIORITIZE_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_SLOW_VOLUME_DEPRIORITIZE_ENABLED_DEFAULT);
     this.ibrInterval = getConf().getLong(
         DFSConfigKeys.DFS_BLOCKREPORT_INCREMENTAL_INTERVAL_MSEC_KEY,
         DFSConfigKeys.DFS_BLOCKREPORT_INCREMENTAL_INTERVAL_MSEC_DEFAULT);
@@ -306,6 +322,15 @@ public String getEncryptionAlgorithm() {
     return encryptionAlgorithm;
   }
 
+  /**
+   * Returns true if volumes detected as slow are deprioritized.
+   *
+   * @return true if slow volumes are deprioritized
+   */
+  public boolean isSlowVolumeDeprioritizeEnabled() {
+    return slowVolumeDeprioritizeEnabled;
+  }
+
   public long getXceiverStopTimeout() {
     return xceiverStopTimeout;
   }
@@ -374,6 +374,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   private final List<String> usersWithLocalPathAccess;
   private final boolean connectToDnViaHostname;
   ReadaheadPool readaheadPool;
+  private ReadPatternTracker readPatternTracker;
   SaslDataTransferClient saslClient;
   SaslDataTransferServer saslServer;
   private ObjectName dataNodeInfoBeanName;
@@ -1427,6 +1428,10 @@ void startDataNode(List<StorageLocation> dataDirectories,
     // Create the ReadaheadPool from the DataNode context so we can
     // exit without having to explicitly shutdown its thread pool.
     readaheadPool = ReadaheadPool.getInstance();
+    if (dnConf.readaheadAdaptive) {
+      readPatternTracker = new ReadPatternTracker(dnConf.readaheadLength,
+          dnConf.readaheadAdaptiveMaxLength);
+    }
     saslClient = new SaslDataTransferClient(dnConf.getConf(),
         dnConf.saslPropsResolver, dnConf.trustedChannelResolver);
     saslServer = new SaslDataTransferServer(dnConf, blockPoolTokenSecretManager);
@@ -2850,6 +2855,14 @@ public BlockScanner getBlockScanner() {
     return blockScanner;
   }
 
+  /**
+   * @return the tracker of client read patterns, or null if readahead is
+   *         not adaptive.
+   */
+  ReadPatternTracker getReadPatternTracker() {
+    return readPatternTracker;
+  }
+
   @VisibleForTesting
   DirectoryScanner getDirectoryScanner() {
     return directoryScanner;
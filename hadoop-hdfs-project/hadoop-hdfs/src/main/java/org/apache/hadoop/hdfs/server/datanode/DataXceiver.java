@@ -375,6 +375,7 @@ public void requestShortCircuitFds(final ExtendedBlock blk,
         }
         fis = datanode.requestShortCircuitFdsForRead(blk, token, maxVersion);
         Preconditions.checkState(fis != null);
+        datanode.data.onBlockRead(blk.getBlockPoolId(), blk.getBlockId());
         bld.setStatus(SUCCESS);
         bld.setShortCircuitAccessVersion(DataNode.CURRENT_BLOCK_FORMAT_VERSION);
       } catch (ShortCircuitFdsVersionException e) {
@@ -593,7 +594,7 @@ public void readBlock(final ExtendedBlock block,
       try {
         blockSender = new BlockSender(block, blockOffset, length,
             true, false, sendChecksum, datanode, clientTraceFmt,
-            cachingStrategy);
+            cachingStrategy, clientName);
       } catch(IOException e) {
         String msg = "opReadBlock " + block + " received exception " + e; 
         LOG.info(msg);
@@ -607,6 +608,7 @@ public void readBlock(final ExtendedBlock block,
       long beginRead = Time.monotonicNow();
       read = blockSender.sendBlock(out, baseStream, null); // send data
       long duration = Time.monotonicNow() - beginRead;
+      datanode.data.onBlockRead(block.getBlockPoolId(), block.getBlockId());
       if (blockSender.didSendEntireByteRange()) {
         // If we sent the entire range, then we should expect the client
         // to respond with a Status enum.
@@ -618,6 +620,12 @@ public void readBlock(final ExtendedBlock block,
                 " did not send a valid status code after reading. " +
                 "Will close connection.");
             IOUtils.closeStream(out);
+          } else if (stat.getStatus() == Status.CHECKSUM_OK &&
+              blockSender.isEntireReplica()) {
+            // The client verified the checksums of the entire replica, so
+            // the block scanner does not need to verify it again soon.
+            datanode.getBlockScanner().markBlockVerified(
+                blockSender.getStorageId(), block);
           }
         } catch (IOException ioe) {
           LOG.debug("Error reading client status response. Will close connection.", ioe);
@@ -627,15 +627,22 @@ public ScanInfoPerBlockPool call() throws IOException {
      * Called by the thread before each potential disk scan so that a pause
      * can be optionally inserted to limit the number of scans per second.
      * The limit is controlled by
-     * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY}.
+     * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY},
+     * and halved for a volume deprioritized as slow.
      */
     public void throttle() throws InterruptedException {
       accumulateTimeRunning();
 
-      if ((throttleLimitMsPerSec < 1000) &&
-          (throttleTimer.now(TimeUnit.MILLISECONDS) > throttleLimitMsPerSec)) {
+      int limitMsPerSec = throttleLimitMsPerSec;
+      if (volume.getMetrics() != null && volume.getMetrics().isSlow()) {
+        // Spend at most half the time on a volume deprioritized as slow.
+        limitMsPerSec = Math.max(1, limitMsPerSec / 2);
+      }
+
+      if ((limitMsPerSec < 1000) &&
+          (throttleTimer.now(TimeUnit.MILLISECONDS) > limitMsPerSec)) {
 
-        Thread.sleep(MILLIS_PER_SECOND - throttleLimitMsPerSec);
+        Thread.sleep(MILLIS_PER_SECOND - limitMsPerSec);
         throttleTimer.reset().start();
       }
 
@@ -36,24 +36,29 @@
 import org.apache.hadoop.hdfs.server.diskbalancer.DiskBalancerException;
 import org.apache.hadoop.hdfs.server.diskbalancer.planner.NodePlan;
 import org.apache.hadoop.hdfs.server.diskbalancer.planner.Step;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.hdfs.web.JsonUtil;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -91,6 +96,7 @@ public class DiskBalancer {
   private String planFile;
   private DiskBalancerWorkStatus.Result currentResult;
   private long bandwidth;
+  private final int maxConcurrentMoves;
 
   /**
    * Constructs a Disk Balancer object. This object takes care of reading a
@@ -117,6 +123,9 @@ public DiskBalancer(String dataNodeUUID,
     this.bandwidth = conf.getInt(
         DFSConfigKeys.DFS_DISK_BALANCER_MAX_DISK_THROUGHPUT,
         DFSConfigKeys.DFS_DISK_BALANCER_MAX_DISK_THROUGHPUT_DEFAULT);
+    this.maxConcurrentMoves = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_DISK_BALANCER_MAX_CONCURRENT_MOVES,
+        DFSConfigKeys.DFS_DISK_BALANCER_MAX_CONCURRENT_MOVES_DEFAULT));
   }
 
   /**
@@ -529,6 +538,10 @@ public void run() {
         Thread.currentThread().setName("DiskBalancerThread");
         LOG.info("Executing Disk balancer plan. Plan File: {}, Plan ID: {}",
             planFile, planID);
+        if (maxConcurrentMoves > 1 && workMap.size() > 1) {
+          copyBlocksConcurrently();
+          return;
+        }
         for (Map.Entry<VolumePair, DiskBalancerWorkItem> entry :
             workMap.entrySet()) {
           blockMover.setRunnable();
@@ -538,6 +551,52 @@ public void run() {
     });
   }
 
+  /**
+   * Runs the moves of up to maxConcurrentMoves volume pairs at the same time.
+   * Pairs may share a volume; the mover keeps the throughput of each volume
+   * within its budget. Returns when all moves are done, or when the plan is
+   * cancelled.
+   */
+  private void copyBlocksConcurrently() {
+    final int threads = Math.min(maxConcurrentMoves, workMap.size());
+    ExecutorService movers = Executors.newFixedThreadPool(threads,
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("DiskBalancerMover-" + threadIndex.getAndIncrement());
+            return t;
+          }
+        });
+    List<Future<?>> moves = new ArrayList<>(workMap.size());
+    try {
+      for (final Map.Entry<VolumePair, DiskBalancerWorkItem> entry :
+          workMap.entrySet()) {
+        moves.add(movers.submit(new Runnable() {
+          @Override
+          public void run() {
+            blockMover.copyBlocks(entry.getKey(), entry.getValue());
+          }
+        }));
+      }
+      for (Future<?> move : moves) {
+        try {
+          move.get();
+        } catch (ExecutionException e) {
+          LOG.error("Disk Balancer - Volume pair move failed.", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      // The plan was cancelled, or the datanode is shutting down.
+      blockMover.setExitFlag();
+      Thread.currentThread().interrupt();
+    } finally {
+      movers.shutdownNow();
+    }
+  }
+
   /**
    * Insert work items to work map.
    * @param volumePair - VolumePair
@@ -713,10 +772,14 @@ public static class DiskBalancerMover implements BlockMover {
     private long diskBandwidth;
     private long blockTolerance;
     private long maxDiskErrors;
-    private int poolIndex;
     private AtomicBoolean shouldRun;
-    private long startTime;
-    private long secondsElapsed;
+    private volatile long startTime;
+    private volatile long secondsElapsed;
+    // Per volume throttlers when volume pairs are moved concurrently, so
+    // that pairs sharing a volume share its bandwidth budget.
+    private final boolean throttlePerVolume;
+    private final ConcurrentHashMap<String, DataTransferThrottler>
+        volumeThrottlers = new ConcurrentHashMap<>();
 
     /**
      * Constructs diskBalancerMover.
@@ -763,6 +826,10 @@ public DiskBalancerMover(FsDatasetSpi dataset, Configuration conf) {
         maxDiskErrors =
             DFSConfigKeys.DFS_DISK_BALANCER_MAX_DISK_ERRORS_DEFAULT;
       }
+
+      this.throttlePerVolume = conf.getInt(
+          DFSConfigKeys.DFS_DISK_BALANCER_MAX_CONCURRENT_MOVES,
+          DFSConfigKeys.DFS_DISK_BALANCER_MAX_CONCURRENT_MOVES_DEFAULT) > 1;
     }
 
     /**
@@ -868,6 +935,27 @@ private long computeDelay(long bytesCopied, long timeUsed,
       return (delay <= 0) ? 0 : MILLISECONDS.convert(delay, TimeUnit.SECONDS);
     }
 
+    /**
+     * Holds the copy back until the volume's bandwidth budget allows the
+     * given number of bytes. The budget of a volume is the max disk
+     * throughput, shared by all concurrent moves from or to the volume.
+     *
+     * @param volumeUuid - Volume UUID
+     * @param bytes - Bytes just copied from or to the volume
+     */
+    private void throttleVolume(String volumeUuid, long bytes) {
+      DataTransferThrottler throttler = volumeThrottlers.get(volumeUuid);
+      if (throttler == null) {
+        DataTransferThrottler newThrottler =
+            new DataTransferThrottler(diskBandwidth * 1024 * 1024);
+        throttler = volumeThrottlers.putIfAbsent(volumeUuid, newThrottler);
+        if (throttler == null) {
+          throttler = newThrottler;
+        }
+      }
+      throttler.throttle(bytes);
+    }
+
     /**
      * Returns maximum errors to tolerate for the specific plan or the default.
      *
@@ -938,8 +1026,10 @@ private void openPoolIters(FsVolumeSpi source, List<FsVolumeSpi
     /**
      * Returns the next block that we copy from all the block pools. This
      * function looks across all block pools to find the next block to copy.
+     * The iterator of each block pool tried is moved to the end of the list,
+     * so that the block pools of a volume pair are copied round-robin.
      *
-     * @param poolIters - List of BlockIterators
+     * @param poolIters - List of BlockIterators of the volume pair
      * @return ExtendedBlock.
      */
     ExtendedBlock getNextBlock(List<FsVolumeSpi.BlockIterator> poolIters,
@@ -949,8 +1039,8 @@ ExtendedBlock getNextBlock(List<FsVolumeSpi.BlockIterator> poolIters,
       ExtendedBlock block = null;
       while (block == null && currentCount < poolIters.size()) {
         currentCount++;
-        poolIndex = poolIndex++ % poolIters.size();
-        FsVolumeSpi.BlockIterator currentPoolIter = poolIters.get(poolIndex);
+        FsVolumeSpi.BlockIterator currentPoolIter = poolIters.remove(0);
+        poolIters.add(currentPoolIter);
         block = getBlockToCopy(currentPoolIter, item);
       }
 
@@ -1020,8 +1110,11 @@ public void copyBlocks(VolumePair pair, DiskBalancerWorkItem item) {
       }
 
       List<FsVolumeSpi.BlockIterator> poolIters = new LinkedList<>();
-      startTime = Time.now();
-      item.setStartTime(startTime);
+      // Several pairs may be copied at once, so the progress of this item is
+      // measured from its own start time.
+      final long itemStartTime = Time.now();
+      startTime = itemStartTime;
+      item.setStartTime(itemStartTime);
       secondsElapsed = 0;
 
       try {
@@ -1049,8 +1142,8 @@ public void copyBlocks(VolumePair pair, DiskBalancerWorkItem item) {
                       "blocks.",
                   source.getBaseURI(), dest.getBaseURI(),
                   item.getBytesCopied(), item.getBlocksCopied());
-              this.setExitFlag();
-              continue;
+              // Only this pair is done, other pairs may still be moving.
+              break;
             }
 
             ExtendedBlock block = getNextBlock(poolIters, item);
@@ -1058,8 +1151,7 @@ public void copyBlocks(VolumePair pair, DiskBalancerWorkItem item) {
             if (block == null) {
               LOG.error("No source blocks, exiting the copy. Source: {}, " +
                   "Dest:{}", source.getBaseURI(), dest.getBaseURI());
-              this.setExitFlag();
-              continue;
+              break;
             }
 
             // check if someone told us exit, treat this as an interruption
@@ -1070,6 +1162,14 @@ public void copyBlocks(VolumePair pair, DiskBalancerWorkItem item) {
               continue;
             }
 
+            // Another pair with the same source volume may have moved the
+            // block since it was listed.
+            FsVolumeSpi blockVolume = this.dataset.getVolume(block);
+            if (blockVolume == null ||
+                !sourceVolUuid.equals(blockVolume.getStorageID())) {
+              continue;
+            }
+
             long timeUsed;
             // There is a race condition here, but we will get an IOException
             // if dest has no space, which we handle anyway.
@@ -1100,15 +1200,20 @@ public void copyBlocks(VolumePair pair, DiskBalancerWorkItem item) {
             // Because we sleep, if a shutdown or cancel call comes in
             // we exit via Thread Interrupted exception.
             Thread.sleep(computeDelay(block.getNumBytes(), timeUsed, item));
+            if (throttlePerVolume) {
+              throttleVolume(sourceVolUuid, block.getNumBytes());
+              throttleVolume(destVolUuuid, block.getNumBytes());
+            }
 
             // We delay updating the info to avoid confusing the user.
             // This way we report the copy only if it is under the
             // throughput threshold.
             item.incCopiedSoFar(block.getNumBytes());
             item.incBlocksCopied();
-            secondsElapsed = TimeUnit.MILLISECONDS.toSeconds(Time.now() -
-                startTime);
-            item.setSecondsElapsed(secondsElapsed);
+            final long itemSecondsElapsed = TimeUnit.MILLISECONDS.toSeconds(
+                Time.now() - itemStartTime);
+            secondsElapsed = itemSecondsElapsed;
+            item.setSecondsElapsed(itemSecondsElapsed);
           } catch (IOException ex) {
             LOG.error("Exception while trying to copy blocks. error: {}", ex);
             item.incErrorCount();
@@ -38,6 +38,7 @@
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileInputStream;
@@ -47,6 +48,7 @@
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
@@ -286,6 +288,39 @@ public void transferToSocketFully(
     }
   }
 
+  /**
+   * Read from a FileChannel at the given position until the buffer is full.
+   * The position of the channel itself is not changed.
+   *
+   * @param volume  target volume. null if unavailable.
+   * @param fileCh  FileChannel from which to read data.
+   * @param buf  buffer to fill. Reads up to {@link ByteBuffer#remaining()}.
+   * @param position  position within the channel where the read begins.
+   * @throws IOException if the channel ends before the buffer is filled.
+   */
+  public void readFully(
+      @Nullable FsVolumeSpi volume, FileChannel fileCh, ByteBuffer buf,
+      long position) throws IOException {
+    final int len = buf.remaining();
+    final long begin = profilingEventHook.beforeFileIo(volume, READ, len);
+    try {
+      faultInjectorEventHook.beforeFileIo(volume, READ, len);
+      while (buf.hasRemaining()) {
+        int n = fileCh.read(buf, position);
+        if (n < 0) {
+          throw new EOFException("Premature EOF from channel: " +
+              buf.remaining() + " bytes left to read at position " +
+              position);
+        }
+        position += n;
+      }
+      profilingEventHook.afterFileIo(volume, READ, begin, len);
+    } catch (Exception e) {
+      onFailure(volume, begin);
+      throw e;
+    }
+  }
+
   /**
    * Create a file.
    * @param volume  target volume. null if unavailable.
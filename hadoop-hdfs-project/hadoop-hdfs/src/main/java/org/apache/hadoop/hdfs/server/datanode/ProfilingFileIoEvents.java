@@ -30,10 +30,15 @@
 
 import javax.annotation.Nullable;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Profiles the performance of the metadata and data related operations on
  * datanode volumes.
+ *
+ * Latencies are measured in nanoseconds, recorded in microseconds into the
+ * per-operation latency histograms of the volume, and in milliseconds into
+ * its rates and quantiles.
  */
 @InterfaceAudience.Private
 class ProfilingFileIoEvents {
@@ -68,7 +73,7 @@ public long beforeMetadataOp(@Nullable FsVolumeSpi volume,
     if (isEnabled) {
       DataNodeVolumeMetrics metrics = getVolumeMetrics(volume);
       if (metrics != null) {
-        return Time.monotonicNow();
+        return Time.monotonicNowNanos();
       }
     }
     return 0;
@@ -79,7 +84,11 @@ public void afterMetadataOp(@Nullable FsVolumeSpi volume,
     if (isEnabled) {
       DataNodeVolumeMetrics metrics = getVolumeMetrics(volume);
       if (metrics != null) {
-        metrics.addMetadastaOperationLatency(Time.monotonicNow() - begin);
+        long latencyNanos = Time.monotonicNowNanos() - begin;
+        metrics.getMetadataOperationLatencyHistogram().add(
+            TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        metrics.addMetadastaOperationLatency(
+            TimeUnit.NANOSECONDS.toMillis(latencyNanos));
       }
     }
   }
@@ -89,7 +98,7 @@ public long beforeFileIo(@Nullable FsVolumeSpi volume,
     if (isEnabled && ThreadLocalRandom.current().nextInt() < sampleRangeMax) {
       DataNodeVolumeMetrics metrics = getVolumeMetrics(volume);
       if (metrics != null) {
-        return Time.monotonicNow();
+        return Time.monotonicNowNanos();
       }
     }
     return 0;
@@ -100,19 +109,25 @@ public void afterFileIo(@Nullable FsVolumeSpi volume,
     if (isEnabled && begin != 0) {
       DataNodeVolumeMetrics metrics = getVolumeMetrics(volume);
       if (metrics != null) {
-        long latency = Time.monotonicNow() - begin;
+        long latencyNanos = Time.monotonicNowNanos() - begin;
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        long latency = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
         metrics.addDataFileIoLatency(latency);
         switch (op) {
         case SYNC:
+          metrics.getSyncIoLatencyHistogram().add(latencyMicros);
           metrics.addSyncIoLatency(latency);
           break;
         case FLUSH:
+          metrics.getSyncIoLatencyHistogram().add(latencyMicros);
           metrics.addFlushIoLatency(latency);
           break;
         case READ:
+          metrics.getReadIoLatencyHistogram().add(latencyMicros);
           metrics.addReadIoLatency(latency);
           break;
         case WRITE:
+          metrics.getWriteIoLatencyHistogram().add(latencyMicros);
           metrics.addWriteIoLatency(latency);
           break;
         default:
@@ -125,7 +140,8 @@ public void onFailure(@Nullable FsVolumeSpi volume, long begin) {
     if (isEnabled) {
       DataNodeVolumeMetrics metrics = getVolumeMetrics(volume);
       if (metrics != null) {
-        metrics.addFileIoError(Time.monotonicNow() - begin);
+        metrics.addFileIoError(TimeUnit.NANOSECONDS.toMillis(
+            Time.monotonicNowNanos() - begin));
       }
     }
   }
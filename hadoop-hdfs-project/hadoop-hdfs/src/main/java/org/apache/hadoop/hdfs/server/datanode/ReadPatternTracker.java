@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Detects how each client reads each replica, so that {@link BlockSender}
+ * can adapt readahead and drop-behind to the access pattern.
+ *
+ * A client that reads a block with positional reads or seeks sends a
+ * separate read request, served by a separate BlockSender, for every range
+ * it reads. For each stream, i.e. each client and block, the tracker keeps
+ * the end of the last request and the readahead that has not been read
+ * yet, and classifies every new request as
+ * <ul>
+ * <li>sequential, if it starts where the previous request ended. The
+ * readahead window doubles with every sequential request up to a maximum,
+ * and extends past the requested range; once it reaches the maximum, the
+ * stream is a scan and the cache is dropped behind it.</li>
+ * <li>strided, if it skips as many bytes as the previous request did. The
+ * range the next request is expected to read is read ahead.</li>
+ * <li>random otherwise. Readahead does not extend past the requested
+ * range.</li>
+ * </ul>
+ * Readahead issued for one request and read by a later request of the same
+ * stream is counted as a hit; readahead that the stream skips, or never
+ * reads before the stream is forgotten, is counted as wasted.
+ */
+@InterfaceAudience.Private
+class ReadPatternTracker {
+  enum Pattern {
+    /** The first request of a stream. */
+    UNKNOWN,
+    SEQUENTIAL,
+    STRIDED,
+    RANDOM
+  }
+
+  /**
+   * A request that starts at most this many bytes after the end of the
+   * previous one is still sequential.
+   */
+  @VisibleForTesting
+  static final long SEQUENTIAL_GAP_BYTES = 64 * 1024;
+
+  /** The maximum number of streams to track. */
+  @VisibleForTesting
+  static final int MAX_STREAMS = 16384;
+
+  /** Streams that were not read for this long are forgotten. */
+  @VisibleForTesting
+  static final long STREAM_EXPIRY_MS = 60 * 1000;
+
+  private static final long NO_GAP = Long.MIN_VALUE;
+
+  private final long baseReadahead;
+  private final long maxReadahead;
+
+  /** Streams in least recently read order. */
+  private final LinkedHashMap<StreamKey, Stream> streams =
+      new LinkedHashMap<StreamKey, Stream>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StreamKey, Stream> e) {
+          if (size() > MAX_STREAMS) {
+            forgottenReadahead += e.getValue().unreadReadahead();
+            return true;
+          }
+          return false;
+        }
+      };
+
+  /** Unread readahead of streams forgotten since the last request. */
+  private long forgottenReadahead;
+
+  /**
+   * @param baseReadahead the readahead window of a request whose pattern
+   *                      is not sequential yet
+   * @param maxReadahead the maximum readahead window of a sequential stream
+   */
+  ReadPatternTracker(long baseReadahead, long maxReadahead) {
+    this.baseReadahead = baseReadahead;
+    this.maxReadahead = Math.max(baseReadahead, maxReadahead);
+  }
+
+  /**
+   * Classify a new read request.
+   *
+   * @param clientName the client sending the request
+   * @param block the block to read
+   * @param start the first requested byte
+   * @param end the end of the requested range
+   * @return how to read ahead for the request
+   */
+  synchronized StreamRead startRead(String clientName, ExtendedBlock block,
+      long start, long end) {
+    final long now = Time.monotonicNow();
+    expireStreams(now);
+
+    final StreamKey key = new StreamKey(clientName, block.getBlockPoolId(),
+        block.getBlockId());
+    Stream stream = streams.get(key);
+    final Pattern pattern;
+    long window = baseReadahead;
+    long prefetchOffset = 0;
+    long prefetchLength = 0;
+    long hit = 0;
+    long wasted = 0;
+    if (stream == null) {
+      stream = new Stream();
+      streams.put(key, stream);
+      pattern = Pattern.UNKNOWN;
+    } else {
+      // Account for the readahead left unread by the previous requests.
+      final long raStart = stream.readaheadStart;
+      final long raEnd = stream.readaheadEnd;
+      hit = Math.max(0, Math.min(end, raEnd) - Math.max(start, raStart));
+      wasted = Math.max(0, Math.min(start, raEnd) - raStart);
+      stream.readaheadStart = Math.max(raStart, Math.min(end, raEnd));
+
+      final long gap = start - stream.lastEnd;
+      if (gap >= 0 && gap <= SEQUENTIAL_GAP_BYTES) {
+        pattern = Pattern.SEQUENTIAL;
+        if (stream.pattern == Pattern.SEQUENTIAL) {
+          window = Math.min(maxReadahead, stream.window * 2);
+        }
+      } else if (gap == stream.lastGap) {
+        pattern = Pattern.STRIDED;
+        prefetchOffset = end + gap;
+        prefetchLength = prefetchOffset >= 0 ? end - start : 0;
+      } else {
+        pattern = Pattern.RANDOM;
+      }
+      stream.lastGap = gap;
+    }
+    stream.pattern = pattern;
+    stream.window = window;
+    stream.lastEnd = end;
+    stream.lastReadMs = now;
+
+    wasted += forgottenReadahead;
+    forgottenReadahead = 0;
+    final boolean dropBehind =
+        pattern == Pattern.SEQUENTIAL && window >= maxReadahead;
+    return new StreamRead(key, stream, pattern, window, dropBehind,
+        prefetchOffset, prefetchLength, hit, wasted);
+  }
+
+  /**
+   * Record the readahead issued while serving a request.
+   *
+   * @param read the request, as returned by {@link #startRead}
+   * @param readEnd the end of the data that was read for the request
+   * @param readaheadStart the first byte read ahead
+   * @param readaheadEnd the end of the data read ahead
+   * @return the number of bytes of readahead found to be wasted
+   */
+  synchronized long endRead(StreamRead read, long readEnd,
+      long readaheadStart, long readaheadEnd) {
+    long start = Math.max(readaheadStart, readEnd);
+    long end = readaheadEnd;
+    if (end <= start) {
+      return 0;
+    }
+    Stream stream = read.stream;
+    if (streams.get(read.key) != stream) {
+      // the stream was forgotten while the request was served
+      return end - start;
+    }
+    stream.lastReadMs = Time.monotonicNow();
+    long wasted = 0;
+    if (stream.unreadReadahead() > 0) {
+      if (stream.readaheadEnd < start || stream.readaheadStart > end) {
+        wasted = stream.unreadReadahead();
+      } else {
+        start = Math.min(start, stream.readaheadStart);
+        end = Math.max(end, stream.readaheadEnd);
+      }
+    }
+    stream.readaheadStart = start;
+    stream.readaheadEnd = end;
+    return wasted;
+  }
+
+  private void expireStreams(long now) {
+    for (Iterator<Stream> it = streams.values().iterator(); it.hasNext();) {
+      Stream stream = it.next();
+      if (now - stream.lastReadMs < STREAM_EXPIRY_MS) {
+        // the remaining streams were read more recently
+        break;
+      }
+      forgottenReadahead += stream.unreadReadahead();
+      it.remove();
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return streams.size();
+  }
+
+  /**
+   * How to read ahead for a read request.
+   */
+  static final class StreamRead {
+    private final StreamKey key;
+    private final Stream stream;
+    private final Pattern pattern;
+    private final long readaheadLength;
+    private final boolean dropBehind;
+    private final long prefetchOffset;
+    private final long prefetchLength;
+    private final long hitBytes;
+    private final long wastedBytes;
+
+    private StreamRead(StreamKey key, Stream stream, Pattern pattern,
+        long readaheadLength, boolean dropBehind, long prefetchOffset,
+        long prefetchLength, long hitBytes, long wastedBytes) {
+      this.key = key;
+      this.stream = stream;
+      this.pattern = pattern;
+      this.readaheadLength = readaheadLength;
+      this.dropBehind = dropBehind;
+      this.prefetchOffset = prefetchOffset;
+      this.prefetchLength = prefetchLength;
+      this.hitBytes = hitBytes;
+      this.wastedBytes = wastedBytes;
+    }
+
+    Pattern getPattern() {
+      return pattern;
+    }
+
+    /**
+     * @return the readahead window
+     */
+    long getReadaheadLength() {
+      return readaheadLength;
+    }
+
+    /**
+     * @return whether readahead may extend past the requested range
+     */
+    boolean isReadaheadPastRequest() {
+      return pattern == Pattern.UNKNOWN || pattern == Pattern.SEQUENTIAL;
+    }
+
+    /**
+     * @return whether to drop the data from the cache after reading it
+     */
+    boolean isDropBehind() {
+      return dropBehind;
+    }
+
+    /**
+     * @return the offset of the range the next request of a strided stream
+     *         is expected to read
+     */
+    long getPrefetchOffset() {
+      return prefetchOffset;
+    }
+
+    /**
+     * @return the length of the range to prefetch; 0 if there is none
+     */
+    long getPrefetchLength() {
+      return prefetchLength;
+    }
+
+    /**
+     * @return the number of requested bytes that earlier requests of the
+     *         stream read ahead
+     */
+    long getHitBytes() {
+      return hitBytes;
+    }
+
+    /**
+     * @return the number of bytes read ahead by earlier requests that were
+     *         found to be wasted when this request started
+     */
+    long getWastedBytes() {
+      return wastedBytes;
+    }
+  }
+
+  private static final class Stream {
+    private Pattern pattern = Pattern.UNKNOWN;
+    private long lastEnd;
+    private long lastGap = NO_GAP;
+    private long window;
+    private long lastReadMs;
+    /** The range read ahead but not read yet. */
+    private long readaheadStart;
+    private long readaheadEnd;
+
+    long unreadReadahead() {
+      return Math.max(0, readaheadEnd - readaheadStart);
+    }
+  }
+
+  private static final class StreamKey {
+    private final String clientName;
+    private final String bpid;
+    private final long blockId;
+
+    StreamKey(String clientName, String bpid, long blockId) {
+      this.clientName = clientName;
+      this.bpid = bpid;
+      this.blockId = blockId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof StreamKey)) {
+        return false;
+      }
+      StreamKey other = (StreamKey) o;
+      return blockId == other.blockId && bpid.equals(other.bpid)
+          && clientName.equals(other.clientName);
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (blockId ^ (blockId >>> 32)) * 31 + clientName.hashCode();
+    }
+  }
+}
@@ -21,6 +21,7 @@
 import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -66,6 +67,19 @@ public class VolumeScanner extends Thread {
    */
   private final static String BLOCK_ITERATOR_NAME = "scanner";
 
+  /**
+   * The maximum number of neighbors of corrupt blocks queued for scanning.
+   */
+  @VisibleForTesting
+  final static int MAX_NEIGHBOR_BLOCKS = 1000;
+
+  /**
+   * Blocks whose ids differ only in the lowest bits are stored in the same
+   * directory; see {@link DatanodeUtil#idToBlockDir}.  They are likely
+   * written at about the same time, and to nearby areas of the disk.
+   */
+  private final static long NEIGHBOR_BLOCK_ID_MASK = 0xFFL;
+
   /**
    * The configuration.
    */
@@ -113,8 +127,10 @@ void setConf(Conf conf) {
   /**
    * The null output stream to use with BlockSender objects.
    */
+  private final IOUtils.NullOutputStream nullBaseStream =
+      new IOUtils.NullOutputStream();
   private final DataOutputStream nullStream =
-      new DataOutputStream(new IOUtils.NullOutputStream());
+      new DataOutputStream(nullBaseStream);
 
   /**
    * The block iterators associated with this VolumeScanner.<p/>
@@ -131,6 +147,13 @@ void setConf(Conf conf) {
   private final LinkedHashSet<ExtendedBlock> suspectBlocks =
       new LinkedHashSet<ExtendedBlock>();
 
+  /**
+   * Blocks stored near blocks found to be corrupt.
+   * The scanner scans these blocks after the suspect blocks.
+   */
+  private final LinkedHashSet<ExtendedBlock> neighborBlocks =
+      new LinkedHashSet<ExtendedBlock>();
+
   /**
    * Blocks which were suspect which we have scanned.
    * This is used to avoid scanning the same suspect block over and over.
@@ -173,6 +196,8 @@ static class Statistics {
     long blocksScannedSinceRestart = 0;
     long scansSinceRestart = 0;
     long scanErrorsSinceRestart = 0;
+    long neighborBlocksScannedSinceRestart = 0;
+    long blocksVerifiedByClientsSinceRestart = 0;
     long nextBlockPoolScanStartMs = -1;
     long blockPoolPeriodEndsMs = -1;
     ExtendedBlock lastBlockScanned = null;
@@ -187,6 +212,10 @@ static class Statistics {
       this.blocksScannedSinceRestart = other.blocksScannedSinceRestart;
       this.scansSinceRestart = other.scansSinceRestart;
       this.scanErrorsSinceRestart = other.scanErrorsSinceRestart;
+      this.neighborBlocksScannedSinceRestart =
+          other.neighborBlocksScannedSinceRestart;
+      this.blocksVerifiedByClientsSinceRestart =
+          other.blocksVerifiedByClientsSinceRestart;
       this.nextBlockPoolScanStartMs = other.nextBlockPoolScanStartMs;
       this.blockPoolPeriodEndsMs = other.blockPoolPeriodEndsMs;
       this.lastBlockScanned = other.lastBlockScanned;
@@ -204,6 +233,10 @@ public String toString() {
               append(blocksScannedSinceRestart).
           append(", scansSinceRestart=").append(scansSinceRestart).
           append(", scanErrorsSinceRestart=").append(scanErrorsSinceRestart).
+          append(", neighborBlocksScannedSinceRestart=").
+              append(neighborBlocksScannedSinceRestart).
+          append(", blocksVerifiedByClientsSinceRestart=").
+              append(blocksVerifiedByClientsSinceRestart).
           append(", nextBlockPoolScanStartMs=").append(nextBlockPoolScanStartMs).
           append(", blockPoolPeriodEndsMs=").append(blockPoolPeriodEndsMs).
           append(", lastBlockScanned=").append(lastBlockScanned).
@@ -234,6 +267,10 @@ public void printStats(StringBuilder p) {
           stats.scansSinceRestart));
       p.append(String.format("Block scan errors since restart   : %57d%n",
           stats.scanErrorsSinceRestart));
+      p.append(String.format("Neighbor blocks scanned           : %57d%n",
+          stats.neighborBlocksScannedSinceRestart));
+      p.append(String.format("Blocks verified by clients        : %57d%n",
+          stats.blocksVerifiedByClientsSinceRestart));
       if (stats.nextBlockPoolScanStartMs > 0) {
         p.append(String.format("Hours until next block pool scan  : %57.3f%n",
             positiveMsToHours(stats.nextBlockPoolScanStartMs -
@@ -287,6 +324,7 @@ public void handle(ExtendedBlock block, IOException e) {
         return;
       }
       LOG.warn("Reporting bad {} on {}", block, volume);
+      scanner.markNeighborBlocks(block);
       try {
         scanner.datanode.reportBadBlocks(block, volume);
       } catch (IOException ie) {
@@ -441,7 +479,8 @@ private long scanBlock(ExtendedBlock cblock, long bytesPerSec) {
           false, true, true, datanode, null,
           CachingStrategy.newDropBehind());
       throttler.setBandwidth(bytesPerSec);
-      long bytesRead = blockSender.sendBlock(nullStream, null, throttler);
+      long bytesRead = blockSender.sendBlock(nullStream, nullBaseStream,
+          throttler);
       resultHandler.handle(block, null);
       return bytesRead;
     } catch (IOException e) {
@@ -481,8 +520,9 @@ static boolean calculateShouldScan(String storageId, long targetBytesPerSec,
   /**
    * Run an iteration of the VolumeScanner loop.
    *
-   * @param suspectBlock   A suspect block which we should scan, or null to
-   *                       scan the next regularly scheduled block.
+   * @param suspectBlock   A suspect block, or a neighbor of a corrupt block,
+   *                       which we should scan, or null to scan the next
+   *                       regularly scheduled block.
    *
    * @return     The number of milliseconds to delay before running the loop
    *               again, or 0 to re-run the loop immediately.
@@ -495,7 +535,15 @@ private long runLoop(ExtendedBlock suspectBlock) {
       long monotonicMs = Time.monotonicNow();
       expireOldScannedBytesRecords(monotonicMs);
 
-      if (!calculateShouldScan(volume.getStorageID(), conf.targetBytesPerSec,
+      long targetBytesPerSec = conf.targetBytesPerSec;
+      if (suspectBlock == null && volume.getMetrics() != null &&
+          volume.getMetrics().isSlow()) {
+        // Leave most of the I/O capacity of a volume deprioritized as slow
+        // to clients; suspect blocks are still scanned at the full rate.
+        targetBytesPerSec = Math.max(1, targetBytesPerSec / 2);
+      }
+
+      if (!calculateShouldScan(volume.getStorageID(), targetBytesPerSec,
           scannedBytesSum, startMinute, curMinute)) {
         // If neededBytesPerSec is too low, then wait few seconds for some old
         // scannedBytes records to expire.
@@ -549,7 +597,7 @@ private long runLoop(ExtendedBlock suspectBlock) {
           saveBlockIterator(curBlockIter);
         }
       }
-      bytesScanned = scanBlock(block, conf.targetBytesPerSec);
+      bytesScanned = scanBlock(block, targetBytesPerSec);
       if (bytesScanned >= 0) {
         scannedBytesSum += bytesScanned;
         scannedBytes[(int)(curMinute % MINUTES_PER_HOUR)] += bytesScanned;
@@ -584,12 +632,19 @@ private long runLoop(ExtendedBlock suspectBlock) {
 
   /**
    * If there are elements in the suspectBlocks list, removes
-   * and returns the first one.  Otherwise, returns null.
+   * and returns the first one.  Otherwise, does the same for the
+   * neighborBlocks list.  Returns null if both are empty.
    */
   private synchronized ExtendedBlock popNextSuspectBlock() {
     Iterator<ExtendedBlock> iter = suspectBlocks.iterator();
     if (!iter.hasNext()) {
-      return null;
+      iter = neighborBlocks.iterator();
+      if (!iter.hasNext()) {
+        return null;
+      }
+      synchronized (stats) {
+        stats.neighborBlocksScannedSinceRestart++;
+      }
     }
     ExtendedBlock block = iter.next();
     iter.remove();
@@ -685,6 +740,83 @@ public synchronized void markSuspectBlock(ExtendedBlock block) {
     notify(); // wake scanner thread.
   }
 
+  /**
+   * Schedule the blocks stored near a corrupt block for scanning, after the
+   * suspect blocks.  Media errors tend to affect neighboring areas of a disk,
+   * so these blocks are more likely to be corrupt than others.
+   *
+   * @param corruptBlock   The corrupt block.
+   */
+  void markNeighborBlocks(ExtendedBlock corruptBlock) {
+    final String bpid = corruptBlock.getBlockPoolId();
+    final long first = corruptBlock.getBlockId() & ~NEIGHBOR_BLOCK_ID_MASK;
+    List<ExtendedBlock> neighbors = new ArrayList<ExtendedBlock>();
+    for (long id = first; id <= (first | NEIGHBOR_BLOCK_ID_MASK); id++) {
+      if (id == corruptBlock.getBlockId()) {
+        continue;
+      }
+      // Look up the replicas without holding the lock of this scanner.  The
+      // replica map only matches blocks with the right generation stamp, so
+      // find the stored block by id first.
+      final Block stored;
+      try {
+        stored = volume.getDataset().getStoredBlock(bpid, id);
+      } catch (IOException e) {
+        LOG.debug("{}: failed to look up neighbor block {} of {}", this, id,
+            corruptBlock, e);
+        continue;
+      }
+      if (stored == null) {
+        continue;
+      }
+      ExtendedBlock block = new ExtendedBlock(bpid, stored);
+      if (volume.getDataset().getVolume(block) == volume) {
+        neighbors.add(block);
+      }
+    }
+    int added = 0;
+    synchronized (this) {
+      if (stopping) {
+        return;
+      }
+      for (ExtendedBlock block : neighbors) {
+        if (neighborBlocks.size() >= MAX_NEIGHBOR_BLOCKS) {
+          break;
+        }
+        if (recentSuspectBlocks.getIfPresent(block) == null &&
+            !suspectBlocks.contains(block) && neighborBlocks.add(block)) {
+          recentSuspectBlocks.put(block, true);
+          added++;
+        }
+      }
+      if (added > 0) {
+        notify(); // wake scanner thread.
+      }
+    }
+    LOG.info("{}: Scheduling {} neighbors of corrupt block {} for " +
+        "scanning.", this, added, corruptBlock);
+  }
+
+  /**
+   * Skip the given block in the current scan of its block pool, because a
+   * client verified the checksums of the entire block.
+   *
+   * @param block      The block.
+   */
+  public synchronized void markBlockVerified(ExtendedBlock block) {
+    for (BlockIterator iter : blockIters) {
+      if (iter.getBlockPoolId().equals(block.getBlockPoolId())) {
+        if (iter.skipBlock(block.getBlockId())) {
+          LOG.trace("{}: block {} was verified by a client.", this, block);
+          synchronized (stats) {
+            stats.blocksVerifiedByClientsSinceRestart++;
+          }
+        }
+        return;
+      }
+    }
+  }
+
   /**
    * Allow the scanner to scan the given block pool.
    *
@@ -48,6 +48,7 @@ public final class ErasureCodingWorker {
 
   private ThreadPoolExecutor stripedReconstructionPool;
   private ThreadPoolExecutor stripedReadPool;
+  private ThreadPoolExecutor stripedWritePool;
 
   public ErasureCodingWorker(Configuration conf, DataNode datanode) {
     this.datanode = datanode;
@@ -59,6 +60,9 @@ public ErasureCodingWorker(Configuration conf, DataNode datanode) {
     initializeStripedBlkReconstructionThreadPool(conf.getInt(
         DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_STRIPED_BLK_THREADS_KEY,
         DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_STRIPED_BLK_THREADS_DEFAULT));
+    initializeStripedWriteThreadPool(conf.getInt(
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_STRIPED_WRITE_THREADS_KEY,
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_STRIPED_WRITE_THREADS_DEFAULT));
   }
 
   private void initializeStripedReadThreadPool(int num) {
@@ -99,6 +103,22 @@ private void initializeStripedBlkReconstructionThreadPool(int numThreads) {
     stripedReconstructionPool.allowCoreThreadTimeOut(true);
   }
 
+  private void initializeStripedWriteThreadPool(int numThreads) {
+    if (numThreads <= 0) {
+      LOG.debug("Striped reconstruction writes are not pipelined");
+      return;
+    }
+    LOG.debug("Using pipelined striped reconstruction writes; pool threads={}",
+        numThreads);
+    // Tasks queue up when all threads are busy, a reconstruction task then
+    // waits for its previous transfer before decoding further, so the pool
+    // bounds the number of concurrent writes without rejecting any.
+    stripedWritePool = DFSUtilClient.getThreadPoolExecutor(numThreads,
+        numThreads, 60, new LinkedBlockingQueue<>(),
+        "StripedBlockWrite-", false);
+    stripedWritePool.allowCoreThreadTimeOut(true);
+  }
+
   /**
    * Handles the Erasure Coding reconstruction work commands.
    *
@@ -152,4 +172,8 @@ Configuration getConf() {
   ThreadPoolExecutor getStripedReadPool() {
     return stripedReadPool;
   }
+
+  ThreadPoolExecutor getStripedWritePool() {
+    return stripedWritePool;
+  }
 }
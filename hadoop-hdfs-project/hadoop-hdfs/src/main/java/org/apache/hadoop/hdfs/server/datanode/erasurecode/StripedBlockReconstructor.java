@@ -22,6 +22,7 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.util.Time;
 
 /**
  * StripedBlockReconstructor reconstruct one or more missed striped block in
@@ -85,13 +86,19 @@ void reconstruct() throws IOException {
 
       // step1: read from minimum source DNs required for reconstruction.
       // The returned success list is the source DNs we do real read from
+      long start = Time.monotonicNow();
       getStripedReader().readMinimumSources(toReconstructLen);
+      getDatanode().getMetrics().incrECReconstructionReadTime(
+          Time.monotonicNow() - start);
 
       // step2: decode to reconstruct targets
       reconstructTargets(toReconstructLen);
 
       // step3: transfer data
-      if (stripedWriter.transferData2Targets() == 0) {
+      if (stripedWriter.isPipelined()) {
+        // sent in the background while the next stripe is read and decoded
+        stripedWriter.transferData2TargetsAsync();
+      } else if (stripedWriter.transferData2Targets() == 0) {
         String error = "Transfer failed for all targets.";
         throw new IOException(error);
       }
@@ -100,6 +107,7 @@ void reconstruct() throws IOException {
 
       clearBuffers();
     }
+    stripedWriter.waitForPendingTransfer();
   }
 
   private void reconstructTargets(int toReconstructLen) {
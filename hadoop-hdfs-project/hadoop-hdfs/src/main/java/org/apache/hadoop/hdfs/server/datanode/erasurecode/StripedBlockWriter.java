@@ -67,6 +67,9 @@ class StripedBlockWriter {
   private DataOutputStream targetOutputStream;
   private DataInputStream targetInputStream;
   private ByteBuffer targetBuffer;
+  // the buffer handed to the background writer when writes are pipelined,
+  // while the next stripe is decoded into targetBuffer
+  private ByteBuffer sendBuffer;
   private long blockOffset4Target = 0;
   private long seqNo4Target = 0;
   private static final ByteBufferPool BUFFER_POOL = new ElasticByteBufferPool();
@@ -85,6 +88,9 @@ class StripedBlockWriter {
     this.storageId = storageId;
 
     this.targetBuffer = stripedWriter.allocateWriteBuffer();
+    if (stripedWriter.isPipelined()) {
+      this.sendBuffer = stripedWriter.allocateWriteBuffer();
+    }
 
     init();
   }
@@ -93,8 +99,24 @@ ByteBuffer getTargetBuffer() {
     return targetBuffer;
   }
 
+  ByteBuffer getSendBuffer() {
+    return sendBuffer;
+  }
+
   void freeTargetBuffer() {
     targetBuffer = null;
+    sendBuffer = null;
+  }
+
+  /**
+   * Hand the reconstructed data in the target buffer over for sending, and
+   * take the previously sent buffer, already drained, as the new target
+   * buffer.
+   */
+  void swapBuffers() {
+    ByteBuffer tmp = targetBuffer;
+    targetBuffer = sendBuffer;
+    sendBuffer = tmp;
   }
 
   /**
@@ -162,38 +184,50 @@ private void init() throws IOException {
    * Send data to targets.
    */
   void transferData2Target(byte[] packetBuf) throws IOException {
-    if (targetBuffer.remaining() == 0) {
+    transferData2Target(packetBuf, targetBuffer);
+  }
+
+  /**
+   * Send the data swapped out by {@link #swapBuffers()} to targets.
+   */
+  void transferSendBuffer2Target(byte[] packetBuf) throws IOException {
+    transferData2Target(packetBuf, sendBuffer);
+  }
+
+  private void transferData2Target(byte[] packetBuf, ByteBuffer buffer)
+      throws IOException {
+    if (buffer.remaining() == 0) {
       return;
     }
 
-    if (targetBuffer.isDirect()) {
+    if (buffer.isDirect()) {
       ByteBuffer directCheckSumBuf =
           BUFFER_POOL.getBuffer(true, stripedWriter.getChecksumBuf().length);
       stripedWriter.getChecksum().calculateChunkedSums(
-          targetBuffer, directCheckSumBuf);
+          buffer, directCheckSumBuf);
       directCheckSumBuf.get(stripedWriter.getChecksumBuf());
       BUFFER_POOL.putBuffer(directCheckSumBuf);
     } else {
       stripedWriter.getChecksum().calculateChunkedSums(
-          targetBuffer.array(), 0, targetBuffer.remaining(),
+          buffer.array(), 0, buffer.remaining(),
           stripedWriter.getChecksumBuf(), 0);
     }
 
     int ckOff = 0;
-    while (targetBuffer.remaining() > 0) {
+    while (buffer.remaining() > 0) {
       DFSPacket packet = new DFSPacket(packetBuf,
           stripedWriter.getMaxChunksPerPacket(),
           blockOffset4Target, seqNo4Target++,
           stripedWriter.getChecksumSize(), false);
       int maxBytesToPacket = stripedWriter.getMaxChunksPerPacket()
           * stripedWriter.getBytesPerChecksum();
-      int toWrite = targetBuffer.remaining() > maxBytesToPacket ?
-          maxBytesToPacket : targetBuffer.remaining();
+      int toWrite = buffer.remaining() > maxBytesToPacket ?
+          maxBytesToPacket : buffer.remaining();
       int ckLen = ((toWrite - 1) / stripedWriter.getBytesPerChecksum() + 1)
           * stripedWriter.getChecksumSize();
       packet.writeChecksum(stripedWriter.getChecksumBuf(), ckOff, ckLen);
       ckOff += ckLen;
-      packet.writeData(targetBuffer, toWrite);
+      packet.writeData(buffer, toWrite);
 
       // Send packet
       packet.writeTo(targetOutputStream);
@@ -111,6 +111,7 @@ abstract class StripedReconstructor {
   private long positionInBlock;
   private StripedReader stripedReader;
   private ThreadPoolExecutor stripedReadPool;
+  private ThreadPoolExecutor stripedWritePool;
   private final CachingStrategy cachingStrategy;
   private long maxTargetLength = 0L;
   private final BitSet liveBitSet;
@@ -123,6 +124,7 @@ abstract class StripedReconstructor {
   StripedReconstructor(ErasureCodingWorker worker,
       StripedReconstructionInfo stripedReconInfo) {
     this.stripedReadPool = worker.getStripedReadPool();
+    this.stripedWritePool = worker.getStripedWritePool();
     this.datanode = worker.getDatanode();
     this.conf = worker.getConf();
     this.ecPolicy = stripedReconInfo.getEcPolicy();
@@ -228,6 +230,14 @@ CompletionService<Void> createReadService() {
     return new ExecutorCompletionService<>(stripedReadPool);
   }
 
+  /**
+   * @return the pool to send reconstructed data to targets in the
+   *         background, or null if the data is sent inline.
+   */
+  ThreadPoolExecutor getStripedWritePool() {
+    return stripedWritePool;
+  }
+
   ExtendedBlock getBlockGroup() {
     return blockGroup;
   }
@@ -26,12 +26,18 @@
 import org.apache.hadoop.hdfs.server.datanode.CachingStrategy;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.Time;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.BitSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Manage striped writers that writes to a target with reconstructed data.
@@ -65,11 +71,19 @@ class StripedWriter {
   private int bytesPerChecksum;
   private int checksumSize;
 
+  // When not null, reconstructed data is sent to the targets by this pool in
+  // the background, overlapping with reading and decoding the next stripe.
+  private final ExecutorService writePool;
+  // The transfer in flight; at most one per reconstruction task, so packets
+  // go out to each target in order.
+  private Future<boolean[]> pendingTransfer;
+
   StripedWriter(StripedReconstructor reconstructor, DataNode datanode,
       Configuration conf, StripedReconstructionInfo stripedReconInfo) {
     this.reconstructor = reconstructor;
     this.datanode = datanode;
     this.conf = conf;
+    this.writePool = reconstructor.getStripedWritePool();
 
     dataBlkNum = stripedReconInfo.getEcPolicy().getNumDataUnits();
     parityBlkNum = stripedReconInfo.getEcPolicy().getNumParityUnits();
@@ -142,18 +156,108 @@ private void initTargetIndices() {
    * Send reconstructed data to targets.
    */
   int transferData2Targets() {
-    int nSuccess = 0;
+    final boolean[] results = new boolean[targets.length];
+    long start = Time.monotonicNow();
     for (int i = 0; i < targets.length; i++) {
       if (targetsStatus[i]) {
-        boolean success = false;
         try {
           writers[i].transferData2Target(packetBuf);
-          nSuccess++;
-          success = true;
+          results[i] = true;
         } catch (IOException e) {
           LOG.warn(e.getMessage());
         }
-        targetsStatus[i] = success;
+      }
+    }
+    datanode.getMetrics().incrECReconstructionWriteTime(
+        Time.monotonicNow() - start);
+    return updateTargetsStatus(results);
+  }
+
+  boolean isPipelined() {
+    return writePool != null;
+  }
+
+  /**
+   * Send reconstructed data to targets in the background. The previous
+   * transfer, if any, is waited for first, so that its buffers can be reused
+   * for the next stripe.
+   *
+   * @throws IOException if the previous transfer failed for all targets
+   */
+  void transferData2TargetsAsync() throws IOException {
+    waitForPendingTransfer();
+    for (int i = 0; i < targets.length; i++) {
+      if (targetsStatus[i]) {
+        writers[i].swapBuffers();
+      }
+    }
+    // The background task must not touch targetsStatus, which is read while
+    // the next stripe is decoded; it reports the per-target results instead.
+    final boolean[] sending = targetsStatus.clone();
+    pendingTransfer = writePool.submit(new Callable<boolean[]>() {
+      @Override
+      public boolean[] call() {
+        final boolean[] results = new boolean[targets.length];
+        long start = Time.monotonicNow();
+        for (int i = 0; i < targets.length; i++) {
+          if (sending[i]) {
+            try {
+              writers[i].transferSendBuffer2Target(packetBuf);
+              results[i] = true;
+            } catch (IOException e) {
+              LOG.warn(e.getMessage());
+            }
+          }
+        }
+        datanode.getMetrics().incrECReconstructionWriteTime(
+            Time.monotonicNow() - start);
+        return results;
+      }
+    });
+  }
+
+  /**
+   * Wait for the background transfer started by
+   * {@link #transferData2TargetsAsync()}, if any.
+   *
+   * @throws IOException if the transfer failed for all targets
+   */
+  void waitForPendingTransfer() throws IOException {
+    if (pendingTransfer == null) {
+      return;
+    }
+    final boolean[] results;
+    try {
+      results = pendingTransfer.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for "
+          + "the transfer of reconstructed data.");
+    } catch (ExecutionException e) {
+      throw new IOException("Transfer of reconstructed data failed.",
+          e.getCause());
+    } finally {
+      pendingTransfer = null;
+    }
+    if (updateTargetsStatus(results) == 0) {
+      throw new IOException("Transfer failed for all targets.");
+    }
+  }
+
+  /**
+   * Mark the targets that failed a transfer, they will not be sent any more
+   * data.
+   *
+   * @return the number of targets the transfer succeeded for
+   */
+  private int updateTargetsStatus(boolean[] results) {
+    int nSuccess = 0;
+    for (int i = 0; i < targets.length; i++) {
+      if (targetsStatus[i]) {
+        targetsStatus[i] = results[i];
+        if (results[i]) {
+          nSuccess++;
+        }
       }
     }
     return nSuccess;
@@ -304,12 +408,26 @@ void clearBuffers() {
   }
 
   void close() {
+    // A transfer may still be running if the reconstruction failed; its
+    // buffers must not go back to the pool before it is done.
+    if (pendingTransfer != null) {
+      try {
+        waitForPendingTransfer();
+      } catch (IOException e) {
+        LOG.debug("Pending transfer failed on close", e);
+      }
+    }
+
     for (StripedBlockWriter writer : writers) {
       ByteBuffer targetBuffer = writer.getTargetBuffer();
       if (targetBuffer != null) {
         reconstructor.freeBuffer(targetBuffer);
-        writer.freeTargetBuffer();
       }
+      ByteBuffer sendBuffer = writer.getSendBuffer();
+      if (sendBuffer != null) {
+        reconstructor.freeBuffer(sendBuffer);
+      }
+      writer.freeTargetBuffer();
     }
 
     for (int i = 0; i < targets.length; i++) {
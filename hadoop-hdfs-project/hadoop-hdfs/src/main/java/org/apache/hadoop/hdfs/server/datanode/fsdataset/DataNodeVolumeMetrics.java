@@ -21,6 +21,7 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.datanode.metrics.LatencyHistogram;
 import org.apache.hadoop.metrics2.MetricsSystem;
 import org.apache.hadoop.metrics2.annotation.Metric;
 import org.apache.hadoop.metrics2.annotation.Metrics;
@@ -76,6 +77,32 @@ public class DataNodeVolumeMetrics {
   @Metric("file io error rate")
   private MutableRate fileIoErrorRate;
 
+  // Latency histograms in microseconds, covering all samples since startup.
+  private final LatencyHistogram metadataOperationLatencyHistogram =
+      new LatencyHistogram();
+  private final LatencyHistogram readIoLatencyHistogram =
+      new LatencyHistogram();
+  private final LatencyHistogram writeIoLatencyHistogram =
+      new LatencyHistogram();
+  private final LatencyHistogram syncIoLatencyHistogram =
+      new LatencyHistogram();
+
+  // The histograms at the end of the last interval, see
+  // rollLatencyHistograms.
+  private LatencyHistogram.Snapshot lastMetadataOperationSnapshot;
+  private LatencyHistogram.Snapshot lastReadIoSnapshot;
+  private LatencyHistogram.Snapshot lastWriteIoSnapshot;
+  private LatencyHistogram.Snapshot lastSyncIoSnapshot;
+
+  // The 99th percentile latencies in microseconds over the last interval.
+  private volatile long metadataOperationIntervalP99;
+  private volatile long readIoIntervalP99;
+  private volatile long writeIoIntervalP99;
+  private volatile long syncIoIntervalP99;
+
+  // Whether the volume is deprioritized because it is slower than its peers.
+  private volatile boolean slow;
+
   public long getTotalMetadataOperations() {
     return totalMetadataOperations.value();
   }
@@ -179,6 +206,87 @@ public double getFileIoErrorStdDev() {
     return fileIoErrorRate.lastStat().stddev();
   }
 
+  @Metric("99th percentile metadata operation latency in us over the last"
+      + " outlier detection interval")
+  public long getMetadataOperationIntervalP99Micros() {
+    return metadataOperationIntervalP99;
+  }
+
+  @Metric("99th percentile read io latency in us over the last outlier"
+      + " detection interval")
+  public long getReadIoIntervalP99Micros() {
+    return readIoIntervalP99;
+  }
+
+  @Metric("99th percentile write io latency in us over the last outlier"
+      + " detection interval")
+  public long getWriteIoIntervalP99Micros() {
+    return writeIoIntervalP99;
+  }
+
+  @Metric("99th percentile sync and flush io latency in us over the last"
+      + " outlier detection interval")
+  public long getSyncIoIntervalP99Micros() {
+    return syncIoIntervalP99;
+  }
+
+  @Metric("1 if the volume is deprioritized as a slow volume, 0 otherwise")
+  public int getSlowVolume() {
+    return slow ? 1 : 0;
+  }
+
+  public LatencyHistogram getMetadataOperationLatencyHistogram() {
+    return metadataOperationLatencyHistogram;
+  }
+
+  public LatencyHistogram getReadIoLatencyHistogram() {
+    return readIoLatencyHistogram;
+  }
+
+  public LatencyHistogram getWriteIoLatencyHistogram() {
+    return writeIoLatencyHistogram;
+  }
+
+  public LatencyHistogram getSyncIoLatencyHistogram() {
+    return syncIoLatencyHistogram;
+  }
+
+  /**
+   * Start a new interval for the interval percentiles, which are computed
+   * from the samples recorded since the previous call.  Only the disk
+   * outlier detector calls this.
+   */
+  public synchronized void rollLatencyHistograms() {
+    LatencyHistogram.Snapshot metadata =
+        metadataOperationLatencyHistogram.snapshot();
+    LatencyHistogram.Snapshot read = readIoLatencyHistogram.snapshot();
+    LatencyHistogram.Snapshot write = writeIoLatencyHistogram.snapshot();
+    LatencyHistogram.Snapshot sync = syncIoLatencyHistogram.snapshot();
+    metadataOperationIntervalP99 =
+        intervalP99(metadata, lastMetadataOperationSnapshot);
+    readIoIntervalP99 = intervalP99(read, lastReadIoSnapshot);
+    writeIoIntervalP99 = intervalP99(write, lastWriteIoSnapshot);
+    syncIoIntervalP99 = intervalP99(sync, lastSyncIoSnapshot);
+    lastMetadataOperationSnapshot = metadata;
+    lastReadIoSnapshot = read;
+    lastWriteIoSnapshot = write;
+    lastSyncIoSnapshot = sync;
+  }
+
+  private static long intervalP99(LatencyHistogram.Snapshot cur,
+      LatencyHistogram.Snapshot last) {
+    LatencyHistogram.Snapshot interval = last == null ? cur : cur.minus(last);
+    return interval.getPercentile(0.99);
+  }
+
+  public boolean isSlow() {
+    return slow;
+  }
+
+  public void setSlow(boolean slow) {
+    this.slow = slow;
+  }
+
   private final String name;
   private final MetricsSystem ms;
 
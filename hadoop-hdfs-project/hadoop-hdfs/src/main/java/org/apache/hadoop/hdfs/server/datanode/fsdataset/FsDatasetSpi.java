@@ -493,6 +493,14 @@ void checkBlock(ExtendedBlock b, long minLength, ReplicaState state)
    */
   boolean isCached(String bpid, long blockId);
 
+  /**
+   * Called when a client reads the specified block, through the DataNode or
+   * by short-circuit.  Implementations may use it to decide what to cache.
+   * @param bpid Block pool id
+   * @param blockId - block id
+   */
+  void onBlockRead(String bpid, long blockId);
+
     /**
      * Check if all the data directories are healthy
      * @return A set of unhealthy data directories.
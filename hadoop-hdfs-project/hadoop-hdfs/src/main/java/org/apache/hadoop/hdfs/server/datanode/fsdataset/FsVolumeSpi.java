@@ -172,6 +172,16 @@ interface BlockIterator extends Closeable {
      * Get the id of the block pool which this iterator traverses.
      */
     String getBlockPoolId();
+
+    /**
+     * Skip the given block if this iterator reaches it before it is rewound,
+     * e.g. because the block has been verified by other means since the
+     * iteration started.  The blocks to skip are saved with the iterator.
+     *
+     * @return               False if the block will not be skipped because
+     *                         too many blocks are skipped already.
+     */
+    boolean skipBlock(long blockId);
   }
 
   /**
@@ -154,12 +154,28 @@ class BlockPoolSlice {
     fileIoProvider.mkdirs(volume, rbwDir);
     fileIoProvider.mkdirs(volume, tmpDir);
 
-    // Use cached value initially if available. Or the following call will
-    // block until the initial du command completes.
-    this.dfsUsage = new CachingGetSpaceUsed.Builder().setPath(bpDir)
-                                                     .setConf(conf)
-                                                     .setInitialUsed(loadDfsUsed())
-                                                     .build();
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_DN_DFSUSED_REPLICA_ACCOUNTING_ENABLED_KEY,
+        DFSConfigKeys.DFS_DN_DFSUSED_REPLICA_ACCOUNTING_ENABLED_DEFAULT)) {
+      // Use cached value initially if available. Otherwise the usage is
+      // computed from the replicas once they are loaded by getVolumeMap().
+      this.dfsUsage = new ReplicaCachingGetSpaceUsed(
+          new CachingGetSpaceUsed.Builder().setPath(bpDir)
+              .setConf(conf)
+              .setInterval(conf.getLong(DFSConfigKeys
+                  .DFS_DN_DFSUSED_REPLICA_ACCOUNTING_VERIFY_INTERVAL_MS_KEY,
+                  DFSConfigKeys
+                  .DFS_DN_DFSUSED_REPLICA_ACCOUNTING_VERIFY_INTERVAL_MS_DEFAULT))
+              .setInitialUsed(loadDfsUsed()),
+          volume, bpid);
+    } else {
+      // Use cached value initially if available. Or the following call will
+      // block until the initial du command completes.
+      this.dfsUsage = new CachingGetSpaceUsed.Builder().setPath(bpDir)
+                                                       .setConf(conf)
+                                                       .setInitialUsed(loadDfsUsed())
+                                                       .build();
+    }
 
     // Make the dfs usage to be saved during shutdown.
     ShutdownHookManager.get().addShutdownHook(
@@ -204,6 +220,11 @@ long getDfsUsed() throws IOException {
     return dfsUsage.getUsed();
   }
 
+  @VisibleForTesting
+  GetSpaceUsed getDfsUsage() {
+    return dfsUsage;
+  }
+
   void incDfsUsed(long value) {
     if (dfsUsage instanceof CachingGetSpaceUsed) {
       ((CachingGetSpaceUsed)dfsUsage).incDfsUsed(value);
@@ -377,6 +398,10 @@ void getVolumeMap(ReplicaMap volumeMap,
       // add rbw replicas
       addToReplicasMap(volumeMap, rbwDir, lazyWriteReplicaMap, false);
     }
+
+    if (dfsUsage instanceof ReplicaCachingGetSpaceUsed) {
+      ((ReplicaCachingGetSpaceUsed) dfsUsage).start(volumeMap);
+    }
   }
 
   /**
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.ExtendedBlockId;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Counts client reads per replica so that {@link FsDatasetCache} can cache
+ * the hottest replicas without a cache directive from the NameNode.
+ *
+ * The counts approximate a least-frequently-used policy with aging: every
+ * call to {@link #decay()} halves all counts and forgets replicas whose
+ * count drops to zero, so replicas that were hot a few intervals ago lose
+ * their place to replicas that are hot now.
+ */
+@InterfaceAudience.Private
+class BlockReadFrequencyTracker {
+  /**
+   * The number of reads of a replica together with its id.
+   */
+  static final class BlockReadCount {
+    private final ExtendedBlockId key;
+    private final long count;
+
+    BlockReadCount(ExtendedBlockId key, long count) {
+      this.key = key;
+      this.count = count;
+    }
+
+    ExtendedBlockId getKey() {
+      return key;
+    }
+
+    long getCount() {
+      return count;
+    }
+  }
+
+  private static final Comparator<BlockReadCount> HOTTEST_FIRST =
+      new Comparator<BlockReadCount>() {
+        @Override
+        public int compare(BlockReadCount a, BlockReadCount b) {
+          return Long.compare(b.count, a.count);
+        }
+      };
+
+  private final ConcurrentHashMap<ExtendedBlockId, AtomicLong> counts =
+      new ConcurrentHashMap<ExtendedBlockId, AtomicLong>();
+
+  /**
+   * The maximum number of replicas to track.  Reads of untracked replicas
+   * are ignored once this is reached, until {@link #decay()} makes room.
+   */
+  private final int maxTrackedBlocks;
+
+  BlockReadFrequencyTracker(int maxTrackedBlocks) {
+    this.maxTrackedBlocks = maxTrackedBlocks;
+  }
+
+  /**
+   * Record one client read of a replica.
+   */
+  void recordRead(ExtendedBlockId key) {
+    AtomicLong count = counts.get(key);
+    if (count == null) {
+      if (counts.size() >= maxTrackedBlocks) {
+        return;
+      }
+      AtomicLong newCount = new AtomicLong(0);
+      count = counts.putIfAbsent(key, newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  /**
+   * @return the current read count of a replica; 0 if it is not tracked.
+   */
+  long getCount(ExtendedBlockId key) {
+    AtomicLong count = counts.get(key);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * Stop tracking a replica, e.g. because it was deleted.
+   */
+  void remove(ExtendedBlockId key) {
+    counts.remove(key);
+  }
+
+  /**
+   * Halve all read counts and forget replicas that are no longer read.
+   */
+  void decay() {
+    for (Iterator<Map.Entry<ExtendedBlockId, AtomicLong>> iter =
+        counts.entrySet().iterator(); iter.hasNext(); ) {
+      AtomicLong count = iter.next().getValue();
+      long cur;
+      do {
+        cur = count.get();
+      } while (!count.compareAndSet(cur, cur >> 1));
+      if ((cur >> 1) == 0) {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * @param minReads the minimum read count of a returned replica
+   * @return the tracked replicas read at least minReads times, hottest first
+   */
+  List<BlockReadCount> getHottest(long minReads) {
+    List<BlockReadCount> hottest = new ArrayList<BlockReadCount>();
+    for (Map.Entry<ExtendedBlockId, AtomicLong> entry : counts.entrySet()) {
+      long count = entry.getValue().get();
+      if (count >= minReads) {
+        hottest.add(new BlockReadCount(entry.getKey(), count));
+      }
+    }
+    Collections.sort(hottest, HOTTEST_FIRST);
+    return hottest;
+  }
+
+  @VisibleForTesting
+  int size() {
+    return counts.size();
+  }
+}
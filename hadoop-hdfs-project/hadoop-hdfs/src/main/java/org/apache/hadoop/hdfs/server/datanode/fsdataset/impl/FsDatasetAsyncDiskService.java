@@ -160,6 +160,18 @@ synchronized long countPendingDeletions() {
     }
     return count;
   }
+
+  /**
+   * @return the number of tasks, including deletions, that are queued or
+   *         running for the given volume.
+   */
+  synchronized long countPendingDeletions(FsVolumeImpl volume) {
+    if (executors == null) {
+      return 0;
+    }
+    ThreadPoolExecutor exec = executors.get(volume.getStorageID());
+    return exec == null ? 0 : exec.getTaskCount() - exec.getCompletedTaskCount();
+  }
   
   /**
    * Execute the task sometime in the future, using ThreadPools.
@@ -22,7 +22,18 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_REVOCATION_TIMEOUT_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_REVOCATION_POLLING_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_REVOCATION_POLLING_MS_DEFAULT;
-
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MAX_TRACKED_BLOCKS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MAX_TRACKED_BLOCKS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_DEFAULT;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
@@ -51,6 +62,8 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaNotFoundException;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.BlockReadFrequencyTracker.BlockReadCount;
 import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.util.Time;
@@ -71,10 +84,17 @@ public class FsDatasetCache {
   private static final class Value {
     final State state;
     final MappableBlock mappableBlock;
+    /**
+     * Whether the block is cached because it is read often, rather than
+     * because the NameNode asked for it.  Its space is then taken from the
+     * locked memory set aside for adaptive caching.
+     */
+    final boolean adaptive;
 
-    Value(MappableBlock mappableBlock, State state) {
+    Value(MappableBlock mappableBlock, State state, boolean adaptive) {
       this.mappableBlock = mappableBlock;
       this.state = state;
+      this.adaptive = adaptive;
     }
   }
 
@@ -131,6 +151,16 @@ public boolean shouldAdvertise() {
 
   private final long revocationPollingMs;
 
+  /**
+   * Read counts used to pick replicas to cache adaptively.  null if adaptive
+   * caching is disabled.
+   */
+  private final BlockReadFrequencyTracker readTracker;
+
+  private final ScheduledThreadPoolExecutor adaptiveCachingExecutor;
+
+  private final long adaptiveMinReads;
+
   /**
    * The approximate amount of cache space in use.
    *
@@ -144,6 +174,12 @@ public boolean shouldAdvertise() {
    */
   private final UsedBytesCount usedBytesCount;
 
+  /**
+   * The cache space used by replicas cached adaptively.  It is neither
+   * reported to the NameNode nor available to the NameNode's directives.
+   */
+  private final UsedBytesCount adaptiveUsedBytesCount;
+
   public static class PageRounder {
     private final long osPageSize =
         NativeIO.POSIX.getCacheManipulator().getOperatingSystemPageSize();
@@ -168,6 +204,12 @@ private class UsedBytesCount {
     
     private final PageRounder rounder = new PageRounder();
 
+    private final long limit;
+
+    UsedBytesCount(long limit) {
+      this.limit = limit;
+    }
+
     /**
      * Try to reserve more bytes.
      *
@@ -182,7 +224,7 @@ long reserve(long count) {
       while (true) {
         long cur = usedBytes.get();
         long next = cur + count;
-        if (next > maxBytes) {
+        if (next > limit) {
           return -1;
         }
         if (usedBytes.compareAndSet(cur, next)) {
@@ -227,6 +269,11 @@ long get() {
    */
   private final long maxBytes;
 
+  /**
+   * The part of the cache capacity set aside for adaptive caching.
+   */
+  private final long adaptiveMaxBytes;
+
   /**
    * Number of cache commands that could not be completed successfully
    */
@@ -239,11 +286,25 @@ long get() {
   public FsDatasetCache(FsDatasetImpl dataset) {
     this.dataset = dataset;
     this.maxBytes = dataset.datanode.getDnConf().getMaxLockedMemory();
+    if (dataset.datanode.getConf().getBoolean(
+        DFS_DATANODE_CACHE_ADAPTIVE_ENABLED_KEY,
+        DFS_DATANODE_CACHE_ADAPTIVE_ENABLED_DEFAULT)) {
+      this.adaptiveMaxBytes = dataset.datanode.getConf().getLong(
+          DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_KEY,
+          DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_DEFAULT);
+      Preconditions.checkArgument(
+          adaptiveMaxBytes >= 0 && adaptiveMaxBytes <= maxBytes,
+          DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_KEY + " must be " +
+          "between 0 and " + DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY);
+    } else {
+      this.adaptiveMaxBytes = 0;
+    }
     ThreadFactory workerFactory = new ThreadFactoryBuilder()
         .setDaemon(true)
         .setNameFormat("FsDatasetCache-%d-" + dataset.toString())
         .build();
-    this.usedBytesCount = new UsedBytesCount();
+    this.usedBytesCount = new UsedBytesCount(maxBytes - adaptiveMaxBytes);
+    this.adaptiveUsedBytesCount = new UsedBytesCount(adaptiveMaxBytes);
     this.uncachingExecutor = new ThreadPoolExecutor(
             0, 1,
             60, TimeUnit.SECONDS,
@@ -268,11 +329,46 @@ public FsDatasetCache(FsDatasetImpl dataset) {
               ".  Reconfigure this to " + minRevocationPollingMs);
     }
     this.revocationPollingMs = confRevocationPollingMs;
+
+    if (adaptiveMaxBytes > 0) {
+      long intervalMs = dataset.datanode.getConf().getLong(
+          DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY,
+          DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_DEFAULT);
+      Preconditions.checkArgument(intervalMs > 0,
+          DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY + " must be positive");
+      this.adaptiveMinReads = Math.max(1, dataset.datanode.getConf().getLong(
+          DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_KEY,
+          DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_DEFAULT));
+      this.readTracker = new BlockReadFrequencyTracker(
+          dataset.datanode.getConf().getInt(
+              DFS_DATANODE_CACHE_ADAPTIVE_MAX_TRACKED_BLOCKS_KEY,
+              DFS_DATANODE_CACHE_ADAPTIVE_MAX_TRACKED_BLOCKS_DEFAULT));
+      this.adaptiveCachingExecutor = new ScheduledThreadPoolExecutor(
+          1, workerFactory);
+      this.adaptiveCachingExecutor.scheduleWithFixedDelay(
+          new AdaptiveCachingTask(), intervalMs, intervalMs,
+          TimeUnit.MILLISECONDS);
+    } else {
+      this.adaptiveMinReads = 0;
+      this.readTracker = null;
+      this.adaptiveCachingExecutor = null;
+    }
+  }
+
+  /**
+   * Stop the adaptive caching thread, if any.
+   */
+  void shutdown() {
+    if (adaptiveCachingExecutor != null) {
+      adaptiveCachingExecutor.shutdownNow();
+    }
   }
 
   /**
    * @return List of cached blocks suitable for translation into a
-   * {@link BlockListAsLongs} for a cache report.
+   * {@link BlockListAsLongs} for a cache report.  Blocks cached adaptively
+   * are left out: the NameNode has no directive for them, and would keep
+   * asking us to uncache them.
    */
   synchronized List<Long> getCachedBlocks(String bpid) {
     List<Long> blocks = new ArrayList<Long>();
@@ -280,7 +376,8 @@ synchronized List<Long> getCachedBlocks(String bpid) {
         mappableBlockMap.entrySet().iterator(); iter.hasNext(); ) {
       Entry<ExtendedBlockId, Value> entry = iter.next();
       if (entry.getKey().getBlockPoolId().equals(bpid)) {
-        if (entry.getValue().state.shouldAdvertise()) {
+        if (entry.getValue().state.shouldAdvertise() &&
+            !entry.getValue().adaptive) {
           blocks.add(entry.getKey().getBlockId());
         }
       }
@@ -293,9 +390,30 @@ synchronized List<Long> getCachedBlocks(String bpid) {
    */
   synchronized void cacheBlock(long blockId, String bpid,
       String blockFileName, long length, long genstamp,
-      Executor volumeExecutor) {
+      Executor volumeExecutor, boolean adaptive) {
     ExtendedBlockId key = new ExtendedBlockId(blockId, bpid);
     Value prevValue = mappableBlockMap.get(key);
+    if (prevValue != null && prevValue.adaptive && !adaptive &&
+        prevValue.state == State.CACHED) {
+      // The NameNode now wants the block we cached on our own.  Keep it,
+      // charge it to the NameNode's share of the cache, and stop considering
+      // it for adaptive eviction.
+      long blockBytes = prevValue.mappableBlock.getLength();
+      if (usedBytesCount.reserve(blockBytes) < 0) {
+        LOG.warn("Failed to cache " + key + ": could not reserve " +
+            blockBytes + " more bytes in the cache: " +
+            DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY + " of " +
+            maxBytes + " exceeded.");
+        numBlocksFailedToCache.incrementAndGet();
+        return;
+      }
+      adaptiveUsedBytesCount.release(blockBytes);
+      LOG.debug("Block with id {}, pool {} is now cached on behalf of the "
+          + "NameNode", blockId, bpid);
+      mappableBlockMap.put(key,
+          new Value(prevValue.mappableBlock, prevValue.state, false));
+      return;
+    }
     if (prevValue != null) {
       LOG.debug("Block with id {}, pool {} already exists in the "
               + "FsDatasetCache with state {}", blockId, bpid, prevValue.state
@@ -303,9 +421,9 @@ synchronized void cacheBlock(long blockId, String bpid,
       numBlocksFailedToCache.incrementAndGet();
       return;
     }
-    mappableBlockMap.put(key, new Value(null, State.CACHING));
+    mappableBlockMap.put(key, new Value(null, State.CACHING, adaptive));
     volumeExecutor.execute(
-        new CachingTask(key, blockFileName, length, genstamp));
+        new CachingTask(key, blockFileName, length, genstamp, adaptive));
     LOG.debug("Initiating caching for Block with id {}, pool {}", blockId,
         bpid);
   }
@@ -330,12 +448,12 @@ synchronized void uncacheBlock(String bpid, long blockId) {
     case CACHING:
       LOG.debug("Cancelling caching for block with id {}, pool {}.", blockId,
           bpid);
-      mappableBlockMap.put(key,
-          new Value(prevValue.mappableBlock, State.CACHING_CANCELLED));
+      mappableBlockMap.put(key, new Value(prevValue.mappableBlock,
+          State.CACHING_CANCELLED, prevValue.adaptive));
       break;
     case CACHED:
-      mappableBlockMap.put(key,
-          new Value(prevValue.mappableBlock, State.UNCACHING));
+      mappableBlockMap.put(key, new Value(prevValue.mappableBlock,
+          State.UNCACHING, prevValue.adaptive));
       if (deferred) {
         if (LOG.isDebugEnabled()) {
           LOG.debug("{} is anchored, and can't be uncached now.  Scheduling it " +
@@ -419,12 +537,15 @@ private class CachingTask implements Runnable {
     private final String blockFileName;
     private final long length;
     private final long genstamp;
+    private final boolean adaptive;
 
-    CachingTask(ExtendedBlockId key, String blockFileName, long length, long genstamp) {
+    CachingTask(ExtendedBlockId key, String blockFileName, long length,
+        long genstamp, boolean adaptive) {
       this.key = key;
       this.blockFileName = blockFileName;
       this.length = length;
       this.genstamp = genstamp;
+      this.adaptive = adaptive;
     }
 
     @Override
@@ -434,14 +555,17 @@ public void run() {
       MappableBlock mappableBlock = null;
       ExtendedBlock extBlk = new ExtendedBlock(key.getBlockPoolId(),
           key.getBlockId(), length, genstamp);
-      long newUsedBytes = reserve(length);
+      UsedBytesCount bytesCount =
+          adaptive ? adaptiveUsedBytesCount : usedBytesCount;
+      long newUsedBytes = bytesCount.reserve(length);
       boolean reservedBytes = false;
       try {
         if (newUsedBytes < 0) {
           LOG.warn("Failed to cache " + key + ": could not reserve " + length +
-              " more bytes in the cache: " +
-              DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY +
-              " of " + maxBytes + " exceeded.");
+              " more bytes in the cache: " + (adaptive ?
+              DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_KEY + " of " +
+              adaptiveMaxBytes : DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY
+              + " of " + maxBytes) + " exceeded.");
           return;
         }
         reservedBytes = true;
@@ -481,23 +605,27 @@ public void run() {
             LOG.warn("Caching of " + key + " was cancelled.");
             return;
           }
-          mappableBlockMap.put(key, new Value(mappableBlock, State.CACHED));
+          mappableBlockMap.put(key,
+              new Value(mappableBlock, State.CACHED, adaptive));
         }
         LOG.debug("Successfully cached {}.  We are now caching {} bytes in"
             + " total.", key, newUsedBytes);
         dataset.datanode.getShortCircuitRegistry().processBlockMlockEvent(key);
         numBlocksCached.addAndGet(1);
         dataset.datanode.getMetrics().incrBlocksCached(1);
+        if (adaptive) {
+          dataset.datanode.getMetrics().incrBlocksCachedAdaptively();
+        }
         success = true;
       } finally {
         IOUtils.closeQuietly(blockIn);
         IOUtils.closeQuietly(metaIn);
         if (!success) {
           if (reservedBytes) {
-            release(length);
+            bytesCount.release(length);
           }
           LOG.debug("Caching of {} was aborted.  We are now caching only {} "
-                  + "bytes in total.", key, usedBytesCount.get());
+                  + "bytes in total.", key, bytesCount.get());
           if (mappableBlock != null) {
             mappableBlock.close();
           }
@@ -573,7 +701,9 @@ public void run() {
       synchronized (FsDatasetCache.this) {
         mappableBlockMap.remove(key);
       }
-      long newUsedBytes = release(value.mappableBlock.getLength());
+      long newUsedBytes = (value.adaptive ?
+          adaptiveUsedBytesCount : usedBytesCount)
+          .release(value.mappableBlock.getLength());
       numBlocksCached.addAndGet(-1);
       dataset.datanode.getMetrics().incrBlocksUncached(1);
       if (revocationTimeMs != 0) {
@@ -586,6 +716,107 @@ public void run() {
     }
   }
 
+  /**
+   * Record a client read of a replica, if adaptive caching is enabled.
+   */
+  void recordRead(String bpid, long blockId) {
+    if (readTracker != null) {
+      readTracker.recordRead(new ExtendedBlockId(blockId, bpid));
+    }
+  }
+
+  /**
+   * @return true if the block is cached, or being cached, only because it is
+   * read often.
+   */
+  synchronized boolean isCachedAdaptively(String bpid, long blockId) {
+    Value val = mappableBlockMap.get(new ExtendedBlockId(blockId, bpid));
+    return (val != null) && val.adaptive &&
+        (val.state == State.CACHING || val.state == State.CACHED);
+  }
+
+  /**
+   * Cache the most frequently read replicas that fit in the cache, evicting
+   * less frequently read, adaptively cached replicas to make room for them.
+   * Replicas cached on behalf of the NameNode are never evicted.
+   */
+  @VisibleForTesting
+  void rescanAdaptive() {
+    List<BlockReadCount> hottest = readTracker.getHottest(adaptiveMinReads);
+    // Caching tasks reserve their space asynchronously, so count the blocks
+    // scheduled in this pass against the free space we started with.
+    long freeBytes = adaptiveMaxBytes - adaptiveUsedBytesCount.get();
+    for (BlockReadCount candidate : hottest) {
+      ExtendedBlockId key = candidate.getKey();
+      synchronized (this) {
+        if (mappableBlockMap.containsKey(key)) {
+          continue;
+        }
+      }
+      long length;
+      try {
+        length = roundUpPageSize(dataset.getReplicaInfo(
+            key.getBlockPoolId(), key.getBlockId()).getVisibleLength());
+      } catch (ReplicaNotFoundException e) {
+        readTracker.remove(key);
+        continue;
+      }
+      if (length > adaptiveMaxBytes) {
+        continue;
+      }
+      if (freeBytes < length) {
+        // Evict the coldest replica we cached on our own, if it is colder
+        // than this one.  Uncaching completes asynchronously, so the
+        // candidate will be cached on a later rescan.
+        ExtendedBlockId victim = findAdaptiveVictim(candidate.getCount());
+        if (victim == null) {
+          break;
+        }
+        LOG.debug("Evicting {} from the cache in favor of {}, read {} times",
+            victim, key, candidate.getCount());
+        uncacheBlock(victim.getBlockPoolId(), victim.getBlockId());
+        dataset.datanode.getMetrics().incrBlocksUncachedAdaptively();
+        break;
+      }
+      LOG.debug("Caching {}, read {} times", key, candidate.getCount());
+      dataset.cacheBlock(key.getBlockPoolId(), key.getBlockId(), true);
+      freeBytes -= length;
+    }
+    readTracker.decay();
+  }
+
+  /**
+   * @return the least frequently read block among the adaptively cached
+   * blocks read fewer than maxCount times; null if there is none.
+   */
+  private synchronized ExtendedBlockId findAdaptiveVictim(long maxCount) {
+    ExtendedBlockId victim = null;
+    long victimCount = maxCount;
+    for (Entry<ExtendedBlockId, Value> entry : mappableBlockMap.entrySet()) {
+      if (!entry.getValue().adaptive ||
+          entry.getValue().state != State.CACHED) {
+        continue;
+      }
+      long count = readTracker.getCount(entry.getKey());
+      if (count < victimCount) {
+        victim = entry.getKey();
+        victimCount = count;
+      }
+    }
+    return victim;
+  }
+
+  private class AdaptiveCachingTask implements Runnable {
+    @Override
+    public void run() {
+      try {
+        rescanAdaptive();
+      } catch (Throwable t) {
+        LOG.error("Adaptive caching rescan failed", t);
+      }
+    }
+  }
+
   // Stats related methods for FSDatasetMBean
 
   /**
@@ -596,10 +827,11 @@ public long getCacheUsed() {
   }
 
   /**
-   * Get the maximum amount of bytes we can cache.  This is a constant.
+   * Get the maximum amount of bytes we can cache on behalf of the NameNode.
+   * This is a constant.
    */
   public long getCacheCapacity() {
-    return maxBytes;
+    return maxBytes - adaptiveMaxBytes;
   }
 
   public long getNumBlocksFailedToCache() {
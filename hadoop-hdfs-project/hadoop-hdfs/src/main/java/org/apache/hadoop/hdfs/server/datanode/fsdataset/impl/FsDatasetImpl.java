@@ -91,6 +91,7 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.RoundRobinVolumeChoosingPolicy;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeChoosingPolicy;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.RamDiskAsyncLazyPersistService.ReplicaLazyPersistTask;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.RamDiskReplicaTracker.RamDiskReplica;
 import org.apache.hadoop.hdfs.server.datanode.metrics.FSDatasetMBean;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
@@ -258,6 +259,11 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
   @VisibleForTesting
   final AutoCloseableLock datasetLock;
   private final Condition datasetLockCondition;
+  /** Signalled when a replica on RAM disk has been lazily persisted. */
+  private final Condition lazyPersistCondition;
+  /** Lazy persist tasks scheduled but not yet finished, guarded by lock. */
+  private int lazyPersistTasksInProgress;
+  private final long ramDiskWriteBackpressureMs;
   
   /**
    * An FSDataset has a directory where it loads its data files.
@@ -278,6 +284,10 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
             TimeUnit.MILLISECONDS),
           300));
     this.datasetLockCondition = datasetLock.newCondition();
+    this.lazyPersistCondition = datasetLock.newCondition();
+    this.ramDiskWriteBackpressureMs = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_RAM_DISK_WRITE_BACKPRESSURE_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_RAM_DISK_WRITE_BACKPRESSURE_MS_DEFAULT);
 
     // The number of volumes required for operation is the total number
     // of volumes minus the number of failed volumes we can tolerate.
@@ -1174,6 +1184,8 @@ private ReplicaInPipeline append(String bpid,
       replicaInfo.breakHardLinksIfNeeded();
 
       FsVolumeImpl v = (FsVolumeImpl)replicaInfo.getVolume();
+      final long finalizedLength = replicaInfo.getBlockDataLength()
+          + replicaInfo.getMetadataLength();
       ReplicaInPipeline rip = v.append(bpid, replicaInfo,
           newGS, estimateBlockLen);
       if (rip.getReplicaInfo().getState() != ReplicaState.RBW) {
@@ -1181,6 +1193,9 @@ private ReplicaInPipeline append(String bpid,
             " returned a replica of state " + rip.getReplicaInfo().getState()
             + "; expected RBW");
       }
+      // The replica is no longer finalized; its full length is added back
+      // to the dfsUsed of the volume when it is finalized again.
+      v.incDfsUsed(bpid, -finalizedLength);
       // Replace finalized replica by a RBW replica in replicas map
       volumeMap.add(bpid, rip.getReplicaInfo());
       return rip;
@@ -1310,9 +1325,22 @@ public ReplicaHandler createRbw(
       StorageType storageType, String storageId, ExtendedBlock b,
       boolean allowLazyPersist) throws IOException {
     try (AutoCloseableLock lock = datasetLock.acquire()) {
+      // Use ramdisk only if block size is a multiple of OS page size.
+      // This simplifies reservation for partially used replicas
+      // significantly.
+      final boolean reserved = allowLazyPersist &&
+          lazyWriter != null &&
+          b.getNumBytes() % cacheManager.getOsPageSize() == 0 &&
+          reserveRamDiskMemory(b.getNumBytes());
+
+      // Look up the replica after reserving memory, since the dataset lock
+      // may have been released while waiting for the reservation.
       ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(),
           b.getBlockId());
       if (replicaInfo != null) {
+        if (reserved) {
+          cacheManager.release(b.getNumBytes());
+        }
         throw new ReplicaAlreadyExistsException("Block " + b +
             " already exists in state " + replicaInfo.getState() +
             " and thus cannot be created.");
@@ -1320,13 +1348,7 @@ public ReplicaHandler createRbw(
       // create a new block
       FsVolumeReference ref = null;
 
-      // Use ramdisk only if block size is a multiple of OS page size.
-      // This simplifies reservation for partially used replicas
-      // significantly.
-      if (allowLazyPersist &&
-          lazyWriter != null &&
-          b.getNumBytes() % cacheManager.getOsPageSize() == 0 &&
-          reserveLockedMemory(b.getNumBytes())) {
+      if (reserved) {
         try {
           // First try to place the block on a transient volume.
           ref = volumes.getNextTransientVolume(b.getNumBytes());
@@ -2057,8 +2079,11 @@ public void invalidate(String bpid, ReplicaInfo block) {
 
   /**
    * Asynchronously attempts to cache a single block via {@link FsDatasetCache}.
+   *
+   * @param adaptive true if the block is cached because it is read often,
+   *                 rather than because the NameNode asked for it
    */
-  private void cacheBlock(String bpid, long blockId) {
+  void cacheBlock(String bpid, long blockId, boolean adaptive) {
     FsVolumeImpl volume;
     String blockFileName;
     long length, genstamp;
@@ -2108,23 +2133,35 @@ private void cacheBlock(String bpid, long blockId) {
       volumeExecutor = volume.getCacheExecutor();
     }
     cacheManager.cacheBlock(blockId, bpid, 
-        blockFileName, length, genstamp, volumeExecutor);
+        blockFileName, length, genstamp, volumeExecutor, adaptive);
   }
 
   @Override // FsDatasetSpi
   public void cache(String bpid, long[] blockIds) {
     for (int i=0; i < blockIds.length; i++) {
-      cacheBlock(bpid, blockIds[i]);
+      cacheBlock(bpid, blockIds[i], false);
     }
   }
 
   @Override // FsDatasetSpi
   public void uncache(String bpid, long[] blockIds) {
     for (int i=0; i < blockIds.length; i++) {
+      if (cacheManager.isCachedAdaptively(bpid, blockIds[i])) {
+        // Replicas we cached on our own are not in our cache reports, so
+        // this can only be a stale request from before they were cached.
+        LOG.debug("Not uncaching block with id {}, pool {}: it was cached "
+            + "adaptively", blockIds[i], bpid);
+        continue;
+      }
       cacheManager.uncacheBlock(bpid, blockIds[i]);
     }
   }
 
+  @Override // FsDatasetSpi
+  public void onBlockRead(String bpid, long blockId) {
+    cacheManager.recordRead(bpid, blockId);
+  }
+
   @Override
   public boolean isCached(String bpid, long blockId) {
     return cacheManager.isCached(bpid, blockId);
@@ -2182,6 +2219,8 @@ void registerMBean(final String datanodeUuid) {
   public void shutdown() {
     fsRunning = false;
 
+    cacheManager.shutdown();
+
     if (lazyWriter != null) {
       ((LazyWriter) lazyWriter.getRunnable()).stop();
       lazyWriter.interrupt();
@@ -2619,9 +2658,17 @@ private ReplicaInfo updateReplicaUnderRecovery(
     if (rur.getNumBytes() > newlength) {
       if(!copyOnTruncate) {
         rur.breakHardLinksIfNeeded();
+        final long oldLength = rur.getBlockDataLength()
+            + rur.getMetadataLength();
         rur.truncateBlock(newlength);
         // update RUR with the new length
         rur.setNumBytes(newlength);
+        if (rur.getOriginalReplica().getState() == ReplicaState.FINALIZED) {
+          // finalizeReplica() keeps the original finalized replica, so the
+          // truncated bytes are not accounted for by finalizing it again.
+          ((FsVolumeImpl) rur.getVolume()).incDfsUsed(bpid,
+              rur.getBlockDataLength() + rur.getMetadataLength() - oldLength);
+        }
       } else {
         // Copying block to a new block with new blockId.
         // Not truncating original block.
@@ -2828,6 +2875,9 @@ public void onCompleteLazyPersist(String bpId, long blockId,
       long creationTime, File[] savedFiles, FsVolumeImpl targetVolume) {
     try (AutoCloseableLock lock = datasetLock.acquire()) {
       ramDiskReplicaTracker.recordEndLazyPersist(bpId, blockId, savedFiles);
+      // The replica can be evicted now, wake up writers waiting for memory.
+      lazyPersistTasksInProgress--;
+      lazyPersistCondition.signalAll();
 
       targetVolume.incDfsUsedAndNumBlocks(bpId, savedFiles[0].length()
           + savedFiles[1].length());
@@ -2849,6 +2899,14 @@ public void onCompleteLazyPersist(String bpId, long blockId,
 
   @Override
   public void onFailLazyPersist(String bpId, long blockId) {
+    try (AutoCloseableLock lock = datasetLock.acquire()) {
+      lazyPersistTasksInProgress--;
+      reenqueueReplicaNotPersisted(bpId, blockId);
+      lazyPersistCondition.signalAll();
+    }
+  }
+
+  private void reenqueueReplicaNotPersisted(String bpId, long blockId) {
     RamDiskReplica block = null;
     block = ramDiskReplicaTracker.getReplica(bpId, blockId);
     if (block != null) {
@@ -2937,69 +2995,133 @@ private void removeOldReplica(ReplicaInfo replicaInfo,
   class LazyWriter implements Runnable {
     private volatile boolean shouldRun = true;
     final int checkpointerInterval;
+    private final int batchSize;
+    private boolean wakeUpRequested = false;
 
     public LazyWriter(Configuration conf) {
       this.checkpointerInterval = conf.getInt(
           DFSConfigKeys.DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC,
           DFSConfigKeys.DFS_DATANODE_LAZY_WRITER_INTERVAL_DEFAULT_SEC);
+      this.batchSize = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_DATANODE_LAZY_WRITER_BATCH_SIZE_KEY,
+          DFSConfigKeys.DFS_DATANODE_LAZY_WRITER_BATCH_SIZE_DEFAULT));
+    }
+
+    /**
+     * Checkpoint up to {@link #batchSize} pending replicas to persistent
+     * storage now. The replicas going to the same volume are persisted by
+     * a single task. If we fail then move the replica to the end of the
+     * queue.
+     * @return the number of replicas that could not be scheduled.
+     */
+    private int saveNextReplicas() {
+      final List<ReplicaLazyPersistTask> tasks = new ArrayList<>();
+      long oldestCreationTime = Long.MAX_VALUE;
+      int failed = 0;
+      int dequeued = 0;
+
+      try (AutoCloseableLock lock = datasetLock.acquire()) {
+        RamDiskReplica block;
+        while (dequeued < batchSize &&
+            (block = ramDiskReplicaTracker.dequeueNextReplicaToPersist())
+                != null) {
+          dequeued++;
+          oldestCreationTime =
+              Math.min(oldestCreationTime, block.getCreationTime());
+          if (!scheduleReplica(block, tasks)) {
+            failed++;
+          }
+        }
+      }
+
+      datanode.getMetrics().incrRamDiskLazyPersistTasks(
+          asyncLazyPersistService.submitLazyPersistTasks(tasks));
+      datanode.getMetrics().setRamDiskLazyPersistLagMs(dequeued == 0 ? 0 :
+          Time.monotonicNow() - oldestCreationTime);
+      return failed;
     }
 
     /**
-     * Checkpoint a pending replica to persistent storage now.
-     * If we fail then move the replica to the end of the queue.
-     * @return true if there is more work to be done, false otherwise.
+     * Pick a target volume for a pending replica. Called with the dataset
+     * lock held.
+     * @return true on success, false if the replica was re-enqueued.
      */
-    private boolean saveNextReplica() {
-      RamDiskReplica block = null;
+    private boolean scheduleReplica(RamDiskReplica block,
+        List<ReplicaLazyPersistTask> tasks) {
       FsVolumeReference targetReference;
       FsVolumeImpl targetVolume;
       ReplicaInfo replicaInfo;
-      boolean succeeded = false;
 
       try {
-        block = ramDiskReplicaTracker.dequeueNextReplicaToPersist();
-        if (block != null) {
-          try (AutoCloseableLock lock = datasetLock.acquire()) {
-            replicaInfo = volumeMap.get(block.getBlockPoolId(), block.getBlockId());
-
-            // If replicaInfo is null, the block was either deleted before
-            // it could be checkpointed or it is already on persistent storage.
-            // This can occur if a second replica on persistent storage was found
-            // after the lazy write was scheduled.
-            if (replicaInfo != null &&
-                replicaInfo.getVolume().isTransientStorage()) {
-              // Pick a target volume to persist the block.
-              targetReference = volumes.getNextVolume(
-                  StorageType.DEFAULT, null, replicaInfo.getNumBytes());
-              targetVolume = (FsVolumeImpl) targetReference.getVolume();
-
-              ramDiskReplicaTracker.recordStartLazyPersist(
-                  block.getBlockPoolId(), block.getBlockId(), targetVolume);
-
-              if (LOG.isDebugEnabled()) {
-                LOG.debug("LazyWriter: Start persisting RamDisk block:"
-                    + " block pool Id: " + block.getBlockPoolId()
-                    + " block id: " + block.getBlockId()
-                    + " on target volume " + targetVolume);
-              }
-
-              asyncLazyPersistService.submitLazyPersistTask(
-                  block.getBlockPoolId(), block.getBlockId(),
-                  replicaInfo.getGenerationStamp(), block.getCreationTime(),
-                  replicaInfo, targetReference);
-            }
+        replicaInfo = volumeMap.get(block.getBlockPoolId(), block.getBlockId());
+
+        // If replicaInfo is null, the block was either deleted before
+        // it could be checkpointed or it is already on persistent storage.
+        // This can occur if a second replica on persistent storage was found
+        // after the lazy write was scheduled.
+        if (replicaInfo != null &&
+            replicaInfo.getVolume().isTransientStorage()) {
+          // Pick a target volume to persist the block.
+          targetReference = volumes.getNextVolume(
+              StorageType.DEFAULT, null, replicaInfo.getNumBytes());
+          targetVolume = (FsVolumeImpl) targetReference.getVolume();
+
+          ramDiskReplicaTracker.recordStartLazyPersist(
+              block.getBlockPoolId(), block.getBlockId(), targetVolume);
+
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("LazyWriter: Start persisting RamDisk block:"
+                + " block pool Id: " + block.getBlockPoolId()
+                + " block id: " + block.getBlockId()
+                + " on target volume " + targetVolume);
           }
+
+          tasks.add(asyncLazyPersistService.newLazyPersistTask(
+              block.getBlockPoolId(), block.getBlockId(),
+              replicaInfo.getGenerationStamp(), block.getCreationTime(),
+              replicaInfo, targetReference));
+          lazyPersistTasksInProgress++;
         }
-        succeeded = true;
+        return true;
       } catch(IOException ioe) {
         LOG.warn("Exception saving replica " + block, ioe);
-      } finally {
-        if (!succeeded && block != null) {
-          LOG.warn("Failed to save replica " + block + ". re-enqueueing it.");
-          onFailLazyPersist(block.getBlockPoolId(), block.getBlockId());
+        reenqueueReplicaNotPersisted(block.getBlockPoolId(),
+            block.getBlockId());
+        return false;
+      }
+    }
+
+    private void updateMetrics() {
+      long ramDiskUsed = 0;
+      for (FsVolumeImpl v : volumes.getVolumes()) {
+        if (v.isTransientStorage()) {
+          try {
+            ramDiskUsed += v.getDfsUsed();
+          } catch (IOException e) {
+            // the volume is being removed
+          }
         }
       }
-      return succeeded;
+      datanode.getMetrics().setRamDiskBytesUsed(ramDiskUsed);
+      datanode.getMetrics().setRamDiskBlocksNotPersisted(
+          ramDiskReplicaTracker.numReplicasNotPersisted());
+    }
+
+    /**
+     * Persist the pending replicas now instead of waiting for the next
+     * interval.
+     */
+    synchronized void wakeUp() {
+      wakeUpRequested = true;
+      notifyAll();
+    }
+
+    private synchronized void waitForNextInterval()
+        throws InterruptedException {
+      if (!wakeUpRequested) {
+        wait(checkpointerInterval * 1000L);
+      }
+      wakeUpRequested = false;
     }
 
     /**
@@ -3063,13 +3185,16 @@ public void run() {
 
       while (fsRunning && shouldRun) {
         try {
-          numSuccessiveFailures = saveNextReplica() ? 0 : (numSuccessiveFailures + 1);
+          int failed = saveNextReplicas();
+          numSuccessiveFailures =
+              failed == 0 ? 0 : (numSuccessiveFailures + failed);
+          updateMetrics();
 
           // Sleep if we have no more work to do or if it looks like we are not
           // making any forward progress. This is to ensure that if all persist
           // operations are failing we don't keep retrying them in a tight loop.
           if (numSuccessiveFailures >= ramDiskReplicaTracker.numReplicasNotPersisted()) {
-            Thread.sleep(checkpointerInterval * 1000);
+            waitForNextInterval();
             numSuccessiveFailures = 0;
           }
         } catch (InterruptedException e) {
@@ -3175,6 +3300,55 @@ boolean reserveLockedMemory(long bytesNeeded) {
     return cacheManager.reserve(bytesNeeded) > 0;
   }
 
+  /**
+   * Reserve locked memory for a new replica on RAM disk. If the memory is
+   * held by replicas that have not been persisted yet, and so cannot be
+   * evicted, wait up to
+   * {@link DFSConfigKeys#DFS_DATANODE_RAM_DISK_WRITE_BACKPRESSURE_MS_KEY}
+   * for the lazy writer to persist them rather than failing right away.
+   * The caller must hold the dataset lock, which is released while waiting.
+   *
+   * @param bytesNeeded
+   * @return true if the memory was reserved
+   */
+  private boolean reserveRamDiskMemory(long bytesNeeded) {
+    if (reserveLockedMemory(bytesNeeded)) {
+      return true;
+    }
+    if (ramDiskWriteBackpressureMs <= 0 || !hasReplicasToPersist()) {
+      return false;
+    }
+
+    ((LazyWriter) lazyWriter.getRunnable()).wakeUp();
+    final long start = Time.monotonicNow();
+    long remaining = ramDiskWriteBackpressureMs;
+    boolean reserved = false;
+    try {
+      while (!reserved && remaining > 0 && hasReplicasToPersist()) {
+        lazyPersistCondition.await(remaining, TimeUnit.MILLISECONDS);
+        reserved = reserveLockedMemory(bytesNeeded);
+        remaining = ramDiskWriteBackpressureMs
+            - (Time.monotonicNow() - start);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    datanode.getMetrics().addRamDiskWriteBackpressure(
+        Time.monotonicNow() - start);
+    return reserved;
+  }
+
+  /**
+   * Whether some replica on RAM disk is waiting to be persisted or is being
+   * persisted right now, so that memory may still be freed by eviction.
+   * The tracker stops counting a replica once its lazy persist task has been
+   * scheduled, hence the tasks in progress are counted as well.
+   */
+  private boolean hasReplicasToPersist() {
+    return ramDiskReplicaTracker.numReplicasNotPersisted() > 0 ||
+        lazyPersistTasksInProgress > 0;
+  }
+
   @VisibleForTesting
   public void setTimer(Timer newTimer) {
     this.timer = newTimer;
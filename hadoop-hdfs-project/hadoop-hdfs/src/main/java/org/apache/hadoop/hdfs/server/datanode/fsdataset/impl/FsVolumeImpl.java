@@ -28,7 +28,12 @@
 import java.nio.channels.ClosedChannelException;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -75,6 +80,9 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.RamDiskReplicaTracker.RamDiskReplica;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.util.CloseableReferenceCount;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 import org.apache.hadoop.util.StringUtils;
@@ -609,6 +617,60 @@ public static String nextSorted(List<String> arr, String prev) {
     return arr.get(res);
   }
 
+  /**
+   * Encode block ids compactly as the Base64 of the variable-length
+   * differences between the sorted ids.
+   */
+  @VisibleForTesting
+  public static String encodeBlockIds(Collection<Long> blockIds) {
+    long[] ids = new long[blockIds.size()];
+    int i = 0;
+    for (long id : blockIds) {
+      ids[i++] = id;
+    }
+    Arrays.sort(ids);
+    DataOutputBuffer buf = new DataOutputBuffer();
+    try {
+      long prev = 0;
+      for (long id : ids) {
+        WritableUtils.writeVLong(buf, id - prev);
+        prev = id;
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // cannot happen for a buffer
+    }
+    return Base64.getEncoder().encodeToString(
+        Arrays.copyOf(buf.getData(), buf.getLength()));
+  }
+
+  @VisibleForTesting
+  public static List<Long> decodeBlockIds(String encoded) throws IOException {
+    List<Long> ids = new ArrayList<>();
+    if (encoded == null || encoded.isEmpty()) {
+      return ids;
+    }
+    final byte[] bytes;
+    try {
+      bytes = Base64.getDecoder().decode(encoded);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid encoded block ids", e);
+    }
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    long prev = 0;
+    while (in.getPosition() < bytes.length) {
+      prev += WritableUtils.readVLong(in);
+      ids.add(prev);
+    }
+    return ids;
+  }
+
+  /**
+   * The maximum number of blocks a block iterator skips.
+   */
+  @VisibleForTesting
+  static final int MAX_SKIPPED_BLOCKS = 64 * 1024;
+
   private static class BlockIteratorState {
     BlockIteratorState() {
       lastSavedMs = iterStartMs = Time.now();
@@ -637,6 +699,10 @@ private static class BlockIteratorState {
 
     @JsonProperty
     private boolean atEnd;
+
+    // The ids of the blocks to skip, encoded with encodeBlockIds.
+    @JsonProperty
+    private String skipBlockIds;
   }
 
   /**
@@ -653,6 +719,13 @@ private class BlockIteratorImpl implements FsVolumeSpi.BlockIterator {
 
     private BlockIteratorState state;
 
+    /**
+     * The ids of the blocks to skip in this iteration.  Unlike the rest of
+     * the iterator, this is also updated by threads other than the one
+     * using the iterator.
+     */
+    private final Set<Long> skipBlockIds = new HashSet<>();
+
     BlockIteratorImpl(String bpid, String name) {
       this.bpidDir = new File(currentDir, bpid);
       this.name = name;
@@ -781,6 +854,11 @@ public ExtendedBlock nextBlock() throws IOException {
             } else {
               ExtendedBlock block =
                   new ExtendedBlock(bpid, Block.filename2id(state.curEntry));
+              if (isSkipped(block.getBlockId())) {
+                LOG.trace("nextBlock({}, {}): skipping {}",
+                    storageID, bpid, block);
+                continue;
+              }
               File expectedBlockDir = DatanodeUtil.idToBlockDir(
                   new File("."), block.getBlockId());
               File actualBlockDir = Paths.get(".",
@@ -837,11 +915,35 @@ public void rewind() {
       cache = null;
       cacheMs = 0;
       state = new BlockIteratorState();
+      synchronized (skipBlockIds) {
+        skipBlockIds.clear();
+      }
+    }
+
+    @Override
+    public boolean skipBlock(long blockId) {
+      synchronized (skipBlockIds) {
+        if (skipBlockIds.size() >= MAX_SKIPPED_BLOCKS) {
+          return false;
+        }
+        skipBlockIds.add(blockId);
+        return true;
+      }
+    }
+
+    private boolean isSkipped(long blockId) {
+      synchronized (skipBlockIds) {
+        return skipBlockIds.remove(blockId);
+      }
     }
 
     @Override
     public void save() throws IOException {
       state.lastSavedMs = Time.now();
+      synchronized (skipBlockIds) {
+        state.skipBlockIds = skipBlockIds.isEmpty() ? null :
+            encodeBlockIds(skipBlockIds);
+      }
       boolean success = false;
       try (BufferedWriter writer = new BufferedWriter(
           new OutputStreamWriter(fileIoProvider.getFileOutputStream(
@@ -865,6 +967,10 @@ FsVolumeImpl.this, getTempSaveFile()), "UTF-8"))) {
     public void load() throws IOException {
       File file = getSaveFile();
       this.state = READER.readValue(file);
+      synchronized (skipBlockIds) {
+        skipBlockIds.clear();
+        skipBlockIds.addAll(decodeBlockIds(state.skipBlockIds));
+      }
       LOG.trace("load({}, {}): loaded iterator {} from {}: {}", storageID,
           bpid, name, file.getAbsoluteFile(),
           WRITER.writeValueAsString(state));
@@ -43,6 +43,7 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.AutoCloseableLock;
+import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
 import org.apache.hadoop.util.Time;
 
 class FsVolumeList {
@@ -83,6 +84,28 @@ List<FsVolumeImpl> getVolumes() {
 
   private FsVolumeReference chooseVolume(List<FsVolumeImpl> list,
       long blockSize, String storageId) throws IOException {
+    // Leave out volumes deprioritized as slow while others have room. The
+    // policy may honor a requested storage id, so do not interfere then.
+    if (storageId == null) {
+      final List<FsVolumeImpl> fastVolumes = new ArrayList<>(list.size());
+      for (FsVolumeImpl v : list) {
+        if (v.getMetrics() == null || !v.getMetrics().isSlow()) {
+          fastVolumes.add(v);
+        }
+      }
+      if (!fastVolumes.isEmpty() && fastVolumes.size() < list.size()) {
+        try {
+          return chooseVolumeFrom(fastVolumes, blockSize, null);
+        } catch (DiskOutOfSpaceException e) {
+          FsDatasetImpl.LOG.debug("No room on volumes that are not slow", e);
+        }
+      }
+    }
+    return chooseVolumeFrom(list, blockSize, storageId);
+  }
+
+  private FsVolumeReference chooseVolumeFrom(List<FsVolumeImpl> list,
+      long blockSize, String storageId) throws IOException {
     while (true) {
       FsVolumeImpl volume = blockChooser.chooseVolume(list, blockSize,
           storageId);
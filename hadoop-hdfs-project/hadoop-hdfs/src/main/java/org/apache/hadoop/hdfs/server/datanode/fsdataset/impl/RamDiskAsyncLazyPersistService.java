@@ -26,10 +26,14 @@
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
+import org.apache.hadoop.io.IOUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
@@ -195,13 +199,82 @@ void submitLazyPersistTask(String bpId, long blockId,
           + bpId + " block id: " + blockId);
     }
 
-    ReplicaLazyPersistTask lazyPersistTask = new ReplicaLazyPersistTask(
+    ReplicaLazyPersistTask lazyPersistTask = newLazyPersistTask(
         bpId, blockId, genStamp, creationTime, replica, target);
 
     FsVolumeImpl volume = (FsVolumeImpl)target.getVolume();
     execute(volume.getStorageID(), lazyPersistTask);
   }
 
+  ReplicaLazyPersistTask newLazyPersistTask(String bpId, long blockId,
+      long genStamp, long creationTime,
+      ReplicaInfo replica, FsVolumeReference target) {
+    return new ReplicaLazyPersistTask(
+        bpId, blockId, genStamp, creationTime, replica, target);
+  }
+
+  /**
+   * Asynchronously lazy persist a batch of blocks from the RamDisk to Disk.
+   * The blocks going to the same target volume are copied one after the
+   * other by a single task, instead of queueing one task per block.
+   *
+   * @return the number of tasks submitted
+   */
+  int submitLazyPersistTasks(List<ReplicaLazyPersistTask> tasks) {
+    Map<String, List<ReplicaLazyPersistTask>> batches = new LinkedHashMap<>();
+    for (ReplicaLazyPersistTask task : tasks) {
+      String storageId =
+          ((FsVolumeImpl) task.targetVolume.getVolume()).getStorageID();
+      List<ReplicaLazyPersistTask> batch = batches.get(storageId);
+      if (batch == null) {
+        batch = new ArrayList<>();
+        batches.put(storageId, batch);
+      }
+      batch.add(task);
+    }
+    for (Map.Entry<String, List<ReplicaLazyPersistTask>> e :
+        batches.entrySet()) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("LazyWriter schedule async task to persist "
+            + e.getValue().size() + " RamDisk blocks to volume "
+            + e.getKey());
+      }
+      Runnable task = e.getValue().size() == 1 ? e.getValue().get(0) :
+          new ReplicaLazyPersistBatchTask(e.getValue());
+      try {
+        execute(e.getKey(), task);
+      } catch (RuntimeException re) {
+        LOG.warn("Failed to schedule " + task, re);
+        for (ReplicaLazyPersistTask t : e.getValue()) {
+          t.abort();
+        }
+      }
+    }
+    return batches.size();
+  }
+
+  class ReplicaLazyPersistBatchTask implements Runnable {
+    private final List<ReplicaLazyPersistTask> tasks;
+
+    ReplicaLazyPersistBatchTask(List<ReplicaLazyPersistTask> tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    public String toString() {
+      return "LazyWriter async task of persist " + tasks.size()
+          + " RamDisk blocks, first " + tasks.get(0);
+    }
+
+    @Override
+    public void run() {
+      // Every task handles its own failure.
+      for (ReplicaLazyPersistTask task : tasks) {
+        task.run();
+      }
+    }
+  }
+
   class ReplicaLazyPersistTask implements Runnable {
     private final String bpId;
     private final long blockId;
@@ -232,6 +305,15 @@ public String toString() {
           + " to target volume " + targetVolume;
     }
 
+    /**
+     * Give up the task without running it.
+     */
+    void abort() {
+      IOUtils.cleanup(null, targetVolume);
+      ((FsDatasetImpl) datanode.getFSDataset()).onFailLazyPersist(
+          bpId, blockId);
+    }
+
     @Override
     public void run() {
       boolean succeeded = false;
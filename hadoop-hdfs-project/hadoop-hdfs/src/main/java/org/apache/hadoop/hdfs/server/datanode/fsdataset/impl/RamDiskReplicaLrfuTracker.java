@@ -0,0 +1,285 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.TreeMultimap;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.util.Time;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * An implementation of RamDiskReplicaTracker that evicts the persisted
+ * replica least likely to be read again, estimated from both how often and
+ * how recently it was read (LRFU).
+ *
+ * Persisting a replica and every read of it add one to its score, and the
+ * score halves every
+ * {@link DFSConfigKeys#DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_LRFU_HALF_LIFE_MS_KEY}
+ * milliseconds. Unlike with LRU, a replica that keeps being read is not
+ * evicted by a burst of replicas that are written and read only once.
+ *
+ * The score of a replica is kept as its logarithm plus the time of the last
+ * update in half-lives. All scores decay at the same rate, so the order of
+ * the replicas by this key does not change between updates.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class RamDiskReplicaLrfuTracker extends RamDiskReplicaTracker
+    implements Configurable {
+
+  private class RamDiskReplicaLrfu extends RamDiskReplica {
+    /** No reads and not persisted yet. */
+    double key = Double.NEGATIVE_INFINITY;
+
+    private RamDiskReplicaLrfu(String bpid, long blockId,
+                               FsVolumeImpl ramDiskVolume,
+                               long lockedBytesReserved) {
+      super(bpid, blockId, ramDiskVolume, lockedBytesReserved);
+    }
+
+    @Override
+    public int hashCode() {
+      return super.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return super.equals(other);
+    }
+  }
+
+  private Configuration conf;
+  private long halfLifeMs =
+      DFSConfigKeys.DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_LRFU_HALF_LIFE_MS_DEFAULT;
+
+  /**
+   * Map of blockpool ID to <map of blockID to ReplicaInfo>.
+   */
+  private final Map<String, Map<Long, RamDiskReplicaLrfu>> replicaMaps;
+
+  /**
+   * Queue of replicas that need to be written to disk.
+   * Stale entries are GC'd by dequeueNextReplicaToPersist.
+   */
+  private final Queue<RamDiskReplicaLrfu> replicasNotPersisted;
+
+  /**
+   * Map of persisted replicas ordered by their scores.
+   */
+  private final TreeMultimap<Double, RamDiskReplicaLrfu> replicasPersisted;
+
+  RamDiskReplicaLrfuTracker() {
+    replicaMaps = new HashMap<>();
+    replicasNotPersisted = new LinkedList<>();
+    replicasPersisted = TreeMultimap.create();
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    this.halfLifeMs = Math.max(1, conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_LRFU_HALF_LIFE_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_LRFU_HALF_LIFE_MS_DEFAULT));
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /**
+   * Add one access at the given time to a score.
+   *
+   * @param key the key of the score before the access
+   * @param now the time of the access
+   * @return the key of the score after the access
+   */
+  @VisibleForTesting
+  double addAccess(double key, long now) {
+    final double t = (double) now / halfLifeMs;
+    // The score decayed to now is 2^(key - t).
+    return t + Math.log1p(Math.pow(2, key - t)) / Math.log(2);
+  }
+
+  @Override
+  synchronized void addReplica(final String bpid, final long blockId,
+                               final FsVolumeImpl transientVolume,
+                               long lockedBytesReserved) {
+    Map<Long, RamDiskReplicaLrfu> map = replicaMaps.get(bpid);
+    if (map == null) {
+      map = new HashMap<>();
+      replicaMaps.put(bpid, map);
+    }
+    RamDiskReplicaLrfu replica =
+        new RamDiskReplicaLrfu(bpid, blockId, transientVolume,
+                               lockedBytesReserved);
+    map.put(blockId, replica);
+    replicasNotPersisted.add(replica);
+  }
+
+  @Override
+  synchronized void touch(final String bpid,
+                          final long blockId) {
+    Map<Long, RamDiskReplicaLrfu> map = replicaMaps.get(bpid);
+    RamDiskReplicaLrfu replica = map == null ? null : map.get(blockId);
+
+    if (replica == null) {
+      return;
+    }
+
+    replica.numReads.getAndIncrement();
+
+    // Reads before the replica is persisted count too, but the replica
+    // only becomes a candidate for eviction once it is persisted.
+    final boolean persisted = replicasPersisted.remove(replica.key, replica);
+    replica.key = addAccess(replica.key, Time.monotonicNow());
+    if (persisted) {
+      replicasPersisted.put(replica.key, replica);
+    }
+  }
+
+  @Override
+  synchronized void recordStartLazyPersist(
+      final String bpid, final long blockId, FsVolumeImpl checkpointVolume) {
+    Map<Long, RamDiskReplicaLrfu> map = replicaMaps.get(bpid);
+    RamDiskReplicaLrfu replica = map.get(blockId);
+    replica.setLazyPersistVolume(checkpointVolume);
+  }
+
+  @Override
+  synchronized void recordEndLazyPersist(
+      final String bpid, final long blockId, final File[] savedFiles) {
+    Map<Long, RamDiskReplicaLrfu> map = replicaMaps.get(bpid);
+    RamDiskReplicaLrfu replica = map.get(blockId);
+
+    if (replica == null) {
+      throw new IllegalStateException("Unknown replica bpid=" +
+          bpid + "; blockId=" + blockId);
+    }
+    replica.recordSavedBlockFiles(savedFiles);
+
+    if (replicasNotPersisted.peek() == replica) {
+      // Common case.
+      replicasNotPersisted.remove();
+    } else {
+      // Caller error? Fallback to O(n) removal.
+      replicasNotPersisted.remove(replica);
+    }
+
+    replica.key = addAccess(replica.key, Time.monotonicNow());
+    replicasPersisted.put(replica.key, replica);
+    replica.isPersisted = true;
+  }
+
+  @Override
+  synchronized RamDiskReplica dequeueNextReplicaToPersist() {
+    while (replicasNotPersisted.size() != 0) {
+      RamDiskReplicaLrfu replica = replicasNotPersisted.remove();
+      Map<Long, RamDiskReplicaLrfu> replicaMap =
+          replicaMaps.get(replica.getBlockPoolId());
+
+      if (replicaMap != null && replicaMap.get(replica.getBlockId()) != null) {
+        return replica;
+      }
+
+      // The replica no longer exists, look for the next one.
+    }
+    return null;
+  }
+
+  @Override
+  synchronized void reenqueueReplicaNotPersisted(
+      final RamDiskReplica replica) {
+    replicasNotPersisted.add((RamDiskReplicaLrfu) replica);
+  }
+
+  @Override
+  synchronized int numReplicasNotPersisted() {
+    return replicasNotPersisted.size();
+  }
+
+  @Override
+  synchronized RamDiskReplica getNextCandidateForEviction() {
+    final Iterator<RamDiskReplicaLrfu> it =
+        replicasPersisted.values().iterator();
+    while (it.hasNext()) {
+      final RamDiskReplicaLrfu replica = it.next();
+      it.remove();
+
+      Map<Long, RamDiskReplicaLrfu> replicaMap =
+          replicaMaps.get(replica.getBlockPoolId());
+
+      if (replicaMap != null && replicaMap.get(replica.getBlockId()) != null) {
+        return replica;
+      }
+
+      // The replica no longer exists, look for the next one.
+    }
+    return null;
+  }
+
+  @Override
+  synchronized void discardReplica(
+      final String bpid, final long blockId,
+      boolean deleteSavedCopies) {
+    Map<Long, RamDiskReplicaLrfu> map = replicaMaps.get(bpid);
+
+    if (map == null) {
+      return;
+    }
+
+    RamDiskReplicaLrfu replica = map.get(blockId);
+
+    if (replica == null) {
+      return;
+    }
+
+    if (deleteSavedCopies) {
+      replica.deleteSavedFiles();
+    }
+
+    map.remove(blockId);
+    replicasPersisted.remove(replica.key, replica);
+
+    // replicasNotPersisted will be lazily GC'ed.
+  }
+
+  @Override
+  synchronized RamDiskReplica getReplica(
+    final String bpid, final long blockId) {
+    Map<Long, RamDiskReplicaLrfu> map = replicaMaps.get(bpid);
+
+    if (map == null) {
+      return null;
+    }
+
+    return map.get(blockId);
+  }
+}
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.CachingGetSpaceUsed;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.util.AutoCloseableLock;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps the space used by a {@link BlockPoolSlice} in memory instead of
+ * running du over the block pool directory.
+ *
+ * The accounted space is the length of the block and meta files of the
+ * finalized replicas of the slice. The {@link BlockPoolSlice} and
+ * {@link FsVolumeImpl} update it as replicas are finalized, appended to,
+ * truncated and deleted. Since an update can still be missed, e.g. when a
+ * replica file is changed outside of the DataNode, the accounted space is
+ * periodically verified against the replicas in the {@link ReplicaMap}.
+ * The verification only stats the files of known replicas; it never lists
+ * a directory, so unlike du it does not evict the page cache.
+ */
+@InterfaceAudience.Private
+class ReplicaCachingGetSpaceUsed extends CachingGetSpaceUsed {
+  static final Log LOG = LogFactory.getLog(ReplicaCachingGetSpaceUsed.class);
+
+  private final FsVolumeImpl volume;
+  private final String bpid;
+  private final long verifyInterval;
+  private final long jitter;
+  private volatile boolean running = true;
+  private Thread verifier;
+
+  /**
+   * @param builder the path, initial value and verification interval
+   * @param volume the volume of the block pool slice
+   * @param bpid the block pool id
+   */
+  ReplicaCachingGetSpaceUsed(Builder builder, FsVolumeImpl volume,
+      String bpid) throws IOException {
+    super(builder);
+    this.volume = volume;
+    this.bpid = bpid;
+    this.verifyInterval = builder.getInterval();
+    this.jitter = builder.getJitter();
+  }
+
+  /**
+   * Start accounting once the replicas of the slice have been loaded.
+   * If no initial value was given, it is computed from the loaded replicas.
+   *
+   * @param replicaMap the map the replicas of the slice were loaded into
+   */
+  synchronized void start(ReplicaMap replicaMap) {
+    if (used.get() < 0) {
+      setUsed(0);
+      verify(replicaMap);
+    }
+    if (verifier == null && verifyInterval > 0) {
+      verifier = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          verifyLoop();
+        }
+      }, "ReplicaCachingGetSpaceUsed-" + getDirPath());
+      verifier.setDaemon(true);
+      verifier.start();
+    }
+  }
+
+  private void verifyLoop() {
+    while (running) {
+      try {
+        long interval = verifyInterval;
+        if (jitter > 0) {
+          interval += ThreadLocalRandom.current().nextLong(-jitter, jitter);
+        }
+        Thread.sleep(Math.max(interval, 1));
+        refresh();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Throwable t) {
+        LOG.warn("Failed to verify the space used by " + getDirPath(), t);
+      }
+    }
+  }
+
+  /**
+   * Verify the accounted space against the replicas in the dataset.
+   */
+  @Override
+  protected void refresh() {
+    FsDatasetImpl dataset = (FsDatasetImpl) volume.getDataset();
+    verify(dataset.volumeMap, dataset.asyncDiskService);
+  }
+
+  @VisibleForTesting
+  long verify(ReplicaMap replicaMap) {
+    return verify(replicaMap, null);
+  }
+
+  /**
+   * Correct the accounted space by the difference between the lengths of
+   * the files of the finalized replicas of the slice in the given map and
+   * the accounted space when the replicas were collected.
+   * Nothing is corrected while replicas of the volume are being deleted.
+   *
+   * @param replicaMap the map holding the replicas of the slice
+   * @param deletions the service deleting replicas, or null if none
+   * @return the correction that was applied
+   */
+  private long verify(ReplicaMap replicaMap,
+      FsDatasetAsyncDiskService deletions) {
+    List<ReplicaInfo> replicas = new ArrayList<>();
+    long accounted;
+    try (AutoCloseableLock l = replicaMap.getLock().acquire()) {
+      // Deleted replicas leave the replica map before their space is
+      // released, so check for pending deletions with the same lock held
+      // as the scan below.
+      if (deletions != null && deletions.countPendingDeletions(volume) > 0) {
+        LOG.debug("Skipping the verification of the space used by "
+            + getDirPath() + " while replicas are being deleted");
+        return 0;
+      }
+      Collection<ReplicaInfo> all = replicaMap.replicas(bpid);
+      if (all != null) {
+        for (ReplicaInfo replica : all) {
+          if (replica.getVolume() == volume && isAccounted(replica)) {
+            replicas.add(replica);
+          }
+        }
+      }
+      // The space is updated with the replica map lock held, so this is
+      // consistent with the collected replicas.
+      accounted = used.get();
+    }
+
+    // stat the files without holding the lock
+    long actual = 0;
+    for (ReplicaInfo replica : replicas) {
+      actual += replica.getBlockDataLength() + replica.getMetadataLength();
+    }
+    long drift = actual - accounted;
+    if (drift != 0) {
+      LOG.info("Corrected the space used by " + getDirPath() + " by "
+          + drift + " bytes to " + actual + " bytes in "
+          + replicas.size() + " replicas");
+      incDfsUsed(drift);
+    }
+    return drift;
+  }
+
+  /**
+   * @return true if the replica is finalized, including a replica under
+   *         recovery whose files are still in the finalized directory.
+   */
+  private static boolean isAccounted(ReplicaInfo replica) {
+    if (replica.getState() == ReplicaState.RUR) {
+      replica = replica.getOriginalReplica();
+    }
+    return replica.getState() == ReplicaState.FINALIZED;
+  }
+
+  @Override
+  public void close() throws IOException {
+    running = false;
+    synchronized (this) {
+      if (verifier != null) {
+        verifier.interrupt();
+      }
+    }
+    super.close();
+  }
+}
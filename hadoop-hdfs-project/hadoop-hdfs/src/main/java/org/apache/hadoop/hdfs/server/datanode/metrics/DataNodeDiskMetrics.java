@@ -31,14 +31,25 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class detects and maintains DataNode disk outliers and their
  * latencies for different ops (metadata, read, write).
+ *
+ * Besides the mean latencies reported to the NameNode, it compares the 99th
+ * percentile latencies of the volumes over each detection interval, taken
+ * from their latency histograms. If enabled, volumes that are outliers by
+ * these are marked slow, see {@link DataNodeVolumeMetrics#isSlow()}.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
@@ -56,10 +67,14 @@ public class DataNodeDiskMetrics {
   private Daemon slowDiskDetectionDaemon;
   private volatile Map<String, Map<DiskOp, Double>>
       diskOutliersStats = Maps.newHashMap();
+  private final boolean deprioritizeSlowVolumes;
+  private volatile Set<String> slowVolumes = Collections.emptySet();
 
   public DataNodeDiskMetrics(DataNode dn, long diskOutlierDetectionIntervalMs) {
     this.dn = dn;
     this.detectionInterval = diskOutlierDetectionIntervalMs;
+    this.deprioritizeSlowVolumes =
+        dn.getDnConf().isSlowVolumeDeprioritizeEnabled();
     slowDiskDetector = new OutlierDetector(MIN_OUTLIER_DETECTION_DISKS,
         SLOW_DISK_LOW_THRESHOLD_MS);
     shouldRun = true;
@@ -74,6 +89,8 @@ public void run() {
           Map<String, Double> metadataOpStats = Maps.newHashMap();
           Map<String, Double> readIoStats = Maps.newHashMap();
           Map<String, Double> writeIoStats = Maps.newHashMap();
+          Map<String, DataNodeVolumeMetrics> volumeMetrics =
+              Maps.newHashMap();
           FsDatasetSpi.FsVolumeReferences fsVolumeReferences = null;
           try {
             fsVolumeReferences = dn.getFSDataset().getFsVolumeReferences();
@@ -81,13 +98,15 @@ public void run() {
                 .iterator();
             while (volumeIterator.hasNext()) {
               FsVolumeSpi volume = volumeIterator.next();
-              DataNodeVolumeMetrics metrics = volumeIterator.next().getMetrics();
+              DataNodeVolumeMetrics metrics = volume.getMetrics();
               String volumeName = volume.getBaseURI().getPath();
 
               metadataOpStats.put(volumeName,
                   metrics.getMetadataOperationMean());
               readIoStats.put(volumeName, metrics.getReadIoMean());
               writeIoStats.put(volumeName, metrics.getWriteIoMean());
+              metrics.rollLatencyHistograms();
+              volumeMetrics.put(volumeName, metrics);
             }
           } finally {
             if (fsVolumeReferences != null) {
@@ -106,6 +125,7 @@ public void run() {
 
           detectAndUpdateDiskOutliers(metadataOpStats, readIoStats,
               writeIoStats);
+          detectAndUpdateSlowVolumes(volumeMetrics);
 
           try {
             Thread.sleep(detectionInterval);
@@ -148,6 +168,68 @@ private void detectAndUpdateDiskOutliers(Map<String, Double> metadataOpStats,
     LOG.debug("Updated disk outliers.");
   }
 
+  /**
+   * Find the volumes whose 99th percentile latency over the last interval
+   * is an outlier for any operation type, and mark them slow if slow
+   * volumes are deprioritized.
+   */
+  @VisibleForTesting
+  void detectAndUpdateSlowVolumes(
+      Map<String, DataNodeVolumeMetrics> volumeMetrics) {
+    Map<String, Double> metadataOpP99 = Maps.newHashMap();
+    Map<String, Double> readIoP99 = Maps.newHashMap();
+    Map<String, Double> writeIoP99 = Maps.newHashMap();
+    Map<String, Double> syncIoP99 = Maps.newHashMap();
+    for (Map.Entry<String, DataNodeVolumeMetrics> entry :
+        volumeMetrics.entrySet()) {
+      DataNodeVolumeMetrics metrics = entry.getValue();
+      addP99(metadataOpP99, entry.getKey(),
+          metrics.getMetadataOperationIntervalP99Micros());
+      addP99(readIoP99, entry.getKey(), metrics.getReadIoIntervalP99Micros());
+      addP99(writeIoP99, entry.getKey(),
+          metrics.getWriteIoIntervalP99Micros());
+      addP99(syncIoP99, entry.getKey(), metrics.getSyncIoIntervalP99Micros());
+    }
+
+    Set<String> slow = new HashSet<>();
+    slow.addAll(slowDiskDetector.getOutliers(metadataOpP99).keySet());
+    slow.addAll(slowDiskDetector.getOutliers(readIoP99).keySet());
+    slow.addAll(slowDiskDetector.getOutliers(writeIoP99).keySet());
+    slow.addAll(slowDiskDetector.getOutliers(syncIoP99).keySet());
+
+    if (deprioritizeSlowVolumes) {
+      for (Map.Entry<String, DataNodeVolumeMetrics> entry :
+          volumeMetrics.entrySet()) {
+        boolean isSlow = slow.contains(entry.getKey());
+        if (isSlow != entry.getValue().isSlow()) {
+          LOG.info("{} volume {}", isSlow ? "Deprioritizing slow" :
+              "No longer deprioritizing", entry.getKey());
+          entry.getValue().setSlow(isSlow);
+        }
+      }
+    }
+    slowVolumes = Collections.unmodifiableSet(slow);
+  }
+
+  /**
+   * Add the latency of a volume in milliseconds, the unit the outlier
+   * detector thresholds are in. Volumes without samples are left out.
+   */
+  private static void addP99(Map<String, Double> stats, String volume,
+      long p99Micros) {
+    if (p99Micros > 0) {
+      stats.put(volume, p99Micros / 1000.0);
+    }
+  }
+
+  /**
+   * @return the volumes whose tail latency was an outlier in the last
+   *         detection interval, whether or not they are deprioritized.
+   */
+  public Set<String> getSlowVolumes() {
+    return slowVolumes;
+  }
+
   private void addDiskStat(Map<String, Map<DiskOp, Double>> diskStats,
       String disk, DiskOp diskOp, double latency) {
     if (!diskStats.containsKey(disk)) {
@@ -182,4 +264,52 @@ public void addSlowDiskForTesting(String slowDiskPath,
       diskOutliersStats.put(slowDiskPath, latencies);
     }
   }
+
+  /**
+   * Writes the latency histograms of all volumes in the Prometheus text
+   * exposition format.
+   */
+  @InterfaceAudience.Private
+  public static class VolumeLatencyServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void doGet(HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+      response.setContentType("text/plain; version=0.0.4");
+
+      DataNode datanode = (DataNode)
+          getServletContext().getAttribute("datanode");
+      StringBuilder buffer = new StringBuilder(64 * 1024);
+      try (FsDatasetSpi.FsVolumeReferences volumes =
+               datanode.getFSDataset().getFsVolumeReferences()) {
+        writeLatencyHistograms(buffer, volumes);
+      }
+      response.getWriter().write(buffer.toString());
+    }
+  }
+
+  @VisibleForTesting
+  static void writeLatencyHistograms(StringBuilder buffer,
+      Iterable<FsVolumeSpi> volumes) {
+    final String[] ops = {"metadata_op", "read_io", "write_io", "sync_io"};
+    for (int op = 0; op < ops.length; op++) {
+      String name = "hadoop_datanode_volume_" + ops[op] + "_latency_us";
+      buffer.append("# TYPE ").append(name).append(" histogram\n");
+      for (FsVolumeSpi volume : volumes) {
+        DataNodeVolumeMetrics metrics = volume.getMetrics();
+        if (metrics == null) {
+          continue;
+        }
+        LatencyHistogram[] histograms = {
+            metrics.getMetadataOperationLatencyHistogram(),
+            metrics.getReadIoLatencyHistogram(),
+            metrics.getWriteIoLatencyHistogram(),
+            metrics.getSyncIoLatencyHistogram()};
+        String labels = "volume=\"" + volume.getBaseURI().getPath()
+            .replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        histograms[op].snapshot().writePrometheus(buffer, name, labels);
+      }
+    }
+  }
 }
@@ -66,6 +66,10 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong blockVerificationFailures;
   @Metric MutableCounterLong blocksCached;
   @Metric MutableCounterLong blocksUncached;
+  @Metric("Count of blocks cached because they are read often")
+  MutableCounterLong blocksCachedAdaptively;
+  @Metric("Count of adaptively cached blocks evicted for hotter blocks")
+  MutableCounterLong blocksUncachedAdaptively;
   @Metric MutableCounterLong readsFromLocalClient;
   @Metric MutableCounterLong readsFromRemoteClient;
   @Metric MutableCounterLong writesFromLocalClient;
@@ -95,6 +99,20 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong ramDiskBytesLazyPersisted;
   @Metric MutableRate        ramDiskBlocksLazyPersistWindowMs;
   final MutableQuantiles[]   ramDiskBlocksLazyPersistWindowMsQuantiles;
+  @Metric("Count of lazy persist tasks, each persisting RamDisk blocks " +
+      "to one volume")
+  MutableCounterLong ramDiskLazyPersistTasks;
+  @Metric("Count of RamDisk blocks not yet lazily persisted")
+  MutableGaugeLong ramDiskBlocksNotPersisted;
+  @Metric("Bytes used on RamDisk volumes")
+  MutableGaugeLong ramDiskBytesUsed;
+  @Metric("Milliseconds the oldest block of the last lazy persist pass " +
+      "waited to be persisted")
+  MutableGaugeLong ramDiskLazyPersistLagMs;
+  @Metric("Count of RamDisk block writes that waited for locked memory")
+  MutableCounterLong ramDiskBlocksWriteBackpressure;
+  @Metric("Milliseconds RamDisk block writes waited for locked memory")
+  MutableCounterLong ramDiskWriteBackpressureTimeMillis;
 
   @Metric MutableCounterLong fsyncCount;
   
@@ -130,6 +148,12 @@ public class DataNodeMetrics {
   final MutableQuantiles[] sendDataPacketBlockedOnNetworkNanosQuantiles;
   @Metric MutableRate sendDataPacketTransferNanos;
   final MutableQuantiles[] sendDataPacketTransferNanosQuantiles;
+  @Metric("Bytes of block data sent or verified by BlockSender")
+  MutableCounterLong blockSenderBytesServed;
+  @Metric("Bytes of block data BlockSender copied through heap buffers")
+  MutableCounterLong blockSenderHeapBytesCopied;
+  @Metric("Bytes of block data BlockSender copied through direct buffers")
+  MutableCounterLong blockSenderDirectBytesCopied;
 
   @Metric("Count of blocks in pending IBR")
   private MutableGaugeLong blocksInPendingIBR;
@@ -151,6 +175,21 @@ public class DataNodeMetrics {
   MutableCounterLong ecReconstructionBytesWritten;
   @Metric("Bytes remote read by erasure coding worker")
   MutableCounterLong ecReconstructionRemoteBytesRead;
+  @Metric("Milliseconds spent on read by erasure coding worker")
+  MutableCounterLong ecReconstructionReadTimeMillis;
+  @Metric("Milliseconds spent on write by erasure coding worker")
+  MutableCounterLong ecReconstructionWriteTimeMillis;
+
+  @Metric("Block reads continuing a sequential read of the same client")
+  MutableCounterLong sequentialBlockReads;
+  @Metric("Block reads continuing a strided read of the same client")
+  MutableCounterLong stridedBlockReads;
+  @Metric("Block reads at random offsets of a block read by the same client")
+  MutableCounterLong randomBlockReads;
+  @Metric("Bytes read by clients after being read ahead for earlier reads")
+  MutableCounterLong readaheadHitBytes;
+  @Metric("Bytes read ahead and never read by the client")
+  MutableCounterLong readaheadWastedBytes;
 
   final MetricsRegistry registry = new MetricsRegistry("datanode");
   final String name;
@@ -280,6 +319,14 @@ public void incrBlocksUncached(int delta) {
     blocksUncached.incr(delta);
   }
 
+  public void incrBlocksCachedAdaptively() {
+    blocksCachedAdaptively.incr();
+  }
+
+  public void incrBlocksUncachedAdaptively() {
+    blocksUncachedAdaptively.incr();
+  }
+
   public void addReadBlockOp(long latency) {
     readBlockOp.add(latency);
   }
@@ -385,6 +432,13 @@ public void addSendDataPacketBlockedOnNetworkNanos(long latencyNanos) {
     }
   }
 
+  public void incrBlockSenderBytes(long served, long heapCopied,
+      long directCopied) {
+    blockSenderBytesServed.incr(served);
+    blockSenderHeapBytesCopied.incr(heapCopied);
+    blockSenderDirectBytesCopied.incr(directCopied);
+  }
+
   public void addSendDataPacketTransferNanos(long latencyNanos) {
     sendDataPacketTransferNanos.add(latencyNanos);
     for (MutableQuantiles q : sendDataPacketTransferNanosQuantiles) {
@@ -442,6 +496,27 @@ public void addRamDiskBlocksLazyPersistWindowMs(long latencyMs) {
     }
   }
 
+  public void incrRamDiskLazyPersistTasks(long count) {
+    ramDiskLazyPersistTasks.incr(count);
+  }
+
+  public void setRamDiskBlocksNotPersisted(long count) {
+    ramDiskBlocksNotPersisted.set(count);
+  }
+
+  public void setRamDiskBytesUsed(long bytes) {
+    ramDiskBytesUsed.set(bytes);
+  }
+
+  public void setRamDiskLazyPersistLagMs(long lagMs) {
+    ramDiskLazyPersistLagMs.set(lagMs);
+  }
+
+  public void addRamDiskWriteBackpressure(long waitMs) {
+    ramDiskBlocksWriteBackpressure.incr();
+    ramDiskWriteBackpressureTimeMillis.incr(waitMs);
+  }
+
   /**
    * Resets blocks in pending IBR to zero.
    */
@@ -503,4 +578,32 @@ public void incrECReconstructionRemoteBytesRead(long bytes) {
   public void incrECReconstructionBytesWritten(long bytes) {
     ecReconstructionBytesWritten.incr(bytes);
   }
+
+  public void incrECReconstructionReadTime(long millis) {
+    ecReconstructionReadTimeMillis.incr(millis);
+  }
+
+  public void incrECReconstructionWriteTime(long millis) {
+    ecReconstructionWriteTimeMillis.incr(millis);
+  }
+
+  public void incrSequentialBlockReads() {
+    sequentialBlockReads.incr();
+  }
+
+  public void incrStridedBlockReads() {
+    stridedBlockReads.incr();
+  }
+
+  public void incrRandomBlockReads() {
+    randomBlockReads.incr();
+  }
+
+  public void incrReadaheadHitBytes(long bytes) {
+    readaheadHitBytes.incr(bytes);
+  }
+
+  public void incrReadaheadWastedBytes(long bytes) {
+    readaheadWastedBytes.incr(bytes);
+  }
 }
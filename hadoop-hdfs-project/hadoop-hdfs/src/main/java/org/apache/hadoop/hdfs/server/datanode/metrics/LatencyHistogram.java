@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A lock-free latency histogram with logarithmic buckets.
+ *
+ * Like an HDR histogram, every power of two is split into a fixed number of
+ * linear sub-buckets, so the relative error of a reported percentile is
+ * bounded (25% with 4 sub-buckets) over the whole range of a long, while
+ * recording a value is a single atomic increment. The histogram is
+ * cumulative; callers interested in an interval take a {@link Snapshot}
+ * at each end and subtract them.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  @VisibleForTesting
+  static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  /**
+   * The largest bucket bound written by {@link Snapshot#writePrometheus}.
+   * Powers of two keep the output small and the bucket set stable.
+   */
+  private static final int PROMETHEUS_MAX_SHIFT = 30;
+
+  // buckets[NUM_BUCKETS] holds the sum of all recorded values.
+  private final AtomicLongArray buckets =
+      new AtomicLongArray(NUM_BUCKETS + 1);
+
+  /**
+   * Record one value. Negative values are recorded as 0.
+   */
+  public void add(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    buckets.incrementAndGet(bucketIndex(value));
+    buckets.addAndGet(NUM_BUCKETS, value);
+  }
+
+  /**
+   * @return the counts recorded so far. The counts are not read atomically
+   *         with respect to concurrent calls to {@link #add}, which may make
+   *         the snapshot miss a value that is still being recorded.
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[NUM_BUCKETS];
+    long count = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      count += counts[i];
+    }
+    return new Snapshot(counts, count, buckets.get(NUM_BUCKETS));
+  }
+
+  @VisibleForTesting
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int msb = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * @return the smallest value that falls into a bucket after the given one.
+   */
+  @VisibleForTesting
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index + 1;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    int sub = index % SUB_BUCKETS;
+    long upper = (long) (SUB_BUCKETS + sub + 1) << shift;
+    // the last bucket ends past Long.MAX_VALUE
+    return upper > 0 ? upper : Long.MAX_VALUE;
+  }
+
+  /**
+   * An immutable copy of the counts of a {@link LatencyHistogram}.
+   */
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+
+    private Snapshot(long[] counts, long count, long sum) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the sum of the recorded values
+     */
+    public long getSum() {
+      return sum;
+    }
+
+    /**
+     * @return the mean of the recorded values, 0 if there are none
+     */
+    public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param quantile the quantile, between 0 and 1
+     * @return an upper bound of the given quantile of the recorded values,
+     *         0 if there are none
+     */
+    public long getPercentile(double quantile) {
+      Preconditions.checkArgument(quantile >= 0 && quantile <= 1,
+          "Invalid quantile %s", quantile);
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * count));
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return bucketUpperBound(i) - 1;
+        }
+      }
+      return bucketUpperBound(NUM_BUCKETS - 1) - 1;
+    }
+
+    /**
+     * @return the values recorded since the older snapshot was taken
+     */
+    public Snapshot minus(Snapshot older) {
+      long[] diff = new long[NUM_BUCKETS];
+      long diffCount = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        diff[i] = Math.max(0, counts[i] - older.counts[i]);
+        diffCount += diff[i];
+      }
+      return new Snapshot(diff, diffCount, Math.max(0, sum - older.sum));
+    }
+
+    /**
+     * Append the histogram in the Prometheus text exposition format, with
+     * cumulative buckets for the values below each power of two.
+     *
+     * @param sb the buffer to append to
+     * @param name the metric name
+     * @param labels the labels without braces, e.g. {@code volume="/data1"}
+     */
+    public void writePrometheus(StringBuilder sb, String name,
+        String labels) {
+      String sep = labels.isEmpty() ? "" : ",";
+      long cumulative = 0;
+      int i = 0;
+      for (int shift = 0; shift <= PROMETHEUS_MAX_SHIFT; shift++) {
+        long bound = 1L << shift;
+        // powers of two are bucket boundaries, so this is exact
+        while (i < NUM_BUCKETS && bucketUpperBound(i) <= bound) {
+          cumulative += counts[i++];
+        }
+        long le = bound - 1;
+        sb.append(name).append("_bucket{").append(labels).append(sep)
+            .append("le=\"").append(le).append("\"} ").append(cumulative)
+            .append('\n');
+      }
+      sb.append(name).append("_bucket{").append(labels).append(sep)
+          .append("le=\"+Inf\"} ").append(count).append('\n');
+      sb.append(name).append("_sum{").append(labels).append("} ")
+          .append(sum).append('\n');
+      sb.append(name).append("_count{").append(labels).append("} ")
+          .append(count).append('\n');
+    }
+  }
+}
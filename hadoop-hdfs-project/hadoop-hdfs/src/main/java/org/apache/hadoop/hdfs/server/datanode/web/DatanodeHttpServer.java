@@ -22,10 +22,13 @@
 
 import java.util.Enumeration;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.bootstrap.ChannelFactory;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
@@ -50,6 +53,7 @@
 import org.apache.hadoop.hdfs.server.common.JspHelper;
 import org.apache.hadoop.hdfs.server.datanode.BlockScanner;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeDiskMetrics;
 import org.apache.hadoop.hdfs.server.datanode.web.webhdfs.DataNodeUGIProvider;
 import org.apache.hadoop.http.HttpConfig;
 import org.apache.hadoop.http.HttpServer2;
@@ -84,6 +88,8 @@ public class DatanodeHttpServer implements Closeable {
   private final Configuration conf;
   private final Configuration confForCreate;
   private final RestCsrfPreventionFilter restCsrfPreventionFilter;
+  /** Writes the data of WebHDFS uploads to HDFS; null to write inline. */
+  private final ExecutorService webHdfsWriteExecutor;
   private InetSocketAddress httpAddress;
   private InetSocketAddress httpsAddress;
   static final Log LOG = LogFactory.getLog(DatanodeHttpServer.class);
@@ -121,6 +127,8 @@ public DatanodeHttpServer(final Configuration conf,
     this.infoServer.setAttribute(JspHelper.CURRENT_CONF, conf);
     this.infoServer.addServlet(null, "/blockScannerReport",
                                BlockScanner.Servlet.class);
+    this.infoServer.addServlet(null, "/volumeLatency",
+        DataNodeDiskMetrics.VolumeLatencyServlet.class);
     DataNodeUGIProvider.init(conf);
     this.infoServer.start();
     final InetSocketAddress jettyAddr = infoServer.getConnectorAddress(0);
@@ -128,6 +136,17 @@ public DatanodeHttpServer(final Configuration conf,
     this.confForCreate = new Configuration(conf);
     confForCreate.set(FsPermission.UMASK_LABEL, "000");
 
+    final int writeThreads = conf.getInt(
+        DFSConfigKeys.DFS_WEBHDFS_NETTY_WRITE_THREADS_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_NETTY_WRITE_THREADS_DEFAULT);
+    if (writeThreads > 0) {
+      this.webHdfsWriteExecutor = Executors.newFixedThreadPool(writeThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("WebHdfsWriter-%d").build());
+    } else {
+      this.webHdfsWriteExecutor = null;
+    }
+
     this.bossGroup = new NioEventLoopGroup();
     this.workerGroup = new NioEventLoopGroup();
     this.externalHttpChannel = externalHttpChannel;
@@ -147,7 +166,8 @@ protected void initChannel(SocketChannel ch) throws Exception {
           }
           p.addLast(
               new ChunkedWriteHandler(),
-              new URLDispatcher(jettyAddr, conf, confForCreate));
+              new URLDispatcher(jettyAddr, conf, confForCreate, datanode,
+                  webHdfsWriteExecutor));
         }
       });
 
@@ -204,7 +224,8 @@ protected void initChannel(SocketChannel ch) throws Exception {
             }
             p.addLast(
                 new ChunkedWriteHandler(),
-                new URLDispatcher(jettyAddr, conf, confForCreate));
+                new URLDispatcher(jettyAddr, conf, confForCreate, datanode,
+                  webHdfsWriteExecutor));
           }
         });
     } else {
@@ -265,6 +286,9 @@ public void start() throws IOException {
   public void close() throws IOException {
     bossGroup.shutdownGracefully();
     workerGroup.shutdownGracefully();
+    if (webHdfsWriteExecutor != null) {
+      webHdfsWriteExecutor.shutdown();
+    }
     if (sslFactory != null) {
       sslFactory.destroy();
     }
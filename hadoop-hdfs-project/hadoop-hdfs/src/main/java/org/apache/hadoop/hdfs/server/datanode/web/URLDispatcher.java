@@ -22,9 +22,11 @@
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.HttpRequest;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.web.webhdfs.WebHdfsHandler;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
 
 import static org.apache.hadoop.hdfs.server.datanode.web.webhdfs.WebHdfsHandler.WEBHDFS_PREFIX;
 
@@ -32,12 +34,22 @@ class URLDispatcher extends SimpleChannelInboundHandler<HttpRequest> {
   private final InetSocketAddress proxyHost;
   private final Configuration conf;
   private final Configuration confForCreate;
+  private final DataNode datanode;
+  private final Executor writeExecutor;
 
   URLDispatcher(InetSocketAddress proxyHost, Configuration conf,
                 Configuration confForCreate) {
+    this(proxyHost, conf, confForCreate, null, null);
+  }
+
+  URLDispatcher(InetSocketAddress proxyHost, Configuration conf,
+                Configuration confForCreate, DataNode datanode,
+                Executor writeExecutor) {
     this.proxyHost = proxyHost;
     this.conf = conf;
     this.confForCreate = confForCreate;
+    this.datanode = datanode;
+    this.writeExecutor = writeExecutor;
   }
 
   @Override
@@ -46,7 +58,8 @@ protected void channelRead0(ChannelHandlerContext ctx, HttpRequest req)
     String uri = req.getUri();
     ChannelPipeline p = ctx.pipeline();
     if (uri.startsWith(WEBHDFS_PREFIX)) {
-      WebHdfsHandler h = new WebHdfsHandler(conf, confForCreate);
+      WebHdfsHandler h = new WebHdfsHandler(conf, confForCreate, datanode,
+          writeExecutor);
       p.replace(this, WebHdfsHandler.class.getSimpleName(), h);
       h.channelRead0(ctx, req);
     } else {
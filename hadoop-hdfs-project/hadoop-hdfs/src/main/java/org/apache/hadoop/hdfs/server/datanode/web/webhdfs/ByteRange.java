@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.web.webhdfs;
+
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * A single byte range requested with the HTTP Range header, as defined in
+ * RFC 7233. Requests for multiple ranges are served in full.
+ */
+class ByteRange {
+  private static final String BYTES_UNIT = "bytes=";
+
+  private final long start;
+  private final long end;
+  private final long length;
+
+  private ByteRange(long start, long end, long length) {
+    this.start = start;
+    this.end = end;
+    this.length = length;
+  }
+
+  /**
+   * Parse the value of a Range header.
+   *
+   * @param header the value of the header, or null if there is none
+   * @param length the length of the representation
+   * @return the requested range, or null if the whole representation should
+   *         be sent
+   */
+  static ByteRange parse(String header, long length) {
+    if (header == null) {
+      return null;
+    }
+    header = header.trim();
+    if (!StringUtils.toLowerCase(header).startsWith(BYTES_UNIT)) {
+      return null;
+    }
+    final String spec = header.substring(BYTES_UNIT.length()).trim();
+    final int dash = spec.indexOf('-');
+    if (dash < 0 || spec.indexOf(',') >= 0) {
+      return null;
+    }
+    try {
+      final String first = spec.substring(0, dash).trim();
+      final String last = spec.substring(dash + 1).trim();
+      if (first.isEmpty()) {
+        // The last bytes of the representation.
+        final long suffix = Long.parseLong(last);
+        if (suffix < 0) {
+          return null;
+        }
+        return new ByteRange(Math.max(0, length - suffix), length, length);
+      }
+      final long start = Long.parseLong(first);
+      if (start < 0) {
+        return null;
+      }
+      if (last.isEmpty()) {
+        return new ByteRange(start, Math.max(start, length), length);
+      }
+      final long lastByte = Long.parseLong(last);
+      if (lastByte < start) {
+        return null;
+      }
+      final long end = start >= length ? start :
+          Math.min(length, lastByte + 1);
+      return new ByteRange(start, end, length);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return whether any byte of the range is in the representation
+   */
+  boolean isSatisfiable() {
+    return start < end;
+  }
+
+  /**
+   * @return the offset of the first byte of the range
+   */
+  long getStart() {
+    return start;
+  }
+
+  /**
+   * @return the number of bytes in the range
+   */
+  long getLength() {
+    return end - start;
+  }
+
+  /**
+   * @return the value of the Content-Range header of the response
+   */
+  String toContentRange() {
+    if (!isSatisfiable()) {
+      return "bytes */" + length;
+    }
+    return "bytes " + start + "-" + (end - 1) + "/" + length;
+  }
+}
@@ -29,20 +29,60 @@
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
 import static io.netty.handler.codec.http.HttpHeaders.Values.CLOSE;
 
+/**
+ * Writes the content of a WebHDFS upload to HDFS.
+ *
+ * If a write executor is given, the content is written by the executor, so
+ * that the event loop keeps receiving the next chunks while the previous
+ * ones are written to the pipeline, and a slow pipeline does not hold up
+ * the other connections of the event loop. The handler stops reading from
+ * the connection while more than maxPendingBytes are waiting to be written,
+ * and resumes once half of them have been written. A write task writes at
+ * most MAX_CHUNKS_PER_TASK chunks before it is resubmitted, so that one fast
+ * upload does not keep a writer thread from the other uploads.
+ */
 class HdfsWriter extends SimpleChannelInboundHandler<HttpContent> {
   private final DFSClient client;
   private final OutputStream out;
   private final DefaultHttpResponse response;
+  private final Executor writeExecutor;
+  private final long maxPendingBytes;
   private static final Log LOG = WebHdfsHandler.LOG;
+  /** The most chunks one write task writes before yielding its thread. */
+  static final int MAX_CHUNKS_PER_TASK = 16;
+
+  /** Chunks received but not written yet. */
+  private final Queue<HttpContent> pending =
+      new ConcurrentLinkedQueue<HttpContent>();
+  private final AtomicLong pendingBytes = new AtomicLong();
+  /** Whether a task writing the pending chunks is scheduled or running. */
+  private final AtomicBoolean writing = new AtomicBoolean();
+  /** Set when the connection is closed or writing failed. */
+  private volatile boolean closed;
+  /** Set once the DFS resources were released after closed was set. */
+  private volatile boolean released;
 
   HdfsWriter(DFSClient client, OutputStream out, DefaultHttpResponse response) {
+    this(client, out, response, null, 0);
+  }
+
+  HdfsWriter(DFSClient client, OutputStream out, DefaultHttpResponse response,
+      Executor writeExecutor, long maxPendingBytes) {
     this.client = client;
     this.out = out;
     this.response = response;
+    this.writeExecutor = writeExecutor;
+    this.maxPendingBytes = maxPendingBytes;
   }
 
   @Override
@@ -53,26 +93,134 @@ public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
   @Override
   protected void channelRead0(ChannelHandlerContext ctx, HttpContent chunk)
     throws IOException {
-    chunk.content().readBytes(out, chunk.content().readableBytes());
-    if (chunk instanceof LastHttpContent) {
+    if (writeExecutor == null) {
+      chunk.content().readBytes(out, chunk.content().readableBytes());
+      if (chunk instanceof LastHttpContent) {
+        complete(ctx);
+      }
+      return;
+    }
+    if (closed) {
+      return;
+    }
+    // The chunk is released when the handler returns.
+    chunk.retain();
+    pending.add(chunk);
+    if (pendingBytes.addAndGet(chunk.content().readableBytes())
+        > maxPendingBytes) {
+      ctx.channel().config().setAutoRead(false);
+    }
+    scheduleWrite(ctx);
+  }
+
+  private void scheduleWrite(final ChannelHandlerContext ctx) {
+    if (writing.compareAndSet(false, true)) {
       try {
-        releaseDfsResourcesAndThrow();
-        response.headers().set(CONNECTION, CLOSE);
-        ctx.write(response).addListener(ChannelFutureListener.CLOSE);
-      } catch (Exception cause) {
-        exceptionCaught(ctx, cause);
+        writeExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            writePending(ctx);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // The DataNode is shutting down.
+        if (closed) {
+          if (!released) {
+            releaseDfsResources();
+            released = true;
+          }
+          writing.set(false);
+        } else {
+          writing.set(false);
+          fail(ctx, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write up to MAX_CHUNKS_PER_TASK pending chunks. Only one thread runs
+   * this at a time.
+   */
+  private void writePending(final ChannelHandlerContext ctx) {
+    try {
+      HttpContent chunk;
+      int written = 0;
+      while (written < MAX_CHUNKS_PER_TASK
+          && (chunk = pending.poll()) != null) {
+        try {
+          if (closed) {
+            continue;
+          }
+          written++;
+          final int length = chunk.content().readableBytes();
+          chunk.content().readBytes(out, length);
+          if (pendingBytes.addAndGet(-length) <= maxPendingBytes / 2
+              && !ctx.channel().config().isAutoRead()) {
+            ctx.channel().config().setAutoRead(true);
+          }
+          if (chunk instanceof LastHttpContent) {
+            complete(ctx);
+          }
+        } finally {
+          chunk.release();
+        }
+      }
+      if (closed && !released) {
+        releaseDfsResources();
+        released = true;
       }
+    } catch (Exception e) {
+      fail(ctx, e);
+    } finally {
+      writing.set(false);
+    }
+    // Chunks may be left over, or may have been added, or the handler
+    // closed, after the checks above but before writing was cleared.
+    if (!pending.isEmpty() || (closed && !released)) {
+      scheduleWrite(ctx);
+    }
+  }
+
+  private void complete(ChannelHandlerContext ctx) {
+    try {
+      releaseDfsResourcesAndThrow();
+      response.headers().set(CONNECTION, CLOSE);
+      ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    } catch (Exception cause) {
+      exceptionCaught(ctx, cause);
     }
   }
 
+  private void fail(final ChannelHandlerContext ctx, final Throwable cause) {
+    closed = true;
+    ctx.executor().execute(new Runnable() {
+      @Override
+      public void run() {
+        exceptionCaught(ctx, cause);
+      }
+    });
+  }
+
   @Override
   public void channelInactive(ChannelHandlerContext ctx) {
-    releaseDfsResources();
+    if (writeExecutor == null) {
+      releaseDfsResources();
+      return;
+    }
+    // Release the resources after the chunk being written, if any.
+    closed = true;
+    scheduleWrite(ctx);
   }
 
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-    releaseDfsResources();
+    if (writeExecutor == null) {
+      releaseDfsResources();
+    } else {
+      closed = true;
+      scheduleWrite(ctx);
+    }
     DefaultHttpResponse resp = ExceptionHandler.exceptionCaught(cause);
     resp.headers().set(CONNECTION, CLOSE);
     ctx.writeAndFlush(resp).addListener(ChannelFutureListener.CLOSE);
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.web.webhdfs;
+
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.stream.ChunkedNioFile;
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.io.IOUtils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Creates the messages that send ranges of finalized replicas stored on this
+ * DataNode straight from their block files, without going through a
+ * DFSClient and the DataNode's data transfer protocol.
+ *
+ * Each message holds a reference to the volume of the replica, like a
+ * BlockSender does, until Netty has sent or discarded it.
+ */
+class LocalReplicaRegions {
+  private static final Log LOG = WebHdfsHandler.LOG;
+
+  /** The size of the chunks read from a block file for an SSL connection. */
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  private LocalReplicaRegions() {
+  }
+
+  /**
+   * Create a message that sends a range of a block from the local replica.
+   *
+   * @param datanode the DataNode
+   * @param lb the block
+   * @param offset the offset of the range in the block
+   * @param length the length of the range
+   * @param ssl whether the connection is encrypted, in which case the data
+   *            has to be read into memory
+   * @return a FileRegion, or a ChunkedInput if ssl is true; null if the
+   *         DataNode has no finalized replica of the block with at least
+   *         offset + length bytes
+   */
+  static Object newRegion(DataNode datanode, LocatedBlock lb, long offset,
+      long length, boolean ssl) {
+    if (lb instanceof LocatedStripedBlock) {
+      return null;
+    }
+    final ExtendedBlock b = lb.getBlock();
+    final FsDatasetSpi<?> data = datanode.getFSDataset();
+    FsVolumeReference ref = null;
+    InputStream in = null;
+    try {
+      if (!data.isValidBlock(b)
+          || data.getReplicaVisibleLength(b) < offset + length) {
+        return null;
+      }
+      final FsVolumeSpi volume = data.getVolume(b);
+      if (volume == null) {
+        return null;
+      }
+      ref = volume.obtainReference();
+      in = data.getBlockInputStream(b, offset);
+      if (!(in instanceof FileInputStream)) {
+        return null;
+      }
+      final FileChannel channel = ((FileInputStream) in).getChannel();
+      final Object region = ssl ?
+          new ReplicaChunkedFile(channel, offset, length, ref) :
+          new ReplicaFileRegion(channel, offset, length, ref);
+      ref = null;
+      in = null;
+      return region;
+    } catch (IOException e) {
+      LOG.debug("Cannot read " + b + " from the local replica", e);
+      return null;
+    } finally {
+      IOUtils.cleanup(LOG, in, ref);
+    }
+  }
+
+  private static class ReplicaFileRegion extends DefaultFileRegion {
+    private final FsVolumeReference ref;
+
+    ReplicaFileRegion(FileChannel channel, long position, long count,
+        FsVolumeReference ref) {
+      super(channel, position, count);
+      this.ref = ref;
+    }
+
+    @Override
+    protected void deallocate() {
+      super.deallocate();
+      IOUtils.cleanup(LOG, ref);
+    }
+  }
+
+  private static class ReplicaChunkedFile extends ChunkedNioFile {
+    private final FsVolumeReference ref;
+
+    ReplicaChunkedFile(FileChannel channel, long offset, long length,
+        FsVolumeReference ref) throws IOException {
+      super(channel, offset, length, CHUNK_SIZE);
+      this.ref = ref;
+    }
+
+    @Override
+    public void close() throws Exception {
+      try {
+        super.close();
+      } finally {
+        IOUtils.cleanup(LOG, ref);
+      }
+    }
+  }
+}
@@ -18,7 +18,9 @@
 package org.apache.hadoop.hdfs.server.datanode.web.webhdfs;
 
 import com.google.common.base.Preconditions;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -27,7 +29,9 @@
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.stream.ChunkedStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,9 +41,14 @@
 import org.apache.hadoop.fs.permission.FsCreateModes;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSInputStream;
+import org.apache.hadoop.hdfs.DFSStripedInputStream;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.web.JsonUtil;
 import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
 import org.apache.hadoop.hdfs.web.resources.AclPermissionParam;
@@ -61,16 +70,21 @@
 import java.nio.charset.StandardCharsets;
 import java.security.PrivilegedExceptionAction;
 import java.util.EnumSet;
+import java.util.concurrent.Executor;
 
 import static io.netty.handler.codec.http.HttpHeaders.Names.ACCEPT;
+import static io.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_RANGES;
 import static io.netty.handler.codec.http.HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS;
 import static io.netty.handler.codec.http.HttpHeaders.Names.ACCESS_CONTROL_ALLOW_METHODS;
 import static io.netty.handler.codec.http.HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN;
 import static io.netty.handler.codec.http.HttpHeaders.Names.ACCESS_CONTROL_MAX_AGE;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_RANGE;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
 import static io.netty.handler.codec.http.HttpHeaders.Names.LOCATION;
+import static io.netty.handler.codec.http.HttpHeaders.Names.RANGE;
+import static io.netty.handler.codec.http.HttpHeaders.Values.BYTES;
 import static io.netty.handler.codec.http.HttpHeaders.Values.CLOSE;
 import static io.netty.handler.codec.http.HttpHeaders.Values.KEEP_ALIVE;
 import static io.netty.handler.codec.http.HttpMethod.GET;
@@ -81,6 +95,8 @@
 import static io.netty.handler.codec.http.HttpResponseStatus.CREATED;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.PARTIAL_CONTENT;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 import static org.apache.hadoop.hdfs.protocol.HdfsConstants.HDFS_URI_SCHEME;
 import static org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier.HDFS_DELEGATION_KIND;
@@ -100,6 +116,12 @@ public class WebHdfsHandler extends SimpleChannelInboundHandler<HttpRequest> {
 
   private final Configuration conf;
   private final Configuration confForCreate;
+  /** The DataNode, or null if replicas are never read locally. */
+  private final DataNode datanode;
+  /** Runs the writes of uploads to HDFS, or null to write inline. */
+  private final Executor writeExecutor;
+  private final boolean zeroCopyRead;
+  private final long maxPendingWriteBytes;
 
   private String path;
   private ParameterParser params;
@@ -108,8 +130,21 @@ public class WebHdfsHandler extends SimpleChannelInboundHandler<HttpRequest> {
 
   public WebHdfsHandler(Configuration conf, Configuration confForCreate)
     throws IOException {
+    this(conf, confForCreate, null, null);
+  }
+
+  public WebHdfsHandler(Configuration conf, Configuration confForCreate,
+      DataNode datanode, Executor writeExecutor) throws IOException {
     this.conf = conf;
     this.confForCreate = confForCreate;
+    this.datanode = datanode;
+    this.writeExecutor = writeExecutor;
+    this.zeroCopyRead = datanode != null && conf.getBoolean(
+        DFSConfigKeys.DFS_WEBHDFS_NETTY_ZERO_COPY_READ_ENABLED_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_NETTY_ZERO_COPY_READ_ENABLED_DEFAULT);
+    this.maxPendingWriteBytes = conf.getLong(
+        DFSConfigKeys.DFS_WEBHDFS_NETTY_WRITE_MAX_PENDING_BYTES_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_NETTY_WRITE_MAX_PENDING_BYTES_DEFAULT);
     /** set user pattern based on configuration file */
     UserParam.setUserPattern(
         conf.get(HdfsClientConfigKeys.DFS_WEBHDFS_USER_PATTERN_KEY,
@@ -169,7 +204,7 @@ public void handle(ChannelHandlerContext ctx, HttpRequest req)
       onAppend(ctx);
     } else if (GetOpParam.Op.OPEN.name().equalsIgnoreCase(op)
       && method == GET) {
-      onOpen(ctx);
+      onOpen(ctx, req);
     } else if(GetOpParam.Op.GETFILECHECKSUM.name().equalsIgnoreCase(op)
       && method == GET) {
       onGetFileChecksum(ctx);
@@ -227,7 +262,8 @@ private void onCreate(ChannelHandlerContext ctx)
     resp.headers().set(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
 
     ctx.pipeline().replace(this, HdfsWriter.class.getSimpleName(),
-      new HdfsWriter(dfsClient, out, resp));
+      new HdfsWriter(dfsClient, out, resp, writeExecutor,
+          maxPendingWriteBytes));
   }
 
   private void onAppend(ChannelHandlerContext ctx) throws IOException {
@@ -241,10 +277,12 @@ private void onAppend(ChannelHandlerContext ctx) throws IOException {
     resp = new DefaultHttpResponse(HTTP_1_1, OK);
     resp.headers().set(CONTENT_LENGTH, 0);
     ctx.pipeline().replace(this, HdfsWriter.class.getSimpleName(),
-      new HdfsWriter(dfsClient, out, resp));
+      new HdfsWriter(dfsClient, out, resp, writeExecutor,
+          maxPendingWriteBytes));
   }
 
-  private void onOpen(ChannelHandlerContext ctx) throws IOException {
+  private void onOpen(ChannelHandlerContext ctx, HttpRequest req)
+    throws IOException {
     final String nnId = params.namenodeId();
     final int bufferSize = params.bufferSize();
     final long offset = params.offset();
@@ -259,30 +297,141 @@ private void onOpen(ChannelHandlerContext ctx) throws IOException {
     headers.set(CONNECTION, CLOSE);
 
     final DFSClient dfsclient = newDfsClient(nnId, conf);
-    HdfsDataInputStream in = dfsclient.createWrappedInputStream(
+    final HdfsDataInputStream in = dfsclient.createWrappedInputStream(
       dfsclient.open(path, bufferSize, true));
     in.seek(offset);
 
+    long start = offset;
     long contentLength = in.getVisibleLength() - offset;
     if (length >= 0) {
       contentLength = Math.min(contentLength, length);
     }
-    final InputStream data;
     if (contentLength >= 0) {
+      // The range is relative to the data selected by offset and length.
+      headers.set(ACCEPT_RANGES, BYTES);
+      final ByteRange range =
+          ByteRange.parse(req.headers().get(RANGE), contentLength);
+      if (range != null && !range.isSatisfiable()) {
+        IOUtils.cleanup(LOG, in, dfsclient);
+        resp = new DefaultFullHttpResponse(HTTP_1_1,
+            REQUESTED_RANGE_NOT_SATISFIABLE, Unpooled.EMPTY_BUFFER);
+        resp.headers().set(CONTENT_RANGE, range.toContentRange());
+        resp.headers().set(CONTENT_LENGTH, 0);
+        resp.headers().set(CONNECTION, CLOSE);
+        ctx.writeAndFlush(resp).addListener(ChannelFutureListener.CLOSE);
+        return;
+      }
+      if (range != null) {
+        resp.setStatus(PARTIAL_CONTENT);
+        headers.set(CONTENT_RANGE, range.toContentRange());
+        start += range.getStart();
+        contentLength = range.getLength();
+      }
       headers.set(CONTENT_LENGTH, contentLength);
-      data = new LimitInputStream(in, contentLength);
-    } else {
-      data = in;
     }
 
     ctx.write(resp);
-    ctx.writeAndFlush(new ChunkedStream(data) {
-      @Override
-      public void close() throws Exception {
-        super.close();
-        dfsclient.close();
+    if (contentLength >= 0) {
+      writeRange(ctx, in, start, start + contentLength);
+    } else {
+      ctx.write(new SeekingChunkedStream(in, start, in));
+    }
+    ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListener(
+        new ChannelFutureListener() {
+          @Override
+          public void operationComplete(ChannelFuture future) {
+            IOUtils.cleanup(LOG, in, dfsclient);
+            future.channel().close();
+          }
+        });
+  }
+
+  /**
+   * Write the messages that send the given range of the file. Ranges of
+   * finalized replicas on this DataNode are sent straight from the block
+   * files if zero-copy reads are enabled, and the rest through the
+   * DFSClient.
+   */
+  private void writeRange(ChannelHandlerContext ctx, HdfsDataInputStream in,
+      long start, long end) throws IOException {
+    long streamStart = start;
+    if (zeroCopyRead && start < end
+        && in.getWrappedStream() instanceof DFSInputStream
+        && !(in.getWrappedStream() instanceof DFSStripedInputStream)) {
+      final boolean ssl = ctx.pipeline().get(SslHandler.class) != null;
+      long pos = start;
+      for (LocatedBlock lb : in.getAllBlocks()) {
+        final long blockStart = lb.getStartOffset();
+        final long blockEnd = blockStart + lb.getBlockSize();
+        if (blockEnd <= pos) {
+          continue;
+        }
+        if (blockStart >= end) {
+          break;
+        }
+        final long regionEnd = Math.min(blockEnd, end);
+        final Object region = LocalReplicaRegions.newRegion(datanode, lb,
+            pos - blockStart, regionEnd - pos, ssl);
+        if (region != null) {
+          if (streamStart < pos) {
+            ctx.write(new SeekingChunkedStream(in, streamStart,
+                new LimitInputStream(in, pos - streamStart)));
+          }
+          ctx.write(region);
+          streamStart = regionEnd;
+        }
+        pos = regionEnd;
+      }
+    }
+    if (streamStart < end) {
+      ctx.write(new SeekingChunkedStream(in, streamStart,
+          new LimitInputStream(in, end - streamStart)));
+    }
+  }
+
+  /**
+   * Sends data read from a DFSClient stream, which it seeks to the given
+   * position before reading the first chunk, so that several of these can
+   * read different ranges of the same stream one after another. The
+   * stream is not closed with it.
+   */
+  private static class SeekingChunkedStream extends ChunkedStream {
+    private final HdfsDataInputStream in;
+    private final long position;
+    private boolean seeked;
+
+    SeekingChunkedStream(HdfsDataInputStream in, long position,
+        InputStream data) {
+      super(data);
+      this.in = in;
+      this.position = position;
+    }
+
+    private void seek() throws IOException {
+      if (!seeked) {
+        seeked = true;
+        if (in.getPos() != position) {
+          in.seek(position);
+        }
       }
-    }).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    @Override
+    public boolean isEndOfInput() throws Exception {
+      seek();
+      return super.isEndOfInput();
+    }
+
+    @Override
+    public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+      seek();
+      return super.readChunk(ctx);
+    }
+
+    @Override
+    public void close() {
+      // The stream is closed once the whole response has been written.
+    }
   }
 
   private void onGetFileChecksum(ChannelHandlerContext ctx) throws IOException {
@@ -21,6 +21,7 @@
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.cli.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,12 +58,22 @@
 
 import java.io.BufferedReader;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -71,6 +82,7 @@ public class Mover {
   static final Log LOG = LogFactory.getLog(Mover.class);
 
   static final Path MOVER_ID_PATH = new Path("/system/mover.id");
+  static final Path MOVER_CURSOR_PATH = new Path("/system/mover.cursor");
 
   private static class StorageMap {
     private final StorageGroupMap<Source> sources
@@ -117,6 +129,8 @@ private List<StorageGroup> getTargetStorages(StorageType t) {
   private final int retryMaxAttempts;
   private final AtomicInteger retryCount;
   private final Map<Long, Set<DatanodeInfo>> excludedPinnedBlocks;
+  private final int scanThreads;
+  private final long cursorCheckpointInterval;
 
   private final BlockStoragePolicy[] blockStoragePolicies;
 
@@ -138,6 +152,12 @@ private List<StorageGroup> getTargetStorages(StorageType t) {
         DFSConfigKeys.DFS_MOVER_RETRY_MAX_ATTEMPTS_KEY,
         DFSConfigKeys.DFS_MOVER_RETRY_MAX_ATTEMPTS_DEFAULT);
     this.retryCount = retryCount;
+    this.scanThreads = conf.getInt(
+        DFSConfigKeys.DFS_MOVER_SCAN_THREADS_KEY,
+        DFSConfigKeys.DFS_MOVER_SCAN_THREADS_DEFAULT);
+    this.cursorCheckpointInterval = conf.getLong(
+        DFSConfigKeys.DFS_MOVER_CURSOR_CHECKPOINT_INTERVAL_KEY,
+        DFSConfigKeys.DFS_MOVER_CURSOR_CHECKPOINT_INTERVAL_DEFAULT);
     this.dispatcher = new Dispatcher(nnc, Collections.<String> emptySet(),
         Collections.<String> emptySet(), movedWinWidth, moverThreads, 0,
         maxConcurrentMovesPerNode, maxNoMoveInterval, conf);
@@ -242,9 +262,27 @@ private static String convertSnapshotPath(String[] pathComponents) {
   class Processor {
     private final DFSClient dfs;
     private final List<String> snapshottableDirs = new ArrayList<String>();
+    /** Lists directories in parallel; null to list them in this thread. */
+    private final ExecutorService scanExecutor;
+    /** Bounds the directories queued for the scan executor. */
+    private final Semaphore scanPermits;
+    private final AtomicInteger pendingScans = new AtomicInteger();
+    /** The saved scan progress, by target path. */
+    private final Properties cursor = new Properties();
+    private final List<TargetScan> targetScans = new ArrayList<>();
+    private long lastCheckpoint = Time.monotonicNow();
 
     Processor() {
       dfs = dispatcher.getDistributedFileSystem().getClient();
+      if (scanThreads > 1) {
+        scanExecutor = Executors.newFixedThreadPool(scanThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("Mover-scan-%d").build());
+        scanPermits = new Semaphore(4 * scanThreads);
+      } else {
+        scanExecutor = null;
+        scanPermits = null;
+      }
     }
 
     private void getSnapshottableDirs() {
@@ -288,9 +326,17 @@ private boolean isSnapshotPathInCurrent(String path) throws IOException {
      */
     private Result processNamespace() throws IOException {
       getSnapshottableDirs();
+      loadCursor();
       Result result = new Result();
-      for (Path target : targetPaths) {
-        processPath(target.toUri().getPath(), result);
+      try {
+        for (Path target : targetPaths) {
+          processTarget(target.toUri().getPath(), result);
+        }
+        waitForScans();
+      } finally {
+        if (scanExecutor != null) {
+          scanExecutor.shutdownNow();
+        }
       }
       // wait for pending move to finish and retry the failed migration
       boolean hasFailed = Dispatcher.waitForMoveCompletion(storages.targets
@@ -313,14 +359,180 @@ private Result processNamespace() throws IOException {
         retryCount.set(0);
       }
       result.updateHasRemaining(hasFailed);
+      // The round is complete, the next one scans all the paths again.
+      deleteCursor();
       return result;
     }
 
+    /**
+     * Scan a target path, resuming after the last child saved in the cursor.
+     * The children of the target are the units of the cursor: it advances
+     * past a child once the child and all the children before it have been
+     * scanned with their subtrees.
+     */
+    private void processTarget(String fullPath, Result result)
+        throws IOException {
+      final TargetScan scan = new TargetScan(fullPath);
+      byte[] lastReturnedName = HdfsFileStatus.EMPTY_NAME;
+      final String saved = cursor.getProperty(fullPath);
+      if (saved != null) {
+        LOG.info("Resuming the scan of " + fullPath + " after " + saved);
+        lastReturnedName = DFSUtil.string2Bytes(saved);
+        scan.lastDone = lastReturnedName;
+        // The skipped children may still have moves to check.
+        result.updateHasRemaining(true);
+      }
+      synchronized (targetScans) {
+        targetScans.add(scan);
+      }
+      for (;;) {
+        final DirectoryListing children;
+        try {
+          children = dfs.listPaths(fullPath, lastReturnedName, true);
+        } catch(IOException e) {
+          LOG.warn("Failed to list directory " + fullPath
+              + ". Ignore the directory and continue.", e);
+          break;
+        }
+        if (children == null) {
+          break;
+        }
+        for (HdfsFileStatus child : children.getPartialListing()) {
+          final ScanUnit unit = scan.newUnit(child.getLocalNameInBytes());
+          processRecursively(fullPath, child, unit, result);
+          unit.end();
+          maybeCheckpoint();
+        }
+        if (children.hasMore()) {
+          lastReturnedName = children.getLastName();
+        } else {
+          break;
+        }
+      }
+    }
+
+    /**
+     * Scan a directory in a scan thread if one is available, or in this
+     * thread otherwise.
+     */
+    private void scanDirectory(final String fullPath, final ScanUnit unit,
+        final Result result) {
+      if (scanExecutor == null || !scanPermits.tryAcquire()) {
+        processPath(fullPath, unit, result);
+        return;
+      }
+      unit.begin();
+      pendingScans.incrementAndGet();
+      try {
+        scanExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              processPath(fullPath, unit, result);
+            } catch (RuntimeException e) {
+              LOG.warn("Failed to scan directory " + fullPath
+                  + ". Ignore the directory and continue.", e);
+              // The moves of the rest of the directory are left to the
+              // next round.
+              result.updateHasRemaining(true);
+            } finally {
+              scanPermits.release();
+              unit.end();
+              scanDone();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        scanPermits.release();
+        unit.end();
+        scanDone();
+        processPath(fullPath, unit, result);
+      }
+    }
+
+    private void scanDone() {
+      if (pendingScans.decrementAndGet() == 0) {
+        synchronized (pendingScans) {
+          pendingScans.notifyAll();
+        }
+      }
+    }
+
+    /** Wait for the directories being scanned by the scan threads. */
+    private void waitForScans() throws IOException {
+      while (pendingScans.get() > 0) {
+        synchronized (pendingScans) {
+          try {
+            if (pendingScans.get() > 0) {
+              pendingScans.wait(1000);
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "Interrupted while scanning the namespace");
+          }
+        }
+        maybeCheckpoint();
+      }
+    }
+
+    private void loadCursor() {
+      if (cursorCheckpointInterval <= 0) {
+        return;
+      }
+      try (InputStream in = dispatcher.getDistributedFileSystem().open(
+          MOVER_CURSOR_PATH)) {
+        cursor.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+      } catch (FileNotFoundException e) {
+        // Nothing to resume.
+      } catch (IOException e) {
+        LOG.warn("Failed to read the cursor " + MOVER_CURSOR_PATH
+            + ". Scan all the paths.", e);
+        cursor.clear();
+      }
+    }
+
+    /** Save the scan progress if the checkpoint interval has elapsed. */
+    private void maybeCheckpoint() {
+      if (cursorCheckpointInterval <= 0
+          || Time.monotonicNow() - lastCheckpoint < cursorCheckpointInterval) {
+        return;
+      }
+      lastCheckpoint = Time.monotonicNow();
+      final Properties progress = new Properties();
+      synchronized (targetScans) {
+        for (TargetScan scan : targetScans) {
+          final byte[] lastDone = scan.getLastDone();
+          if (lastDone.length > 0) {
+            progress.setProperty(scan.path, DFSUtil.bytes2String(lastDone));
+          }
+        }
+      }
+      try (OutputStream out = dispatcher.getDistributedFileSystem().create(
+          MOVER_CURSOR_PATH, true)) {
+        progress.store(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+            null);
+      } catch (IOException e) {
+        LOG.warn("Failed to save the cursor " + MOVER_CURSOR_PATH, e);
+      }
+    }
+
+    private void deleteCursor() {
+      if (cursorCheckpointInterval <= 0) {
+        return;
+      }
+      try {
+        dispatcher.getDistributedFileSystem().delete(MOVER_CURSOR_PATH, false);
+      } catch (IOException e) {
+        LOG.warn("Failed to delete the cursor " + MOVER_CURSOR_PATH, e);
+      }
+    }
+
     /**
      * @return whether there is still remaing migration work for the next
      *         round
      */
-    private void processPath(String fullPath, Result result) {
+    private void processPath(String fullPath, ScanUnit unit, Result result) {
       for (byte[] lastReturnedName = HdfsFileStatus.EMPTY_NAME;;) {
         final DirectoryListing children;
         try {
@@ -334,7 +546,7 @@ private void processPath(String fullPath, Result result) {
           return;
         }
         for (HdfsFileStatus child : children.getPartialListing()) {
-          processRecursively(fullPath, child, result);
+          processRecursively(fullPath, child, unit, result);
         }
         if (children.hasMore()) {
           lastReturnedName = children.getLastName();
@@ -346,18 +558,18 @@ private void processPath(String fullPath, Result result) {
 
     /** @return whether the migration requires next round */
     private void processRecursively(String parent, HdfsFileStatus status,
-        Result result) {
+        ScanUnit unit, Result result) {
       String fullPath = status.getFullName(parent);
       if (status.isDirectory()) {
         if (!fullPath.endsWith(Path.SEPARATOR)) {
           fullPath = fullPath + Path.SEPARATOR;
         }
 
-        processPath(fullPath, result);
+        scanDirectory(fullPath, unit, result);
         // process snapshots if this is a snapshottable directory
         if (snapshottableDirs.contains(fullPath)) {
           final String dirSnapshot = fullPath + HdfsConstants.DOT_SNAPSHOT_DIR;
-          processPath(dirSnapshot, result);
+          scanDirectory(dirSnapshot, unit, result);
         }
       } else if (!status.isSymlink()) { // file
         try {
@@ -398,37 +610,41 @@ private void processFile(String fullPath, HdfsLocatedFileStatus status,
       final LocatedBlocks locatedBlocks = status.getBlockLocations();
       final boolean lastBlkComplete = locatedBlocks.isLastBlockComplete();
       List<LocatedBlock> lbs = locatedBlocks.getLocatedBlocks();
-      for (int i = 0; i < lbs.size(); i++) {
-        if (i == lbs.size() - 1 && !lastBlkComplete) {
-          // last block is incomplete, skip it
-          continue;
-        }
-        LocatedBlock lb = lbs.get(i);
-        if (lb.isStriped()) {
-          if (ErasureCodingPolicyManager
-              .checkStoragePolicySuitableForECStripedMode(policyId)) {
-            types = policy.chooseStorageTypes((short) lb.getLocations().length);
-          } else {
-            // Currently we support only limited policies (HOT, COLD, ALLSSD)
-            // for EC striped mode files.
-            // Mover tool will ignore to move the blocks if the storage policy
-            // is not in EC Striped mode supported policies
-            LOG.warn("The storage policy " + policy.getName()
-                + " is not suitable for Striped EC files. "
-                + "So, Ignoring to move the blocks");
-            return;
+      // The files may be scanned in parallel, but their moves are scheduled
+      // one at a time.
+      synchronized (this) {
+        for (int i = 0; i < lbs.size(); i++) {
+          if (i == lbs.size() - 1 && !lastBlkComplete) {
+            // last block is incomplete, skip it
+            continue;
           }
-        }
-        final StorageTypeDiff diff = new StorageTypeDiff(types,
-            lb.getStorageTypes());
-        if (!diff.removeOverlap(true)) {
-          if (scheduleMoves4Block(diff, lb, ecPolicy)) {
-            result.updateHasRemaining(diff.existing.size() > 1
-                && diff.expected.size() > 1);
-            // One block scheduled successfully, set noBlockMoved to false
-            result.setNoBlockMoved(false);
-          } else {
-            result.updateHasRemaining(true);
+          LocatedBlock lb = lbs.get(i);
+          if (lb.isStriped()) {
+            if (ErasureCodingPolicyManager
+                .checkStoragePolicySuitableForECStripedMode(policyId)) {
+              types = policy.chooseStorageTypes((short) lb.getLocations().length);
+            } else {
+              // Currently we support only limited policies (HOT, COLD, ALLSSD)
+              // for EC striped mode files.
+              // Mover tool will ignore to move the blocks if the storage policy
+              // is not in EC Striped mode supported policies
+              LOG.warn("The storage policy " + policy.getName()
+                  + " is not suitable for Striped EC files. "
+                  + "So, Ignoring to move the blocks");
+              return;
+            }
+          }
+          final StorageTypeDiff diff = new StorageTypeDiff(types,
+              lb.getStorageTypes());
+          if (!diff.removeOverlap(true)) {
+            if (scheduleMoves4Block(diff, lb, ecPolicy)) {
+              result.updateHasRemaining(diff.existing.size() > 1
+                  && diff.expected.size() > 1);
+              // One block scheduled successfully, set noBlockMoved to false
+              result.setNoBlockMoved(false);
+            } else {
+              result.updateHasRemaining(true);
+            }
           }
         }
       }
@@ -539,6 +755,64 @@ boolean chooseTarget(DBlock db, Source source,
     }
   }
 
+  /**
+   * The scan progress of a target path: the children of the path are
+   * scanned in listing order, possibly in parallel, and the progress is the
+   * last child such that it and all the children before it are done.
+   */
+  private static class TargetScan {
+    private final String path;
+    private final LinkedList<ScanUnit> units = new LinkedList<ScanUnit>();
+    private byte[] lastDone = HdfsFileStatus.EMPTY_NAME;
+
+    TargetScan(String path) {
+      this.path = path;
+    }
+
+    synchronized ScanUnit newUnit(byte[] name) {
+      final ScanUnit unit = new ScanUnit(this, name);
+      units.add(unit);
+      return unit;
+    }
+
+    synchronized void done(ScanUnit unit) {
+      unit.done = true;
+      while (!units.isEmpty() && units.getFirst().done) {
+        lastDone = units.removeFirst().name;
+      }
+    }
+
+    synchronized byte[] getLastDone() {
+      return lastDone;
+    }
+  }
+
+  /**
+   * A child of a target path. It is done once the scans of all the
+   * directories of its subtree have ended.
+   */
+  private static class ScanUnit {
+    private final TargetScan scan;
+    private final byte[] name;
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private boolean done = false;
+
+    ScanUnit(TargetScan scan, byte[] name) {
+      this.scan = scan;
+      this.name = name;
+    }
+
+    void begin() {
+      pending.incrementAndGet();
+    }
+
+    void end() {
+      if (pending.decrementAndGet() == 0) {
+        scan.done(this);
+      }
+    }
+  }
+
   static class MLocation {
     final DatanodeInfo datanode;
     final StorageType storageType;
@@ -814,6 +1088,7 @@ public int run(String[] args) throws Exception {
     }
   }
 
+  /** The outcome of a round, updated by the scan threads. */
   private static class Result {
 
     private boolean hasRemaining;
@@ -826,23 +1101,23 @@ private static class Result {
       retryFailed = false;
     }
 
-    boolean isHasRemaining() {
+    synchronized boolean isHasRemaining() {
       return hasRemaining;
     }
 
-    boolean isNoBlockMoved() {
+    synchronized boolean isNoBlockMoved() {
       return noBlockMoved;
     }
 
-    void updateHasRemaining(boolean hasRemaining) {
+    synchronized void updateHasRemaining(boolean hasRemaining) {
       this.hasRemaining |= hasRemaining;
     }
 
-    void setNoBlockMoved(boolean noBlockMoved) {
+    synchronized void setNoBlockMoved(boolean noBlockMoved) {
       this.noBlockMoved = noBlockMoved;
     }
 
-    void setRetryFailed() {
+    synchronized void setRetryFailed() {
       this.retryFailed = true;
     }
 
@@ -853,7 +1128,7 @@ void setRetryFailed() {
      *         cannot be scheduled. Otherwise, return IN_PROGRESS since there
      *         must be some remaining moves.
      */
-    ExitStatus getExitStatus() {
+    synchronized ExitStatus getExitStatus() {
       if (retryFailed) {
         return ExitStatus.NO_MOVE_PROGRESS;
       } else {
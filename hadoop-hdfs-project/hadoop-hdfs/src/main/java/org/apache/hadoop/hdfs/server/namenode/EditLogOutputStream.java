@@ -115,6 +115,74 @@ public void flush(boolean durable) throws IOException {
     totalTimeSync += (end - start);
   }
 
+  /**
+   * A flush started by {@link #startFlush()}.
+   */
+  public interface PendingFlush {
+    /**
+     * Wait until the flushed data is durable.
+     * @throws IOException
+     */
+    void await() throws IOException;
+  }
+
+  /** A flush whose data is already durable. */
+  protected static final PendingFlush FLUSHED = new PendingFlush() {
+    @Override
+    public void await() {
+    }
+  };
+
+  /**
+   * Start flushing all data that is ready to be flushed
+   * {@link #setReadyToFlush()}. Up to {@link #getMaxPendingFlushes()}
+   * flushes may be pending at a time: a flush can be started before the data
+   * of the previous one is durable. Once the data of a flush is durable, the
+   * data of the flushes started before it is durable too.
+   * Collect sync metrics.
+   *
+   * @return the pending flush
+   * @throws IOException
+   */
+  public PendingFlush startFlush() throws IOException {
+    final long start = monotonicNow();
+    final PendingFlush pending = startFlushAndSync();
+    return new PendingFlush() {
+      @Override
+      public void await() throws IOException {
+        try {
+          pending.await();
+        } finally {
+          addSync(monotonicNow() - start);
+        }
+      }
+    };
+  }
+
+  private synchronized void addSync(long time) {
+    numSync++;
+    totalTimeSync += time;
+  }
+
+  /**
+   * Start flushing all data that is ready to be flushed into the underlying
+   * persistent store. By default, the data is flushed and synced before
+   * returning.
+   * @throws IOException
+   */
+  protected PendingFlush startFlushAndSync() throws IOException {
+    flushAndSync(true);
+    return FLUSHED;
+  }
+
+  /**
+   * @return the number of flushes started by {@link #startFlush()} that may
+   * be pending at a time
+   */
+  public int getMaxPendingFlushes() {
+    return 1;
+  }
+
   /**
    * Implement the policy when to automatically sync the buffered edits log
    * The buffered edits can be flushed when the buffer becomes full or
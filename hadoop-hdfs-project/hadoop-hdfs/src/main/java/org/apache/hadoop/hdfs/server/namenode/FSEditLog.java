@@ -172,6 +172,11 @@ private enum State {
   // is a sync currently running?
   private volatile boolean isSyncRunning;
 
+  // the number of syncs sent to the journals but not yet acknowledged, and
+  // the last txid sent. Only used when the stream supports pipelined flushes.
+  private int pendingSyncs = 0;
+  private long pendingTxId = 0;
+
   // is an automatic sync scheduled?
   private volatile boolean isAutoSyncScheduled = false;
   
@@ -634,6 +639,12 @@ void logSyncAll() {
    * Because this step is unsynchronized, actions that need to avoid
    * concurrency with sync() should be synchronized and also call
    * waitForSyncToFinish() before assuming they are running alone.
+   *
+   * If the stream allows more than one pending flush (see
+   * {@link EditLogOutputStream#getMaxPendingFlushes()}), step 2 is split: the
+   * flush is started and the isSyncRunning flag is reset as soon as the data
+   * has been sent, so that the next sync can send its batch while this one
+   * waits for the journals to acknowledge it.
    */
   public void logSync() {
     // Fetch the transactionId of this thread.
@@ -643,6 +654,7 @@ public void logSync() {
   protected void logSync(long mytxid) {
     long syncStart = 0;
     boolean sync = false;
+    boolean sent = false;
     long editsBatchedInSync = 0;
     try {
       EditLogOutputStream logStream = null;
@@ -650,8 +662,13 @@ protected void logSync(long mytxid) {
         try {
           printStatistics(false);
 
-          // if somebody is already syncing, then wait
-          while (mytxid > synctxid && isSyncRunning) {
+          // if somebody is already syncing, or is waiting for a sync that
+          // includes this transaction, or too many syncs are pending, then
+          // wait
+          final int maxPending = editLogStream == null ? 1
+              : editLogStream.getMaxPendingFlushes();
+          while (mytxid > synctxid && (isSyncRunning || (pendingSyncs > 0
+              && (mytxid <= pendingTxId || pendingSyncs >= maxPending)))) {
             try {
               wait(1000);
             } catch (InterruptedException ie) {
@@ -702,7 +719,19 @@ protected void logSync(long mytxid) {
       // do the sync
       long start = monotonicNow();
       try {
-        if (logStream != null) {
+        if (logStream != null && logStream.getMaxPendingFlushes() > 1) {
+          final EditLogOutputStream.PendingFlush pending =
+              logStream.startFlush();
+          synchronized (this) {
+            // the buffer has been sent, let the next sync go ahead
+            isSyncRunning = false;
+            pendingSyncs++;
+            pendingTxId = syncStart;
+            sent = true;
+            this.notifyAll();
+          }
+          pending.await();
+        } else if (logStream != null) {
           logStream.flush();
         }
       } catch (IOException ex) {
@@ -729,7 +758,8 @@ protected void logSync(long mytxid) {
       // Prevent RuntimeException from blocking other log edit sync 
       synchronized (this) {
         if (sync) {
-          synctxid = syncStart;
+          // a pipelined sync may be acknowledged after a later one
+          synctxid = Math.max(synctxid, syncStart);
           for (JournalManager jm : journalSet.getJournalManagers()) {
             /**
              * {@link FileJournalManager#lastReadableTxId} is only meaningful
@@ -737,10 +767,14 @@ protected void logSync(long mytxid) {
              * other types of {@link JournalManager}.
              */
             if (jm instanceof FileJournalManager) {
-              ((FileJournalManager)jm).setLastReadableTxId(syncStart);
+              ((FileJournalManager)jm).setLastReadableTxId(synctxid);
             }
           }
-          isSyncRunning = false;
+          if (sent) {
+            pendingSyncs--;
+          } else {
+            isSyncRunning = false;
+          }
         }
         this.notifyAll();
      }
@@ -1449,7 +1483,7 @@ public synchronized void purgeLogsOlderThan(final long minTxIdToKeep) {
    * with file operations should wait for any running sync to finish.
    */
   synchronized void waitForSyncToFinish() {
-    while (isSyncRunning) {
+    while (isSyncRunning || pendingSyncs > 0) {
       try {
         wait(1000);
       } catch (InterruptedException ie) {}
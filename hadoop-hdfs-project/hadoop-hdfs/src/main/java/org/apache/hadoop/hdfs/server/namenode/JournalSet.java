@@ -24,8 +24,10 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.SortedSet;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -527,6 +529,44 @@ public void apply(JournalAndStream jas) throws IOException {
         }
       }, "flush");
     }
+
+    @Override
+    public PendingFlush startFlush() throws IOException {
+      final Map<JournalAndStream, PendingFlush> pendings = new HashMap<>();
+      mapJournalsAndReportErrors(new JournalClosure() {
+        @Override
+        public void apply(JournalAndStream jas) throws IOException {
+          if (jas.isActive()) {
+            pendings.put(jas, jas.getCurrentStream().startFlush());
+          }
+        }
+      }, "startFlush");
+      return new PendingFlush() {
+        @Override
+        public void await() throws IOException {
+          mapJournalsAndReportErrors(new JournalClosure() {
+            @Override
+            public void apply(JournalAndStream jas) throws IOException {
+              final PendingFlush pending = pendings.get(jas);
+              if (pending != null && jas.isActive()) {
+                pending.await();
+              }
+            }
+          }, "flush");
+        }
+      };
+    }
+
+    @Override
+    public int getMaxPendingFlushes() {
+      int max = 1;
+      for (JournalAndStream jas : journals) {
+        if (jas.isActive()) {
+          max = Math.max(max, jas.getCurrentStream().getMaxPendingFlushes());
+        }
+      }
+      return max;
+    }
     
     @Override
     public boolean shouldForceSync() {
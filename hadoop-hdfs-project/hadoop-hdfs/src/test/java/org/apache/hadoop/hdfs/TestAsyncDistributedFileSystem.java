@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Options.Rename;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the calls of the {@link AsyncDistributedFileSystem}.
+ */
+public class TestAsyncDistributedFileSystem {
+  private static final int MAX_IN_FLIGHT = 4;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private AsyncDistributedFileSystem afs;
+
+  @Before
+  public void setup() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, 3);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+    conf.setInt(HdfsClientConfigKeys.AsyncCalls.MAX_IN_FLIGHT_KEY,
+        MAX_IN_FLIGHT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    afs = fs.getAsyncDistributedFileSystem();
+  }
+
+  @After
+  public void shutdown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testOperations() throws Exception {
+    final Path dir = new Path("/testOperations");
+    final Path file = new Path(dir, "file");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+
+    final FileStatus status = afs.getFileStatus(file).get();
+    assertEquals(fs.getFileStatus(file), status);
+    assertEquals(1024, status.getLen());
+
+    final FsPermission permission = new FsPermission((short) 0600);
+    afs.setPermission(file, permission).get();
+    afs.setOwner(file, "user", "group").get();
+    afs.setTimes(file, 1000L, 2000L).get();
+    final FileStatus changed = fs.getFileStatus(file);
+    assertEquals(permission, changed.getPermission());
+    assertEquals("user", changed.getOwner());
+    assertEquals("group", changed.getGroup());
+    assertEquals(1000L, changed.getModificationTime());
+    assertEquals(2000L, changed.getAccessTime());
+    assertEquals(fs.getAclStatus(file), afs.getAclStatus(file).get());
+
+    final Path renamed = new Path(dir, "renamed");
+    afs.rename(file, renamed, Rename.NONE).get();
+    assertFalse(fs.exists(file));
+    assertTrue(fs.exists(renamed));
+
+    fs.delete(dir, true);
+    try {
+      afs.getFileStatus(dir).get();
+      fail("getFileStatus of a deleted directory succeeded");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+    try {
+      afs.rename(dir, renamed, Rename.NONE).get();
+      fail("rename of a deleted directory succeeded");
+    } catch (ExecutionException e) {
+      // The RemoteException is unwrapped.
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+  }
+
+  /**
+   * The async calls invalidate the metadata cached by the client for the
+   * paths they modify, like the calls of the DistributedFileSystem.
+   */
+  @Test(timeout = 60000)
+  public void testRenameWithMetadataCache() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(HdfsClientConfigKeys.MetadataCache.ENABLED_KEY, true);
+    conf.setLong(HdfsClientConfigKeys.MetadataCache.TTL_MS_KEY, 3600000);
+    try (DistributedFileSystem cachedFs = (DistributedFileSystem)
+        FileSystem.newInstance(cluster.getURI(), conf)) {
+      final AsyncDistributedFileSystem cachedAfs =
+          cachedFs.getAsyncDistributedFileSystem();
+      final DFSMetadataCache cache = cachedFs.getClient().getMetadataCache();
+      final Path dir = new Path("/testRenameWithMetadataCache");
+      final Path file = new Path(dir, "file");
+      final Path renamed = new Path(dir, "renamed");
+      DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+
+      // Cache the statuses of the file and of the listing.
+      assertTrue(cachedFs.exists(file));
+      assertFalse(cachedFs.exists(renamed));
+      assertEquals(1, cachedFs.listStatus(dir).length);
+      final long hits = cache.getHits();
+      assertTrue(cachedFs.exists(file));
+      assertEquals(hits + 1, cache.getHits());
+
+      final long invalidations = cache.getInvalidations();
+      cachedAfs.rename(file, renamed, Rename.NONE).get();
+      assertTrue(cache.getInvalidations() > invalidations);
+      assertFalse(cachedFs.exists(file));
+      assertTrue(cachedFs.exists(renamed));
+      assertEquals(renamed.getName(),
+          cachedFs.listStatus(dir)[0].getPath().getName());
+
+      final FsPermission permission = new FsPermission((short) 0600);
+      cachedAfs.setPermission(renamed, permission).get();
+      assertEquals(permission, cachedFs.getFileStatus(renamed).getPermission());
+      cachedAfs.setTimes(renamed, 1000L, 2000L).get();
+      assertEquals(1000L,
+          cachedFs.getFileStatus(renamed).getModificationTime());
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testListStatus() throws Exception {
+    final Path dir = new Path("/testListStatus");
+    fs.mkdirs(dir);
+    // Several pages with dfs.ls.limit = 3.
+    for (int i = 0; i < 10; i++) {
+      fs.mkdirs(new Path(dir, "d" + i));
+    }
+    final FileStatus[] statuses = afs.listStatus(dir).get();
+    assertEquals(10, statuses.length);
+    for (int i = 0; i < statuses.length; i++) {
+      assertEquals(fs.getFileStatus(new Path(dir, "d" + i)), statuses[i]);
+    }
+    try {
+      afs.listStatus(new Path("/nonexistent")).get();
+      fail("listStatus of a nonexistent directory succeeded");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testInFlightLimit() throws Exception {
+    final Path dir = new Path("/testInFlightLimit");
+    final int numCalls = 50;
+    for (int i = 0; i < numCalls; i++) {
+      fs.mkdirs(new Path(dir, "d" + i));
+    }
+    final FsPermission permission = new FsPermission((short) 0700);
+    final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < numCalls; i++) {
+      final Path p = new Path(dir, "d" + i);
+      // The getFileStatus calls block this thread at the limit, while the
+      // setPermission calls are made by the completer thread and have to be
+      // queued.
+      futures.add(afs.getFileStatus(p)
+          .thenCompose(status -> afs.setPermission(p, permission)));
+    }
+    for (CompletableFuture<Void> future : futures) {
+      future.get();
+    }
+    for (FileStatus status : fs.listStatus(dir)) {
+      assertEquals(permission, status.getPermission());
+    }
+
+    final DFSAsyncCallMetrics metrics = afs.getMetrics();
+    assertEquals(2 * numCalls, metrics.getAsyncCalls());
+    assertEquals(0, metrics.getAsyncCallsFailed());
+    assertEquals(0, metrics.getAsyncCallsInFlight());
+    assertTrue(metrics.getAsyncCallsThrottled() > 0);
+    assertTrue(metrics.getAsyncCallMaxLatencyMicros() > 0);
+    assertTrue(metrics.getAsyncCallAvgLatencyMicros()
+        <= metrics.getAsyncCallMaxLatencyMicros());
+    assertEquals(0, afs.getNumPendingCalls());
+  }
+}
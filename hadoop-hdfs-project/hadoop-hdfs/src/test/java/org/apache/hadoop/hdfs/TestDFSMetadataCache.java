@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the {@link DFSMetadataCache} of the client.
+ */
+public class TestDFSMetadataCache {
+  private static final FsPermission PERMISSION = new FsPermission((short) 0700);
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  /** A client without metadata cache. */
+  private DistributedFileSystem other;
+
+  private void startCluster(Configuration conf) throws IOException {
+    conf.setBoolean(HdfsClientConfigKeys.MetadataCache.ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    other = (DistributedFileSystem) FileSystem.newInstance(cluster.getURI(),
+        new HdfsConfiguration());
+  }
+
+  @After
+  public void shutdown() throws IOException {
+    if (other != null) {
+      other.close();
+      other = null;
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testLocalModifications() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(HdfsClientConfigKeys.MetadataCache.TTL_MS_KEY, 3600000);
+    startCluster(conf);
+    final DFSMetadataCache cache = fs.getClient().getMetadataCache();
+    final Path dir = new Path("/testLocalModifications");
+    final Path file = new Path(dir, "file");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+
+    final FileStatus status = fs.getFileStatus(file);
+    final long hits = cache.getHits();
+    assertEquals(status, fs.getFileStatus(file));
+    assertEquals(hits + 1, cache.getHits());
+
+    fs.setPermission(file, PERMISSION);
+    assertEquals(PERMISSION, fs.getFileStatus(file).getPermission());
+    assertEquals(PERMISSION, fs.listStatus(dir)[0].getPermission());
+
+    // The listing is cached and invalidated by the creation of a file.
+    assertEquals(1, fs.listStatus(dir).length);
+    DFSTestUtil.createFile(fs, new Path(dir, "file2"), 1024, (short) 1, 0L);
+    assertEquals(2, fs.listStatus(dir).length);
+
+    // The statuses under a renamed directory are invalidated.
+    final Path renamed = new Path("/renamed");
+    fs.rename(dir, renamed);
+    assertFalse(fs.exists(file));
+    assertTrue(fs.exists(new Path(renamed, "file")));
+    assertTrue(cache.getInvalidations() > 0);
+  }
+
+  @Test(timeout = 60000)
+  public void testTtl() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(HdfsClientConfigKeys.MetadataCache.TTL_MS_KEY, 500);
+    startCluster(conf);
+    final DFSMetadataCache cache = fs.getClient().getMetadataCache();
+    final Path file = new Path("/testTtl");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+    final FsPermission permission = fs.getFileStatus(file).getPermission();
+
+    // The modifications of other clients are seen after the TTL.
+    other.setPermission(file, PERMISSION);
+    assertEquals(permission, fs.getFileStatus(file).getPermission());
+    Thread.sleep(1000);
+    assertEquals(PERMISSION, fs.getFileStatus(file).getPermission());
+    assertTrue(cache.getMaxHitAgeMs() < 1000);
+    assertTrue(cache.getAvgHitAgeMs() <= cache.getMaxHitAgeMs());
+  }
+
+  @Test(timeout = 60000)
+  public void testPaths() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.set(HdfsClientConfigKeys.MetadataCache.PATHS_KEY, "/cached");
+    startCluster(conf);
+    final DFSMetadataCache cache = fs.getClient().getMetadataCache();
+    assertTrue(cache.isCached("/cached"));
+    assertTrue(cache.isCached("/cached/file"));
+    assertFalse(cache.isCached("/cachedfile"));
+    assertFalse(cache.isCached("/"));
+
+    final Path file = new Path("/notcached");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+    fs.getFileStatus(file);
+    other.setPermission(file, PERMISSION);
+    assertEquals(PERMISSION, fs.getFileStatus(file).getPermission());
+    assertEquals(0, cache.getHits());
+    assertEquals(0, cache.getMisses());
+  }
+
+  @Test(timeout = 60000)
+  public void testInotifyInvalidation() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(HdfsClientConfigKeys.MetadataCache.TTL_MS_KEY, 3600000);
+    conf.setBoolean(HdfsClientConfigKeys.MetadataCache.INOTIFY_ENABLED_KEY,
+        true);
+    startCluster(conf);
+    final DFSMetadataCache cache = fs.getClient().getMetadataCache();
+    final Path file = new Path("/testInotifyInvalidation");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+    assertFalse(PERMISSION.equals(fs.getFileStatus(file).getPermission()));
+
+    other.setPermission(file, PERMISSION);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return PERMISSION.equals(fs.getFileStatus(file).getPermission());
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 30000);
+    assertTrue(cache.getInotifyEvents() > 0);
+    assertTrue(cache.isInotifyListenerAlive());
+
+    fs.close();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return !cache.isInotifyListenerAlive();
+      }
+    }, 100, 10000);
+  }
+}
@@ -40,6 +40,7 @@
 import org.apache.hadoop.fs.StreamCapabilities.StreamCapability;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DataStreamer.LastExceptionInStreamer;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -52,6 +53,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeManager;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.util.ByteArrayManager;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.PathUtils;
@@ -371,6 +373,59 @@ public void testStreamFlush() throws Exception {
     os.close();
   }
 
+  @Test
+  public void testPacketBufferReuse() throws Exception {
+    Configuration conf = new Configuration(cluster.getConfiguration(0));
+    conf.setInt(HdfsClientConfigKeys.Write.PACKET_POOL_SIZE_KEY, 8);
+    DistributedFileSystem fs = (DistributedFileSystem) FileSystem.newInstance(
+        cluster.getURI(), conf);
+    try {
+      Path path = new Path("/testPacketBufferReuse");
+      FSDataOutputStream os = fs.create(path);
+      DFSOutputStream dos = (DFSOutputStream) os.getWrappedStream();
+      byte[] bytes = new byte[DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT * 2];
+      new Random().nextBytes(bytes);
+      final int rounds = 10;
+      for (int i = 0; i < rounds; i++) {
+        os.write(bytes);
+        // Wait for the packets to be acknowledged, so that their buffers are
+        // back in the pool before the next packets are created.
+        os.hflush();
+      }
+      final long allocated = dos.getPacketBuffersAllocated();
+      final long reused = dos.getPacketBuffersReused();
+      os.close();
+      // The first round allocates the buffers, later rounds reuse them.
+      assertTrue("allocated=" + allocated, allocated > 0 && allocated <= 8);
+      assertTrue("reused=" + reused, reused >= 2 * (rounds - 1));
+      assertEquals(bytes.length * rounds, fs.getFileStatus(path).getLen());
+    } finally {
+      fs.close();
+    }
+  }
+
+  @Test
+  public void testPacketBufferPoolReleaseAll() throws Exception {
+    ByteArrayManager manager = mock(ByteArrayManager.class);
+    when(manager.newByteArray(Mockito.anyInt())).thenAnswer(
+        invocation -> new byte[(Integer) invocation.getArguments()[0]]);
+    DFSPacketBufferPool pool = new DFSPacketBufferPool(manager, 2);
+    byte[] first = pool.newByteArray(16);
+    byte[] second = pool.newByteArray(16);
+    pool.release(first);
+    assertTrue(first == pool.newByteArray(16));
+    pool.release(first);
+
+    // The free buffers go back to the manager when the stream is closed,
+    // and so do the buffers of the packets acknowledged afterwards.
+    pool.releaseAll();
+    verify(manager).release(Mockito.same(first));
+    pool.release(second);
+    verify(manager).release(Mockito.same(second));
+    assertEquals(2, pool.getBuffersAllocated());
+    assertEquals(1, pool.getBuffersReused());
+  }
+
   @AfterClass
   public static void tearDown() {
     if (cluster != null) {
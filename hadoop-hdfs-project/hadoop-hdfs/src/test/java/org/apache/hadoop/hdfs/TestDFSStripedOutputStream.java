@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hdfs;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -28,8 +30,10 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.StreamCapabilities.StreamCapability;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.io.IOUtils;
@@ -211,6 +215,31 @@ public void testStreamFlush() throws Exception {
     os.close();
   }
 
+  @Test
+  public void testParallelEncoding() throws Exception {
+    Configuration newConf = new Configuration(conf);
+    newConf.setInt(
+        HdfsClientConfigKeys.Write.STRIPED_ENCODE_THREADPOOL_SIZE_KEY, 2);
+    final int fullStripes = stripesPerBlock * 2 + 1;
+    final int writeBytes = cellSize * dataBlocks * fullStripes + 123;
+    final Path testPath = new Path("/ParallelEncoding");
+    final byte[] bytes = StripedFileTestUtil.generateBytes(writeBytes);
+    try (DistributedFileSystem newFs = (DistributedFileSystem)
+        FileSystem.newInstance(cluster.getURI(), newConf)) {
+      FSDataOutputStream out = newFs.create(testPath);
+      DFSStripedOutputStream stream =
+          (DFSStripedOutputStream) out.getWrappedStream();
+      out.write(bytes);
+      out.close();
+      // the last stripe is encoded when the stream is closed
+      assertEquals(fullStripes + 1, stream.getStripesEncoded());
+      assertTrue(stream.getEncodeTimeNanos() > 0);
+    }
+    StripedFileTestUtil.waitBlockGroupsReported(fs, testPath.toString());
+    StripedFileTestUtil.checkData(fs, testPath, writeBytes,
+        new ArrayList<DatanodeInfo>(), null, blockSize * dataBlocks);
+  }
+
   private void testOneFile(String src, int writeBytes) throws Exception {
     src += "_" + writeBytes;
     Path testPath = new Path(src);
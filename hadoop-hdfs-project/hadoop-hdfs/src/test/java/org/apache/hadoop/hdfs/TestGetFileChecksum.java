@@ -24,7 +24,9 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -92,4 +94,24 @@ public void testGetFileChecksum() throws Exception {
     testGetFileChecksum(new Path("/foo"), BLOCKSIZE / 4);
     testGetFileChecksum(new Path("/bar"), BLOCKSIZE / 4 - 1);
   }
+
+  @Test
+  public void testParallelGetFileChecksum() throws Exception {
+    final Path foo = new Path("/foo");
+    final int length = BLOCKSIZE * 10 + 123;
+    DFSTestUtil.createFile(dfs, foo, length, REPLICATION, 0L);
+
+    Configuration newConf = new Configuration(conf);
+    newConf.setInt(
+        HdfsClientConfigKeys.DFS_CLIENT_FILE_CHECKSUM_PARALLELISM_KEY, 4);
+    try (DistributedFileSystem newFs = (DistributedFileSystem)
+        FileSystem.newInstance(cluster.getURI(), newConf)) {
+      Assert.assertEquals(dfs.getFileChecksum(foo),
+          newFs.getFileChecksum(foo));
+      for (int len : new int[] {1, BLOCKSIZE, BLOCKSIZE * 3 + 1, length}) {
+        Assert.assertEquals(dfs.getFileChecksum(foo, len),
+            newFs.getFileChecksum(foo, len));
+      }
+    }
+  }
 }
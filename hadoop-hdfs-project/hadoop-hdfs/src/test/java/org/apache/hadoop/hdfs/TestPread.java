@@ -22,6 +22,7 @@
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -41,7 +42,9 @@
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.FileRange;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.DatanodeReportType;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
@@ -458,6 +461,90 @@ public Void answer(InvocationOnMock invocation) throws Throwable {
     }
   }
 
+  @Test(timeout=120000)
+  public void testAdaptiveHedgedRead() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(HdfsClientConfigKeys.DFS_CLIENT_CONTEXT, "testAdaptiveHedgedRead");
+    conf.setInt(HdfsClientConfigKeys.HedgedRead.THREADPOOL_SIZE_KEY, 5);
+    // Without the adaptive delay no read would ever be hedged.
+    conf.setLong(HdfsClientConfigKeys.HedgedRead.THRESHOLD_MILLIS_KEY, 50000);
+    conf.setBoolean(HdfsClientConfigKeys.HedgedRead.ADAPTIVE_ENABLED_KEY, true);
+
+    DFSClientFaultInjector.set(Mockito.mock(DFSClientFaultInjector.class));
+    DFSClientFaultInjector injector = DFSClientFaultInjector.get();
+    final AtomicInteger sleepMs = new AtomicInteger(0);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(sleepMs.get());
+        return null;
+      }
+    }).when(injector).startFetchFromDatanode();
+
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3)
+        .format(true).build();
+    DistributedFileSystem fileSys = cluster.getFileSystem();
+    DFSHedgedReadMetrics metrics = fileSys.getClient().getHedgedReadMetrics();
+    // Metrics instance is static, so we need to reset counts from prior tests.
+    metrics.hedgedReadOps.set(0);
+    metrics.hedgedReadOpsWin.set(0);
+    metrics.hedgedReadOpsLoss.set(0);
+    metrics.hedgedReadOpsSkipped.set(0);
+    Path file = new Path("/adaptiveHedgedRead.dat");
+    byte[] buffer = new byte[1024];
+    try {
+      DFSTestUtil.createFile(fileSys, file, 64 * 1024, (short) 3, 0L);
+      try (FSDataInputStream in = fileSys.open(file)) {
+        // Learn the latency of the DataNode.
+        for (int i = 0; i < 100; i++) {
+          in.readFully(0, buffer);
+        }
+        assertEquals(0, metrics.getHedgedReadOps());
+
+        // The reads are now much slower than the DataNode used to be.
+        sleepMs.set(200);
+        for (int i = 0; i < 3; i++) {
+          in.readFully(0, buffer);
+        }
+      }
+      assertTrue(metrics.getHedgedReadOps() > 0);
+      assertEquals(metrics.getHedgedReadOps(),
+          metrics.getHedgedReadWins() + metrics.getHedgedReadLosses());
+      assertEquals(0, metrics.getHedgedReadSkips());
+
+      // Once all the recent reads of a DataNode took less than the skip
+      // threshold, a client sharing the context does not hedge its reads.
+      DatanodeLatencyTracker tracker =
+          fileSys.getClient().getClientContext().getDatanodeLatencyTracker();
+      for (DatanodeInfo dn :
+          fileSys.getClient().datanodeReport(DatanodeReportType.LIVE)) {
+        for (int i = 0; i < DatanodeLatencyTracker.MIN_SAMPLES; i++) {
+          tracker.addSample(dn, 1, TimeUnit.MILLISECONDS);
+        }
+      }
+      Configuration conf2 = new Configuration(conf);
+      conf2.setBoolean("fs.hdfs.impl.disable.cache", true);
+      conf2.setLong(
+          HdfsClientConfigKeys.HedgedRead.ADAPTIVE_SKIP_THRESHOLD_MILLIS_KEY,
+          10000);
+      fileSys.close();
+      fileSys = (DistributedFileSystem) FileSystem.get(cluster.getURI(0),
+          conf2);
+      long hedgedReadOps = metrics.getHedgedReadOps();
+      try (FSDataInputStream in = fileSys.open(file)) {
+        for (int i = 0; i < 3; i++) {
+          in.readFully(0, buffer);
+        }
+      }
+      assertEquals(hedgedReadOps, metrics.getHedgedReadOps());
+      assertEquals(3, metrics.getHedgedReadSkips());
+    } finally {
+      Mockito.reset(injector);
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
   private void dfsPreadTest(Configuration conf, boolean disableTransferTo, boolean verifyChecksum)
       throws IOException {
     conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 4096);
@@ -508,6 +595,82 @@ public void testPreadLocalFS() throws IOException {
     }
   }
 
+  @Test
+  public void testReadVectored() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
+    conf.setInt(HdfsClientConfigKeys.VectoredRead.MERGE_GAP_KEY, 100);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    DFSClientFaultInjector oldInjector = DFSClientFaultInjector.get();
+    DFSClientFaultInjector injector =
+        Mockito.mock(DFSClientFaultInjector.class);
+    try {
+      DistributedFileSystem fileSys = cluster.getFileSystem();
+      Path file = new Path("/vectoredtest.dat");
+      DFSTestUtil.createFile(fileSys, file, fileSize, fileSize,
+          blockSize, (short) 3, seed);
+      byte[] expected = new byte[fileSize];
+      new Random(seed).nextBytes(expected);
+
+      try (HdfsDataInputStream in =
+          (HdfsDataInputStream) fileSys.open(file)) {
+        // Nearby ranges in a block are read with one request.
+        DFSClientFaultInjector.set(injector);
+        List<FileRange> ranges = Arrays.asList(new FileRange(300, 10),
+            new FileRange(100, 50), new FileRange(200, 100));
+        in.readVectored(ranges);
+        checkRanges(ranges, expected);
+        Mockito.verify(injector, Mockito.times(1)).startFetchFromDatanode();
+
+        // Ranges across blocks, in different blocks and empty. The last two
+        // ranges are merged.
+        Mockito.reset(injector);
+        ranges = Arrays.asList(new FileRange(blockSize - 10, 20),
+            new FileRange(2 * blockSize, blockSize),
+            new FileRange(3 * blockSize + 10, 0),
+            new FileRange(5 * blockSize + 1, 4000),
+            new FileRange(5 * blockSize + 4050, 40));
+        in.readVectored(ranges, ByteBuffer::allocateDirect);
+        checkRanges(ranges, expected);
+        Mockito.verify(injector, Mockito.times(4)).startFetchFromDatanode();
+
+        FileRange pastEnd = new FileRange(fileSize - 10, 20);
+        in.readVectored(Arrays.asList(pastEnd));
+        try {
+          pastEnd.getData().get();
+          Assert.fail("Read past the end of the file");
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof EOFException);
+        }
+
+        try {
+          in.readVectored(Arrays.asList(new FileRange(0, 100),
+              new FileRange(99, 10)));
+          Assert.fail("Read overlapping ranges");
+        } catch (IllegalArgumentException e) {
+          GenericTestUtils.assertExceptionContains("overlaps", e);
+        }
+      }
+    } finally {
+      DFSClientFaultInjector.set(oldInjector);
+      cluster.shutdown();
+    }
+  }
+
+  private static void checkRanges(List<FileRange> ranges, byte[] expected)
+      throws Exception {
+    for (FileRange range : ranges) {
+      ByteBuffer buf = range.getData().get();
+      assertEquals(range.toString(), range.getLength(), buf.remaining());
+      byte[] actual = new byte[range.getLength()];
+      buf.get(actual);
+      Assert.assertArrayEquals(range.toString(), Arrays.copyOfRange(expected,
+          (int) range.getOffset(), (int) range.getOffset() + range.getLength()),
+          actual);
+    }
+  }
+
   @Test
   public void testTruncateWhileReading() throws Exception {
     Path path = new Path("/testfile");
@@ -107,6 +107,10 @@ public void setup() throws IOException {
     }
     conf.set(DFSConfigKeys.DFS_NAMENODE_EC_POLICIES_ENABLED_KEY,
         StripedFileTestUtil.getDefaultECPolicy().getName());
+    startCluster();
+  }
+
+  private void startCluster() throws IOException {
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(dnNum).build();
     cluster.waitActive();
 
@@ -212,6 +216,19 @@ public void testRecoverAnyBlocks1() throws Exception {
         ReconstructionType.Any, random.nextInt(parityBlkNum) + 1);
   }
 
+  @Test(timeout = 120000)
+  public void testRecoverAnyBlocksWithPipelinedWrites() throws Exception {
+    tearDown();
+    dnMap.clear();
+    conf.setInt(
+        DFSConfigKeys.DFS_DN_EC_RECONSTRUCTION_STRIPED_WRITE_THREADS_KEY, 2);
+    startCluster();
+
+    int fileLen = (dataBlkNum + parityBlkNum) * blockSize + blockSize / 10;
+    assertFileBlocksReconstruction("/testRecoverAnyBlocksWithPipelinedWrites",
+        fileLen, ReconstructionType.Any, parityBlkNum);
+  }
+
   private int[] generateDeadDnIndices(ReconstructionType type, int deadNum,
       byte[] indices) {
     List<Integer> deadList = new ArrayList<>(deadNum);
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SmallFileBatchWriter}.
+ */
+public class TestSmallFileBatchWriter {
+  private static final int NUM_FILES = 50;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setup() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(HdfsClientConfigKeys.Write.SmallFileBatch.THREADS_KEY, 4);
+    conf.setInt(HdfsClientConfigKeys.Write.SmallFileBatch.MAX_PENDING_KEY, 8);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void shutdown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static byte[] content(int i) {
+    return ("content of file " + i).getBytes();
+  }
+
+  @Test(timeout = 60000)
+  public void testWriteFiles() throws Exception {
+    final Path dir = new Path("/testWriteFiles");
+    final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    long bytes = 0;
+    try (SmallFileBatchWriter writer = fs.createSmallFileBatchWriter(false)) {
+      for (int i = 0; i < NUM_FILES; i++) {
+        futures.add(writer.write(new Path(dir, "file" + i), content(i)));
+        bytes += content(i).length;
+      }
+      writer.flush();
+      for (CompletableFuture<Void> future : futures) {
+        assertTrue(future.isDone());
+      }
+      assertEquals(NUM_FILES, writer.getFilesWritten());
+      assertEquals(bytes, writer.getBytesWritten());
+      assertEquals(0, writer.getFilesFailed());
+    }
+
+    assertEquals(NUM_FILES, fs.listStatus(dir).length);
+    for (int i = 0; i < NUM_FILES; i++) {
+      assertArrayEquals(content(i),
+          DFSTestUtil.readFileAsBytes(fs, new Path(dir, "file" + i)));
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testFailures() throws Exception {
+    final Path existing = new Path("/testFailures/existing");
+    DFSTestUtil.createFile(fs, existing, 10, (short) 1, 0L);
+
+    final SmallFileBatchWriter writer = fs.createSmallFileBatchWriter(false);
+    final CompletableFuture<Void> failed = writer.write(existing, content(0));
+    final CompletableFuture<Void> written =
+        writer.write(new Path("/testFailures/new"), content(1));
+    try {
+      failed.get();
+      fail("The file should not have been overwritten");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileAlreadyExistsException);
+    }
+    written.get();
+    try {
+      writer.flush();
+      fail("The failure should have been reported");
+    } catch (FileAlreadyExistsException e) {
+      // expected
+    }
+    assertEquals(1, writer.getFilesWritten());
+    assertEquals(1, writer.getFilesFailed());
+    // The failure is only reported once.
+    writer.close();
+    try {
+      writer.write(new Path("/testFailures/closed"), content(2));
+      fail("The writer is closed");
+    } catch (IOException e) {
+      // expected
+    }
+
+    // Overwriting writer.
+    try (SmallFileBatchWriter overwriter =
+        fs.createSmallFileBatchWriter(true)) {
+      overwriter.write(existing, content(3)).get();
+    }
+    assertArrayEquals(content(3), DFSTestUtil.readFileAsBytes(fs, existing));
+  }
+}
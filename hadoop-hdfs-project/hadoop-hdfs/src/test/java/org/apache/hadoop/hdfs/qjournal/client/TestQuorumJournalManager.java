@@ -35,7 +35,9 @@
 import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeoutException;
@@ -44,6 +46,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -396,6 +399,59 @@ public void testChangeWritersLogsInSync() throws Exception {
     qjm.recoverUnfinalizedSegments();
     checkRecovery(cluster, 1, 3);
   }
+
+  /**
+   * Test that batches of edits can be sent before the previous ones have
+   * been acknowledged, and that they are all written in order by
+   * JournalNodes running with the default configuration.
+   */
+  @Test
+  public void testPipelinedWrites() throws Exception {
+    final int depth = 3;
+    final int numBatches = 50;
+    final int txnsPerBatch = 4;
+    Configuration pipelinedConf = new Configuration(conf);
+    pipelinedConf.setInt(DFSConfigKeys.DFS_QJOURNAL_WRITE_PIPELINE_DEPTH_KEY,
+        depth);
+    qjm = closeLater(new QuorumJournalManager(
+        pipelinedConf, cluster.getQuorumJournalURI(JID), FAKE_NSINFO));
+    qjm.recoverUnfinalizedSegments();
+
+    EditLogOutputStream stm = qjm.startLogSegment(1,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    assertEquals(depth, stm.getMaxPendingFlushes());
+    Deque<EditLogOutputStream.PendingFlush> pendings = new ArrayDeque<>();
+    int txid = 1;
+    for (int i = 0; i < numBatches; i++) {
+      for (int j = 0; j < txnsPerBatch; j++) {
+        QJMTestUtil.writeOp(stm, txid++);
+      }
+      stm.setReadyToFlush();
+      pendings.add(stm.startFlush());
+      if (pendings.size() == depth) {
+        pendings.poll().await();
+      }
+    }
+    while (!pendings.isEmpty()) {
+      pendings.poll().await();
+    }
+    for (AsyncLogger logger : qjm.getLoggerSetForTests().getLoggersForTests()) {
+      assertFalse(((IPCLoggerChannel) logger).isOutOfSync());
+    }
+    stm.close();
+    final int lastTxId = txid - 1;
+    qjm.finalizeLogSegment(1, lastTxId);
+
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    QuorumJournalManager readerQjm = closeLater(createSpyingQJM());
+    readerQjm.selectInputStreams(streams, 0, false);
+    try {
+      assertEquals(1, streams.size());
+      verifyEdits(streams, 1, lastTxId);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+    }
+  }
   
   /**
    * Test case where a new writer picks up from an old one which crashed
@@ -19,6 +19,7 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -49,6 +50,8 @@
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import com.google.common.base.Supplier;
+
 public class TestJournal {
   private static final NamespaceInfo FAKE_NSINFO = new NamespaceInfo(
       12345, "mycluster", "my-bp", 0L);
@@ -406,6 +409,97 @@ public void testStartLogSegmentWhenAlreadyExists() throws Exception {
   private static RequestInfo makeRI(int serial) {
     return new RequestInfo(JID, 1, serial, 0);
   }
+
+  /**
+   * Sends a batch of edits on its own thread, as the RPC handler of an IPC
+   * which may be picked up before the IPCs preceding it.
+   */
+  private class JournalThread extends Thread {
+    private final int serial;
+    private final int firstTxId;
+    private final int numTxns;
+    private volatile Throwable error;
+
+    JournalThread(int serial, int firstTxId, int numTxns) {
+      this.serial = serial;
+      this.firstTxId = firstTxId;
+      this.numTxns = numTxns;
+    }
+
+    @Override
+    public void run() {
+      try {
+        journal.journal(makeRI(serial), 1, firstTxId, numTxns,
+            numTxns == 0 ? new byte[0] :
+                QJMTestUtil.createTxnData(firstTxId, numTxns));
+      } catch (Throwable t) {
+        error = t;
+      }
+    }
+  }
+
+  /**
+   * Start sending a batch and wait until it is held back by a missing
+   * serial.
+   */
+  private JournalThread startHeldBackBatch(int serial, int firstTxId,
+      int numTxns) throws Exception {
+    final JournalThread t = new JournalThread(serial, firstTxId, numTxns);
+    t.start();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return t.getState() == Thread.State.TIMED_WAITING;
+      }
+    }, 10, 5000);
+    return t;
+  }
+
+  @Test (timeout = 10000)
+  public void testBatchAheadOfMissingSerialWaits() throws Exception {
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    journal.journal(makeRI(2), 1, 1, 3, QJMTestUtil.createTxnData(1, 3));
+    JournalThread ahead = startHeldBackBatch(4, 7, 3);
+
+    // The missing batch is written first, then the one that arrived ahead.
+    journal.journal(makeRI(3), 1, 4, 3, QJMTestUtil.createTxnData(4, 3));
+    ahead.join();
+    assertNull(ahead.error);
+    assertEquals(9, journal.getHighestWrittenTxId());
+  }
+
+  @Test (timeout = 10000)
+  public void testBatchFollowingWrittenEditsIsNotHeldBack()
+      throws Exception {
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    // The IPC with serial 2 was lost, which does not hold back a batch
+    // that directly follows the edits written so far.
+    journal.journal(makeRI(3), 1, 1, 3, QJMTestUtil.createTxnData(1, 3));
+    assertEquals(3, journal.getHighestWrittenTxId());
+  }
+
+  @Test (timeout = 10000)
+  public void testFailedBatchDoesNotHoldBackLaterBatches() throws Exception {
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    journal.journal(makeRI(2), 1, 1, 3, QJMTestUtil.createTxnData(1, 3));
+    JournalThread last = startHeldBackBatch(5, 7, 0);
+    JournalThread failing = startHeldBackBatch(4, 7, 3);
+    failing.interrupt();
+    failing.join();
+    assertTrue(failing.error instanceof IOException);
+
+    // Only the batch with serial 3 is still waited for.
+    assertTrue(last.isAlive());
+    journal.journal(makeRI(3), 1, 4, 3, QJMTestUtil.createTxnData(4, 3));
+    last.join();
+    assertNull(last.error);
+  }
   
   @Test (timeout = 10000)
   public void testNamespaceVerification() throws Exception {
@@ -53,6 +53,10 @@
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
@@ -1237,6 +1241,121 @@ public void testBalancerWithNonZeroThreadsForMove() throws Exception {
     testBalancer1Internal(conf);
   }
 
+  @Test(timeout=100000)
+  public void testBalancerWithContinuousDispatcher() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_BALANCER_DISPATCHER_CONTINUOUS_KEY, true);
+    // Fetch the blocks of the sources in several getBlocks calls.
+    conf.setLong(DFSConfigKeys.DFS_BALANCER_GETBLOCKS_SIZE_KEY,
+        10 * DEFAULT_BLOCK_SIZE);
+    testBalancer1Internal(conf);
+  }
+
+  private static Dispatcher newContinuousDispatcher(NameNodeConnector nnc,
+      int maxConcurrentMoves) {
+    return new Dispatcher(nnc, Collections.<String>emptySet(),
+        Collections.<String>emptySet(), 0L, 1, 1, maxConcurrentMoves,
+        DEFAULT_BLOCK_SIZE, 0L, 0, 60000, true, new HdfsConfiguration());
+  }
+
+  /**
+   * Test how the number of moves allowed at a datanode adapts to the
+   * throughput and the failures of its moves.
+   */
+  @Test(timeout=60000)
+  public void testAdaptiveMoveLimit() throws Exception {
+    final int maxConcurrentMoves = 8;
+    final Dispatcher dispatcher = newContinuousDispatcher(
+        mock(NameNodeConnector.class), maxConcurrentMoves);
+    try {
+      final Dispatcher.DDatanode dn = dispatcher.newDatanode(
+          DFSTestUtil.getLocalDatanodeInfo());
+      assertEquals(maxConcurrentMoves, dn.getMoveLimit());
+
+      // A failure halves the limit.
+      dn.moveFailed();
+      assertEquals(4, dn.getMoveLimit());
+
+      // The limit grows by about one for every limit moves keeping up with
+      // the average throughput, up to the configured maximum.
+      for (int i = 0; i < 5; i++) {
+        dn.moveSucceeded(1000, 1000);
+      }
+      assertEquals(5, dn.getMoveLimit());
+      for (int i = 0; i < 100; i++) {
+        dn.moveSucceeded(1000, 1000);
+      }
+      assertEquals(maxConcurrentMoves, dn.getMoveLimit());
+
+      // A move slower than half of the average cuts the limit by a quarter.
+      dn.moveSucceeded(1000, 3000);
+      assertEquals(6, dn.getMoveLimit());
+
+      // The limit never goes below one.
+      for (int i = 0; i < 10; i++) {
+        dn.moveFailed();
+      }
+      assertEquals(1, dn.getMoveLimit());
+      dn.moveSucceeded(1000, 100000);
+      assertEquals(1, dn.getMoveLimit());
+    } finally {
+      dispatcher.shutdownNow();
+    }
+
+    // The limit does not adapt if the dispatcher is not continuous.
+    final Dispatcher fixed = new Dispatcher(mock(NameNodeConnector.class),
+        Collections.<String>emptySet(), Collections.<String>emptySet(), 0L,
+        1, 1, maxConcurrentMoves, 0, new HdfsConfiguration());
+    try {
+      final Dispatcher.DDatanode dn = fixed.newDatanode(
+          DFSTestUtil.getLocalDatanodeInfo());
+      dn.moveFailed();
+      dn.moveSucceeded(1000, 1000);
+      assertEquals(-1, dn.getMoveLimit());
+    } finally {
+      fixed.shutdownNow();
+    }
+  }
+
+  /**
+   * Test that the blocks fetched in the background are used by the next
+   * fetch of the source, instead of calling getBlocks again.
+   */
+  @Test(timeout=60000)
+  public void testPrefetchedBlocksAreConsumed() throws Exception {
+    final NameNodeConnector nnc = mock(NameNodeConnector.class);
+    final BlocksWithLocations.BlockWithLocations[] blocks =
+        new BlocksWithLocations.BlockWithLocations[10];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = new BlocksWithLocations.BlockWithLocations(
+          new Block(i, DEFAULT_BLOCK_SIZE, 1000L), new String[0],
+          new String[0], new StorageType[0]);
+    }
+    when(nnc.getBlocks(any(DatanodeInfo.class), anyLong()))
+        .thenReturn(new BlocksWithLocations(blocks));
+
+    final Dispatcher dispatcher = newContinuousDispatcher(nnc, 5);
+    try {
+      final Dispatcher.Source source = dispatcher.newDatanode(
+          DFSTestUtil.getLocalDatanodeInfo()).addSource(
+              StorageType.DISK, 100 * DEFAULT_BLOCK_SIZE, dispatcher);
+      source.setBlocksToReceive(100 * DEFAULT_BLOCK_SIZE);
+
+      // The source has no blocks left, so the next ones are prefetched.
+      source.prefetchBlockList();
+      assertEquals(blocks.length * DEFAULT_BLOCK_SIZE,
+          source.fetchMoreBlocks());
+      verify(nnc, times(1)).getBlocks(any(DatanodeInfo.class), anyLong());
+
+      // Without a prefetch, the blocks are fetched right away.
+      assertEquals(blocks.length * DEFAULT_BLOCK_SIZE,
+          source.fetchMoreBlocks());
+      verify(nnc, times(2)).getBlocks(any(DatanodeInfo.class), anyLong());
+    } finally {
+      dispatcher.shutdownNow();
+    }
+  }
+
   @Test(timeout=100000)
   public void testBalancer2() throws Exception {
     testBalancer2Internal(new HdfsConfiguration());
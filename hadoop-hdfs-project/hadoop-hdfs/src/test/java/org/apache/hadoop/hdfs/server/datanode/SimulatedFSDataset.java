@@ -890,6 +890,10 @@ public boolean isCached(String bpid, long blockId) {
     return false;
   }
 
+  @Override // FsDatasetSpi
+  public void onBlockRead(String bpid, long blockId) {
+  }
+
   private BInfo getBInfo(final ExtendedBlock b) {
     final Map<Block, BInfo> map = blockMap.get(b.getBlockPoolId());
     return map == null? null: map.get(b.getLocalBlock());
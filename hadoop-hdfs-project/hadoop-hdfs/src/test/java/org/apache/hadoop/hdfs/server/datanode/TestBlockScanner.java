@@ -19,6 +19,7 @@
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SCANNER_SKIP_CLIENT_VERIFIED_BLOCKS_KEY;
 import static org.apache.hadoop.hdfs.server.datanode.BlockScanner.Conf.INTERNAL_DFS_DATANODE_SCAN_PERIOD_MS;
 import static org.apache.hadoop.hdfs.server.datanode.BlockScanner.Conf.INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER;
 import static org.apache.hadoop.hdfs.server.datanode.BlockScanner.Conf.INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS;
@@ -281,6 +282,7 @@ static class Info {
       final Set<ExtendedBlock> goodBlocks = new HashSet<ExtendedBlock>();
       long blocksScanned = 0;
       Semaphore sem = null;
+      VolumeScanner scanner = null;
 
       @Override
       public String toString() {
@@ -315,6 +317,7 @@ public void setup(VolumeScanner scanner) {
       Info info = getInfo(scanner.volume);
       LOG.info("about to start scanning.");
       synchronized (info) {
+        info.scanner = scanner;
         while (!info.shouldRun) {
           try {
             info.wait();
@@ -678,6 +681,95 @@ public void testNextSorted() throws Exception {
     Assert.assertEquals(null, FsVolumeImpl.nextSorted(arr, "9"));
   }
 
+  @Test(timeout=120000)
+  public void testEncodeBlockIds() throws Exception {
+    List<Long> ids = new LinkedList<Long>();
+    Assert.assertEquals(ids,
+        FsVolumeImpl.decodeBlockIds(FsVolumeImpl.encodeBlockIds(ids)));
+    ids.add(-5L);
+    ids.add(1073741825L);
+    ids.add(1073741826L);
+    ids.add(1073742080L);
+    ids.add(Long.MAX_VALUE);
+    Assert.assertEquals(ids,
+        FsVolumeImpl.decodeBlockIds(FsVolumeImpl.encodeBlockIds(ids)));
+  }
+
+  /**
+   * Test that a block iterator does not return the blocks it was asked to
+   * skip until it is rewound, and that it keeps skipping them after being
+   * saved and loaded.
+   */
+  @Test(timeout=60000)
+  public void testVolumeIteratorSkipBlock() throws Exception {
+    Configuration conf = new Configuration();
+    disableBlockScanner(conf);
+    final int numFiles = 5;
+    TestContext ctx = new TestContext(conf, 1);
+    try {
+      ctx.createFiles(0, numFiles, 1);
+      FsVolumeSpi volume = ctx.volumes.get(0);
+      ExtendedBlock skipped = ctx.getFileBlock(0, 2);
+      BlockIterator iter = volume.newBlockIterator(ctx.bpids[0], "test");
+      assertTrue(iter.skipBlock(skipped.getBlockId()));
+      iter.save();
+      iter = volume.loadBlockIterator(ctx.bpids[0], "test");
+      Set<ExtendedBlock> blocks = new HashSet<ExtendedBlock>();
+      ExtendedBlock block;
+      while ((block = iter.nextBlock()) != null) {
+        assertTrue(blocks.add(block));
+      }
+      assertEquals(numFiles - 1, blocks.size());
+      assertFalse(blocks.contains(skipped));
+
+      iter.rewind();
+      blocks.clear();
+      while ((block = iter.nextBlock()) != null) {
+        assertTrue(blocks.add(block));
+      }
+      assertEquals(numFiles, blocks.size());
+      assertTrue(blocks.contains(skipped));
+    } finally {
+      ctx.close();
+    }
+  }
+
+  /**
+   * Test that the volume scanner learns about blocks verified by clients
+   * which read the entire block.
+   */
+  @Test(timeout=120000)
+  public void testMarkBlockVerified() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFS_DATANODE_SCAN_PERIOD_HOURS_KEY, 100L);
+    conf.setBoolean(DFS_BLOCK_SCANNER_SKIP_CLIENT_VERIFIED_BLOCKS_KEY, true);
+    conf.set(INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER,
+        TestScanResultHandler.class.getName());
+    final TestContext ctx = new TestContext(conf, 1);
+    final TestScanResultHandler.Info info =
+        TestScanResultHandler.getInfo(ctx.volumes.get(0));
+    synchronized (info) {
+      // Start the scanner, but do not let it finish scanning any block.
+      info.sem = new Semaphore(0);
+      info.shouldRun = true;
+      info.notify();
+    }
+    try {
+      ctx.createFiles(0, 1, 4096);
+      DFSTestUtil.readFile(ctx.dfs[0], ctx.getPath(0));
+      final String storageID = ctx.volumes.get(0).getStorageID();
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          Statistics stats = ctx.blockScanner.getVolumeStats(storageID);
+          return stats.blocksVerifiedByClientsSinceRestart == 1;
+        }
+      }, 50, 30000);
+    } finally {
+      ctx.close();
+    }
+  }
+
   @Test(timeout=120000)
   public void testCalculateNeededBytesPerSec() throws Exception {
     // If we didn't check anything the last hour, we should scan now.
@@ -819,6 +911,124 @@ public Boolean get() {
     }
   }
 
+  /**
+   * Test that the blocks stored near a corrupt block are scheduled for
+   * scanning after the corrupt block is reported.
+   */
+  @Test(timeout=120000)
+  public void testMarkNeighborBlocks() throws Exception {
+    Configuration conf = new Configuration();
+    // Set a really long scan period.
+    conf.setLong(DFS_DATANODE_SCAN_PERIOD_HOURS_KEY, 100L);
+    conf.set(INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER,
+        TestScanResultHandler.class.getName());
+    conf.setLong(INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS, 0L);
+    final TestContext ctx = new TestContext(conf, 1);
+    final int NUM_EXPECTED_BLOCKS = 10;
+    ctx.createFiles(0, NUM_EXPECTED_BLOCKS, 1);
+    final TestScanResultHandler.Info info =
+        TestScanResultHandler.getInfo(ctx.volumes.get(0));
+    synchronized (info) {
+      info.sem = new Semaphore(4);
+      info.shouldRun = true;
+      info.notify();
+    }
+    LOG.info("Waiting for the first 4 blocks to be scanned.");
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        synchronized (info) {
+          return info.blocksScanned >= 4;
+        }
+      }
+    }, 50, 30000);
+    final VolumeScanner scanner;
+    synchronized (info) {
+      assertEquals(4, info.goodBlocks.size());
+      info.goodBlocks.clear();
+      info.blocksScanned = 0;
+      scanner = info.scanner;
+    }
+
+    // Corrupt the first block and hand it to the default result handler,
+    // as the scanner does when verification fails.  The blocks created
+    // above have consecutive ids, so all the others are its neighbors.
+    ExtendedBlock first = ctx.getFileBlock(0, 0);
+    ctx.cluster.corruptBlockOnDataNodes(first);
+    ScanResultHandler handler = new ScanResultHandler();
+    handler.setup(scanner);
+    handler.handle(first, new IOException("injected checksum error"));
+
+    // Let the scanner finish the 5th block, then scan the 9 neighbors.
+    info.sem.release(NUM_EXPECTED_BLOCKS);
+    LOG.info("Waiting for the neighbor blocks to be scanned.");
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        synchronized (info) {
+          return info.blocksScanned >= NUM_EXPECTED_BLOCKS;
+        }
+      }
+    }, 50, 30000);
+    synchronized (info) {
+      for (int i = 1; i < NUM_EXPECTED_BLOCKS; i++) {
+        ExtendedBlock block = ctx.getFileBlock(0, i);
+        assertTrue("Expected neighbor block " + block + " to be scanned.",
+            info.goodBlocks.contains(block));
+      }
+      assertFalse(info.goodBlocks.contains(first));
+    }
+    assertEquals(NUM_EXPECTED_BLOCKS - 1,
+        scanner.getStatistics().neighborBlocksScannedSinceRestart);
+    synchronized (info) {
+      info.shouldRun = false;
+      info.notify();
+    }
+    info.sem.release(Integer.MAX_VALUE / 2);
+    ctx.close();
+  }
+
+  /**
+   * Test that a volume deprioritized as slow keeps scanning its blocks,
+   * at a reduced rate.
+   */
+  @Test(timeout=120000)
+  public void testSlowVolumeKeepsScanning() throws Exception {
+    Configuration conf = new Configuration();
+    // Set a really long scan period.
+    conf.setLong(DFS_DATANODE_SCAN_PERIOD_HOURS_KEY, 100L);
+    conf.set(INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER,
+        TestScanResultHandler.class.getName());
+    conf.setLong(INTERNAL_DFS_BLOCK_SCANNER_CURSOR_SAVE_INTERVAL_MS, 0L);
+    final TestContext ctx = new TestContext(conf, 1);
+    final int NUM_EXPECTED_BLOCKS = 10;
+    ctx.createFiles(0, NUM_EXPECTED_BLOCKS, 1);
+    FsVolumeSpi volume = ctx.volumes.get(0);
+    volume.getMetrics().setSlow(true);
+    final TestScanResultHandler.Info info =
+        TestScanResultHandler.getInfo(volume);
+    synchronized (info) {
+      info.sem = new Semaphore(Integer.MAX_VALUE / 2);
+      info.shouldRun = true;
+      info.notify();
+    }
+
+    LOG.info("Waiting for all the blocks to be scanned.");
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        synchronized (info) {
+          return info.goodBlocks.size() >= NUM_EXPECTED_BLOCKS;
+        }
+      }
+    }, 50, 30000);
+    synchronized (info) {
+      info.shouldRun = false;
+      info.notify();
+    }
+    ctx.close();
+  }
+
   /**
    * Test that blocks which are in the wrong location are ignored.
    */
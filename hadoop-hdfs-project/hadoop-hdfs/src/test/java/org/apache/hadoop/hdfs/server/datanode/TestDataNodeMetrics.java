@@ -24,6 +24,7 @@
 import static org.junit.Assert.*;
 
 import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
@@ -38,6 +39,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -416,6 +418,59 @@ public void testDNShouldNotDeleteBlockONTooManyOpenFiles()
     }
   }
 
+  @Test
+  public void testBlockSenderCopyMetrics() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFERTO_VERIFY_CHECKSUM_KEY, true);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path p = new Path("/testBlockSenderCopyMetrics");
+      final long fileLen = 1024 * 1024;
+      DFSTestUtil.createFile(fs, p, fileLen, (short) 1, 1L);
+      ExtendedBlock b = DFSTestUtil.getFirstBlock(fs, p);
+      DataNode dn = cluster.getDataNodes().get(0);
+      MetricsRecordBuilder rb = getMetrics(dn.getMetrics().name());
+      long served = getLongCounter("BlockSenderBytesServed", rb);
+      long heapCopied = getLongCounter("BlockSenderHeapBytesCopied", rb);
+      long directCopied = getLongCounter("BlockSenderDirectBytesCopied", rb);
+
+      // Verify the block the way the block scanner does. The data should be
+      // checked off-heap and never be copied through heap buffers.
+      IOUtils.NullOutputStream nullOut = new IOUtils.NullOutputStream();
+      BlockSender sender = new BlockSender(b, 0, -1, false, true, true, dn,
+          null, CachingStrategy.newDropBehind());
+      try {
+        sender.sendBlock(new DataOutputStream(nullOut), nullOut, null);
+      } finally {
+        IOUtils.closeStream(sender);
+      }
+      rb = getMetrics(dn.getMetrics().name());
+      assertCounter("BlockSenderBytesServed", served + fileLen, rb);
+      assertCounter("BlockSenderHeapBytesCopied", heapCopied, rb);
+      assertCounter("BlockSenderDirectBytesCopied", directCopied + fileLen,
+          rb);
+
+      // Corrupt the replica and make sure the off-heap path detects it.
+      cluster.corruptReplica(0, b);
+      sender = new BlockSender(b, 0, -1, false, true, true, dn, null,
+          CachingStrategy.newDropBehind());
+      try {
+        sender.sendBlock(new DataOutputStream(nullOut), nullOut, null);
+        fail("Expected a ChecksumException");
+      } catch (ChecksumException ce) {
+        GenericTestUtils.assertExceptionContains("Checksum failed", ce);
+      } finally {
+        IOUtils.closeStream(sender);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   private void verifyBlockLocations(DistributedFileSystem fs, Path p,
       int expected) throws IOException, TimeoutException, InterruptedException {
     final LocatedBlock lb =
@@ -21,6 +21,7 @@
 import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -102,6 +103,8 @@ public class TestFsDatasetCache {
 
   // Most Linux installs allow a default of 64KB locked memory
   static final long CACHE_CAPACITY = 64 * 1024;
+  // The part of the cache set aside for adaptive caching
+  private static final long ADAPTIVE_CACHE_CAPACITY = CACHE_CAPACITY / 2;
   // mlock always locks the entire page. So we don't need to deal with this
   // rounding, use the OS page size for the block size.
   private static final long PAGE_SIZE =
@@ -631,4 +634,140 @@ public Boolean get() {
 
     dfs.removeCacheDirective(shortCacheDirectiveId);
   }
+
+  /**
+   * Restart the cluster with adaptive caching enabled.
+   */
+  private static void restartWithAdaptiveCaching(long intervalMs)
+      throws Exception {
+    fs.close();
+    cluster.shutdown();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_ENABLED_KEY,
+        true);
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY,
+        intervalMs);
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_KEY, 5);
+    conf.setLong(
+        DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MAX_LOCKED_MEMORY_KEY,
+        ADAPTIVE_CACHE_CAPACITY);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    dn = cluster.getDataNodes().get(0);
+    fsd = dn.getFSDataset();
+  }
+
+  @Test(timeout=60000)
+  public void testAdaptiveCaching() throws Exception {
+    restartWithAdaptiveCaching(500);
+
+    final Path hotFile = new Path("/hotFile");
+    final Path coldFile = new Path("/coldFile");
+    DFSTestUtil.createFile(fs, hotFile, BLOCK_SIZE, (short)1, 0xbeef);
+    DFSTestUtil.createFile(fs, coldFile, BLOCK_SIZE, (short)1, 0xcafe);
+    final ExtendedBlock hotBlock = DFSTestUtil.getFirstBlock(fs, hotFile);
+    final ExtendedBlock coldBlock = DFSTestUtil.getFirstBlock(fs, coldFile);
+
+    // Read one file often, without any cache directive.
+    for (int i = 0; i < 10; i++) {
+      DFSTestUtil.readFile(fs, hotFile);
+    }
+    DFSTestUtil.readFile(fs, coldFile);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return fsd.isCached(hotBlock.getBlockPoolId(),
+            hotBlock.getBlockId());
+      }
+    }, 100, 30000);
+    assertTrue(!fsd.isCached(coldBlock.getBlockPoolId(),
+        coldBlock.getBlockId()));
+    MetricsRecordBuilder dnMetrics = getMetrics(dn.getMetrics().name());
+    MetricsAsserts.assertCounter("BlocksCachedAdaptively", 1L, dnMetrics);
+
+    // The NameNode has no directive for the block, so it is not reported.
+    // A stale uncache request does not uncache it either.
+    assertFalse(fsd.getCacheReport(hotBlock.getBlockPoolId())
+        .contains(hotBlock.getBlockId()));
+    fsd.uncache(hotBlock.getBlockPoolId(),
+        new long[] {hotBlock.getBlockId()});
+    assertTrue(fsd.isCached(hotBlock.getBlockPoolId(),
+        hotBlock.getBlockId()));
+
+    // Deleting the file uncaches the block.
+    fs.delete(hotFile, false);
+    DFSTestUtil.verifyExpectedCacheUsage(0, 0, fsd);
+  }
+
+  /**
+   * Read files often enough to have them cached adaptively.
+   */
+  private static void readHotFiles(int numFiles) throws Exception {
+    for (int i = 0; i < numFiles; i++) {
+      DFSTestUtil.createFile(fs, new Path("/hotFile" + i), BLOCK_SIZE,
+          (short)1, 0xbeef + i);
+    }
+    for (int j = 0; j < 10; j++) {
+      for (int i = 0; i < numFiles; i++) {
+        DFSTestUtil.readFile(fs, new Path("/hotFile" + i));
+      }
+    }
+  }
+
+  /**
+   * Blocks scheduled for caching in the same rescan count against the
+   * adaptive cache capacity, so that no caching task runs out of space.
+   * The adaptive cache is neither reported as used nor as capacity.
+   */
+  @Test(timeout=60000)
+  public void testAdaptiveCachingWithinCapacity() throws Exception {
+    // Leave enough time to read all the files before the first rescan.
+    restartWithAdaptiveCaching(3000);
+    assertEquals(CACHE_CAPACITY - ADAPTIVE_CACHE_CAPACITY,
+        fsd.getCacheCapacity());
+
+    final int numBlocks =
+        Ints.checkedCast(ADAPTIVE_CACHE_CAPACITY / BLOCK_SIZE);
+    final int numFiles = numBlocks + 2;
+    readHotFiles(numFiles);
+    DFSTestUtil.verifyExpectedCacheUsage(0, numBlocks, fsd);
+    assertEquals(0, fsd.getNumBlocksFailedToCache());
+
+    for (int i = 0; i < numFiles; i++) {
+      fs.delete(new Path("/hotFile" + i), false);
+    }
+    DFSTestUtil.verifyExpectedCacheUsage(0, 0, fsd);
+  }
+
+  /**
+   * A full adaptive cache leaves the rest of the cache to the NameNode's
+   * directives.
+   */
+  @Test(timeout=60000)
+  public void testCacheDirectiveWithFullAdaptiveCache() throws Exception {
+    restartWithAdaptiveCaching(3000);
+    final int numAdaptiveBlocks =
+        Ints.checkedCast(ADAPTIVE_CACHE_CAPACITY / BLOCK_SIZE);
+    readHotFiles(numAdaptiveBlocks);
+    DFSTestUtil.verifyExpectedCacheUsage(0, numAdaptiveBlocks, fsd);
+
+    final long directiveBytes = CACHE_CAPACITY - ADAPTIVE_CACHE_CAPACITY;
+    final Path bigFile = new Path("/bigFile");
+    DFSTestUtil.createFile(fs, bigFile, directiveBytes, (short)1, 0xcafe);
+    final DistributedFileSystem dfs = cluster.getFileSystem();
+    dfs.addCachePool(new CachePoolInfo("pool"));
+    final long directiveId = dfs.addCacheDirective(
+        new CacheDirectiveInfo.Builder().setPool("pool").setPath(bigFile)
+            .setReplication((short)1).build());
+    DFSTestUtil.verifyExpectedCacheUsage(directiveBytes,
+        numAdaptiveBlocks + directiveBytes / BLOCK_SIZE, fsd);
+    assertEquals(0, fsd.getNumBlocksFailedToCache());
+
+    dfs.removeCacheDirective(directiveId);
+    fs.delete(bigFile, false);
+    for (int i = 0; i < numAdaptiveBlocks; i++) {
+      fs.delete(new Path("/hotFile" + i), false);
+    }
+    DFSTestUtil.verifyExpectedCacheUsage(0, 0, fsd);
+  }
 }
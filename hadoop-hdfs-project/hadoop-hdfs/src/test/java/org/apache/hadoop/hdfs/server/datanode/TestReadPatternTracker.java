@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.ReadPatternTracker.Pattern;
+import org.apache.hadoop.hdfs.server.datanode.ReadPatternTracker.StreamRead;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ReadPatternTracker}.
+ */
+public class TestReadPatternTracker {
+  private static final long BASE = 1024;
+  private static final long MAX = 8 * 1024;
+  private static final ExtendedBlock BLOCK = new ExtendedBlock("bp", 1);
+  /** A gap between reads that is too long to be sequential. */
+  private static final long STRIDE =
+      ReadPatternTracker.SEQUENTIAL_GAP_BYTES + 1;
+
+  private final ReadPatternTracker tracker =
+      new ReadPatternTracker(BASE, MAX);
+
+  @Test
+  public void testSequential() {
+    StreamRead read = tracker.startRead("c", BLOCK, 0, 100);
+    assertEquals(Pattern.UNKNOWN, read.getPattern());
+    assertEquals(BASE, read.getReadaheadLength());
+    assertTrue(read.isReadaheadPastRequest());
+
+    long expectedWindow = BASE;
+    for (long start = 100; start < 1000; start += 100) {
+      read = tracker.startRead("c", BLOCK, start, start + 100);
+      assertEquals(Pattern.SEQUENTIAL, read.getPattern());
+      assertEquals(expectedWindow, read.getReadaheadLength());
+      assertEquals(expectedWindow == MAX, read.isDropBehind());
+      expectedWindow = Math.min(MAX, expectedWindow * 2);
+    }
+    assertTrue(read.isDropBehind());
+
+    // Another client reading the same block is a separate stream.
+    assertEquals(Pattern.UNKNOWN,
+        tracker.startRead("d", BLOCK, 1000, 1100).getPattern());
+    assertEquals(2, tracker.size());
+  }
+
+  @Test
+  public void testStridedAndRandom() {
+    tracker.startRead("c", BLOCK, 0, 100);
+    // skip STRIDE bytes
+    StreamRead read = tracker.startRead("c", BLOCK, STRIDE + 100,
+        STRIDE + 200);
+    assertEquals(Pattern.RANDOM, read.getPattern());
+    assertFalse(read.isReadaheadPastRequest());
+    assertEquals(0, read.getPrefetchLength());
+
+    // skip STRIDE bytes again
+    read = tracker.startRead("c", BLOCK, 2 * STRIDE + 200, 2 * STRIDE + 300);
+    assertEquals(Pattern.STRIDED, read.getPattern());
+    assertFalse(read.isReadaheadPastRequest());
+    assertEquals(3 * STRIDE + 300, read.getPrefetchOffset());
+    assertEquals(100, read.getPrefetchLength());
+
+    read = tracker.startRead("c", BLOCK, 0, 100);
+    assertEquals(Pattern.RANDOM, read.getPattern());
+  }
+
+  @Test
+  public void testHitAndWastedBytes() {
+    StreamRead read = tracker.startRead("c", BLOCK, 0, 100);
+    // read ahead up to 1100 while reading the first 100 bytes
+    assertEquals(0, tracker.endRead(read, 100, 0, 1100));
+
+    read = tracker.startRead("c", BLOCK, 100, 300);
+    assertEquals(200, read.getHitBytes());
+    assertEquals(0, read.getWastedBytes());
+    assertEquals(0, tracker.endRead(read, 300, 0, 0));
+
+    // skip 200 bytes that were read ahead
+    read = tracker.startRead("c", BLOCK, 500, 600);
+    assertEquals(100, read.getHitBytes());
+    assertEquals(200, read.getWastedBytes());
+    assertEquals(0, tracker.endRead(read, 600, 0, 0));
+
+    // jump away from the remaining 500 bytes read ahead
+    read = tracker.startRead("c", BLOCK, 5000, 5100);
+    assertEquals(0, read.getHitBytes());
+    assertEquals(500, read.getWastedBytes());
+    assertEquals(0, tracker.endRead(read, 5100, 0, 0));
+  }
+
+  @Test
+  public void testStridedPrefetchIsHit() {
+    tracker.startRead("c", BLOCK, 0, 100);
+    tracker.startRead("c", BLOCK, STRIDE + 100, STRIDE + 200);
+    StreamRead read =
+        tracker.startRead("c", BLOCK, 2 * STRIDE + 200, 2 * STRIDE + 300);
+    assertEquals(Pattern.STRIDED, read.getPattern());
+    assertEquals(0, tracker.endRead(read, 2 * STRIDE + 300,
+        read.getPrefetchOffset(),
+        read.getPrefetchOffset() + read.getPrefetchLength()));
+
+    read = tracker.startRead("c", BLOCK, 3 * STRIDE + 300, 3 * STRIDE + 400);
+    assertEquals(Pattern.STRIDED, read.getPattern());
+    assertEquals(100, read.getHitBytes());
+    assertEquals(0, read.getWastedBytes());
+  }
+}
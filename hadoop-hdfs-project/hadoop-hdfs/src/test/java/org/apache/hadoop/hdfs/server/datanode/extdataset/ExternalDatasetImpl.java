@@ -239,6 +239,10 @@ public boolean isCached(String bpid, long blockId) {
     return false;
   }
 
+  @Override // FsDatasetSpi
+  public void onBlockRead(String bpid, long blockId) {
+  }
+
   @Override
   public void handleVolumeFailures(Set<FsVolumeSpi> failedVolumes) {
   }
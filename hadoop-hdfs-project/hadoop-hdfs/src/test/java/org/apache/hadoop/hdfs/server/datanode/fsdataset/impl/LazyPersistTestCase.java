@@ -258,7 +258,9 @@ protected final void startUpCluster(
       long maxLockedMemory,
       boolean useSCR,
       boolean useLegacyBlockReaderLocal,
-      boolean disableScrubber) throws IOException {
+      boolean disableScrubber,
+      int lazyWriterIntervalSec,
+      long ramDiskWriteBackpressureMs) throws IOException {
 
     initCacheManipulator();
     Configuration conf = new Configuration();
@@ -273,7 +275,9 @@ protected final void startUpCluster(
     conf.setInt(DFS_NAMENODE_HEARTBEAT_RECHECK_INTERVAL_KEY,
                 HEARTBEAT_RECHECK_INTERVAL_MSEC);
     conf.setInt(DFS_DATANODE_LAZY_WRITER_INTERVAL_SEC,
-                LAZY_WRITER_INTERVAL_SEC);
+                lazyWriterIntervalSec);
+    conf.setLong(DFS_DATANODE_RAM_DISK_WRITE_BACKPRESSURE_MS_KEY,
+                 ramDiskWriteBackpressureMs);
     conf.setInt(DFSConfigKeys.DFS_NAMENODE_SAFEMODE_MIN_DATANODES_KEY, 1);
     conf.setLong(DFS_DATANODE_MAX_LOCKED_MEMORY_KEY, maxLockedMemory);
 
@@ -411,11 +415,23 @@ public ClusterWithRamDiskBuilder disableScrubber() {
       return this;
     }
 
+    public ClusterWithRamDiskBuilder setLazyWriterIntervalSec(
+        int lazyWriterIntervalSec) {
+      this.lazyWriterIntervalSec = lazyWriterIntervalSec;
+      return this;
+    }
+
+    public ClusterWithRamDiskBuilder setRamDiskWriteBackpressureMs(
+        long ramDiskWriteBackpressureMs) {
+      this.ramDiskWriteBackpressureMs = ramDiskWriteBackpressureMs;
+      return this;
+    }
+
     public void build() throws IOException {
       LazyPersistTestCase.this.startUpCluster(
           numDatanodes, hasTransientStorage, storageTypes, ramDiskReplicaCapacity,
           ramDiskStorageLimit, maxLockedMemory, useScr, useLegacyBlockReaderLocal,
-          disableScrubber);
+          disableScrubber, lazyWriterIntervalSec, ramDiskWriteBackpressureMs);
     }
 
     private int numDatanodes = REPL_FACTOR;
@@ -427,6 +443,8 @@ public void build() throws IOException {
     private boolean useScr = false;
     private boolean useLegacyBlockReaderLocal = false;
     private boolean disableScrubber=false;
+    private int lazyWriterIntervalSec = LAZY_WRITER_INTERVAL_SEC;
+    private long ramDiskWriteBackpressureMs = 0;
   }
 
   protected final void triggerBlockReport()
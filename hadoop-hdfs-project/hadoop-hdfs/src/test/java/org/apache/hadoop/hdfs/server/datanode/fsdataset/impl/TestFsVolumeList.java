@@ -108,6 +108,43 @@ public Boolean get() {
     }
   }
 
+  @Test(timeout=30000)
+  public void testGetNextVolumeDeprioritizesSlowVolume() throws IOException {
+    FsVolumeList volumeList = new FsVolumeList(
+        Collections.<VolumeFailureInfo>emptyList(), blockScanner, blockChooser);
+    final List<FsVolumeImpl> volumes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      File curDir = new File(baseDir, "slowvolume-" + i);
+      curDir.mkdirs();
+      FsVolumeImpl volume = new FsVolumeImplBuilder()
+          .setConf(conf)
+          .setDataset(dataset)
+          .setStorageID("storage-id-" + i)
+          .setStorageDirectory(
+              new StorageDirectory(StorageLocation.parse(curDir.getPath())))
+          .build();
+      volume.setCapacityForTesting(1024 * 1024 * 1024);
+      volumes.add(volume);
+      volumeList.addVolume(volume.obtainReference());
+    }
+
+    volumes.get(1).getMetrics().setSlow(true);
+    for (int i = 0; i < 10; i++) {
+      try (FsVolumeReference ref =
+          volumeList.getNextVolume(StorageType.DEFAULT, null, 128)) {
+        assertNotEquals(volumes.get(1), ref.getVolume());
+      }
+    }
+
+    // The slow volume is still used once the others are full.
+    volumes.get(0).setCapacityForTesting(0);
+    volumes.get(2).setCapacityForTesting(0);
+    try (FsVolumeReference ref =
+        volumeList.getNextVolume(StorageType.DEFAULT, null, 128)) {
+      assertEquals(volumes.get(1), ref.getVolume());
+    }
+  }
+
   @Test(timeout=30000)
   public void testReleaseVolumeRefIfNoBlockScanner() throws IOException {
     FsVolumeList volumeList = new FsVolumeList(
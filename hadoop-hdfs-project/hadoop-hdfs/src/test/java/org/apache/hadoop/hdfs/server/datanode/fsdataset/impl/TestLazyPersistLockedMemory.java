@@ -32,7 +32,13 @@
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
 import static org.apache.hadoop.fs.CreateFlag.CREATE;
@@ -41,6 +47,7 @@
 import static org.apache.hadoop.fs.StorageType.RAM_DISK;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Verify that locked memory is used correctly when writing to replicas in
@@ -124,6 +131,61 @@ public void testReleaseOnEviction() throws Exception {
     waitForLockedBytesUsed(fsd, 0);
   }
 
+  /**
+   * Fill locked memory with replicas that are not persisted yet.  New
+   * writers then wait for the lazy writer instead of falling back to disk,
+   * and go on writing to RAM disk once it has persisted the replicas they
+   * evict.
+   */
+  @Test
+  public void testWriteBackpressure() throws Exception {
+    // Keep the lazy writer idle until a waiting writer wakes it up.
+    getClusterBuilder().setNumDatanodes(1)
+                       .setMaxLockedMemory(2 * BLOCK_SIZE)
+                       .setLazyWriterIntervalSec(600)
+                       .setRamDiskWriteBackpressureMs(60000)
+                       .build();
+    final String METHOD_NAME = GenericTestUtils.getMethodName();
+    final FsDatasetSpi<?> fsd = cluster.getDataNodes().get(0).getFSDataset();
+
+    for (int i = 0; i < 2; i++) {
+      Path path = new Path("/" + METHOD_NAME + ".0" + i + ".dat");
+      makeTestFile(path, BLOCK_SIZE, true);
+      ensureFileReplicasOnStorageType(path, RAM_DISK);
+    }
+    assertThat(fsd.getCacheUsed(), is(2L * BLOCK_SIZE));
+    waitForMetric("RamDiskBlocksLazyPersisted", 0);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<Void>> writers = new ArrayList<>();
+      for (int i = 2; i < 4; i++) {
+        final Path path = new Path("/" + METHOD_NAME + ".0" + i + ".dat");
+        writers.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            makeTestFile(path, BLOCK_SIZE, true);
+            ensureFileReplicasOnStorageType(path, RAM_DISK);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> writer : writers) {
+        writer.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verifyRamDiskJMXMetric("RamDiskBlocksLazyPersisted", 2);
+    verifyRamDiskJMXMetric("RamDiskBlocksEvicted", 2);
+    // A writer that comes in after the first replicas are persisted can
+    // evict one right away, so only the first one has to wait.
+    assertTrue(Integer.parseInt(
+        jmx.getValue("RamDiskBlocksWriteBackpressure")) >= 1);
+    assertThat(fsd.getCacheUsed(), is(2L * BLOCK_SIZE));
+  }
+
   /**
    * Verify that locked bytes are correctly updated when a block is finalized
    * at less than its max length.
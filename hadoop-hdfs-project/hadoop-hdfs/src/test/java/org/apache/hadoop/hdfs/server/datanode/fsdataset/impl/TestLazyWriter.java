@@ -56,6 +56,31 @@ public void testLazyPersistBlocksAreSaved()
     ensureLazyPersistBlocksAreSaved(locatedBlocks);
   }
 
+  /**
+   * The replicas that one pass of the lazy writer persists to the same
+   * volume are copied by a single task.
+   */
+  @Test
+  public void testLazyPersistBlocksAreBatched()
+      throws IOException, InterruptedException, TimeoutException {
+    // Keep the lazy writer idle until it is woken up below.
+    getClusterBuilder().setLazyWriterIntervalSec(600).build();
+    final int NUM_BLOCKS = 4;
+    final String METHOD_NAME = GenericTestUtils.getMethodName();
+    Path path = new Path("/" + METHOD_NAME + ".dat");
+
+    makeTestFile(path, BLOCK_SIZE * NUM_BLOCKS, true);
+    LocatedBlocks locatedBlocks = ensureFileReplicasOnStorageType(path, RAM_DISK);
+    waitForMetric("RamDiskBlocksLazyPersisted", 0);
+
+    FsDatasetImpl fsd =
+        (FsDatasetImpl) cluster.getDataNodes().get(0).getFSDataset();
+    ((FsDatasetImpl.LazyWriter) fsd.lazyWriter.getRunnable()).wakeUp();
+    waitForMetric("RamDiskBlocksLazyPersisted", NUM_BLOCKS);
+    waitForMetric("RamDiskLazyPersistTasks", 1);
+    ensureLazyPersistBlocksAreSaved(locatedBlocks);
+  }
+
   @Test
   public void testSynchronousEviction() throws Exception {
     getClusterBuilder().setMaxLockedMemory(BLOCK_SIZE).build();
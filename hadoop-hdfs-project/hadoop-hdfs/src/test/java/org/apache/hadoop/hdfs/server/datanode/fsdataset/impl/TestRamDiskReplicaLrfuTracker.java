@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RamDiskReplicaLrfuTracker}.
+ */
+public class TestRamDiskReplicaLrfuTracker {
+  private static final String BPID = "bp";
+  private static final long HALF_LIFE_MS = 60 * 60 * 1000;
+
+  private RamDiskReplicaLrfuTracker tracker;
+
+  @Before
+  public void setUp() {
+    Configuration conf = new Configuration();
+    conf.setClass(DFSConfigKeys.DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_KEY,
+        RamDiskReplicaLrfuTracker.class, RamDiskReplicaTracker.class);
+    conf.setLong(
+        DFSConfigKeys.DFS_DATANODE_RAM_DISK_REPLICA_TRACKER_LRFU_HALF_LIFE_MS_KEY,
+        HALF_LIFE_MS);
+    tracker = (RamDiskReplicaLrfuTracker)
+        RamDiskReplicaTracker.getInstance(conf, null);
+  }
+
+  @Test
+  public void testScoreDecay() {
+    double once = tracker.addAccess(Double.NEGATIVE_INFINITY, 0);
+    double twice = tracker.addAccess(once, 0);
+    // Two accesses at time 0 score as much as one access a half-life later.
+    assertEquals(twice,
+        tracker.addAccess(Double.NEGATIVE_INFINITY, HALF_LIFE_MS), 1e-9);
+    assertTrue(tracker.addAccess(twice, HALF_LIFE_MS) >
+        tracker.addAccess(once, HALF_LIFE_MS));
+  }
+
+  @Test
+  public void testEvictsLeastFrequentlyRead() {
+    for (long blockId = 1; blockId <= 3; blockId++) {
+      tracker.addReplica(BPID, blockId, null, 0);
+    }
+    assertEquals(3, tracker.numReplicasNotPersisted());
+    // Reads before a replica is persisted count as well.
+    tracker.touch(BPID, 1);
+    for (long blockId = 1; blockId <= 3; blockId++) {
+      assertEquals(blockId,
+          tracker.dequeueNextReplicaToPersist().getBlockId());
+      tracker.recordEndLazyPersist(BPID, blockId,
+          new File[] {new File("meta"), new File("block")});
+    }
+    assertEquals(0, tracker.numReplicasNotPersisted());
+
+    // Replica 1 is read most often but not most recently. LRU would evict
+    // it first.
+    tracker.touch(BPID, 1);
+    tracker.touch(BPID, 1);
+    tracker.touch(BPID, 2);
+
+    assertEquals(3, tracker.getNextCandidateForEviction().getBlockId());
+    assertEquals(2, tracker.getNextCandidateForEviction().getBlockId());
+    tracker.discardReplica(BPID, 1, false);
+    assertNull(tracker.getNextCandidateForEviction());
+  }
+}
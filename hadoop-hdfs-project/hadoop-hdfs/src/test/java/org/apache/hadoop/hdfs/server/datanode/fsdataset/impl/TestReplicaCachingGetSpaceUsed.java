@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.namenode.TestFileTruncate;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the in-memory accounting of the space used by a block pool slice.
+ */
+public class TestReplicaCachingGetSpaceUsed {
+  private static final int BLOCK_SIZE = 1024;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private FsDatasetImpl dataset;
+  private FsVolumeImpl volume;
+  private String bpid;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DN_DFSUSED_REPLICA_ACCOUNTING_ENABLED_KEY, true);
+    // the test verifies the accounted space itself
+    conf.setLong(
+        DFSConfigKeys.DFS_DN_DFSUSED_REPLICA_ACCOUNTING_VERIFY_INTERVAL_MS_KEY,
+        0);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).storagesPerDatanode(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    DataNode dn = cluster.getDataNodes().get(0);
+    dataset = (FsDatasetImpl) dn.getFSDataset();
+    try (FsDatasetSpi.FsVolumeReferences volumes =
+        dataset.getFsVolumeReferences()) {
+      volume = (FsVolumeImpl) volumes.get(0);
+    }
+    bpid = cluster.getNamesystem().getBlockPoolId();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testAccounting() throws Exception {
+    assertTrue(volume.getBlockPoolSlice(bpid).getDfsUsage()
+        instanceof ReplicaCachingGetSpaceUsed);
+    final Path file = new Path("/file");
+    DFSTestUtil.createFile(fs, file, 3 * BLOCK_SIZE + 100, (short) 1, 0L);
+    assertAccounted();
+
+    try (FSDataOutputStream out = fs.append(file)) {
+      out.write(new byte[BLOCK_SIZE / 2]);
+    }
+    assertAccounted();
+
+    if (!fs.truncate(file, 2 * BLOCK_SIZE + 10)) {
+      TestFileTruncate.checkBlockRecovery(file, fs);
+    }
+    assertAccounted();
+
+    fs.delete(file, false);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return volume.getBlockPoolUsed(bpid) == 0;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+    }, 100, 30000);
+    assertAccounted();
+  }
+
+  @Test(timeout = 60000)
+  public void testVerificationCorrectsDrift() throws Exception {
+    DFSTestUtil.createFile(fs, new Path("/file"), 2 * BLOCK_SIZE, (short) 1,
+        0L);
+    long used = volume.getBlockPoolUsed(bpid);
+    volume.incDfsUsed(bpid, 12345);
+    assertEquals(used + 12345, volume.getBlockPoolUsed(bpid));
+
+    ReplicaCachingGetSpaceUsed spaceUsed = (ReplicaCachingGetSpaceUsed)
+        volume.getBlockPoolSlice(bpid).getDfsUsage();
+    assertEquals(-12345, spaceUsed.verify(dataset.volumeMap));
+    assertEquals(used, volume.getBlockPoolUsed(bpid));
+    assertEquals(0, spaceUsed.verify(dataset.volumeMap));
+  }
+
+  @Test(timeout = 60000)
+  public void testNoVerificationWhileDeleting() throws Exception {
+    DFSTestUtil.createFile(fs, new Path("/file"), 2 * BLOCK_SIZE, (short) 1,
+        0L);
+    long used = volume.getBlockPoolUsed(bpid);
+    volume.incDfsUsed(bpid, 12345);
+    ReplicaCachingGetSpaceUsed spaceUsed = (ReplicaCachingGetSpaceUsed)
+        volume.getBlockPoolSlice(bpid).getDfsUsage();
+
+    // Hold a task in the deletion queue of the volume.
+    final CountDownLatch release = new CountDownLatch(1);
+    dataset.asyncDiskService.execute(volume, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    spaceUsed.refresh();
+    assertEquals(used + 12345, volume.getBlockPoolUsed(bpid));
+
+    release.countDown();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return dataset.asyncDiskService.countPendingDeletions(volume) == 0;
+      }
+    }, 10, 10000);
+    spaceUsed.refresh();
+    assertEquals(used, volume.getBlockPoolUsed(bpid));
+  }
+
+  /**
+   * Assert that the accounted space equals the lengths of the files of the
+   * finalized replicas, without running the verification.
+   */
+  private void assertAccounted() throws IOException {
+    long expected = 0;
+    for (ReplicaInfo replica : dataset.getFinalizedBlocks(bpid)) {
+      expected += replica.getBlockDataLength() + replica.getMetadataLength();
+    }
+    assertEquals(expected, volume.getBlockPoolUsed(bpid));
+  }
+}
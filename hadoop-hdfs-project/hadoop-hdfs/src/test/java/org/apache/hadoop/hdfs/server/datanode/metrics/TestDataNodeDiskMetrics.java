@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.datanode.DNConf;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the slow volume detection and the latency histogram output of
+ * {@link DataNodeDiskMetrics}.
+ */
+public class TestDataNodeDiskMetrics {
+  private static final int NUM_VOLUMES = 5;
+  private static final long FAST_LATENCY_US = 1000;
+  private static final long SLOW_LATENCY_US = 100000;
+
+  private final List<DataNodeVolumeMetrics> allMetrics = new ArrayList<>();
+  private DataNodeDiskMetrics diskMetrics;
+
+  @Before
+  public void setup() {
+    DNConf dnConf = mock(DNConf.class);
+    when(dnConf.isSlowVolumeDeprioritizeEnabled()).thenReturn(true);
+    FsDatasetSpi<?> dataset = mock(FsDatasetSpi.class);
+    // Without volumes the detector thread exits right away, so the tests
+    // drive the detection themselves.
+    doReturn(new FsDatasetSpi.FsVolumeReferences(
+        Collections.<FsVolumeSpi>emptyList()))
+        .when(dataset).getFsVolumeReferences();
+    DataNode dn = mock(DataNode.class);
+    when(dn.getDnConf()).thenReturn(dnConf);
+    doReturn(dataset).when(dn).getFSDataset();
+    diskMetrics = new DataNodeDiskMetrics(dn, 60_000);
+  }
+
+  @After
+  public void tearDown() {
+    diskMetrics.shutdownAndWait();
+    for (DataNodeVolumeMetrics metrics : allMetrics) {
+      metrics.unRegister();
+    }
+    allMetrics.clear();
+  }
+
+  private DataNodeVolumeMetrics createMetrics(String name) {
+    DataNodeVolumeMetrics metrics =
+        DataNodeVolumeMetrics.create(new Configuration(), name);
+    allMetrics.add(metrics);
+    return metrics;
+  }
+
+  private static void addWriteSamples(DataNodeVolumeMetrics metrics,
+      long latencyUs) {
+    for (int i = 0; i < 100; i++) {
+      metrics.getWriteIoLatencyHistogram().add(latencyUs);
+    }
+  }
+
+  /**
+   * A volume whose tail write latency is far above that of its peers is
+   * marked slow, and is no longer slow once it catches up.
+   */
+  @Test
+  public void testSlowVolumeIsDeprioritized() {
+    Map<String, DataNodeVolumeMetrics> volumeMetrics = new HashMap<>();
+    for (int i = 0; i < NUM_VOLUMES; i++) {
+      volumeMetrics.put("/data" + i,
+          createMetrics("testSlowVolumeIsDeprioritized-" + i));
+    }
+    DataNodeVolumeMetrics slowMetrics = volumeMetrics.get("/data0");
+
+    for (Map.Entry<String, DataNodeVolumeMetrics> entry :
+        volumeMetrics.entrySet()) {
+      addWriteSamples(entry.getValue(),
+          entry.getValue() == slowMetrics ? SLOW_LATENCY_US : FAST_LATENCY_US);
+      entry.getValue().rollLatencyHistograms();
+    }
+    diskMetrics.detectAndUpdateSlowVolumes(volumeMetrics);
+    assertEquals(Collections.singleton("/data0"),
+        diskMetrics.getSlowVolumes());
+    for (Map.Entry<String, DataNodeVolumeMetrics> entry :
+        volumeMetrics.entrySet()) {
+      assertEquals(entry.getKey(), entry.getValue() == slowMetrics,
+          entry.getValue().isSlow());
+    }
+    assertEquals(1, slowMetrics.getSlowVolume());
+
+    // Only the samples of the last interval count, so the slow volume
+    // recovers as soon as it is as fast as the others.
+    for (DataNodeVolumeMetrics metrics : volumeMetrics.values()) {
+      addWriteSamples(metrics, FAST_LATENCY_US);
+      metrics.rollLatencyHistograms();
+    }
+    diskMetrics.detectAndUpdateSlowVolumes(volumeMetrics);
+    assertTrue(diskMetrics.getSlowVolumes().isEmpty());
+    for (DataNodeVolumeMetrics metrics : volumeMetrics.values()) {
+      assertFalse(metrics.isSlow());
+    }
+    assertEquals(0, slowMetrics.getSlowVolume());
+  }
+
+  /**
+   * Volumes are not compared when there are too few of them.
+   */
+  @Test
+  public void testTooFewVolumes() {
+    Map<String, DataNodeVolumeMetrics> volumeMetrics = new HashMap<>();
+    for (int i = 0; i < NUM_VOLUMES - 1; i++) {
+      DataNodeVolumeMetrics metrics =
+          createMetrics("testTooFewVolumes-" + i);
+      addWriteSamples(metrics, i == 0 ? SLOW_LATENCY_US : FAST_LATENCY_US);
+      metrics.rollLatencyHistograms();
+      volumeMetrics.put("/data" + i, metrics);
+    }
+    diskMetrics.detectAndUpdateSlowVolumes(volumeMetrics);
+    assertTrue(diskMetrics.getSlowVolumes().isEmpty());
+    assertFalse(volumeMetrics.get("/data0").isSlow());
+  }
+
+  @Test
+  public void testWriteLatencyHistograms() {
+    List<FsVolumeSpi> volumes = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      DataNodeVolumeMetrics metrics =
+          createMetrics("testWriteLatencyHistograms-" + i);
+      addWriteSamples(metrics, i == 0 ? FAST_LATENCY_US : SLOW_LATENCY_US);
+      metrics.getReadIoLatencyHistogram().add(FAST_LATENCY_US);
+      FsVolumeSpi volume = mock(FsVolumeSpi.class);
+      when(volume.getMetrics()).thenReturn(metrics);
+      when(volume.getBaseURI()).thenReturn(new File("/data" + i).toURI());
+      volumes.add(volume);
+    }
+    // A volume without metrics is skipped.
+    volumes.add(mock(FsVolumeSpi.class));
+
+    StringBuilder buffer = new StringBuilder();
+    DataNodeDiskMetrics.writeLatencyHistograms(buffer, volumes);
+    String output = buffer.toString();
+
+    String write = "hadoop_datanode_volume_write_io_latency_us";
+    String read = "hadoop_datanode_volume_read_io_latency_us";
+    for (String name : new String[] {
+        "hadoop_datanode_volume_metadata_op_latency_us", read, write,
+        "hadoop_datanode_volume_sync_io_latency_us"}) {
+      assertTrue(output, output.contains("# TYPE " + name + " histogram\n"));
+    }
+    // The buckets are cumulative and bounded by powers of two.
+    assertTrue(output, output.contains(
+        write + "_bucket{volume=\"/data0\",le=\"511\"} 0\n"));
+    assertTrue(output, output.contains(
+        write + "_bucket{volume=\"/data0\",le=\"1023\"} 100\n"));
+    assertTrue(output, output.contains(
+        write + "_bucket{volume=\"/data0\",le=\"+Inf\"} 100\n"));
+    assertTrue(output, output.contains(
+        write + "_sum{volume=\"/data0\"} " + 100 * FAST_LATENCY_US + "\n"));
+    assertTrue(output, output.contains(
+        write + "_count{volume=\"/data0\"} 100\n"));
+    assertTrue(output, output.contains(
+        write + "_bucket{volume=\"/data1\",le=\"65535\"} 0\n"));
+    assertTrue(output, output.contains(
+        write + "_bucket{volume=\"/data1\",le=\"131071\"} 100\n"));
+    assertTrue(output, output.contains(
+        read + "_count{volume=\"/data1\"} 1\n"));
+
+    // Every sample line is a name, optional labels and a value.
+    for (String line : output.split("\n")) {
+      assertTrue(line, line.startsWith("# TYPE ")
+          || line.matches("[a-z_]+\\{[^}]*\\} [0-9]+"));
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ */
+public class TestLatencyHistogram {
+
+  @Test
+  public void testBuckets() {
+    int last = -1;
+    for (long v = 0; v < 100000; v++) {
+      int index = LatencyHistogram.bucketIndex(v);
+      // buckets are contiguous and each value is below its upper bound
+      assertTrue(index == last || index == last + 1);
+      assertTrue(v < LatencyHistogram.bucketUpperBound(index));
+      if (index > 0) {
+        assertTrue(v >= LatencyHistogram.bucketUpperBound(index - 1));
+      }
+      last = index;
+    }
+    assertEquals(LatencyHistogram.NUM_BUCKETS - 1,
+        LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE,
+        LatencyHistogram.bucketUpperBound(LatencyHistogram.NUM_BUCKETS - 1));
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.add(i);
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(500500, snapshot.getSum());
+    assertPercentile(500, snapshot.getPercentile(0.5));
+    assertPercentile(990, snapshot.getPercentile(0.99));
+    assertEquals(1, snapshot.getPercentile(0));
+
+    // Only the values recorded after the first snapshot count.
+    for (int i = 0; i < 100; i++) {
+      histogram.add(100000);
+    }
+    LatencyHistogram.Snapshot interval =
+        histogram.snapshot().minus(snapshot);
+    assertEquals(100, interval.getCount());
+    assertPercentile(100000, interval.getPercentile(0.5));
+    assertEquals(0, new LatencyHistogram().snapshot().getPercentile(0.99));
+  }
+
+  @Test
+  public void testWritePrometheus() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.add(0);
+    histogram.add(3);
+    histogram.add(4);
+    histogram.add(1000);
+    StringBuilder sb = new StringBuilder();
+    histogram.snapshot().writePrometheus(sb, "lat", "volume=\"/d\"");
+    String out = sb.toString();
+    assertTrue(out, out.contains("lat_bucket{volume=\"/d\",le=\"0\"} 1\n"));
+    assertTrue(out, out.contains("lat_bucket{volume=\"/d\",le=\"3\"} 2\n"));
+    assertTrue(out, out.contains("lat_bucket{volume=\"/d\",le=\"7\"} 3\n"));
+    assertTrue(out, out.contains("lat_bucket{volume=\"/d\",le=\"511\"} 3\n"));
+    assertTrue(out, out.contains("lat_bucket{volume=\"/d\",le=\"1023\"} 4\n"));
+    assertTrue(out, out.contains("lat_bucket{volume=\"/d\",le=\"+Inf\"} 4\n"));
+    assertTrue(out, out.contains("lat_sum{volume=\"/d\"} 1007\n"));
+    assertTrue(out, out.contains("lat_count{volume=\"/d\"} 4\n"));
+  }
+
+  /**
+   * The reported percentile is the upper bound of its bucket, which is at
+   * most 25% above the exact value.
+   */
+  private static void assertPercentile(long expected, long actual) {
+    assertTrue("expected " + expected + " but was " + actual,
+        actual >= expected && actual <= expected * 1.25);
+  }
+}
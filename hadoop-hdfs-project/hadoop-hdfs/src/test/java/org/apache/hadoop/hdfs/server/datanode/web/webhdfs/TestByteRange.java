@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.web.webhdfs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestByteRange {
+  @Test
+  public void testParse() {
+    ByteRange range = ByteRange.parse("bytes=10-19", 100);
+    Assert.assertTrue(range.isSatisfiable());
+    Assert.assertEquals(10, range.getStart());
+    Assert.assertEquals(10, range.getLength());
+    Assert.assertEquals("bytes 10-19/100", range.toContentRange());
+
+    range = ByteRange.parse("bytes=90-", 100);
+    Assert.assertEquals(90, range.getStart());
+    Assert.assertEquals(10, range.getLength());
+
+    range = ByteRange.parse("bytes=-30", 100);
+    Assert.assertEquals(70, range.getStart());
+    Assert.assertEquals(30, range.getLength());
+
+    // The last byte is past the end.
+    range = ByteRange.parse("bytes=50-500", 100);
+    Assert.assertEquals("bytes 50-99/100", range.toContentRange());
+
+    range = ByteRange.parse("bytes=-500", 100);
+    Assert.assertEquals("bytes 0-99/100", range.toContentRange());
+  }
+
+  @Test
+  public void testUnsatisfiable() {
+    ByteRange range = ByteRange.parse("bytes=100-", 100);
+    Assert.assertFalse(range.isSatisfiable());
+    Assert.assertEquals("bytes */100", range.toContentRange());
+    Assert.assertFalse(ByteRange.parse("bytes=200-300", 100).isSatisfiable());
+    Assert.assertFalse(ByteRange.parse("bytes=-0", 100).isSatisfiable());
+    Assert.assertFalse(ByteRange.parse("bytes=-10", 0).isSatisfiable());
+  }
+
+  @Test
+  public void testIgnored() {
+    Assert.assertNull(ByteRange.parse(null, 100));
+    Assert.assertNull(ByteRange.parse("items=0-1", 100));
+    Assert.assertNull(ByteRange.parse("bytes=0-1,5-6", 100));
+    Assert.assertNull(ByteRange.parse("bytes=5-1", 100));
+    Assert.assertNull(ByteRange.parse("bytes=a-b", 100));
+    Assert.assertNull(ByteRange.parse("bytes=10", 100));
+  }
+}
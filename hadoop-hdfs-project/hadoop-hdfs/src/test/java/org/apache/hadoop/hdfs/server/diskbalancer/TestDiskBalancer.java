@@ -163,9 +163,22 @@ public void testDiskBalancerEndToEnd() throws Exception {
   @Test
   public void testBalanceDataBetweenMultiplePairsOfVolumes()
       throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DISK_BALANCER_ENABLED, true);
+    balanceDataBetweenMultiplePairsOfVolumes(conf);
+  }
 
+  @Test
+  public void testBalanceDataBetweenMultiplePairsOfVolumesConcurrently()
+      throws Exception {
     Configuration conf = new HdfsConfiguration();
     conf.setBoolean(DFSConfigKeys.DFS_DISK_BALANCER_ENABLED, true);
+    conf.setInt(DFSConfigKeys.DFS_DISK_BALANCER_MAX_CONCURRENT_MOVES, 2);
+    balanceDataBetweenMultiplePairsOfVolumes(conf);
+  }
+
+  private void balanceDataBetweenMultiplePairsOfVolumes(Configuration conf)
+      throws Exception {
     final int blockCount = 1000;
     final int blockSize = 1024;
 
@@ -196,10 +209,13 @@ public void testBalanceDataBetweenMultiplePairsOfVolumes()
       // so we must have 2 plan steps.
       assertEquals(plan.getVolumeSetPlans().size(), 2);
 
+      final long planStart = Time.now();
       dataMover.executePlan(plan);
+      final long planEnd = Time.now();
       dataMover.verifyPlanExectionDone();
       dataMover.verifyAllVolumesHaveData();
       dataMover.verifyTolerance(plan, 0, sourceDiskIndex, 10);
+      dataMover.verifyWorkItemProgress(2, planStart, planEnd);
     } finally {
       cluster.shutdown();
     }
@@ -591,6 +607,33 @@ public void verifyPlanExectionDone() throws IOException {
           DiskBalancerWorkStatus.Result.PLAN_DONE);
     }
 
+    /**
+     * Each work item must report its own progress, measured from its own
+     * start time, even when the volume pairs are moved concurrently.
+     */
+    public void verifyWorkItemProgress(int itemCount, long planStart,
+        long planEnd) throws IOException {
+      node = cluster.getDataNodes().get(dataNodeIndex);
+      List<DiskBalancerWorkStatus.DiskBalancerWorkEntry> entries =
+          node.queryDiskBalancerPlan().getCurrentState();
+      assertEquals(itemCount, entries.size());
+      long totalBytesCopied = 0;
+      for (DiskBalancerWorkStatus.DiskBalancerWorkEntry entry : entries) {
+        DiskBalancerWorkItem item = entry.getWorkItem();
+        assertTrue(item.getBlocksCopied() > 0);
+        assertEquals(item.getBlocksCopied() * blockSize,
+            item.getBytesCopied());
+        assertTrue(item.getBytesCopied() <=
+            item.getBytesToCopy() + blockSize);
+        assertTrue(item.getStartTime() >= planStart);
+        assertTrue(item.getStartTime() <= planEnd);
+        assertTrue(item.getSecondsElapsed() * 1000 <=
+            planEnd - item.getStartTime());
+        totalBytesCopied += item.getBytesCopied();
+      }
+      assertTrue(totalBytesCopied <= (long) blockSize * blockCount);
+    }
+
     /**
      * Once diskBalancer is run, all volumes mush has some data.
      */
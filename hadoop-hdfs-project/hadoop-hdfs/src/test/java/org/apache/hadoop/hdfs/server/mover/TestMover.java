@@ -37,6 +37,7 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.security.PrivilegedExceptionAction;
@@ -864,6 +865,53 @@ public void testMoverWhenStoragePolicyUnset() throws Exception {
     }
   }
 
+  @Test(timeout = 300000)
+  public void testParallelScanWithCursor() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    initConf(conf);
+    conf.setInt(DFSConfigKeys.DFS_MOVER_SCAN_THREADS_KEY, 4);
+    conf.setLong(DFSConfigKeys.DFS_MOVER_CURSOR_CHECKPOINT_INTERVAL_KEY, 1L);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(3)
+        .storageTypes(
+            new StorageType[] {StorageType.DISK, StorageType.ARCHIVE})
+        .build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem dfs = cluster.getFileSystem();
+      final Path dir = new Path("/testParallelScanWithCursor");
+      final List<String> files = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        for (int j = 0; j < 3; j++) {
+          final String file = dir + "/dir" + i + "/sub/file" + j;
+          DFSTestUtil.createFile(dfs, new Path(file), 10L, (short) 3, 0L);
+          files.add(file);
+        }
+      }
+
+      // Pretend a previous Mover stopped after scanning dir0 and dir1.
+      final Properties cursor = new Properties();
+      cursor.setProperty(dir.toString(), "dir1");
+      try (OutputStream out = dfs.create(Mover.MOVER_CURSOR_PATH, true)) {
+        cursor.store(out, null);
+      }
+
+      // move to ARCHIVE
+      dfs.setStoragePolicy(dir, "COLD");
+      int rc = ToolRunner.run(conf, new Mover.Cli(),
+          new String[] {"-p", dir.toString()});
+      Assert.assertEquals("Movement to ARCHIVE should be successful", 0, rc);
+
+      // The skipped directories are migrated by the following full round.
+      for (String file : files) {
+        waitForLocatedBlockWithArchiveStorageType(dfs, file, 3);
+      }
+      Assert.assertFalse(dfs.exists(Mover.MOVER_CURSOR_PATH));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   private void createFileWithFavoredDatanodes(final Configuration conf,
       final MiniDFSCluster cluster, final DistributedFileSystem dfs)
           throws IOException {
@@ -310,6 +310,101 @@ public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
     }
     cache.close();
   }
+  @Test(timeout=60000)
+  public void testUnlockedLookups() throws Exception {
+    final ShortCircuitCache cache =
+        new ShortCircuitCache(10, 10000000, 10, 10000000, 1, 10000, 0);
+    final TestFileDescriptorPair pair = new TestFileDescriptorPair();
+    final ExtendedBlockId key = new ExtendedBlockId(123, "test_bp1");
+    ShortCircuitReplicaInfo replicaInfo1 = cache.fetchOrCreate(key,
+        new SimpleReplicaCreator(123, cache, pair));
+    Assert.assertEquals(0, cache.getUnlockedLookups());
+    // The replica is referenced by a reader, so it is fetched without
+    // locking.
+    ShortCircuitReplicaInfo replicaInfo2 = cache.fetchOrCreate(key,
+        new SimpleReplicaCreator(123, cache, pair));
+    Assert.assertSame(replicaInfo1, replicaInfo2);
+    Assert.assertEquals(1, cache.getUnlockedLookups());
+    replicaInfo1.getReplica().unref();
+    replicaInfo2.getReplica().unref();
+    // The replica is evictable, so fetching it takes the lock to remove it
+    // from the eviction list.
+    ShortCircuitReplicaInfo replicaInfo3 = cache.fetchOrCreate(key,
+        new SimpleReplicaCreator(123, cache, pair));
+    Assert.assertSame(replicaInfo1, replicaInfo3);
+    Assert.assertEquals(1, cache.getUnlockedLookups());
+    replicaInfo3.getReplica().unref();
+    cache.accept(new CacheVisitor() {
+      @Override
+      public void visit(int numOutstandingMmaps,
+          Map<ExtendedBlockId, ShortCircuitReplica> replicas,
+          Map<ExtendedBlockId, InvalidToken> failedLoads,
+          LinkedMap evictable,
+          LinkedMap evictableMmapped) {
+        Assert.assertEquals(1, replicas.size());
+        Assert.assertEquals(1, evictable.size());
+      }
+    });
+    pair.close();
+    cache.close();
+  }
+
+  @Test(timeout=60000)
+  public void testShards() throws Exception {
+    final int numShards = 4;
+    final int numBlocks = 32;
+    final ShortCircuitCache cache = new ShortCircuitCache(
+        numBlocks, 10000000, 10, 10000000, 1, 10000, 0, numShards);
+    Assert.assertEquals(numShards, cache.getNumShards());
+    final TestFileDescriptorPair pair = new TestFileDescriptorPair();
+    final Thread[] threads = new Thread[8];
+    final Throwable[] errors = new Throwable[threads.length];
+    for (int t = 0; t < threads.length; t++) {
+      final int index = t;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 1000; i++) {
+              int blockId = (i + index) % numBlocks;
+              ShortCircuitReplicaInfo info = cache.fetchOrCreate(
+                  new ExtendedBlockId(blockId, "test_bp1"),
+                  new SimpleReplicaCreator(blockId, cache, pair));
+              Assert.assertNotNull(info.getReplica());
+              Assert.assertEquals(blockId,
+                  info.getReplica().getKey().getBlockId());
+              info.getReplica().unref();
+            }
+          } catch (Throwable e) {
+            errors[index] = e;
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (int t = 0; t < threads.length; t++) {
+      threads[t].join();
+      if (errors[t] != null) {
+        throw new AssertionError("thread " + t + " failed", errors[t]);
+      }
+    }
+    // All the replicas fit in the cache and are evictable.
+    cache.accept(new CacheVisitor() {
+      @Override
+      public void visit(int numOutstandingMmaps,
+          Map<ExtendedBlockId, ShortCircuitReplica> replicas,
+          Map<ExtendedBlockId, InvalidToken> failedLoads,
+          LinkedMap evictable,
+          LinkedMap evictableMmapped) {
+        Assert.assertEquals(numBlocks, replicas.size());
+        Assert.assertEquals(numBlocks, evictable.size());
+        Assert.assertTrue(failedLoads.isEmpty());
+      }
+    });
+    cache.close();
+    pair.close();
+  }
+
   
   @Test(timeout=60000)
   public void testTimeBasedStaleness() throws Exception {
@@ -851,6 +851,103 @@ public void testWebHdfsOffsetAndLength() throws Exception{
     }
   }
 
+  /**
+   * Test writing and appending with the DataNode writer threads, with a
+   * pending byte limit small enough to pause reading from the client.
+   */
+  @Test
+  public void testWebHdfsWriteThreads() throws Exception {
+    MiniDFSCluster cluster = null;
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setInt(DFSConfigKeys.DFS_WEBHDFS_NETTY_WRITE_THREADS_KEY, 2);
+    conf.setLong(
+        DFSConfigKeys.DFS_WEBHDFS_NETTY_WRITE_MAX_PENDING_BYTES_KEY, 8192);
+    final Path path = new Path("/testWebHdfsWriteThreads");
+    final byte[] contents = new byte[3 << 20];
+    RANDOM.nextBytes(contents);
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      final WebHdfsFileSystem fs = WebHdfsTestUtil.getWebHdfsFileSystem(
+          conf, WebHdfsConstants.WEBHDFS_SCHEME);
+      final int half = contents.length / 2;
+      try (FSDataOutputStream out = fs.create(path)) {
+        out.write(contents, 0, half);
+      }
+      try (FSDataOutputStream out = fs.append(path)) {
+        out.write(contents, half, contents.length - half);
+      }
+      final byte[] written = DFSTestUtil.readFileAsBytes(
+          cluster.getFileSystem(), path);
+      Assert.assertArrayEquals(contents, written);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Test reading files spanning several blocks with zero-copy reads of the
+   * local replicas, and with HTTP range requests.
+   */
+  @Test
+  public void testWebHdfsZeroCopyReadAndRange() throws Exception {
+    MiniDFSCluster cluster = null;
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_WEBHDFS_NETTY_ZERO_COPY_READ_ENABLED_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 4096);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, 512);
+    final int OFFSET = 100;
+    final int LENGTH = 10000;
+    final String PATH = "/foo";
+    byte[] CONTENTS = new byte[3 * 4096 + 100];
+    RANDOM.nextBytes(CONTENTS);
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(2).build();
+      final WebHdfsFileSystem fs =
+          WebHdfsTestUtil.getWebHdfsFileSystem(conf, WebHdfsConstants.WEBHDFS_SCHEME);
+      DFSTestUtil.writeFile(cluster.getFileSystem(), new Path(PATH), CONTENTS);
+      try (FSDataInputStream in = fs.open(new Path(PATH))) {
+        byte[] realContents = new byte[CONTENTS.length];
+        in.readFully(realContents);
+        Assert.assertArrayEquals(CONTENTS, realContents);
+      }
+
+      InetSocketAddress addr = cluster.getNameNode().getHttpAddress();
+      URL url = new URL("http", addr.getHostString(), addr
+          .getPort(), WebHdfsFileSystem.PATH_PREFIX + PATH + "?op=OPEN" +
+          Param.toSortedString("&", new OffsetParam((long) OFFSET),
+                               new LengthParam((long) LENGTH))
+      );
+      // The range is relative to the data selected by offset and length.
+      HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+      conn.setInstanceFollowRedirects(true);
+      conn.setRequestProperty("Range", "bytes=4000-8999");
+      Assert.assertEquals(206, conn.getResponseCode());
+      Assert.assertEquals("bytes 4000-8999/" + LENGTH,
+          conn.getHeaderField("Content-Range"));
+      Assert.assertEquals(5000, conn.getContentLength());
+      byte[] subContents = new byte[5000];
+      byte[] realContents = new byte[5000];
+      System.arraycopy(CONTENTS, OFFSET + 4000, subContents, 0, 5000);
+      IOUtils.readFully(conn.getInputStream(), realContents);
+      Assert.assertArrayEquals(subContents, realContents);
+
+      conn = (HttpURLConnection) url.openConnection();
+      conn.setInstanceFollowRedirects(true);
+      conn.setRequestProperty("Range", "bytes=" + LENGTH + "-");
+      Assert.assertEquals(416, conn.getResponseCode());
+      Assert.assertEquals("bytes */" + LENGTH,
+          conn.getHeaderField("Content-Range"));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   public void testContentSummary() throws Exception {
     MiniDFSCluster cluster = null;
@@ -904,6 +1001,15 @@ public void testWebHdfsPread() throws Exception {
       Assert.assertTrue(preadLen > 0);
       IOUtils.readFully(in, buf, length, 1024 - length);
       Assert.assertArrayEquals(content, buf);
+
+      // pread past the length seen so far, after the file has grown
+      Assert.assertEquals(-1, in.read(1024, buf, 0, 1));
+      try (OutputStream os = fs.append(foo)) {
+        os.write(content, 0, 100);
+      }
+      in.readFully(1024, buf, 0, 100);
+      Assert.assertArrayEquals(Arrays.copyOf(content, 100),
+          Arrays.copyOf(buf, 100));
     } finally {
       if (in != null) {
         in.close();
@@ -912,6 +1018,74 @@ public void testWebHdfsPread() throws Exception {
     }
   }
 
+  @Test(timeout = 60000)
+  public void testWebHdfsReadAhead() throws Exception {
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setInt(HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_THREADS_KEY, 2);
+    conf.setInt(HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_CHUNK_SIZE_KEY,
+        1024);
+    conf.setInt(HdfsClientConfigKeys.DFS_WEBHDFS_READ_AHEAD_WINDOW_KEY, 3);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1)
+        .build();
+    final byte[] content = new byte[10 * 1024 + 100];
+    RANDOM.nextBytes(content);
+    final Path foo = new Path("/foo");
+    try {
+      final WebHdfsFileSystem fs = WebHdfsTestUtil.getWebHdfsFileSystem(conf,
+          WebHdfsConstants.WEBHDFS_SCHEME);
+      try (OutputStream os = fs.create(foo)) {
+        os.write(content);
+      }
+
+      try (FSDataInputStream in = fs.open(foo, 1024)) {
+        // sequential reads across the chunks
+        final byte[] buf = new byte[content.length];
+        IOUtils.readFully(in, buf, 0, 3000);
+        Assert.assertEquals(3000, in.getPos());
+        IOUtils.readFully(in, buf, 3000, content.length - 3000);
+        Assert.assertArrayEquals(content, buf);
+        Assert.assertEquals(-1, in.read());
+
+        // seek backwards and beyond the window
+        in.seek(500);
+        Assert.assertEquals(content[500] & 0xff, in.read());
+        in.seek(9000);
+        final byte[] tail = new byte[content.length - 9000];
+        IOUtils.readFully(in, tail, 0, tail.length);
+        Assert.assertArrayEquals(
+            Arrays.copyOfRange(content, 9000, content.length), tail);
+
+        // preads don't move the read position
+        in.seek(2000);
+        final byte[] range = new byte[1500];
+        in.readFully(5000, range, 0, range.length);
+        Assert.assertArrayEquals(
+            Arrays.copyOfRange(content, 5000, 6500), range);
+        Assert.assertEquals(2000, in.getPos());
+        Assert.assertEquals(content[2000] & 0xff, in.read());
+        try {
+          in.readFully(content.length - 10, range, 0, 20);
+          Assert.fail("EOF expected");
+        } catch (EOFException ignored) {}
+      }
+
+      // reads of chunks not fetched yet fail once the file system is closed
+      try (FSDataInputStream in = fs.open(foo, 1024)) {
+        Assert.assertEquals(content[0] & 0xff, in.read());
+        fs.close();
+        in.seek(9000);
+        try {
+          in.read();
+          Assert.fail("IOException expected");
+        } catch (IOException e) {
+          GenericTestUtils.assertExceptionContains("Filesystem closed", e);
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test(timeout = 30000)
   public void testGetHomeDirectory() throws Exception {
 
@@ -42,6 +42,12 @@ public void initializeMemberVariables() {
     xmlFilename = new String("hdfs-default.xml");
     configurationClasses = new Class[] { HdfsClientConfigKeys.class,
         HdfsClientConfigKeys.StripedRead.class,
+        HdfsClientConfigKeys.HedgedRead.class,
+        HdfsClientConfigKeys.AsyncCalls.class,
+        HdfsClientConfigKeys.VectoredRead.class,
+        HdfsClientConfigKeys.Write.class,
+        HdfsClientConfigKeys.Write.SmallFileBatch.class,
+        HdfsClientConfigKeys.MetadataCache.class,
         DFSConfigKeys.class};
 
     // Set error modes
@@ -124,6 +130,7 @@ public void initializeMemberVariables() {
 
     // Some properties have moved to HdfsClientConfigKeys
     xmlPropsToSkipCompare.add("dfs.client.short.circuit.replica.stale.threshold.ms");
+    xmlPropsToSkipCompare.add("dfs.client.read.shortcircuit.streams.cache.shards");
 
     // Ignore HTrace properties
     xmlPropsToSkipCompare.add("fs.client.htrace");